@@ -10,7 +10,9 @@ from lib.kademlia import KadID
 
 from .experiment import PubSubExperiment, PubSubExperimentResults
 from .message import (
+    BroadcastChunk,
     BroadcastHave,
+    BroadcastHaveBatch,
     BroadcastMessage,
     BroadcastWant,
     from_dict as message_from_dict,
@@ -427,15 +429,19 @@ class KadPubSubAnalyzer(PubSubAnalyzer):
         )
         haves = self.metrics_with(
             lambda m: isinstance(m, MessageSent)
-            and isinstance(m.message, BroadcastHave)
-            and m.message.topic == topic
-            and m.message.message_id == message
+            and (
+                isinstance(m.message, BroadcastHave)
+                and m.message.topic == topic
+                and m.message.message_id == message
+                or isinstance(m.message, BroadcastHaveBatch)
+                and message in m.message.message_ids
+            )
         )
         wanthaves = self.metrics_with(
             lambda m: isinstance(m, MessageSent)
             and isinstance(m.message, BroadcastWant)
             and m.message.topic == topic
-            and m.message.message_id == message
+            and message in m.message.message_ids
         )
         delivers = set(
             map(
@@ -555,6 +561,7 @@ def _parse_node_metrics(
         "PubSubSubscription": _parse_metric_pubsub_subscribe,
         "PubSubUnsubscription": _parse_metric_pubsub_unsubscribe,
         "Span": _parse_metric_span,
+        "QueryHops": _parse_metric_query_hops,
         "Network": _parse_metric_network,
         "MessageSent": _parse_metric_message_sent,
         "MessageReceived": _parse_metric_message_received,
@@ -626,6 +633,10 @@ def _parse_metric_span(node_id: str, timestamp: int, metric: dict) -> Metric:
     return Span(node_id, timestamp, name, duration)
 
 
+def _parse_metric_query_hops(node_id: str, timestamp: int, metric: dict) -> Metric:
+    return QueryHops(node_id, timestamp, metric["name"], metric["hops"])
+
+
 def _parse_metric_network(node_id: str, timestamp: int, metric: dict) -> Metric:
     return Network(node_id, timestamp, metric["inbound"], metric["outbound"])
 
@@ -690,7 +701,19 @@ def _compute_message_id_to_topic(metrics: list[Metric]) -> dict[str, str]:
         elif isinstance(metric, PubSubMessageReceived):
             message_id_to_topic[metric.message_id] = metric.topic
         elif isinstance(metric, (MessageSent, MessageReceived)) and isinstance(
-            metric.message, (BroadcastHave, BroadcastWant, BroadcastMessage)
+            metric.message, (BroadcastChunk, BroadcastHave, BroadcastMessage)
         ):
             message_id_to_topic[metric.message.message_id] = metric.message.topic
+        elif isinstance(metric, (MessageSent, MessageReceived)) and isinstance(
+            metric.message, BroadcastWant
+        ):
+            for message_id in metric.message.message_ids:
+                message_id_to_topic[message_id] = metric.message.topic
+        elif isinstance(metric, (MessageSent, MessageReceived)) and isinstance(
+            metric.message, BroadcastHaveBatch
+        ):
+            for topic, message_id in zip(
+                metric.message.topics, metric.message.message_ids
+            ):
+                message_id_to_topic[message_id] = topic
     return message_id_to_topic
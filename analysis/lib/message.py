@@ -17,6 +17,19 @@ class BroadcastHave:
         )
 
 
+@dataclasses.dataclass
+class BroadcastHaveBatch:
+    topics: list[str]
+    message_ids: list[str]
+
+    @staticmethod
+    def from_properties(properties: dict) -> BroadcastHaveBatch:
+        return BroadcastHaveBatch(
+            topics=properties["topics"],
+            message_ids=properties["message_ids"],
+        )
+
+
 @dataclasses.dataclass
 class BroadcastMessage:
     topic: str
@@ -37,15 +50,41 @@ class BroadcastMessage:
 
 
 @dataclasses.dataclass
-class BroadcastWant:
+class BroadcastChunk:
     topic: str
     message_id: str
+    payload: int
+    index: int
+    ceil: int
+    hop_count: int
+
+    @staticmethod
+    def from_properties(properties: dict) -> BroadcastChunk:
+        return BroadcastChunk(
+            topic=properties["topic"],
+            message_id=properties["message_id"],
+            payload=properties["payload"],
+            index=properties["index"],
+            ceil=properties["ceil"],
+            hop_count=properties["hop_count"],
+        )
+
+
+@dataclasses.dataclass
+class BroadcastWant:
+    topic: str
+    message_ids: list[str]
 
     @staticmethod
     def from_properties(properties: dict) -> BroadcastWant:
+        # Older runs asked for a single message per Want
+        if "message_ids" in properties:
+            message_ids = properties["message_ids"]
+        else:
+            message_ids = [properties["message_id"]]
         return BroadcastWant(
             topic=properties["topic"],
-            message_id=properties["message_id"],
+            message_ids=message_ids,
         )
 
 
@@ -53,8 +92,12 @@ def from_dict(message_type: str, d: dict, ignore_unkown=True) -> Any:
     match message_type:
         case "BroadcastHave":
             return BroadcastHave.from_properties(d)
+        case "BroadcastHaveBatch":
+            return BroadcastHaveBatch.from_properties(d)
         case "BroadcastMessage":
             return BroadcastMessage.from_properties(d)
+        case "BroadcastChunk":
+            return BroadcastChunk.from_properties(d)
         case "BroadcastWant":
             return BroadcastWant.from_properties(d)
         case _:
@@ -52,6 +52,12 @@ class Span(Metric):
     duration: float
 
 
+@dataclasses.dataclass
+class QueryHops(Metric):
+    name: str
+    hops: int
+
+
 @dataclasses.dataclass
 class Network(Metric):
     inbound: int
@@ -67,7 +67,7 @@ public class UnstructuredMain {
 		var plumtree = new PlumTree(props, myself);
 
 		// PubSub protocol
-		var pubsub = new UnstructuredPubsub(myself);
+		var pubsub = new UnstructuredPubsub(props, myself);
 		var hyparview = new Hyparview(props, myself);
 
 		// Register applications in babel
@@ -121,6 +121,16 @@ public class Metrics {
 		writeMetric(new Span(name, duration), "Span");
 	}
 
+	/**
+	 * Longest path, in hops from the seed peers, of a finished Kademlia query.
+	 */
+	public static void queryHops(String name, int hops) {
+		if (metricsLevel < METRIC_LEVEL_DETAILED) {
+			return;
+		}
+		writeMetric(new QueryHops(name, hops), "QueryHops");
+	}
+
 	public static void network(long in, long out) {
 		if (metricsLevel < METRIC_LEVEL_BASIC) {
 			return;
@@ -185,6 +195,63 @@ public class Metrics {
 		writeMetric(new RoutingTable(topic, routingTable), "RoutingTable");
 	}
 
+	/**
+	 * @param rtt Round trip time in milliseconds
+	 */
+	public static void pingRoundTrip(Host peer, double rtt) {
+		if (metricsLevel < METRIC_LEVEL_DETAILED) {
+			return;
+		}
+		writeMetric(new PingRoundTrip(peer.toString(), rtt), "PingRoundTrip");
+	}
+
+	// A peer that did not answer a ping was removed from the routing tables
+	public static void routingTableEviction(Host peer) {
+		if (metricsLevel < METRIC_LEVEL_BASIC) {
+			return;
+		}
+		writeMetric(new RoutingTableEviction(peer.toString()), "RoutingTableEviction");
+	}
+
+	// A peer was moved from a replacement cache into its bucket
+	public static void routingTableReplacement(Host peer) {
+		if (metricsLevel < METRIC_LEVEL_BASIC) {
+			return;
+		}
+		writeMetric(new RoutingTableReplacement(peer.toString()), "RoutingTableReplacement");
+	}
+
+	/**
+	 * Cumulative counters of the broadcast message cache.
+	 */
+	public static void messageCache(long hits, long misses, long evictions, long expirations, int messages, long bytes,
+	                                int seen) {
+		if (metricsLevel < METRIC_LEVEL_BASIC) {
+			return;
+		}
+		writeMetric(new MessageCache(hits, misses, evictions, expirations, messages, bytes, seen), "MessageCache");
+	}
+
+	/**
+	 * Size of the Kademlia value storage.
+	 */
+	public static void storage(int keys, long live_bytes, long bytes, int segments) {
+		if (metricsLevel < METRIC_LEVEL_BASIC) {
+			return;
+		}
+		writeMetric(new Storage(keys, live_bytes, bytes, segments), "Storage");
+	}
+
+	/**
+	 * GossipSub score of a connected peer.
+	 */
+	public static void peerScore(Host peer, double score) {
+		if (metricsLevel < METRIC_LEVEL_DETAILED) {
+			return;
+		}
+		writeMetric(new PeerScore(peer.toString(), score), "PeerScore");
+	}
+
 	public record Metric(long timestamp, String metric_type, Object metric) {
 	}
 
@@ -209,6 +276,9 @@ public class Metrics {
 	public record Span(String name, double duration) {
 	}
 
+	public record QueryHops(String name, int hops) {
+	}
+
 	public record Network(long inbound, long outbound) {
 	}
 
@@ -225,4 +295,22 @@ public class Metrics {
 
 	}
 
+	public record PingRoundTrip(String peer, double rtt) {
+	}
+
+	public record RoutingTableEviction(String peer) {
+	}
+
+	public record RoutingTableReplacement(String peer) {
+	}
+
+	public record MessageCache(long hits, long misses, long evictions, long expirations, int messages, long bytes,
+	                           int seen) {
+	}
+
+	public record Storage(int keys, long live_bytes, long bytes, int segments) {
+	}
+
+	public record PeerScore(String peer, double score) {
+	}
 }
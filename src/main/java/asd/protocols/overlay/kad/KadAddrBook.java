@@ -2,78 +2,293 @@ package asd.protocols.overlay.kad;
 
 import pt.unl.fct.di.novasys.network.data.Host;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
 
+/**
+ * The peers we know the address of, with one canonical {@link KadPeer} per node.
+ * <p>
+ * Every known peer gets a small int handle, the index of its slot in the arrays of the book, that other structures can
+ * hold instead of its KadID or Host. Handles stay valid until the peer is removed, after that they are reused for new
+ * peers. Structures that hold handles register with {@link #onRemove(IntConsumer)} to drop them before that happens.
+ * <p>
+ * The book also keeps what the rest of the stack learns about each peer: when we last heard from it, its round trip
+ * time, kept by {@link RttEstimator}, and how many times in a row it failed to answer.
+ * <p>
+ * A node is identified by both its id and its address. A known id announced with a new address keeps its handle and
+ * moves to the new address, a known address announced with a new id is a different node and the old one is removed.
+ */
 public class KadAddrBook {
-	private final HashMap<Host, KadID> host2id;
-	private final HashMap<KadID, Host> id2host;
+	public static final int NONE = -1;
+
+	private static final long NEVER = Long.MIN_VALUE;
+
+	private final LongSupplier clock;
+	private final HashMap<KadID, Integer> id_handles;
+	private final HashMap<Host, Integer> host_handles;
+	private final List<IntConsumer> remove_listeners;
+	private KadPeer[] peers;
+	private long[] last_seen;
+	// Smoothed round trip time and its variance in milliseconds, NaN if there are no samples
+	private double[] srtt;
+	private double[] rttvar;
+	private int[] failures;
+	private int[] free;
+	private int free_count;
+	private int next_handle;
 
 	public KadAddrBook() {
-		this.host2id = new HashMap<>();
-		this.id2host = new HashMap<>();
+		this(System::nanoTime);
+	}
+
+	public KadAddrBook(LongSupplier clock) {
+		this.clock = clock;
+		this.id_handles = new HashMap<>();
+		this.host_handles = new HashMap<>();
+		this.remove_listeners = new ArrayList<>();
+		this.peers = new KadPeer[64];
+		this.last_seen = new long[64];
+		this.srtt = new double[64];
+		this.rttvar = new double[64];
+		this.failures = new int[64];
+		this.free = new int[16];
+		this.free_count = 0;
+		this.next_handle = 0;
 	}
 
 	public KadPeer getPeerFromID(KadID id) {
-		var host = this.getHostFromID(id);
-		if (host == null) {
-			return null;
-		}
-		return new KadPeer(id, host);
+		var handle = this.id_handles.get(id);
+		return handle == null ? null : this.peers[handle];
 	}
 
 	public KadPeer getPeerFromHost(Host host) {
-		var id = this.getIdFromHost(host);
-		if (id == null) {
-			return null;
-		}
-		return new KadPeer(id, host);
+		var handle = this.host_handles.get(host);
+		return handle == null ? null : this.peers[handle];
 	}
 
 	public Host getHostFromID(KadID id) {
-		return this.id2host.get(id);
+		var peer = this.getPeerFromID(id);
+		return peer == null ? null : peer.host;
 	}
 
 	public KadID getIdFromHost(Host host) {
-		return this.host2id.get(host);
+		var peer = this.getPeerFromHost(host);
+		return peer == null ? null : peer.id;
+	}
+
+	/**
+	 * @return The handle of the peer with the given id or {@link #NONE} if it is unknown
+	 */
+	public int handle(KadID id) {
+		var handle = this.id_handles.get(id);
+		return handle == null ? NONE : handle;
 	}
 
-	public void add(KadPeer peer) {
-		this.add(peer.id, peer.host);
+	/**
+	 * @return The handle of the peer with the given address or {@link #NONE} if it is unknown
+	 */
+	public int handle(Host host) {
+		var handle = this.host_handles.get(host);
+		return handle == null ? NONE : handle;
 	}
 
-	public void add(KadID id, Host host) {
-		this.host2id.put(host, id);
-		this.id2host.put(id, host);
+	/**
+	 * @return The canonical peer of a handle
+	 */
+	public KadPeer peer(int handle) {
+		return this.peers[handle];
+	}
+
+	/**
+	 * Adds a peer, the given instance becomes the canonical one if the peer was not known.
+	 *
+	 * @return The handle of the peer
+	 */
+	public int add(KadPeer peer) {
+		var handle = this.id_handles.get(peer.id);
+		if (handle != null) {
+			var known = this.peers[handle];
+			if (!known.host.equals(peer.host)) {
+				this.move(handle, peer);
+			}
+			return handle;
+		}
+		var other = this.host_handles.get(peer.host);
+		if (other != null) {
+			this.removeHandle(other);
+		}
+		return this.allocate(peer);
+	}
+
+	public int add(KadID id, Host host) {
+		var handle = this.id_handles.get(id);
+		if (handle != null && this.peers[handle].host.equals(host)) {
+			return handle;
+		}
+		return this.add(new KadPeer(id, host));
 	}
 
 	public boolean contains(KadID id) {
-		return this.id2host.containsKey(id);
+		return this.id_handles.containsKey(id);
 	}
 
 	public boolean contains(Host host) {
-		return this.host2id.containsKey(host);
+		return this.host_handles.containsKey(host);
 	}
 
 	public void remove(KadID id) {
-		var host = this.getHostFromID(id);
-		if (host == null) {
-			return;
+		var handle = this.id_handles.get(id);
+		if (handle != null) {
+			this.removeHandle(handle);
 		}
-		this.host2id.remove(host);
-		this.id2host.remove(id);
 	}
 
 	public void remove(Host host) {
-		var id = this.getIdFromHost(host);
-		if (id == null) {
-			return;
+		var handle = this.host_handles.get(host);
+		if (handle != null) {
+			this.removeHandle(handle);
 		}
-		this.host2id.remove(host);
-		this.id2host.remove(id);
+	}
+
+	/**
+	 * @return The number of known peers
+	 */
+	public int size() {
+		return this.id_handles.size();
 	}
 
 	public List<KadPeer> idsToPeers(List<KadID> ids) {
-		return ids.stream().map(this::getPeerFromID).filter(p -> p != null).toList();
+		var peers = new ArrayList<KadPeer>(ids.size());
+		for (var id : ids) {
+			var peer = this.getPeerFromID(id);
+			if (peer != null) {
+				peers.add(peer);
+			}
+		}
+		return peers;
+	}
+
+	/**
+	 * Records that we just heard from a peer, which also clears its failures.
+	 */
+	public void seen(int handle) {
+		this.last_seen[handle] = this.clock.getAsLong();
+		this.failures[handle] = 0;
+	}
+
+	/**
+	 * @return When we last heard from a peer by the clock of the book, {@link Long#MIN_VALUE} if we never did
+	 */
+	public long lastSeen(int handle) {
+		return this.last_seen[handle];
+	}
+
+	/**
+	 * @return How long ago we last heard from a peer, null if we never did
+	 */
+	public Duration sinceSeen(int handle) {
+		if (this.last_seen[handle] == NEVER) {
+			return null;
+		}
+		return Duration.ofNanos(this.clock.getAsLong() - this.last_seen[handle]);
+	}
+
+	/**
+	 * Sets the smoothed round trip time of a peer and its variance, in milliseconds.
+	 */
+	public void rtt(int handle, double srtt, double rttvar) {
+		this.srtt[handle] = srtt;
+		this.rttvar[handle] = rttvar;
+	}
+
+	/**
+	 * @return The smoothed round trip time of a peer in milliseconds, NaN if there are no samples
+	 */
+	public double srtt(int handle) {
+		return this.srtt[handle];
+	}
+
+	/**
+	 * @return The round trip time variance of a peer in milliseconds, NaN if there are no samples
+	 */
+	public double rttvar(int handle) {
+		return this.rttvar[handle];
+	}
+
+	/**
+	 * Records that a peer failed to answer or could not be connected to.
+	 */
+	public void failure(int handle) {
+		this.failures[handle] += 1;
+	}
+
+	/**
+	 * @return How many times in a row a peer failed since we last heard from it
+	 */
+	public int failures(int handle) {
+		return this.failures[handle];
+	}
+
+	/**
+	 * Registers a callback that is given the handle of every removed peer, before the handle can be reused.
+	 */
+	public void onRemove(IntConsumer listener) {
+		this.remove_listeners.add(listener);
+	}
+
+	private int allocate(KadPeer peer) {
+		int handle;
+		if (this.free_count > 0) {
+			handle = this.free[--this.free_count];
+		} else {
+			handle = this.next_handle++;
+			if (handle == this.peers.length) {
+				var capacity = this.peers.length * 2;
+				this.peers = Arrays.copyOf(this.peers, capacity);
+				this.last_seen = Arrays.copyOf(this.last_seen, capacity);
+				this.srtt = Arrays.copyOf(this.srtt, capacity);
+				this.rttvar = Arrays.copyOf(this.rttvar, capacity);
+				this.failures = Arrays.copyOf(this.failures, capacity);
+			}
+		}
+		this.peers[handle] = peer;
+		this.last_seen[handle] = NEVER;
+		this.srtt[handle] = Double.NaN;
+		this.rttvar[handle] = Double.NaN;
+		this.failures[handle] = 0;
+		this.id_handles.put(peer.id, handle);
+		this.host_handles.put(peer.host, handle);
+		return handle;
+	}
+
+	// The peer kept its id but changed address, the round trip time is not valid anymore
+	private void move(int handle, KadPeer peer) {
+		var other = this.host_handles.get(peer.host);
+		if (other != null) {
+			this.removeHandle(other);
+		}
+		this.host_handles.remove(this.peers[handle].host);
+		this.host_handles.put(peer.host, handle);
+		this.peers[handle] = peer;
+		this.srtt[handle] = Double.NaN;
+		this.rttvar[handle] = Double.NaN;
+	}
+
+	private void removeHandle(int handle) {
+		var peer = this.peers[handle];
+		this.id_handles.remove(peer.id);
+		this.host_handles.remove(peer.host);
+		this.peers[handle] = null;
+		for (var listener : this.remove_listeners)
+			listener.accept(handle);
+		if (this.free_count == this.free.length) {
+			this.free = Arrays.copyOf(this.free, this.free.length * 2);
+		}
+		this.free[this.free_count++] = handle;
 	}
 }
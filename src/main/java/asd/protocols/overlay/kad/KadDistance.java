@@ -1,31 +1,43 @@
 package asd.protocols.overlay.kad;
 
 public class KadDistance implements Comparable<KadDistance> {
-	private final byte[] distance;
+	// Same layout as KadID
+	private final long high;
+	private final long mid;
+	private final int low;
+
+	KadDistance(long high, long mid, int low) {
+		this.high = high;
+		this.mid = mid;
+		this.low = low;
+	}
 
 	KadDistance(byte[] distance) {
 		if (distance.length != KadID.ID_LENGTH) {
 			throw new IllegalArgumentException("KadDistance must be " + KadID.ID_LENGTH + " bytes long");
 		}
-		this.distance = distance;
+		this.high = KadUtils.readBigEndian(distance, 0, 8);
+		this.mid = KadUtils.readBigEndian(distance, 8, 8);
+		this.low = (int) KadUtils.readBigEndian(distance, 16, 4);
 	}
 
 	public boolean isZero() {
-		for (int i = 0; i < KadID.ID_LENGTH; ++i)
-			if (this.distance[i] != 0) {
-				return false;
-			}
-		return true;
+		return this.high == 0 && this.mid == 0 && this.low == 0;
 	}
 
 	@Override
 	public String toString() {
+		var distance = new byte[KadID.ID_LENGTH];
+		KadUtils.writeBigEndian(distance, 0, 8, this.high);
+		KadUtils.writeBigEndian(distance, 8, 8, this.mid);
+		KadUtils.writeBigEndian(distance, 16, 4, this.low);
+
 		var builder = new StringBuilder();
 		for (int i = 0; i < KadID.ID_LENGTH; ++i) {
 			if (i != 0) {
 				builder.append(", ");
 			}
-			builder.append(String.format("%03d", this.distance[i] & 0xFF));
+			builder.append(String.format("%03d", distance[i] & 0xFF));
 		}
 		return builder.toString();
 	}
@@ -44,14 +56,21 @@ public class KadDistance implements Comparable<KadDistance> {
 		return this.compareTo((KadDistance) other) == 0;
 	}
 
+	@Override
+	public int hashCode() {
+		return 31 * (31 * Long.hashCode(this.high) + Long.hashCode(this.mid)) + this.low;
+	}
+
 	@Override
 	public int compareTo(KadDistance o) {
-		for (int i = 0; i < KadID.ID_LENGTH; ++i) {
-			var diff = (this.distance[i] & 0xFF) - (o.distance[i] & 0xFF);
-			if (diff != 0) {
-				return diff;
-			}
+		var cmp = Long.compareUnsigned(this.high, o.high);
+		if (cmp != 0) {
+			return cmp;
+		}
+		cmp = Long.compareUnsigned(this.mid, o.mid);
+		if (cmp != 0) {
+			return cmp;
 		}
-		return 0;
+		return Integer.compareUnsigned(this.low, o.low);
 	}
 }
@@ -7,27 +7,41 @@ import pt.unl.fct.di.novasys.network.ISerializer;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
 import java.util.HexFormat;
 import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * 160 bit Kademlia identifier.
+ * <p>
+ * The identifier is stored in big-endian order across two longs and an int so that distance and cpl computations
+ * can be done a word at a time without allocating.
+ */
 public class KadID {
 	public static final int ID_LENGTH = 20;
 	public static final KadID DEFAULT_RTID = KadID.zero();
 	public static final ISerializer<KadID> serializer = new ISerializer<KadID>() {
 		@Override
 		public KadID deserialize(ByteBuf buf) throws IOException {
-			var id = new byte[ID_LENGTH];
-			buf.readBytes(id);
-			return new KadID(id);
+			return new KadID(buf.readLong(), buf.readLong(), buf.readInt());
 		}
 
 		@Override
 		public void serialize(KadID id, ByteBuf buf) throws IOException {
-			buf.writeBytes(id.id);
+			buf.writeLong(id.high);
+			buf.writeLong(id.mid);
+			buf.writeInt(id.low);
 		}
 	};
-	private final byte[] id;
+	// Bits 0..63, 64..127 and 128..159 of the identifier
+	private final long high;
+	private final long mid;
+	private final int low;
+
+	KadID(long high, long mid, int low) {
+		this.high = high;
+		this.mid = mid;
+		this.low = low;
+	}
 
 	/**
 	 * @param id 20 byte long identifier
@@ -37,7 +51,9 @@ public class KadID {
 		if (id.length != ID_LENGTH) {
 			throw new IllegalArgumentException("KadID must be " + ID_LENGTH + " bytes long");
 		}
-		this.id = Arrays.copyOf(id, ID_LENGTH);
+		this.high = KadUtils.readBigEndian(id, 0, 8);
+		this.mid = KadUtils.readBigEndian(id, 8, 8);
+		this.low = (int) KadUtils.readBigEndian(id, 16, 4);
 	}
 
 	static KadID create(int... id) {
@@ -52,23 +68,23 @@ public class KadID {
 	}
 
 	public static KadID zero() {
-		return new KadID(new byte[ID_LENGTH]);
+		return new KadID(0, 0, 0);
 	}
 
 	public static KadID random() {
-		var id = new byte[ID_LENGTH];
-		ThreadLocalRandom.current().nextBytes(id);
-		return new KadID(id);
+		var rng = ThreadLocalRandom.current();
+		return new KadID(rng.nextLong(), rng.nextLong(), rng.nextInt());
 	}
 
 	public static KadID randomWithCpl(KadID reference, int cpl) {
 		var id = new byte[ID_LENGTH];
+		var ref = reference.toByteArray();
 		ThreadLocalRandom.current().nextBytes(id);
 		var cpl_bytes = cpl / 8;
 		var cpl_bits = cpl % 8;
-		if (cpl_bytes >= 0) System.arraycopy(reference.id, 0, id, 0, cpl_bytes);
+		if (cpl_bytes >= 0) System.arraycopy(ref, 0, id, 0, cpl_bytes);
 		var mask = (byte) (1 << (7 - cpl_bits));
-		id[cpl_bytes] = (byte) (reference.id[cpl_bytes] ^ mask);
+		id[cpl_bytes] = (byte) (ref[cpl_bytes] ^ mask);
 		return new KadID(id);
 	}
 
@@ -101,43 +117,83 @@ public class KadID {
 	}
 
 	public KadDistance distanceTo(KadID other) {
-		var distance = new byte[ID_LENGTH];
-		for (int i = 0; i < ID_LENGTH; ++i)
-			distance[i] = (byte) (this.id[i] ^ other.id[i]);
-		return new KadDistance(distance);
+		return new KadDistance(this.high ^ other.high, this.mid ^ other.mid, this.low ^ other.low);
+	}
+
+	/**
+	 * Compares the distance from this identifier to `a` with the distance from this identifier to `b` without
+	 * materializing either distance.
+	 *
+	 * @return A negative value if `a` is closer, a positive value if `b` is closer and 0 if they are the same id.
+	 */
+	public int compareDistances(KadID a, KadID b) {
+		var cmp = Long.compareUnsigned(this.high ^ a.high, this.high ^ b.high);
+		if (cmp != 0) {
+			return cmp;
+		}
+		cmp = Long.compareUnsigned(this.mid ^ a.mid, this.mid ^ b.mid);
+		if (cmp != 0) {
+			return cmp;
+		}
+		return Integer.compareUnsigned(this.low ^ a.low, this.low ^ b.low);
 	}
 
 	public int cpl(KadID other) {
-		int cpl = 0;
-		for (int i = 0; i < ID_LENGTH; ++i) {
-			var xor = (byte) (this.id[i] ^ other.id[i]);
-			var lz = KadUtils.byteLeadingZeroes(xor);
-			cpl += lz;
-			if (lz != 8) {
-				break;
-			}
+		var xor = this.high ^ other.high;
+		if (xor != 0) {
+			return Long.numberOfLeadingZeros(xor);
+		}
+		xor = this.mid ^ other.mid;
+		if (xor != 0) {
+			return 64 + Long.numberOfLeadingZeros(xor);
 		}
-		return cpl;
+		return 128 + Integer.numberOfLeadingZeros(this.low ^ other.low);
+	}
+
+	/**
+	 * @param index Bit index, 0 is the most significant bit
+	 * @return The value of the bit, 0 or 1
+	 */
+	public int bit(int index) {
+		if (index < 64) {
+			return (int) (this.high >>> (63 - index)) & 1;
+		}
+		if (index < 128) {
+			return (int) (this.mid >>> (127 - index)) & 1;
+		}
+		return (this.low >>> (159 - index)) & 1;
+	}
+
+	/**
+	 * @return A copy of the identifier as a 20 byte big-endian array
+	 */
+	public byte[] toByteArray() {
+		var bytes = new byte[ID_LENGTH];
+		KadUtils.writeBigEndian(bytes, 0, 8, this.high);
+		KadUtils.writeBigEndian(bytes, 8, 8, this.mid);
+		KadUtils.writeBigEndian(bytes, 16, 4, this.low);
+		return bytes;
 	}
 
 	@Override
 	public String toString() {
-		return HexFormat.of().formatHex(this.id);
+		var hex = HexFormat.of();
+		return hex.toHexDigits(this.high) + hex.toHexDigits(this.mid) + hex.toHexDigits(this.low);
 	}
 
 	@Override
 	public boolean equals(Object other) {
-		if (other == null || !(other instanceof KadID other_id)) {
-			return false;
-		}
 		if (other == this) {
 			return true;
 		}
-		return Arrays.equals(this.id, other_id.id);
+		if (!(other instanceof KadID other_id)) {
+			return false;
+		}
+		return this.high == other_id.high && this.mid == other_id.mid && this.low == other_id.low;
 	}
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(this.id);
+		return 31 * (31 * Long.hashCode(this.high) + Long.hashCode(this.mid)) + this.low;
 	}
 }
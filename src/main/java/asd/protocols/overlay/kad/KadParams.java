@@ -1,21 +1,44 @@
 package asd.protocols.overlay.kad;
 
+import asd.protocols.overlay.kad.query.QueryType;
+
 import java.time.Duration;
+import java.util.Set;
 
 public class KadParams {
 	public final int k;
+	public final String rt_type;
+	public final int rt_relax;
+	public final Duration rt_ping_timeout;
 	public final int alpha;
 	public final Duration query_request_timeout;
+	public final Duration query_batch_window;
+	public final int query_batch_max;
+	public final int query_paths;
+	public final Set<QueryType> query_disjoint;
+	public final int query_alpha_max;
+	public final int query_rtt_window;
 	public final Duration swarmttl;
 	public final Duration pubsub_msg_timeout;
 	public final int pubsub_k;
 	public final int pubsub_rfac;
 
-	public KadParams(int k, int alpha, Duration query_request_timeout, Duration swarmttl, Duration pubsub_msg_timeout,
-	                 int pubsub_k, int pubsub_rfac) {
+	public KadParams(int k, String rt_type, int rt_relax, Duration rt_ping_timeout, int alpha,
+	                 Duration query_request_timeout, Duration query_batch_window, int query_batch_max, int query_paths,
+	                 Set<QueryType> query_disjoint, int query_alpha_max, int query_rtt_window, Duration swarmttl,
+	                 Duration pubsub_msg_timeout, int pubsub_k, int pubsub_rfac) {
 		this.k = k;
+		this.rt_type = rt_type;
+		this.rt_relax = rt_relax;
+		this.rt_ping_timeout = rt_ping_timeout;
 		this.alpha = alpha;
 		this.query_request_timeout = query_request_timeout;
+		this.query_batch_window = query_batch_window;
+		this.query_batch_max = query_batch_max;
+		this.query_paths = query_paths;
+		this.query_disjoint = query_disjoint;
+		this.query_alpha_max = query_alpha_max;
+		this.query_rtt_window = query_rtt_window;
 		this.swarmttl = swarmttl;
 		this.pubsub_msg_timeout = pubsub_msg_timeout;
 		this.pubsub_k = pubsub_k;
@@ -1,36 +1,598 @@
 package asd.protocols.overlay.kad;
 
-import java.util.HashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * Stores the values of StoreRequests in an append only log of memory mapped segment files.
+ * <p>
+ * Every store appends a record to the active segment, a new segment is started when it fills up. The index maps each
+ * key to the location of its latest record. It is an open addressing table of primitive arrays that keeps the hash,
+ * location and times of each key, the key itself is compared against the mapped record. A slot takes 28 bytes of heap
+ * no matter how large the values are. The table is kept at most half full and doubles when it would not be, so it
+ * takes between 56 and 112 bytes per key of the most keys it ever held, it does not shrink when keys are removed. The
+ * number of keys is capped by `max_keys`. Values are read from the mapping, {@link #view(KadID)} does not copy them to
+ * the heap.
+ * <p>
+ * Records carry an absolute expiry time, expired keys are skipped by lookups and dropped by {@link #expire()}.
+ * {@link #compact(double)} moves the live records of mostly dead segments to the active segment and deletes them.
+ * Opening a directory that already has segments rebuilds the index from them, a record with a bad checksum ends the
+ * scan of its segment.
+ * <p>
+ * Record layout: size of the whole record (int), stored at and expires at in epoch milliseconds (longs), key
+ * (20 bytes), value, CRC32 of everything between the size and the checksum (int). A size of 0 marks the end of a
+ * segment.
+ * <p>
+ * Lookups may run concurrently with each other from any thread, they are serialized against the methods that change
+ * the storage by a read-write lock.
+ */
+public class KadStorage implements AutoCloseable {
+	private static final Logger logger = LogManager.getLogger(KadStorage.class);
+	private static final int OFFSET_STORED = 4;
+	private static final int OFFSET_EXPIRES = 12;
+	private static final int OFFSET_KEY = 20;
+	private static final int HEADER = OFFSET_KEY + KadID.ID_LENGTH;
+	private static final int TRAILER = 4;
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final int MIN_TABLE_SIZE = 16;
 
-public class KadStorage {
-	private final HashMap<KadID, Value> storage;
+	private static final class Segment {
+		private final int id;
+		private final Path path;
+		private final MappedByteBuffer buffer;
+		// Where the next record goes, also the number of bytes used
+		private int position;
+		// Bytes of the records the index still points to
+		private long live;
 
-	public KadStorage() {
-		this.storage = new HashMap<>();
+		private Segment(int id, Path path, MappedByteBuffer buffer) {
+			this.id = id;
+			this.path = path;
+			this.buffer = buffer;
+			this.position = 0;
+			this.live = 0;
+		}
 	}
 
-	public void store(KadID key, byte[] value) {
-		this.storage.put(key, new Value(key, value, System.currentTimeMillis()));
+	private final Path directory;
+	private final int segment_size;
+	private final int max_keys;
+	private final Duration ttl;
+	private final LongSupplier clock;
+	private final TreeMap<Integer, Segment> segments;
+	private final ReentrantReadWriteLock lock;
+	private Segment active;
+
+	// Index, a slot is empty when its segment is 0, otherwise it holds the segment id + 1
+	private int[] hashes;
+	private int[] slot_segments;
+	private int[] slot_offsets;
+	private long[] slot_stored;
+	private long[] slot_expires;
+	private int mask;
+	private int count;
+
+	public KadStorage(Path directory, int segment_size, int max_keys, Duration ttl) throws IOException {
+		this(directory, segment_size, max_keys, ttl, System::currentTimeMillis);
 	}
 
+	/**
+	 * @param directory    Where the segments are kept, existing segments are loaded
+	 * @param segment_size Size of each segment file, values larger than a segment cannot be stored
+	 * @param max_keys     Maximum number of keys stored
+	 * @param ttl          How long values are kept when no ttl is given
+	 * @param clock        The time source in epoch milliseconds
+	 */
+	public KadStorage(Path directory, int segment_size, int max_keys, Duration ttl, LongSupplier clock)
+			throws IOException {
+		if (segment_size < HEADER + TRAILER) {
+			throw new IllegalArgumentException("segment_size must be at least " + (HEADER + TRAILER));
+		}
+		if (max_keys < 1 || max_keys > (1 << 29)) {
+			throw new IllegalArgumentException("max_keys must be between 1 and 2^29");
+		}
+		this.directory = directory;
+		this.segment_size = segment_size;
+		this.max_keys = max_keys;
+		this.ttl = ttl;
+		this.clock = clock;
+		this.segments = new TreeMap<>();
+		this.lock = new ReentrantReadWriteLock();
+		this.allocateTable(MIN_TABLE_SIZE);
+
+		Files.createDirectories(directory);
+		this.load();
+	}
+
+	public boolean store(KadID key, byte[] value) {
+		return this.store(key, value, this.ttl);
+	}
+
+	/**
+	 * Stores a value, replacing any previous value of the key.
+	 *
+	 * @return False if the value does not fit in a segment or the storage is full
+	 */
+	public boolean store(KadID key, byte[] value, Duration ttl) {
+		var size = HEADER + value.length + TRAILER;
+		if (value.length > this.segment_size - HEADER - TRAILER) {
+			return false;
+		}
+		this.lock.writeLock().lock();
+		try {
+			return this.storeLocked(key, value, ttl, size);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	private boolean storeLocked(KadID key, byte[] value, Duration ttl, int size) {
+		var now = this.clock.getAsLong();
+		var key_bytes = key.toByteArray();
+		var hash = hash(key_bytes);
+		if (this.find(key_bytes, hash) == -1 && this.count >= this.max_keys) {
+			this.expireLocked();
+			if (this.count >= this.max_keys) {
+				return false;
+			}
+		}
+
+		var segment = this.reserve(size);
+		var buffer = segment.buffer;
+		var offset = segment.position;
+		buffer.putInt(offset, size);
+		buffer.putLong(offset + OFFSET_STORED, now);
+		buffer.putLong(offset + OFFSET_EXPIRES, now + ttl.toMillis());
+		buffer.put(offset + OFFSET_KEY, key_bytes);
+		buffer.put(offset + HEADER, value);
+		buffer.putInt(offset + size - TRAILER, checksum(buffer, offset, size));
+		segment.position += size;
+		segment.live += size;
+
+		this.index(key_bytes, hash, segment.id, offset, now, now + ttl.toMillis());
+		return true;
+	}
+
+	/**
+	 * @return A copy of the value
+	 */
 	public Optional<byte[]> get(KadID key) {
-		Value value = this.storage.get(key);
-		if (value == null) {
-			return Optional.empty();
+		return this.view(key).map(view -> {
+			var value = new byte[view.remaining()];
+			view.get(value);
+			return value;
+		});
+	}
+
+	/**
+	 * @return A read only buffer over the mapped value, it stays valid after the key is replaced or compacted
+	 */
+	public Optional<ByteBuffer> view(KadID key) {
+		this.lock.readLock().lock();
+		try {
+			var slot = this.lookup(key);
+			if (slot == -1) {
+				return Optional.empty();
+			}
+			var segment = this.segments.get(this.slot_segments[slot] - 1);
+			var offset = this.slot_offsets[slot];
+			var size = segment.buffer.getInt(offset);
+			return Optional.of(segment.buffer.slice(offset + HEADER, size - HEADER - TRAILER).asReadOnlyBuffer());
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	public boolean contains(KadID key) {
+		this.lock.readLock().lock();
+		try {
+			return this.lookup(key) != -1;
+		} finally {
+			this.lock.readLock().unlock();
 		}
-		return Optional.of(value.value);
 	}
 
-	private class Value {
-		public final KadID key;
-		public final byte[] value;
-		public final long last_refresh;
+	/**
+	 * @return The number of keys stored, including expired keys not yet removed
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * @return The number of bytes used by every segment
+	 */
+	public long bytes() {
+		var bytes = 0L;
+		for (var segment : this.segments.values())
+			bytes += segment.position;
+		return bytes;
+	}
 
-		public Value(KadID key, byte[] value, long last_refresh) {
-			this.key = key;
-			this.value = value;
-			this.last_refresh = last_refresh;
+	/**
+	 * @return The number of bytes used by the records of the stored keys
+	 */
+	public long liveBytes() {
+		var bytes = 0L;
+		for (var segment : this.segments.values())
+			bytes += segment.live;
+		return bytes;
+	}
+
+	public int segments() {
+		return this.segments.size();
+	}
+
+	/**
+	 * Removes every expired key from the index, their records are reclaimed by {@link #compact(double)}.
+	 *
+	 * @return The number of keys removed
+	 */
+	public int expire() {
+		this.lock.writeLock().lock();
+		try {
+			return this.expireLocked();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	private int expireLocked() {
+		var now = this.clock.getAsLong();
+		var removed = 0;
+		var slot = 0;
+		while (slot < this.slot_segments.length) {
+			if (this.slot_segments[slot] != 0 && this.slot_expires[slot] - now <= 0) {
+				// Backward shift deletion only moves entries from later slots into this one, check it again
+				this.release(slot);
+				this.removeSlot(slot);
+				removed += 1;
+			} else {
+				slot += 1;
+			}
 		}
+		return removed;
+	}
+
+	/**
+	 * Expires keys and rewrites the segments whose live bytes are less than `min_live` of their used bytes. The live
+	 * records of those segments are appended to the active segment and their files are deleted.
+	 *
+	 * @return The number of segments removed
+	 */
+	public int compact(double min_live) throws IOException {
+		this.lock.writeLock().lock();
+		try {
+			return this.compactLocked(min_live);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	private int compactLocked(double min_live) throws IOException {
+		this.expireLocked();
+		var key_bytes = new byte[KadID.ID_LENGTH];
+		var removed = 0;
+		for (var segment : new ArrayList<>(this.segments.values())) {
+			if (segment == this.active) {
+				continue;
+			}
+			if (segment.live != 0 && (double) segment.live / segment.position >= min_live) {
+				continue;
+			}
+
+			var offset = 0;
+			while (offset < segment.position && segment.live > 0) {
+				var size = segment.buffer.getInt(offset);
+				segment.buffer.get(offset + OFFSET_KEY, key_bytes);
+				var slot = this.find(key_bytes, hash(key_bytes));
+				if (slot != -1 && this.slot_segments[slot] == segment.id + 1 && this.slot_offsets[slot] == offset) {
+					var target = this.reserve(size);
+					target.buffer.put(target.position, segment.buffer, offset, size);
+					this.slot_segments[slot] = target.id + 1;
+					this.slot_offsets[slot] = target.position;
+					target.position += size;
+					target.live += size;
+					segment.live -= size;
+				}
+				offset += size;
+			}
+			this.segments.remove(segment.id);
+			Files.deleteIfExists(segment.path);
+			removed += 1;
+		}
+		return removed;
+	}
+
+	/**
+	 * Finds the keys stored more than `interval` ago and marks them as stored now, so each key is due once per
+	 * `interval`. Keys stored again in the meantime are not due.
+	 */
+	public List<KadID> due(Duration interval) {
+		this.lock.writeLock().lock();
+		try {
+			return this.dueLocked(interval);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	private List<KadID> dueLocked(Duration interval) {
+		var now = this.clock.getAsLong();
+		var due = new ArrayList<KadID>();
+		for (int slot = 0; slot < this.slot_segments.length; ++slot) {
+			if (this.slot_segments[slot] == 0 || this.slot_expires[slot] - now <= 0) {
+				continue;
+			}
+			if (now - this.slot_stored[slot] < interval.toMillis()) {
+				continue;
+			}
+			var segment = this.segments.get(this.slot_segments[slot] - 1);
+			var key_bytes = new byte[KadID.ID_LENGTH];
+			segment.buffer.get(this.slot_offsets[slot] + OFFSET_KEY, key_bytes);
+			due.add(new KadID(key_bytes));
+			this.slot_stored[slot] = now;
+		}
+		return due;
+	}
+
+	/**
+	 * Writes the active segment to disk.
+	 */
+	public void flush() {
+		this.active.buffer.force();
+	}
+
+	@Override
+	public void close() {
+		this.flush();
+	}
+
+	private void load() throws IOException {
+		try (var files = Files.list(this.directory)) {
+			for (var path : (Iterable<Path>) files::iterator) {
+				var name = path.getFileName().toString();
+				if (!name.endsWith(SEGMENT_SUFFIX)) {
+					continue;
+				}
+				int id;
+				try {
+					id = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+				} catch (NumberFormatException e) {
+					continue;
+				}
+				this.segments.put(id, new Segment(id, path, map(path, Files.size(path))));
+			}
+		}
+		for (var segment : this.segments.values())
+			this.scan(segment);
+
+		if (this.segments.isEmpty()) {
+			this.active = this.createSegment(0);
+		} else {
+			this.active = this.segments.lastEntry().getValue();
+		}
+		if (this.count > 0) {
+			logger.info("Loaded " + this.count + " keys from " + this.segments.size() + " segments in "
+					+ this.directory);
+		}
+	}
+
+	private void scan(Segment segment) {
+		var buffer = segment.buffer;
+		var now = this.clock.getAsLong();
+		var key_bytes = new byte[KadID.ID_LENGTH];
+		var offset = 0;
+		while (offset + HEADER + TRAILER <= buffer.capacity()) {
+			var size = buffer.getInt(offset);
+			if (size == 0) {
+				break;
+			}
+			if (size < HEADER + TRAILER || size > buffer.capacity() - offset
+					|| buffer.getInt(offset + size - TRAILER) != checksum(buffer, offset, size)) {
+				logger.warn("Torn record at " + offset + " in " + segment.path
+						+ ", discarding the rest of the segment");
+				for (int i = offset; i < buffer.capacity(); ++i)
+					buffer.put(i, (byte) 0);
+				break;
+			}
+
+			buffer.get(offset + OFFSET_KEY, key_bytes);
+			var hash = hash(key_bytes);
+			var expires = buffer.getLong(offset + OFFSET_EXPIRES);
+			segment.live += size;
+			if (expires - now > 0 && (this.count < this.max_keys || this.find(key_bytes, hash) != -1)) {
+				this.index(key_bytes, hash, segment.id, offset, buffer.getLong(offset + OFFSET_STORED),
+						expires);
+			} else {
+				// An expired record also hides any older record of the same key
+				segment.live -= size;
+				var slot = this.find(key_bytes, hash);
+				if (slot != -1) {
+					this.release(slot);
+					this.removeSlot(slot);
+				}
+			}
+			offset += size;
+		}
+		segment.position = offset;
+	}
+
+	// The segment to append a record of `size` bytes to, starts a new segment if the active one is full
+	private Segment reserve(int size) {
+		if (this.active.position + size <= this.active.buffer.capacity()) {
+			return this.active;
+		}
+		this.active.buffer.force();
+		try {
+			this.active = this.createSegment(this.segments.lastKey() + 1);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return this.active;
+	}
+
+	private Segment createSegment(int id) throws IOException {
+		var path = this.directory.resolve(String.format("%010d", id) + SEGMENT_SUFFIX);
+		var segment = new Segment(id, path, map(path, this.segment_size));
+		this.segments.put(id, segment);
+		return segment;
+	}
+
+	private static MappedByteBuffer map(Path path, long size) throws IOException {
+		try (var file = new RandomAccessFile(path.toFile(), "rw")) {
+			if (file.length() < size) {
+				file.setLength(size);
+			}
+			// The mapping outlives the channel
+			return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+	}
+
+	private static int checksum(ByteBuffer buffer, int offset, int size) {
+		var crc = new CRC32();
+		crc.update(buffer.slice(offset + OFFSET_STORED, size - OFFSET_STORED - TRAILER));
+		return (int) crc.getValue();
+	}
+
+	// The slot of a key that has not expired, expired keys found along the way are removed
+	private int lookup(KadID key) {
+		var key_bytes = key.toByteArray();
+		var slot = this.find(key_bytes, hash(key_bytes));
+		if (slot == -1) {
+			return -1;
+		}
+		// Expired keys are left for expire(), lookups do not change the index
+		if (this.slot_expires[slot] - this.clock.getAsLong() <= 0) {
+			return -1;
+		}
+		return slot;
+	}
+
+	// Points a key at a record, the key must fit in the index
+	private void index(byte[] key_bytes, int hash, int segment, int offset, long stored, long expires) {
+		var slot = this.find(key_bytes, hash);
+		if (slot != -1) {
+			this.release(slot);
+		} else {
+			if ((this.count + 1) * 2 > this.slot_segments.length) {
+				this.resize(this.slot_segments.length * 2);
+			}
+			slot = hash & this.mask;
+			while (this.slot_segments[slot] != 0)
+				slot = (slot + 1) & this.mask;
+			this.hashes[slot] = hash;
+			this.count += 1;
+		}
+		this.slot_segments[slot] = segment + 1;
+		this.slot_offsets[slot] = offset;
+		this.slot_stored[slot] = stored;
+		this.slot_expires[slot] = expires;
+	}
+
+	// The record a slot points to is no longer live
+	private void release(int slot) {
+		var segment = this.segments.get(this.slot_segments[slot] - 1);
+		segment.live -= segment.buffer.getInt(this.slot_offsets[slot]);
+	}
+
+	private int find(byte[] key_bytes, int hash) {
+		var slot = hash & this.mask;
+		while (this.slot_segments[slot] != 0) {
+			if (this.hashes[slot] == hash && this.keyEquals(slot, key_bytes)) {
+				return slot;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		return -1;
+	}
+
+	private boolean keyEquals(int slot, byte[] key_bytes) {
+		var buffer = this.segments.get(this.slot_segments[slot] - 1).buffer;
+		var offset = this.slot_offsets[slot] + OFFSET_KEY;
+		for (int i = 0; i < key_bytes.length; ++i) {
+			if (buffer.get(offset + i) != key_bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Backward shift deletion, keeps every probe sequence unbroken without tombstones
+	private void removeSlot(int hole) {
+		var slot = hole;
+		while (true) {
+			slot = (slot + 1) & this.mask;
+			if (this.slot_segments[slot] == 0) {
+				break;
+			}
+			var home = this.hashes[slot] & this.mask;
+			// Move the entry into the hole unless its home lies cyclically in (hole, slot]
+			if (((slot - home) & this.mask) >= ((slot - hole) & this.mask)) {
+				this.hashes[hole] = this.hashes[slot];
+				this.slot_segments[hole] = this.slot_segments[slot];
+				this.slot_offsets[hole] = this.slot_offsets[slot];
+				this.slot_stored[hole] = this.slot_stored[slot];
+				this.slot_expires[hole] = this.slot_expires[slot];
+				hole = slot;
+			}
+		}
+		this.slot_segments[hole] = 0;
+		this.count -= 1;
+	}
+
+	private void resize(int size) {
+		var hashes = this.hashes;
+		var segments = this.slot_segments;
+		var offsets = this.slot_offsets;
+		var stored = this.slot_stored;
+		var expires = this.slot_expires;
+		this.allocateTable(size);
+		for (int i = 0; i < segments.length; ++i) {
+			if (segments[i] == 0) {
+				continue;
+			}
+			var slot = hashes[i] & this.mask;
+			while (this.slot_segments[slot] != 0)
+				slot = (slot + 1) & this.mask;
+			this.hashes[slot] = hashes[i];
+			this.slot_segments[slot] = segments[i];
+			this.slot_offsets[slot] = offsets[i];
+			this.slot_stored[slot] = stored[i];
+			this.slot_expires[slot] = expires[i];
+		}
+	}
+
+	private void allocateTable(int size) {
+		this.hashes = new int[size];
+		this.slot_segments = new int[size];
+		this.slot_offsets = new int[size];
+		this.slot_stored = new long[size];
+		this.slot_expires = new long[size];
+		this.mask = size - 1;
+	}
+
+	private static int hash(byte[] key_bytes) {
+		var h = KadUtils.readBigEndian(key_bytes, 0, 8) * 0x9E3779B97F4A7C15L
+				^ KadUtils.readBigEndian(key_bytes, 8, 8) ^ KadUtils.readBigEndian(key_bytes, 16, 4);
+		h ^= h >>> 32;
+		h *= 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32);
 	}
 }
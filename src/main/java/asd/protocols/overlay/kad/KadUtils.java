@@ -18,6 +18,20 @@ class KadUtils {
 		return lz;
 	}
 
+	static long readBigEndian(byte[] bytes, int offset, int length) {
+		long value = 0;
+		for (int i = 0; i < length; ++i)
+			value = (value << 8) | (bytes[offset + i] & 0xFF);
+		return value;
+	}
+
+	static void writeBigEndian(byte[] bytes, int offset, int length, long value) {
+		for (int i = length - 1; i >= 0; --i) {
+			bytes[offset + i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
 	static KadPeer[] messageReadPeerList(ByteBuf buf) {
 		var n = buf.readShort();
 		var peers = new KadPeer[n];
@@ -6,25 +6,40 @@ import asd.metrics.Profiling;
 import asd.protocols.overlay.common.notifications.ChannelCreatedNotification;
 import asd.protocols.overlay.common.notifications.NeighbourDown;
 import asd.protocols.overlay.common.notifications.NeighbourUp;
+import asd.protocols.overlay.kad.bcast.BroadcastPlan;
+import asd.protocols.overlay.kad.bcast.ChunkAssembler;
+import asd.protocols.overlay.kad.bcast.HaveBatcher;
 import asd.protocols.overlay.kad.bcast.HaveTracker;
 import asd.protocols.overlay.kad.bcast.Message;
 import asd.protocols.overlay.kad.bcast.MessageCache;
+import asd.protocols.overlay.kad.bcast.PullScheduler;
 import asd.protocols.overlay.kad.bcast.RequestTracker;
 import asd.protocols.overlay.kad.ipc.*;
 import asd.protocols.overlay.kad.messages.*;
 import asd.protocols.overlay.kad.notifications.BroadcastReceived;
 import asd.protocols.overlay.kad.query.BasicQueryManager;
 import asd.protocols.overlay.kad.query.CachedQueryManager;
+import asd.protocols.overlay.kad.query.FindNodeTarget;
 import asd.protocols.overlay.kad.query.QueryManager;
 import asd.protocols.overlay.kad.query.QueryManagerIO;
+import asd.protocols.overlay.kad.query.QueryType;
+import asd.protocols.overlay.kad.routing.ClosestPeers;
+import asd.protocols.overlay.kad.routing.PingTracker;
 import asd.protocols.overlay.kad.routing.RoutingTable;
 import asd.protocols.overlay.kad.routing.RoutingTables;
 import asd.protocols.overlay.kad.routing.SwarmTracker;
-import asd.protocols.overlay.kad.timers.CheckMessageTimeoutsTimer;
 import asd.protocols.overlay.kad.timers.CheckQueryTimeoutsTimer;
+import asd.protocols.overlay.kad.timers.CompactStorageTimer;
+import asd.protocols.overlay.kad.timers.FlushHavesTimer;
+import asd.protocols.overlay.kad.timers.FlushQueryBatchesTimer;
+import asd.protocols.overlay.kad.timers.FlushWantsTimer;
 import asd.protocols.overlay.kad.timers.MetricDebugTimer;
 import asd.protocols.overlay.kad.timers.RefreshRoutingTable;
+import asd.protocols.overlay.kad.timers.RepublishStorageTimer;
 import asd.utils.ASDUtils;
+import asd.utils.SeenFilter;
+import asd.utils.sampling.Sampler;
+import io.netty.buffer.Unpooled;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import pt.unl.fct.di.novasys.babel.core.GenericProtocol;
@@ -35,23 +50,34 @@ import pt.unl.fct.di.novasys.channel.tcp.events.*;
 import pt.unl.fct.di.novasys.network.data.Host;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.UUID;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 public class Kademlia extends GenericProtocol implements QueryManagerIO {
 	public static final short ID = 100;
 	public static final String NAME = "Kademlia";
 	private static final Logger logger = LogManager.getLogger(Kademlia.class);
+	// With the default 100ms tick a turn of the wheel is a bit over 100 seconds
+	private static final int TIMER_WHEEL_SLOTS = 1024;
 	private final int channel_id;
 	private final KadPeer self;
 	private final RoutingTables rts;
 	private final KadStorage storage;
 	private final KadAddrBook addrbook;
+	private final Sampler sampler;
+	private final RttEstimator rtt;
+	private final TimerWheel wheel;
 	private final QueryManager query_manager;
 	private final SwarmTracker swarm_tracker;
 	private final KadParams params;
@@ -59,8 +85,23 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 	private final ConnectionFlags conn_flags;
 	private final MessageCache msg_cache;
 	private final RequestTracker msg_tracker;
+	private final PullScheduler pull_scheduler;
 	private final HaveTracker have_tracker;
+	private final HaveBatcher have_batcher;
+	private final ChunkAssembler chunk_assembler;
+	private final HashMap<KadID, BroadcastPlan> broadcast_plans;
+	// Topics whose payloads are erasure coded, null for every topic
+	private final Set<KadID> coded_topics;
+	private final int coded_data_chunks;
+	private final int coded_parity_chunks;
+	private final int coded_branches;
+	private final int coded_min_payload;
+	private final PingTracker ping_tracker;
 	private final Duration routing_table_refresh;
+	private final Duration storage_compact_interval;
+	private final double storage_compact_ratio;
+	private final Duration storage_republish;
+	private final RequestWorkers request_workers;
 
 	// Temporary solution
 	private final KadID[] refresh_targets;
@@ -81,33 +122,142 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		channel_props.setProperty(TCPChannel.CONNECT_TIMEOUT_KEY, "1000"); // TCP connect timeout
 
 		var k = Integer.parseInt(props.getProperty("kad_k"));
+		var rt_type = props.getProperty("kad_rt_type", RoutingTable.TYPE_LIST);
+		var rt_relax = Integer.parseInt(props.getProperty("kad_rt_relax", "0"));
+		var rt_ping_timeout = Duration.parse(props.getProperty("kad_rt_ping_timeout", "PT5S"));
 		var alpha = Integer.parseInt(props.getProperty("kad_alpha"));
 		var routing_table_refresh = Duration.parse(props.getProperty("kad_rt_refresh"));
 		var query_request_timeout = Duration.parse(props.getProperty("kad_query_request_timeout"));
 		var query_cache_ttl = Duration.parse(props.getProperty("kad_query_cache_ttl"));
+		var query_batch_window = Duration.parse(props.getProperty("kad_query_batch_window", "PT0S"));
+		var query_batch_max = Integer.parseInt(props.getProperty("kad_query_batch_max", "32"));
+		var query_paths = Integer.parseInt(props.getProperty("kad_query_paths", "3"));
+		var query_disjoint = QueryType.parseList(props.getProperty("kad_query_disjoint", ""));
+		var query_alpha_max = Integer.parseInt(props.getProperty("kad_query_alpha_max", String.valueOf(alpha)));
+		var query_rtt_window = Integer.parseInt(props.getProperty("kad_query_rtt_window", "1"));
+		var query_rto_min = Duration.parse(props.getProperty("kad_query_rto_min", "PT1S"));
+		var timer_tick = Duration.parse(props.getProperty("kad_timer_tick", "PT0.1S"));
 		var swarmttl = Duration.parse(props.getProperty("kad_swarm_ttl"));
+		var swarm_sample = Integer.parseInt(props.getProperty("kad_swarm_sample", "20"));
+		var swarm_max = Integer.parseInt(props.getProperty("kad_swarm_max", "65536"));
+		var swarm_max_members = Integer.parseInt(props.getProperty("kad_swarm_max_members", "10000"));
 		var pubsub_msg_timeout = Duration.parse(props.getProperty("kad_pubsub_msg_timeout"));
 		var pubsub_k = Integer.parseInt(props.getProperty("kad_pubsub_k"));
 		var pubsub_rfac = Integer.parseInt(props.getProperty("kad_pubsub_rfac"));
 		var pubsub_have_ttl = Duration.parse(props.getProperty("kad_pubsub_have_ttl"));
-		var params = new KadParams(k, alpha, query_request_timeout, swarmttl, pubsub_msg_timeout, pubsub_k,
-				pubsub_rfac);
+		var pubsub_have_window = Duration.parse(props.getProperty("kad_pubsub_have_window", "PT0.01S"));
+		var pubsub_have_max = Integer.parseInt(props.getProperty("kad_pubsub_have_max", "64"));
+		var pubsub_coded_topics = props.getProperty("kad_pubsub_coded_topics", "");
+		var pubsub_coded_data = Integer.parseInt(props.getProperty("kad_pubsub_coded_data", "8"));
+		var pubsub_coded_parity = Integer.parseInt(props.getProperty("kad_pubsub_coded_parity", "4"));
+		var pubsub_coded_min_payload = Integer.parseInt(props.getProperty("kad_pubsub_coded_min_payload", "4096"));
+		var pubsub_coded_branches = Integer.parseInt(props.getProperty("kad_pubsub_coded_branches", "4"));
+		var pubsub_coded_max_pending = Integer.parseInt(props.getProperty("kad_pubsub_coded_max_pending", "1024"));
+		var pubsub_coded_max_pending_bytes = Long
+				.parseLong(props.getProperty("kad_pubsub_coded_max_pending_bytes", "67108864"));
+		var pubsub_pull_policy = props.getProperty("kad_pubsub_pull_policy", PullScheduler.POLICY_BALANCED);
+		var pubsub_want_window = Duration.parse(props.getProperty("kad_pubsub_want_window", "PT0S"));
+		var pubsub_want_max = Integer.parseInt(props.getProperty("kad_pubsub_want_max", "64"));
+		var pubsub_cache_ttl = Duration.parse(props.getProperty("kad_pubsub_cache_ttl", "PT10M"));
+		var pubsub_cache_max_messages = Integer.parseInt(props.getProperty("kad_pubsub_cache_max_messages", "10000"));
+		var pubsub_cache_max_bytes = Long.parseLong(props.getProperty("kad_pubsub_cache_max_bytes", "67108864"));
+		var pubsub_seen_ttl = Duration.parse(props.getProperty("kad_pubsub_seen_ttl", "PT1H"));
+		var pubsub_seen_max = Integer.parseInt(props.getProperty("kad_pubsub_seen_max", "1000000"));
+		var pubsub_seen_filter = props.getProperty("kad_pubsub_seen_filter", SeenFilter.TYPE_BLOOM);
+		var pubsub_seen_fpp = Double.parseDouble(props.getProperty("kad_pubsub_seen_fpp", "0.000001"));
+		var storage_dir = props.getProperty("kad_storage_dir", "");
+		var storage_segment_size = Integer.parseInt(props.getProperty("kad_storage_segment_size", "67108864"));
+		var storage_max_keys = Integer.parseInt(props.getProperty("kad_storage_max_keys", "4194304"));
+		var storage_ttl = Duration.parse(props.getProperty("kad_storage_ttl", "PT24H"));
+		var storage_compact_interval = Duration.parse(props.getProperty("kad_storage_compact_interval", "PT1M"));
+		var storage_compact_ratio = Double.parseDouble(props.getProperty("kad_storage_compact_ratio", "0.5"));
+		var storage_republish = Duration.parse(props.getProperty("kad_storage_republish", "PT1H"));
+		var request_threads = Integer.parseInt(props.getProperty("kad_request_threads", "0"));
+		var params = new KadParams(k, rt_type, rt_relax, rt_ping_timeout, alpha, query_request_timeout,
+				query_batch_window, query_batch_max, query_paths, query_disjoint, query_alpha_max, query_rtt_window,
+				swarmttl, pubsub_msg_timeout, pubsub_k, pubsub_rfac);
 
 		this.channel_id = createChannel(TCPChannel.NAME, channel_props); // Create the channel with the given properties
 		this.self = new KadPeer(KadID.random(), self);
 		this.rts = new RoutingTables(params, this.self.id);
-		this.storage = new KadStorage();
+		// the default directory is per node, so a restarted node reloads its values instead of leaving them behind
+		var storage_path = storage_dir.isEmpty()
+				? Path.of(System.getProperty("java.io.tmpdir"),
+						"kad-storage-" + self.getAddress().getHostAddress() + "-" + self.getPort())
+				: Path.of(storage_dir);
+		this.storage = new KadStorage(storage_path, storage_segment_size, storage_max_keys, storage_ttl);
+		this.storage_compact_interval = storage_compact_interval;
+		this.storage_compact_ratio = storage_compact_ratio;
+		this.storage_republish = storage_republish;
+		this.request_workers = new RequestWorkers(request_threads);
 		this.addrbook = new KadAddrBook();
-		this.swarm_tracker = new SwarmTracker(params);
+		this.sampler = Sampler.create(props, self);
+		this.wheel = new TimerWheel(timer_tick, TIMER_WHEEL_SLOTS);
+		this.rtt = new RttEstimator(this.addrbook, query_rto_min, query_request_timeout);
+		this.swarm_tracker = new SwarmTracker(swarmttl, swarm_sample, swarm_max, swarm_max_members,
+				this.sampler.split());
 		this.params = params;
-		this.pool_tracker = new SwarmTracker(params);
+		this.pool_tracker = new SwarmTracker(swarmttl, swarm_sample, swarm_max, swarm_max_members,
+				this.sampler.split());
 		this.conn_flags = new ConnectionFlags();
 		this.query_manager = new CachedQueryManager(
-				new BasicQueryManager(params, this.rts, this.self.id, this),
+				new BasicQueryManager(params, this.rts, this.rtt, this.wheel, this.self.id, this),
 				query_cache_ttl);
-		this.msg_cache = new MessageCache();
-		this.msg_tracker = new RequestTracker();
-		this.have_tracker = new HaveTracker(pubsub_have_ttl);
+		this.msg_cache = new MessageCache(pubsub_cache_ttl, pubsub_cache_max_messages, pubsub_cache_max_bytes,
+				SeenFilter.create(pubsub_seen_filter, pubsub_seen_max, pubsub_seen_fpp, pubsub_seen_ttl));
+		this.msg_tracker = new RequestTracker(this.wheel, pubsub_msg_timeout);
+		this.pull_scheduler = new PullScheduler(this.msg_tracker,
+				PullScheduler.policy(pubsub_pull_policy, this.rtt::expected),
+				peer -> {
+					var rto = this.rtt.rto(peer);
+					return rto.compareTo(pubsub_msg_timeout) < 0 ? rto : pubsub_msg_timeout;
+				}, pubsub_want_window, pubsub_want_max, new PullScheduler.IO() {
+					@Override
+					public void sendWant(KadID peer, KadID rtid, List<UUID> uuids) {
+						Kademlia.this.sendWant(peer, rtid, uuids);
+					}
+
+					@Override
+					public void scheduleFlush(Duration delay) {
+						Kademlia.this.setupTimer(new FlushWantsTimer(), delay.toMillis());
+					}
+				});
+		this.have_tracker = new HaveTracker(this.wheel, pubsub_have_ttl);
+		this.addrbook.onRemove(this.have_tracker::removePeer);
+		this.have_batcher = new HaveBatcher(pubsub_have_window, pubsub_have_max, new HaveBatcher.IO() {
+			@Override
+			public void send(MetricsProtoMessage msg, Host host) {
+				Kademlia.this.kadSendMessage(msg, host);
+			}
+
+			@Override
+			public void scheduleFlush(Duration delay) {
+				Kademlia.this.setupTimer(new FlushHavesTimer(), delay.toMillis());
+			}
+		});
+		this.chunk_assembler = new ChunkAssembler(pubsub_coded_max_pending, pubsub_coded_max_pending_bytes);
+		this.broadcast_plans = new HashMap<>();
+		if (pubsub_coded_topics.trim().equals("*")) {
+			this.coded_topics = null;
+		} else {
+			this.coded_topics = new HashSet<>();
+			for (var topic : pubsub_coded_topics.split(","))
+				if (!topic.isBlank())
+					this.coded_topics.add(KadID.ofData(topic.trim()));
+		}
+		// Fail on start instead of on the first coded broadcast
+		this.chunk_assembler.code(pubsub_coded_data, pubsub_coded_parity);
+		if (!pubsub_coded_topics.isBlank()
+				&& !ChunkAssembler.survivesBranchLoss(pubsub_coded_data, pubsub_coded_parity, pubsub_coded_branches)) {
+			throw new IllegalArgumentException("Coded topics need kad_pubsub_coded_parity of at least "
+					+ "ceil((kad_pubsub_coded_data + kad_pubsub_coded_parity) / kad_pubsub_coded_branches), so that "
+					+ "losing one branch of the broadcast tree still leaves enough chunks");
+		}
+		this.coded_data_chunks = pubsub_coded_data;
+		this.coded_parity_chunks = pubsub_coded_parity;
+		this.coded_branches = pubsub_coded_branches;
+		this.coded_min_payload = pubsub_coded_min_payload;
+		this.ping_tracker = new PingTracker(this.wheel, rt_ping_timeout);
 		this.routing_table_refresh = routing_table_refresh;
 
 		this.refresh_targets = new KadID[KadID.ID_LENGTH];
@@ -118,8 +268,12 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 
 		/*---------------------- Register Message Serializers ---------------------- */
 		this.registerMessageSerializer(this.channel_id, BroadcastHave.ID, BroadcastHave.serializer);
+		this.registerMessageSerializer(this.channel_id, BroadcastHaveBatch.ID, BroadcastHaveBatch.serializer);
+		this.registerMessageSerializer(this.channel_id, BroadcastChunk.ID, BroadcastChunk.serializer);
 		this.registerMessageSerializer(this.channel_id, BroadcastMessage.ID, BroadcastMessage.serializer);
 		this.registerMessageSerializer(this.channel_id, BroadcastWant.ID, BroadcastWant.serializer);
+		this.registerMessageSerializer(this.channel_id, FindNodeBatchRequest.ID, FindNodeBatchRequest.serializer);
+		this.registerMessageSerializer(this.channel_id, FindNodeBatchResponse.ID, FindNodeBatchResponse.serializer);
 		this.registerMessageSerializer(this.channel_id, FindNodeRequest.ID, FindNodeRequest.serializer);
 		this.registerMessageSerializer(this.channel_id, FindNodeResponse.ID, FindNodeResponse.serializer);
 		this.registerMessageSerializer(this.channel_id, FindPoolRequest.ID, FindPoolRequest.serializer);
@@ -131,12 +285,18 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		this.registerMessageSerializer(this.channel_id, Handshake.ID, Handshake.serializer);
 		this.registerMessageSerializer(this.channel_id, JoinSwarmRequest.ID, JoinSwarmRequest.serializer);
 		this.registerMessageSerializer(this.channel_id, JoinPoolRequest.ID, JoinPoolRequest.serializer);
+		this.registerMessageSerializer(this.channel_id, Ping.ID, Ping.serializer);
+		this.registerMessageSerializer(this.channel_id, Pong.ID, Pong.serializer);
 		this.registerMessageSerializer(this.channel_id, StoreRequest.ID, StoreRequest.serializer);
 
 		/*---------------------- Register Message Handlers -------------------------- */
 		this.registerMessageHandler(this.channel_id, BroadcastHave.ID, this::onBroadcastHave);
+		this.registerMessageHandler(this.channel_id, BroadcastHaveBatch.ID, this::onBroadcastHaveBatch);
+		this.registerMessageHandler(this.channel_id, BroadcastChunk.ID, this::onBroadcastChunk);
 		this.registerMessageHandler(this.channel_id, BroadcastMessage.ID, this::onBroadcastMessage);
 		this.registerMessageHandler(this.channel_id, BroadcastWant.ID, this::onBroadcastWant);
+		this.registerMessageHandler(this.channel_id, FindNodeBatchRequest.ID, this::onFindNodeBatchRequest);
+		this.registerMessageHandler(this.channel_id, FindNodeBatchResponse.ID, this::onFindNodeBatchResponse);
 		this.registerMessageHandler(this.channel_id, FindNodeRequest.ID, this::onFindNodeRequest);
 		this.registerMessageHandler(this.channel_id, FindNodeResponse.ID, this::onFindNodeResponse);
 		this.registerMessageHandler(this.channel_id, FindPoolRequest.ID, this::onFindPoolRequest);
@@ -148,6 +308,8 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		this.registerMessageHandler(this.channel_id, Handshake.ID, this::onHandshake);
 		this.registerMessageHandler(this.channel_id, JoinPoolRequest.ID, this::onJoinPoolRequest);
 		this.registerMessageHandler(this.channel_id, JoinSwarmRequest.ID, this::onJoinSwarmRequest);
+		this.registerMessageHandler(this.channel_id, Ping.ID, this::onPing);
+		this.registerMessageHandler(this.channel_id, Pong.ID, this::onPong);
 		this.registerMessageHandler(this.channel_id, StoreRequest.ID, this::onStoreRequest);
 
 		/*--------------------- Register Request Handlers ----------------------------- */
@@ -169,9 +331,13 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		this.registerChannelEventHandler(this.channel_id, ChannelMetrics.EVENT_ID, this::onChannelMetrics);
 
 		/*-------------------- Register Timer Events ------------------------------- */
-		this.registerTimerHandler(CheckMessageTimeoutsTimer.ID, this::onCheckMessageTimeouts);
+		this.registerTimerHandler(FlushWantsTimer.ID, this::onFlushWants);
+		this.registerTimerHandler(FlushHavesTimer.ID, this::onFlushHaves);
 		this.registerTimerHandler(CheckQueryTimeoutsTimer.ID, this::onCheckQueryTimeouts);
+		this.registerTimerHandler(CompactStorageTimer.ID, this::onCompactStorage);
+		this.registerTimerHandler(FlushQueryBatchesTimer.ID, this::onFlushQueryBatches);
 		this.registerTimerHandler(RefreshRoutingTable.ID, this::onRefreshRoutingTable);
+		this.registerTimerHandler(RepublishStorageTimer.ID, this::onRepublishStorage);
 		this.registerTimerHandler(MetricDebugTimer.ID, this::onMetricDebug);
 	}
 
@@ -186,8 +352,13 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 			this.kadConnect(bootstrap_host);
 		}
 
-		this.setupPeriodicTimer(new CheckQueryTimeoutsTimer(), 1000, 1000);
+		var tick = this.wheel.tick().toMillis();
+		this.setupPeriodicTimer(new CheckQueryTimeoutsTimer(), tick, tick);
 		this.setupTimer(new RefreshRoutingTable(), (5 + (long) (Math.random() * 30)) * 1000);
+		var compact_interval = this.storage_compact_interval.toMillis();
+		this.setupPeriodicTimer(new CompactStorageTimer(), compact_interval, compact_interval);
+		var republish = this.storage_republish.toMillis();
+		this.setupPeriodicTimer(new RepublishStorageTimer(), republish, republish);
 		this.setupPeriodicTimer(new MetricDebugTimer(), 0, 2 * 1000);
 	}
 
@@ -233,7 +404,7 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		if (peer.host.getPort() == 5000) {
 			System.out.println("Peer connected: " + peer);
 		}
-		if (this.rts.main().add(peer)) {
+		if (this.rtAdd(this.rts.main(), peer)) {
 			System.out.println("Added peer to routing table: " + peer);
 			logger.debug("Added " + peer + " to our routing table");
 		}
@@ -244,7 +415,7 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 	// Call when a peer has closed a connection to us
 	private void onPeerDisconnect(KadPeer peer) {
 		logger.debug("Connection to " + peer + " is down");
-		this.rts.remove(peer.id);
+		this.rts.removePeer(peer.id).forEach(p -> Metrics.routingTableReplacement(p.host));
 		this.triggerNotification(new NeighbourDown(peer.host));
 	}
 
@@ -257,6 +428,61 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 			throw new IllegalStateException("Received message from " + from + " but connection is not established: "
 					+ msg.getClass().getName());
 		}
+
+		// Any message is proof that the peer is alive
+		var handle = this.addrbook.handle(from);
+		if (handle != KadAddrBook.NONE) {
+			this.addrbook.seen(handle);
+		}
+	}
+
+	/**
+	 * Adds a peer to a routing table. If the peer's bucket is full the peer is kept as a replacement and the least
+	 * recently seen peer of the bucket, by the address book, is challenged:
+	 * <ul>
+	 * <li>if it failed since we last heard from it, it is evicted and the new peer takes its place.
+	 * <li>if we heard from it within `kad_rt_ping_timeout`, it is alive and stays.
+	 * <li>otherwise it is pinged and gets evicted if it does not answer within `kad_rt_ping_timeout`.
+	 * </ul>
+	 */
+	private boolean rtAdd(RoutingTable rt, KadPeer peer) {
+		if (rt.add(peer)) {
+			return true;
+		}
+		if (rt.contains(peer.id)) {
+			return false;
+		}
+		var stalest = rt.stalest(peer.id, this::lastSeen);
+		if (stalest == null || this.ping_tracker.isPending(stalest.id)) {
+			return false;
+		}
+		var handle = this.addrbook.handle(stalest.id);
+		if (handle != KadAddrBook.NONE && this.addrbook.failures(handle) > 0) {
+			logger.debug("Peer " + stalest.id + " failed since it was last seen, evicting");
+			// The new peer is the most recent replacement, it takes the freed slot
+			this.evict(stalest.id);
+			return rt.contains(peer.id);
+		}
+		var since_seen = handle == KadAddrBook.NONE ? null : this.addrbook.sinceSeen(handle);
+		if (since_seen == null || since_seen.compareTo(this.params.rt_ping_timeout) >= 0) {
+			var nonce = this.ping_tracker.begin(stalest.id);
+			this.kadSendMessage(new Ping(nonce), stalest.host);
+		}
+		return false;
+	}
+
+	private long lastSeen(KadPeer peer) {
+		var handle = this.addrbook.handle(peer.id);
+		return handle == KadAddrBook.NONE ? Long.MIN_VALUE : this.addrbook.lastSeen(handle);
+	}
+
+	// Removes a peer from every routing table, the replacements that take its place are reported
+	private void evict(KadID peer_id) {
+		var host = this.addrbook.getHostFromID(peer_id);
+		if (host != null) {
+			Metrics.routingTableEviction(host);
+		}
+		this.rts.removePeer(peer_id).forEach(p -> Metrics.routingTableReplacement(p.host));
 	}
 
 	private void loggedSendMessage(MetricsProtoMessage msg, Host destination) {
@@ -264,6 +490,30 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		this.sendMessage(msg, destination);
 	}
 
+	/**
+	 * The table to answer a request from. Requests answered inline use the table itself, otherwise the answer is built
+	 * on a request worker and reads an immutable snapshot of the table.
+	 *
+	 * @return The table or its snapshot, null if there is no such table
+	 */
+	private ClosestPeers requestView(KadID rtid) {
+		if (this.request_workers.isInline()) {
+			return this.rts.get(rtid);
+		}
+		return this.rts.snapshot(rtid);
+	}
+
+	/**
+	 * Builds and sends the answer to a request on the request workers. The connection is opened here since it changes
+	 * the connection state, `reply` must only read state that is safe to read from other threads.
+	 */
+	private void requestReply(Host to, Supplier<MetricsProtoMessage> reply) {
+		if (!this.conn_flags.test(to, ConnectionFlags.IS_ATTEMPTING_CONNECT | ConnectionFlags.SENT_HANDSHAKE)) {
+			this.kadConnect(to);
+		}
+		this.request_workers.execute(to, () -> this.loggedSendMessage(reply.get(), to));
+	}
+
 	/*--------------------------------- Broadcast ---------------------------------------- */
 
 	private void broadcastMessage(Message message) {
@@ -285,6 +535,10 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		// result.closest.stream().map(this.addrbook::getPeerFromID).filter(Objects::nonNull).forEach(rt::add);
 		// this.broadcastMessageAsSubscriberInner(message, ceil, apply_redundancy);
 		// });
+		if (ceil == 0 && this.broadcastIsCoded(message)) {
+			this.broadcastCoded(message);
+			return;
+		}
 		this.broadcastMessageAsSubscriberInner(message, ceil, apply_redundancy);
 	}
 
@@ -294,49 +548,126 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		// Only broadcast the full message if ceil == 0, that means we are the source of
 		// the message and no one else has broadcasted it yet.
 		var broadcast_full = ceil == 0;
-		var highest_cpl = this.broadcastFindRtHighestCpl(rt);
-
-		for (int current_cpl = ceil; current_cpl <= highest_cpl; current_cpl++) {
-			var peer_count = (current_cpl == highest_cpl || current_cpl >= rt.buckets() - 1)
-					? Integer.MAX_VALUE
-					: redundancy;
-			var peer_stream = this.broadcastFindPeersWithCpl(rt, current_cpl, peer_count);
-			var peer_iterator = peer_stream.iterator();
-			var bmessage = this.broadcastBuildMessage(message, current_cpl + 1, broadcast_full);
-			var sent_message = false;
-
-			while (peer_iterator.hasNext()) {
-				var peer = peer_iterator.next();
-				if (!this.have_tracker.contains(message.uuid, peer.id)) {
-					this.have_tracker.add(message.uuid, peer.id);
-					this.kadSendMessage(bmessage, peer.host);
-				}
-				sent_message = true;
+		var plan = this.broadcastPlan(message.rtid, rt);
+
+		for (int current_cpl = ceil; current_cpl <= plan.highestCpl(); current_cpl++)
+			this.broadcastLevel(message, rt, plan, current_cpl, redundancy, broadcast_full);
+	}
+
+	private void broadcastLevel(Message message, RoutingTable rt, BroadcastPlan plan, int cpl, int redundancy,
+	                            boolean broadcast_full) {
+		var peers = plan.peers(cpl);
+		var peer_count = plan.count(cpl, redundancy);
+		var bmessage = this.broadcastBuildMessage(message, cpl + 1, broadcast_full);
+
+		for (int i = 0; i < peer_count; ++i) {
+			var peer = peers[i];
+			var handle = this.addrbook.add(peer);
+			if (!this.have_tracker.contains(message.uuid, handle)) {
+				this.have_tracker.add(message.uuid, handle);
+				this.broadcastSend(bmessage, peer.host);
 			}
+		}
 
-			if (!sent_message) {
-				var query_cpl = current_cpl;
-				// Request the same target so that we can take advantage of the cached queries.
-				// Temporary solution.
-				var query_target = this.refresh_targets[query_cpl];
-				this.query_manager.findClosest(message.rtid, query_target, result -> {
-					result.closest.stream().map(this.addrbook::getPeerFromID).filter(Objects::nonNull).forEach(rt::add);
-					this.broadcastFindPeersWithCpl(rt, query_cpl, redundancy).forEach(peer -> {
-						if (!this.have_tracker.contains(message.uuid, peer.id)) {
-							this.have_tracker.add(message.uuid, peer.id);
-							this.kadSendMessage(bmessage, peer.host);
-						}
-					});
+		if (peer_count == 0) {
+			// Request the same target so that we can take advantage of the cached queries.
+			// Temporary solution.
+			var query_target = this.refresh_targets[cpl];
+			this.query_manager.findClosest(message.rtid, query_target, result -> {
+				result.closest.stream().map(this.addrbook::getPeerFromID).filter(Objects::nonNull)
+						.forEach(p -> this.rtAdd(rt, p));
+				this.broadcastFindPeersWithCpl(rt, cpl, redundancy).forEach(peer -> {
+					var handle = this.addrbook.add(peer);
+					if (!this.have_tracker.contains(message.uuid, handle)) {
+						this.have_tracker.add(message.uuid, handle);
+						this.broadcastSend(bmessage, peer.host);
+					}
 				});
+			});
+		}
+	}
+
+	private boolean broadcastIsCoded(Message message) {
+		return message.payload.length >= this.coded_min_payload
+				&& (this.coded_topics == null || this.coded_topics.contains(message.rtid));
+	}
+
+	/**
+	 * Replaces the `pubsub_rfac` whole copies sent to each level with the coded chunks of the payload, spread over up
+	 * to `coded_branches` peers of the level by their index. A level gets `(data + parity) / data` payloads instead of
+	 * `pubsub_rfac`, and the parity chunks cover the ones lost with any one of its peers, see
+	 * {@link ChunkAssembler#survivesBranchLoss(int, int, int)}. Levels that are sent to in full, or that have too few
+	 * peers to survive losing one, get whole copies.
+	 */
+	private void broadcastCoded(Message message) {
+		var rt = this.rts.get(message.rtid);
+		var plan = this.broadcastPlan(message.rtid, rt);
+		var code = this.chunk_assembler.code(this.coded_data_chunks, this.coded_parity_chunks);
+		var chunks = code.encode(message.payload);
+
+		for (int current_cpl = 0; current_cpl <= plan.highestCpl(); current_cpl++) {
+			var peers = plan.peers(current_cpl);
+			var peer_count = plan.count(current_cpl, this.coded_branches);
+			if (plan.isFull(current_cpl) || peer_count == 0
+					|| !ChunkAssembler.survivesBranchLoss(code.dataChunks(), code.parityChunks(), peer_count)) {
+				this.broadcastLevel(message, rt, plan, current_cpl, this.params.pubsub_rfac, true);
+				continue;
+			}
+			for (int i = 0; i < chunks.length; ++i) {
+				var chunk = new BroadcastChunk(message.rtid, message.uuid, message.origin, message.hop_count,
+						current_cpl + 1, message.payload.length, code.dataChunks(), code.parityChunks(), i, chunks[i]);
+				this.kadSendMessage(chunk, peers[i % peer_count].host);
 			}
 		}
+	}
+
+	/**
+	 * Sends a chunk to the levels from its `ceil` down like a full message without redundancy, except that the peer
+	 * picked at each level depends on the chunk index so the chunks of a message spread over up to `coded_branches`
+	 * peers per level. Only relays that could not rebuild the payload yet forward chunks.
+	 */
+	private void broadcastChunk(BroadcastChunk chunk) {
+		var rt = this.rts.get(chunk.rtid);
+		var plan = this.broadcastPlan(chunk.rtid, rt);
+
+		for (int current_cpl = chunk.ceil; current_cpl <= plan.highestCpl(); current_cpl++) {
+			var peers = plan.peers(current_cpl);
+			var peer_count = plan.count(current_cpl, this.coded_branches);
+			var bchunk = new BroadcastChunk(chunk.rtid, chunk.uuid, chunk.origin, chunk.hop_count, current_cpl + 1,
+					chunk.length, chunk.data_chunks, chunk.parity_chunks, chunk.index, chunk.chunk);
+
+			if (peer_count != 0) {
+				this.broadcastSendChunk(bchunk, peers, peer_count, plan.isFull(current_cpl));
+				continue;
+			}
 
+			var query_cpl = current_cpl;
+			var query_target = this.refresh_targets[query_cpl];
+			this.query_manager.findClosest(chunk.rtid, query_target, result -> {
+				result.closest.stream().map(this.addrbook::getPeerFromID).filter(Objects::nonNull)
+						.forEach(p -> this.rtAdd(rt, p));
+				var found = this.broadcastFindPeersWithCpl(rt, query_cpl, this.coded_branches)
+						.toArray(KadPeer[]::new);
+				if (found.length != 0) {
+					this.broadcastSendChunk(bchunk, found, found.length, false);
+				}
+			});
+		}
+	}
+
+	private void broadcastSendChunk(BroadcastChunk chunk, KadPeer[] peers, int count, boolean all) {
+		if (all) {
+			for (int i = 0; i < count; ++i)
+				this.kadSendMessage(chunk, peers[i].host);
+		} else {
+			this.kadSendMessage(chunk, peers[chunk.index % count].host);
+		}
 	}
 
 	private void broadcastMessageAsNonSubscriber(Message message) {
 		var redundancy = this.params.pubsub_rfac;
 		this.query_manager.findPool(message.rtid, result -> {
-			var targets = ASDUtils.sample(redundancy, Set.copyOf(result.members));
+			var targets = this.sampler.sample(result.members, redundancy);
 			var bmessage = new BroadcastMessage(message.rtid, message.uuid, message.origin, message.hop_count, 0, true,
 					message.payload);
 			for (var target : targets)
@@ -344,6 +675,15 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		});
 	}
 
+	private void sendWant(KadID peer, KadID rtid, List<UUID> uuids) {
+		var host = this.addrbook.getHostFromID(peer);
+		if (host == null) {
+			logger.warn("Could not find host for peer " + peer + " while sending BroadcastWant");
+			return;
+		}
+		this.kadSendMessage(new BroadcastWant(rtid, uuids), host);
+	}
+
 	private MetricsProtoMessage broadcastBuildMessage(Message message, int ceil, boolean broadcast_full) {
 		if (broadcast_full) {
 			return new BroadcastMessage(message.rtid, message.uuid, message.origin, message.hop_count, ceil, false,
@@ -353,24 +693,33 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		}
 	}
 
-	private int broadcastFindRtHighestCpl(RoutingTable rt) {
-		for (int i = rt.buckets() - 1; i >= 0; i--) {
-			var bucket = rt.bucket(i);
-			if (bucket.isEmpty()) {
-				continue;
-			}
-			return bucket.stream().map(p -> p.id.cpl(this.self.id)).max(Integer::compare).orElse(0);
+	private void broadcastSend(MetricsProtoMessage bmessage, Host host) {
+		if (bmessage instanceof BroadcastHave have) {
+			this.have_batcher.add(host, have.rtid, have.uuid);
+		} else {
+			this.kadSendMessage(bmessage, host);
+		}
+	}
+
+	/**
+	 * @return The broadcast plan of the topic, rebuilt if its routing table changed since it was last used
+	 */
+	private BroadcastPlan broadcastPlan(KadID rtid, RoutingTable rt) {
+		var plan = this.broadcast_plans.get(rtid);
+		// Plans keep enough peers per level to spread the chunks of coded messages over
+		var redundancy = Math.max(this.params.pubsub_rfac, this.coded_branches);
+		if (plan == null || !plan.isValidFor(rt, redundancy)) {
+			plan = BroadcastPlan.build(rt, this.self.id, redundancy);
+			this.broadcast_plans.put(rtid, plan);
 		}
-		return 0;
+		return plan;
 	}
 
 	private Stream<KadPeer> broadcastFindPeersWithCpl(RoutingTable rt, int cpl, int count) {
 		if (cpl >= rt.buckets()) {
-			var bucket = rt.lastBucket();
-			return bucket.stream().filter(p -> p.id.cpl(this.self.id) == cpl).limit(count);
+			return rt.bucketStream(cpl).filter(p -> p.id.cpl(this.self.id) == cpl).limit(count);
 		} else {
-			var bucket = rt.bucket(cpl);
-			return bucket.stream().limit(count);
+			return rt.bucketStream(cpl).limit(count);
 		}
 	}
 
@@ -380,27 +729,70 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 
 		try (var __ = Profiling.span("onBroadcastHave")) {
 			this.ensureConnectionInEstablished(msg, from, source_proto, channel_id);
+			this.handleHave(msg.rtid, msg.uuid, this.addrbook.handle(from));
+		}
+	}
+
+	private void onBroadcastHaveBatch(BroadcastHaveBatch msg, Host from, short source_proto, int channel_id) {
+		Metrics.messageReceived(from, msg);
+
+		try (var __ = Profiling.span("onBroadcastHaveBatch")) {
+			this.ensureConnectionInEstablished(msg, from, source_proto, channel_id);
+			var handle = this.addrbook.handle(from);
+			for (var have : msg.haves)
+				this.handleHave(have.rtid(), have.uuid(), handle);
+		}
+	}
+
+	private void handleHave(KadID rtid, UUID uuid, int handle) {
+		if (!this.rts.contains(rtid)) {
+			return;
+		}
+
+		this.have_tracker.add(uuid, handle);
+		if (this.msg_cache.seen(uuid)) {
+			return;
+		}
+
+		this.pull_scheduler.have(rtid, uuid, this.addrbook.peer(handle).id);
+	}
+
+	private void onBroadcastChunk(BroadcastChunk msg, Host from, short source_proto, int channel_id) {
+		Metrics.messageReceived(from, msg);
+
+		try (var __ = Profiling.span("onBroadcastChunk")) {
+			this.ensureConnectionInEstablished(msg, from, source_proto, channel_id);
 
 			if (!this.rts.contains(msg.rtid)) {
 				return;
 			}
-
-			var peer = this.addrbook.getPeerFromHost(from);
-			this.have_tracker.add(msg.uuid, peer.id);
-
-			if (this.msg_cache.contains(msg.uuid)) {
+			// We already announced the message below with Haves
+			if (this.msg_cache.seen(msg.uuid)) {
 				return;
 			}
-
-			if (!this.msg_tracker.isTracking(msg.uuid)) {
-				this.msg_tracker.startTracking(msg.rtid, msg.uuid);
+			if (!this.chunk_assembler.add(msg.uuid, msg.length, msg.data_chunks, msg.parity_chunks, msg.index,
+					msg.chunk)) {
+				return;
 			}
 
-			this.msg_tracker.addProvider(msg.uuid, peer.id);
-			if (!this.msg_tracker.isRequesting(msg.uuid)) {
-				this.msg_tracker.beginRequest(msg.uuid, peer.id);
-				this.kadSendMessage(new BroadcastWant(msg.rtid, msg.uuid), from);
+			var payload = this.chunk_assembler.decode(msg.uuid);
+			if (payload == null) {
+				// Until we can rebuild the payload every new chunk goes on down, the peers below need it too
+				this.broadcastChunk(new BroadcastChunk(msg.rtid, msg.uuid, msg.origin, msg.hop_count + 1, msg.ceil,
+						msg.length, msg.data_chunks, msg.parity_chunks, msg.index, msg.chunk));
+				return;
 			}
+
+			this.pull_scheduler.received(msg.uuid);
+			var message = new Message(msg.rtid, msg.uuid, msg.origin, payload, msg.hop_count + 1);
+			this.msg_cache.add(message);
+
+			this.triggerNotification(
+					new BroadcastReceived(TopicRegistry.lookup(msg.rtid), msg.uuid, msg.origin, payload));
+			Metrics.pubMessageReceived(from, msg.uuid, TopicRegistry.lookup(msg.rtid), message.hop_count, true);
+
+			// Like a relay that got the whole message, the levels below are told with Haves instead of more chunks
+			this.broadcastMessageAsSubscriberInner(message, msg.ceil, false);
 		}
 	}
 
@@ -415,20 +807,24 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 				return;
 			}
 
-			this.have_tracker.add(msg.uuid, this.addrbook.getIdFromHost(from));
-			if (this.msg_cache.contains(msg.uuid)) {
+			var handle = this.addrbook.handle(from);
+			if (handle != KadAddrBook.NONE) {
+				this.have_tracker.add(msg.uuid, handle);
+			}
+			if (this.msg_cache.seen(msg.uuid)) {
 				Metrics.pubMessageReceived(from, msg.uuid, TopicRegistry.lookup(msg.rtid), msg.hop_count, false);
 				return;
 			}
 
 			var extra_hops = 1;
-			if (this.msg_tracker.isTracking(msg.uuid)) {
+			if (this.pull_scheduler.received(msg.uuid)) {
 				extra_hops = 3; // Add the hops from Have/Want messages
-				this.msg_tracker.endRequest(msg.uuid);
 			}
 
 			var message = new Message(msg.rtid, msg.uuid, msg.origin, msg.payload, msg.hop_count + extra_hops);
 			this.msg_cache.add(message);
+			// Chunks of a coded message collected before the whole payload came are not needed anymore
+			this.chunk_assembler.forget(msg.uuid);
 
 			this.triggerNotification(
 					new BroadcastReceived(TopicRegistry.lookup(msg.rtid), msg.uuid, msg.origin, msg.payload));
@@ -444,17 +840,71 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		try (var __ = Profiling.span("onBroadcastWant")) {
 			this.ensureConnectionInEstablished(msg, from, source_proto, channel_id);
 
-			var m = this.msg_cache.get(msg.uuid);
-			if (m == null) {
+			var rt = this.rts.get(msg.rtid);
+			if (rt == null) {
 				return;
 			}
-
-			var rt = this.rts.get(msg.rtid);
 			var peer_id = this.addrbook.getIdFromHost(from);
 			var peer_cpl = this.self.id.cpl(peer_id);
 			var ceil = Math.min(rt.buckets(), peer_cpl + 1);
-			var bmessage = new BroadcastMessage(m.rtid, m.uuid, m.origin, m.hop_count, ceil, false, m.payload);
-			this.kadSendMessage(bmessage, from);
+			for (var uuid : msg.uuids) {
+				var m = this.msg_cache.get(uuid);
+				if (m == null) {
+					continue;
+				}
+				var bmessage = new BroadcastMessage(m.rtid, m.uuid, m.origin, m.hop_count, ceil, false, m.payload);
+				this.kadSendMessage(bmessage, from);
+			}
+		}
+	}
+
+	private void onFindNodeBatchRequest(FindNodeBatchRequest msg, Host from, short source_proto, int channel_id) {
+		Metrics.messageReceived(from, msg);
+
+		try (var __ = Profiling.span("onFindNodeBatchRequest")) {
+			this.ensureConnectionInEstablished(msg, from, source_proto, channel_id);
+
+			var peer = this.addrbook.getPeerFromHost(from);
+			var ignore = peer == null ? null : peer.id;
+			var views = new ClosestPeers[msg.entries.size()];
+			for (int i = 0; i < views.length; ++i)
+				views[i] = this.requestView(msg.entries.get(i).rtid());
+			logger.debug("Received FindNodeBatchRequest from " + from + " with " + msg.entries.size() + " targets");
+			this.requestReply(from, () -> {
+				var entries = new ArrayList<FindNodeBatchResponse.Entry>(views.length);
+				for (int i = 0; i < views.length; ++i) {
+					var entry = msg.entries.get(i);
+					var closest = views[i] == null ? List.<KadPeer>of() : views[i].closest(entry.target(), ignore);
+					entries.add(new FindNodeBatchResponse.Entry(entry.context(), closest));
+				}
+				return new FindNodeBatchResponse(entries);
+			});
+
+			// The peers are added after the views are taken so they are not part of the answers
+			if (peer != null) {
+				var added = new HashSet<KadID>();
+				for (var entry : msg.entries) {
+					var rt = this.rts.get(entry.rtid());
+					if (rt != null && added.add(entry.rtid())) {
+						this.rtAdd(rt, peer);
+					}
+				}
+			}
+		}
+	}
+
+	private void onFindNodeBatchResponse(FindNodeBatchResponse msg, Host from, short source_proto, int channel_id) {
+		Metrics.messageReceived(from, msg);
+
+		try (var __ = Profiling.span("onFindNodeBatchResponse")) {
+			this.ensureConnectionInEstablished(msg, from, source_proto, channel_id);
+
+			var peer = this.addrbook.getPeerFromHost(from);
+			for (var entry : msg.entries) {
+				entry.peers().removeIf(p -> p.id.equals(this.self.id));
+				entry.peers().forEach(p -> this.addrbook.add(p));
+				this.query_manager.onFindNodeResponse(entry.context(), peer.id, entry.peers());
+			}
 		}
 	}
 
@@ -464,18 +914,23 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		try (var __ = Profiling.span("onFindNodeRequest")) {
 			this.ensureConnectionInEstablished(msg, from, source_proto, channel_id);
 
-			var rt = this.rts.get(msg.rtid);
-			var closest = rt == null ? List.<KadPeer>of() : rt.closest(msg.target, this.addrbook.getIdFromHost(from));
+			var view = this.requestView(msg.rtid);
+			var ignore = this.addrbook.getIdFromHost(from);
 			logger.debug(
 					"Received FindNodeRequest from " + from + " I am " + this.self.host + " with target " + msg.target
-							+ " and rtid " + msg.rtid + ". closest = " + closest);
+							+ " and rtid " + msg.rtid);
+			this.requestReply(from, () -> {
+				var closest = view == null ? List.<KadPeer>of() : view.closest(msg.target, ignore);
+				return new FindNodeResponse(msg.context, closest, msg.rtid);
+			});
+
+			var rt = this.rts.get(msg.rtid);
 			if (rt != null) {
 				var peer = this.addrbook.getPeerFromHost(from);
 				if (peer != null) {
-					rt.add(peer);
+					this.rtAdd(rt, peer);
 				}
 			}
-			this.kadSendMessage(new FindNodeResponse(msg.context, closest, msg.rtid), from);
 		}
 	}
 
@@ -501,9 +956,10 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 			logger.debug("Received FindPoolRequest from " + from + " I am " + this.self.host + " with pool " + msg.pool
 					+ " and context " + msg.context);
 
-			var closest = this.rts.closestWithIgnore(msg.pool, this.addrbook.getIdFromHost(from));
+			var view = this.requestView(KadID.DEFAULT_RTID);
+			var ignore = this.addrbook.getIdFromHost(from);
 			var members = this.addrbook.idsToPeers(this.pool_tracker.getSwarmSample(msg.pool));
-			this.kadSendMessage(new FindPoolResponse(msg.context, closest, members), from);
+			this.requestReply(from, () -> new FindPoolResponse(msg.context, view.closest(msg.pool, ignore), members));
 		}
 	}
 
@@ -531,13 +987,13 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		try (var __ = Profiling.span("onFindSwarmRequest")) {
 			this.ensureConnectionInEstablished(msg, from, source_proto, channel_id);
 
-			var closest = this.rts.closest(msg.swarm);
-			var members = this.swarm_tracker.getSwarmSample(msg.swarm);
-			this.kadSendMessage(new FindSwarmResponse(msg.context, closest, this.addrbook.idsToPeers(members)), from);
+			var view = this.requestView(KadID.DEFAULT_RTID);
+			var members = this.addrbook.idsToPeers(this.swarm_tracker.getSwarmSample(msg.swarm));
+			this.requestReply(from, () -> new FindSwarmResponse(msg.context, view.closest(msg.swarm, null), members));
 
 			logger.debug(
 					"Received FindSwarmRequest from " + from + " I am " + this.self.host + " with swarm " + msg.swarm +
-							" and sending " + members.size() + " members and " + closest.size() + " closest peers");
+							" and sending " + members.size() + " members");
 		}
 	}
 
@@ -564,10 +1020,12 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		try (var __ = Profiling.span("onFindValueRequest")) {
 			this.ensureConnectionInEstablished(msg, from, source_proto, channel_id);
 
-			var closest = this.rts.closest(msg.key);
-			var value = this.storage.get(msg.key);
-			var response = new FindValueResponse(msg.context, closest, value);
-			this.kadSendMessage(response, from);
+			var view = this.requestView(KadID.DEFAULT_RTID);
+			this.requestReply(from, () -> {
+				// The response references the mapped value, it is copied once when the response is serialized
+				var value = this.storage.view(msg.key).map(Unpooled::wrappedBuffer);
+				return new FindValueResponse(msg.context, view.closest(msg.key, null), value);
+			});
 		}
 	}
 
@@ -580,7 +1038,7 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 			msg.peers.forEach(p -> this.addrbook.add(p));
 
 			var peer = this.addrbook.getPeerFromHost(from);
-			this.query_manager.onFindValueResponse(msg.context, peer.id, msg.peers, msg.value);
+			this.query_manager.onFindValueResponse(msg.context, peer.id, msg.peers, msg.valueBytes());
 		}
 	}
 
@@ -623,6 +1081,30 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		}
 	}
 
+	private void onPing(Ping msg, Host from, short source_proto, int channel_id) {
+		Metrics.messageReceived(from, msg);
+
+		try (var __ = Profiling.span("onPing")) {
+			this.ensureConnectionInEstablished(msg, from, source_proto, channel_id);
+			this.kadSendMessage(new Pong(msg.nonce), from);
+		}
+	}
+
+	private void onPong(Pong msg, Host from, short source_proto, int channel_id) {
+		Metrics.messageReceived(from, msg);
+
+		try (var __ = Profiling.span("onPong")) {
+			this.ensureConnectionInEstablished(msg, from, source_proto, channel_id);
+
+			var peer_id = this.addrbook.getIdFromHost(from);
+			var rtt = this.ping_tracker.end(peer_id, msg.nonce);
+			if (rtt != null) {
+				this.rtt.sample(peer_id, rtt);
+				Metrics.pingRoundTrip(from, rtt.toNanos() / 1_000_000.0);
+			}
+		}
+	}
+
 	private void onStoreRequest(StoreRequest msg, Host from, short source_proto, int channel_id) {
 		Metrics.messageReceived(from, msg);
 
@@ -630,7 +1112,9 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 			this.ensureConnectionInEstablished(msg, from, source_proto, channel_id);
 			logger.debug("Received StoreRequest from " + from + " I am " + this.self.host + " with key " + msg.key);
 
-			this.storage.store(msg.key, msg.value);
+			if (!this.storage.store(msg.key, msg.value)) {
+				logger.warn("Could not store value of " + msg.value.length + " bytes for key " + msg.key);
+			}
 		}
 	}
 
@@ -697,7 +1181,7 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		var pool = this.rts.create(pool_id);
 		this.setupTimer(new RefreshRoutingTable(pool_id), 1000);
 		this.query_manager.findPool(pool_id, result -> {
-			this.addrbook.idsToPeers(result.members).forEach(pool::add);
+			this.addrbook.idsToPeers(result.members).forEach(p -> this.rtAdd(pool, p));
 			for (var peer : result.closest) {
 				var host = this.addrbook.getHostFromID(peer);
 				if (host == null) {
@@ -730,8 +1214,13 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 	}
 
 	private void onStoreValue(StoreValue msg, short source_proto) {
-		this.query_manager.findClosest(msg.key, result -> {
-			var request = new StoreRequest(msg.key, msg.value);
+		this.storeAtClosest(msg.key, msg.value);
+	}
+
+	// Sends a StoreRequest to the k closest peers to the key
+	private void storeAtClosest(KadID key, byte[] value) {
+		this.query_manager.findClosest(key, result -> {
+			var request = new StoreRequest(key, value);
 			for (var id : result.closest) {
 				var host = this.addrbook.getHostFromID(id);
 				if (host == null) {
@@ -755,6 +1244,10 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		assert channel_id == this.channel_id;
 		logger.warn("Failed to connect to " + event.getNode());
 		this.conn_flags.unset(event.getNode(), ConnectionFlags.IS_ATTEMPTING_CONNECT);
+		var peer_id = this.addrbook.getIdFromHost(event.getNode());
+		if (peer_id != null) {
+			this.rtt.failure(peer_id);
+		}
 	}
 
 	private void onOutConnectionUp(OutConnectionUp event, int channel_id) {
@@ -784,24 +1277,62 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 	}
 
 	/*--------------------------------- Timer Handlers ---------------------------------------- */
-	private void onCheckMessageTimeouts(CheckMessageTimeoutsTimer timer, long timer_id) {
-		var expired = this.msg_tracker.checkTimeouts();
-		for (var exp : expired) {
-			var provider = this.msg_tracker.getProvider(exp.uuid());
-			if (provider == null) {
-				this.msg_tracker.stopTracking(exp.uuid());
+	private void onFlushWants(FlushWantsTimer timer, long timer_id) {
+		this.pull_scheduler.flush();
+	}
+
+	private void onFlushHaves(FlushHavesTimer timer, long timer_id) {
+		this.have_batcher.flush();
+	}
+
+	private void onCheckQueryTimeouts(CheckQueryTimeoutsTimer timer, long timer_id) {
+		// Query request timeouts and Have record expiries run from the wheel, the other trackers collect what expired
+		this.wheel.advance();
+		// Wants that timed out are sent to the next provider, the slow provider gets a longer timeout next time
+		for (var exp : this.pull_scheduler.retry()) {
+			this.rtt.failure(exp.peer());
+		}
+
+		for (var peer_id : this.ping_tracker.checkTimeouts()) {
+			logger.debug("Peer " + peer_id + " did not answer ping, evicting");
+			this.rtt.failure(peer_id);
+			this.evict(peer_id);
+		}
+	}
+
+	private void onCompactStorage(CompactStorageTimer timer, long timer_id) {
+		try (var __ = Profiling.span("onCompactStorage")) {
+			var removed = this.storage.compact(this.storage_compact_ratio);
+			if (removed > 0) {
+				logger.debug("Compacted " + removed + " storage segments");
+			}
+			this.storage.flush();
+		} catch (IOException e) {
+			logger.error("Failed to compact storage", e);
+		}
+	}
+
+	// Stores the values we are still responsible for at the closest peers again, so they outlive the original store
+	private void onRepublishStorage(RepublishStorageTimer timer, long timer_id) {
+		for (var key : this.storage.due(this.storage_republish)) {
+			if (!this.isResponsibleFor(key)) {
 				continue;
 			}
-			this.msg_tracker.beginRequest(exp.uuid(), provider);
-			this.kadSendMessage(new BroadcastWant(exp.rtid(), exp.uuid()), this.addrbook.getHostFromID(provider));
+			this.storage.get(key).ifPresent(value -> this.storeAtClosest(key, value));
 		}
 	}
 
-	private void onCheckQueryTimeouts(CheckQueryTimeoutsTimer timer, long timer_id) {
-		this.query_manager.checkTimeouts();
+	// True if we would be among the k closest peers to the key that we know of
+	private boolean isResponsibleFor(KadID key) {
+		var closest = this.rts.closest(key);
+		if (closest.size() < this.params.k) {
+			return true;
+		}
+		return key.compareDistances(this.self.id, closest.get(closest.size() - 1).id) < 0;
+	}
 
-		// This could probably go somewhere else
-		this.have_tracker.checkTimeouts();
+	private void onFlushQueryBatches(FlushQueryBatchesTimer timer, long timer_id) {
+		this.query_manager.flush();
 	}
 
 	private void onRefreshRoutingTable(RefreshRoutingTable timer, long timer_id) {
@@ -812,7 +1343,8 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		}
 
 		Function<List<KadID>, Void> refresh = (members) -> {
-			members.stream().map(this.addrbook::getPeerFromID).filter(Objects::nonNull).forEach(rt::add);
+			members.stream().map(this.addrbook::getPeerFromID).filter(Objects::nonNull)
+					.forEach(p -> this.rtAdd(rt, p));
 
 			var next_refresh = this.routing_table_refresh.getSeconds() * 1000
 					+ this.routing_table_refresh.getNano() / 1000000;
@@ -829,13 +1361,12 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 				this.query_manager.findPool(timer.rtid, result -> refresh.apply(result.members));
 			} else {
 				for (int i = 0; i < rt.buckets(); ++i) {
-					var bucket = rt.bucket(i);
-					if (!bucket.isEmpty()) {
+					if (rt.bucketSize(i) != 0) {
 						continue;
 					}
 					this.query_manager.findClosest(KadID.randomWithCpl(this.self.id, i),
 							result -> result.closest.stream().map(this.addrbook::getPeerFromID).filter(Objects::nonNull)
-									.forEach(rt::add));
+									.forEach(p -> this.rtAdd(rt, p)));
 				}
 				this.query_manager.findClosest(timer.rtid, this.self.id, result -> refresh.apply(result.closest));
 			}
@@ -845,6 +1376,9 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 	}
 
 	private void onMetricDebug(MetricDebugTimer timer, long timer_id) {
+		Metrics.messageCache(this.msg_cache.hits(), this.msg_cache.misses(), this.msg_cache.evictions(),
+				this.msg_cache.expirations(), this.msg_cache.size(), this.msg_cache.bytes(), this.msg_cache.seenSize());
+		Metrics.storage(this.storage.size(), this.storage.liveBytes(), this.storage.bytes(), this.storage.segments());
 		if (Metrics.level() >= Metrics.METRIC_LEVEL_DETAILED) {
 			Metrics.routingTable("", this.rts.main().dumpForMetrics());
 			for (var rt : this.rts.allButTheMainOne())
@@ -872,6 +1406,19 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		this.kadSendMessage(request, host);
 	}
 
+	@Override
+	public void findNodeRequests(KadID id, List<FindNodeTarget> targets) {
+		var host = this.addrbook.getHostFromID(id);
+		if (host == null) {
+			logger.warn("Could not find host for peer " + id + " while sending FindNodeBatchRequest");
+			return;
+		}
+		var entries = targets.stream()
+				.map(t -> new FindNodeBatchRequest.Entry(t.context(), t.rtid(), t.target()))
+				.toList();
+		this.kadSendMessage(new FindNodeBatchRequest(entries), host);
+	}
+
 	@Override
 	public void findValueRequest(long context, KadID id, KadID key) {
 		var host = this.addrbook.getHostFromID(id);
@@ -904,4 +1451,9 @@ public class Kademlia extends GenericProtocol implements QueryManagerIO {
 		var request = new FindPoolRequest(context, pool);
 		this.kadSendMessage(request, host);
 	}
+
+	@Override
+	public void scheduleFlush(Duration delay) {
+		this.setupTimer(new FlushQueryBatchesTimer(), delay.toMillis());
+	}
 }
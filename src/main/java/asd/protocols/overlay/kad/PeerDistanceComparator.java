@@ -11,6 +11,6 @@ public class PeerDistanceComparator implements Comparator<KadPeer> {
 
 	@Override
 	public int compare(KadPeer o1, KadPeer o2) {
-		return from.distanceTo(o1.id).compareTo(from.distanceTo(o2.id));
+		return from.compareDistances(o1.id, o2.id);
 	}
 }
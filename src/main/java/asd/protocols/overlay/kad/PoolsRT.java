@@ -20,7 +20,7 @@ public class PoolsRT {
 
 	public RoutingTable createPool(KadID pool) {
 		if (!this.containsPool(pool)) {
-			this.pools.put(pool, new RoutingTable(this.params.k, this.self));
+			this.pools.put(pool, RoutingTable.create(this.params, this.params.k, this.self));
 		}
 		return this.pools.get(pool);
 	}
@@ -0,0 +1,70 @@
+package asd.protocols.overlay.kad;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the answering part of read-only requests off the protocol thread.
+ * <p>
+ * Tasks are striped over `threads` single threaded executors by a key, the requesting peer, so the answers to the same
+ * peer leave in the order its requests arrived while different peers are served in parallel. Tasks may only read
+ * state that is immutable or safe to read concurrently, everything that changes the protocol state stays on the
+ * protocol thread. With 0 threads tasks run right away on the caller.
+ */
+public class RequestWorkers implements AutoCloseable {
+	private static final Logger logger = LogManager.getLogger(RequestWorkers.class);
+
+	private final ExecutorService[] stripes;
+
+	public RequestWorkers(int threads) {
+		this.stripes = new ExecutorService[Math.max(0, threads)];
+		for (int i = 0; i < this.stripes.length; ++i) {
+			var name = "kad-request-" + i;
+			this.stripes[i] = Executors.newSingleThreadExecutor(runnable -> {
+				var thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * @return True if tasks run on the caller's thread
+	 */
+	public boolean isInline() {
+		return this.stripes.length == 0;
+	}
+
+	public void execute(Object key, Runnable task) {
+		if (this.isInline()) {
+			task.run();
+			return;
+		}
+		var stripe = this.stripes[Math.floorMod(key.hashCode(), this.stripes.length)];
+		stripe.execute(() -> {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				logger.error("Request task failed", e);
+			}
+		});
+	}
+
+	@Override
+	public void close() {
+		for (var stripe : this.stripes)
+			stripe.shutdown();
+		for (var stripe : this.stripes) {
+			try {
+				stripe.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+}
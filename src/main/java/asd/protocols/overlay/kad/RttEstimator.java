@@ -0,0 +1,105 @@
+package asd.protocols.overlay.kad;
+
+import java.time.Duration;
+
+/**
+ * Per peer round trip time estimates, kept like the TCP retransmission timer (RFC 6298).
+ * <p>
+ * Each peer has a smoothed round trip time and a round trip variance, the request timeout for a peer is
+ * `srtt + 4 * rttvar` clamped between `min_rto` and `max_rto`. Every failure of a peer since we last heard from it
+ * doubles its timeout. Peers we have no samples for get `max_rto`.
+ * <p>
+ * The estimates and failures are kept on the peer's handle in the {@link KadAddrBook}, peers that are not in the book
+ * only count towards the average round trip of every peer.
+ */
+public class RttEstimator {
+	private static final double SRTT_GAIN = 1.0 / 8.0;
+	private static final double RTTVAR_GAIN = 1.0 / 4.0;
+	private static final double RTTVAR_FACTOR = 4.0;
+	// The timeout stops doubling after this many failures
+	private static final int MAX_BACKOFF_FAILURES = 6;
+
+	private final KadAddrBook book;
+	private final Duration min_rto;
+	private final Duration max_rto;
+	// Average of the round trips of every peer, in milliseconds
+	private double mean;
+
+	public RttEstimator(KadAddrBook book, Duration min_rto, Duration max_rto) {
+		if (min_rto.compareTo(max_rto) > 0) {
+			throw new IllegalArgumentException("min_rto must not be greater than max_rto");
+		}
+		this.book = book;
+		this.min_rto = min_rto;
+		this.max_rto = max_rto;
+		this.mean = Double.NaN;
+	}
+
+	/**
+	 * Adds a round trip sample of a peer. The sample is an answer from the peer, so it also clears its failures.
+	 */
+	public void sample(KadID id, Duration rtt) {
+		var ms = rtt.toNanos() / 1_000_000.0;
+		var handle = this.book.handle(id);
+		if (handle != KadAddrBook.NONE) {
+			var srtt = this.book.srtt(handle);
+			if (Double.isNaN(srtt)) {
+				this.book.rtt(handle, ms, ms / 2.0);
+			} else {
+				var rttvar = this.book.rttvar(handle);
+				rttvar += RTTVAR_GAIN * (Math.abs(srtt - ms) - rttvar);
+				srtt += SRTT_GAIN * (ms - srtt);
+				this.book.rtt(handle, srtt, rttvar);
+			}
+			this.book.seen(handle);
+		}
+		this.mean = Double.isNaN(this.mean) ? ms : this.mean + SRTT_GAIN * (ms - this.mean);
+	}
+
+	/**
+	 * Backs off the timeout of a peer after a request to it timed out or failed.
+	 */
+	public void failure(KadID id) {
+		var handle = this.book.handle(id);
+		if (handle != KadAddrBook.NONE) {
+			this.book.failure(handle);
+		}
+	}
+
+	public boolean contains(KadID id) {
+		var handle = this.book.handle(id);
+		return handle != KadAddrBook.NONE && !Double.isNaN(this.book.srtt(handle));
+	}
+
+	/**
+	 * @return How long to wait for a response from a peer
+	 */
+	public Duration rto(KadID id) {
+		var handle = this.book.handle(id);
+		if (handle == KadAddrBook.NONE || Double.isNaN(this.book.srtt(handle))) {
+			return this.max_rto;
+		}
+		var backoff = 1 << Math.min(MAX_BACKOFF_FAILURES, this.book.failures(handle));
+		var ms = (this.book.srtt(handle) + RTTVAR_FACTOR * this.book.rttvar(handle)) * backoff;
+		var rto = Duration.ofNanos((long) (ms * 1_000_000.0));
+		if (rto.compareTo(this.min_rto) < 0) {
+			return this.min_rto;
+		}
+		if (rto.compareTo(this.max_rto) > 0) {
+			return this.max_rto;
+		}
+		return rto;
+	}
+
+	/**
+	 * @return The expected round trip to a peer in milliseconds, peers without samples are expected to take the
+	 *         average round trip of every peer
+	 */
+	public double expected(KadID id) {
+		var handle = this.book.handle(id);
+		if (handle != KadAddrBook.NONE && !Double.isNaN(this.book.srtt(handle))) {
+			return this.book.srtt(handle);
+		}
+		return Double.isNaN(this.mean) ? 0.0 : this.mean;
+	}
+}
@@ -0,0 +1,171 @@
+package asd.protocols.overlay.kad;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * Hashed timing wheel shared by the timeouts of queries, broadcast requests, Have records and pings.
+ * <p>
+ * Deadlines are rounded up to a whole tick and hashed by tick number into one of `slots` doubly linked lists, so
+ * scheduling and cancelling are O(1). {@link #advance()} only visits the slots of the ticks that went by since the last
+ * call and runs the tasks whose deadline passed, tasks due in a later turn of the wheel stay in their slot. With the
+ * timeouts used here being shorter than a full turn, expiring costs O(expired) no matter how many timeouts are pending.
+ * <p>
+ * Tasks run from {@link #advance()}, after every expired timeout was unlinked, so they are free to schedule or cancel
+ * other timeouts.
+ */
+public class TimerWheel {
+	public final class Timeout {
+		private final Runnable task;
+		private final long deadline;
+		private Timeout prev;
+		private Timeout next;
+		private int slot;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+			this.slot = -1;
+		}
+
+		/**
+		 * @return True if the timeout was pending and will no longer run
+		 */
+		public boolean cancel() {
+			if (this.slot == -1) {
+				return false;
+			}
+			TimerWheel.this.unlink(this);
+			return true;
+		}
+
+		public boolean isPending() {
+			return this.slot != -1;
+		}
+	}
+
+	private final long tick;
+	private final Timeout[] slots;
+	private final int mask;
+	private final LongSupplier clock;
+	private final long origin;
+	// The next tick to be processed, every deadline before it already ran
+	private long current;
+	private int size;
+
+	public TimerWheel(Duration tick, int slots) {
+		this(tick, slots, System::nanoTime);
+	}
+
+	/**
+	 * @param tick  The resolution of the wheel
+	 * @param slots The number of slots, rounded up to a power of two
+	 * @param clock The time source in nanoseconds
+	 */
+	public TimerWheel(Duration tick, int slots, LongSupplier clock) {
+		if (tick.isZero() || tick.isNegative()) {
+			throw new IllegalArgumentException("tick must be positive");
+		}
+		if (slots < 1 || slots > (1 << 30)) {
+			throw new IllegalArgumentException("slots must be between 1 and 2^30");
+		}
+		var capacity = Integer.highestOneBit(slots);
+		if (capacity < slots) {
+			capacity <<= 1;
+		}
+		this.tick = tick.toNanos();
+		this.slots = new Timeout[capacity];
+		this.mask = capacity - 1;
+		this.clock = clock;
+		this.origin = clock.getAsLong();
+		this.current = 0;
+		this.size = 0;
+	}
+
+	public Duration tick() {
+		return Duration.ofNanos(this.tick);
+	}
+
+	/**
+	 * @return The number of pending timeouts
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Schedules `task` to run on the first {@link #advance()} at least `delay` from now.
+	 */
+	public Timeout schedule(Runnable task, Duration delay) {
+		var at = this.now() + Math.max(0, delay.toNanos());
+		var deadline = Math.max(this.current, (at + this.tick - 1) / this.tick);
+		var timeout = new Timeout(task, deadline);
+		this.link(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Runs every task whose deadline passed.
+	 *
+	 * @return The number of tasks that ran
+	 */
+	public int advance() {
+		var now = this.now() / this.tick;
+		if (now < this.current) {
+			return 0;
+		}
+
+		var expired = new ArrayList<Timeout>();
+		// After a full turn every slot was visited, the remaining ticks cannot hold anything new
+		var last = Math.min(now, this.current + this.slots.length - 1);
+		for (var t = this.current; t <= last; ++t) {
+			var timeout = this.slots[(int) (t & this.mask)];
+			while (timeout != null) {
+				var next = timeout.next;
+				if (timeout.deadline <= now) {
+					this.unlink(timeout);
+					expired.add(timeout);
+				}
+				timeout = next;
+			}
+		}
+		this.current = now + 1;
+
+		for (var timeout : expired)
+			timeout.task.run();
+		return expired.size();
+	}
+
+	private long now() {
+		return this.clock.getAsLong() - this.origin;
+	}
+
+	private void link(Timeout timeout) {
+		var slot = (int) (timeout.deadline & this.mask);
+		var head = this.slots[slot];
+		timeout.slot = slot;
+		timeout.prev = null;
+		timeout.next = head;
+		if (head != null) {
+			head.prev = timeout;
+		}
+		this.slots[slot] = timeout;
+		this.size += 1;
+	}
+
+	private void unlink(Timeout timeout) {
+		if (timeout.prev != null) {
+			timeout.prev.next = timeout.next;
+		} else {
+			this.slots[timeout.slot] = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.prev = timeout.prev;
+		}
+		timeout.prev = null;
+		timeout.next = null;
+		timeout.slot = -1;
+		this.size -= 1;
+	}
+}
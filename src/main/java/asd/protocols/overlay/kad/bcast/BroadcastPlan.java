@@ -0,0 +1,96 @@
+package asd.protocols.overlay.kad.bcast;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.routing.RoutingTable;
+
+/**
+ * The peers a broadcast is sent to at each cpl level of a topic's routing table.
+ * <p>
+ * Level `cpl` holds the first `redundancy` peers with that cpl, except for the levels from the last bucket on where
+ * every peer is a target since no one else covers them. Building a plan streams every bucket once, the plan is valid
+ * until the {@link RoutingTable#version()} changes, so broadcasts on topics with steady membership only iterate over
+ * arrays.
+ */
+public class BroadcastPlan {
+	private final RoutingTable rt;
+	private final int version;
+	private final int redundancy;
+	private final int last_bucket;
+	private final KadPeer[][] levels;
+
+	private BroadcastPlan(RoutingTable rt, int redundancy, KadPeer[][] levels) {
+		this.rt = rt;
+		this.version = rt.version();
+		this.redundancy = redundancy;
+		this.last_bucket = rt.buckets() - 1;
+		this.levels = levels;
+	}
+
+	/**
+	 * @param redundancy The number of peers kept for each level that is not sent to in full
+	 */
+	public static BroadcastPlan build(RoutingTable rt, KadID self, int redundancy) {
+		var highest_cpl = highestCpl(rt, self);
+		var levels = new KadPeer[highest_cpl + 1][];
+		for (int cpl = 0; cpl <= highest_cpl; ++cpl) {
+			var level = cpl;
+			var count = (cpl == highest_cpl || cpl >= rt.buckets() - 1) ? Integer.MAX_VALUE : redundancy;
+			if (cpl >= rt.buckets()) {
+				levels[cpl] = rt.bucketStream(cpl).filter(p -> p.id.cpl(self) == level).limit(count)
+						.toArray(KadPeer[]::new);
+			} else {
+				levels[cpl] = rt.bucketStream(cpl).limit(count).toArray(KadPeer[]::new);
+			}
+		}
+		return new BroadcastPlan(rt, redundancy, levels);
+	}
+
+	/**
+	 * @return True if the plan was built from `rt` with the given redundancy and the table did not change since
+	 */
+	public boolean isValidFor(RoutingTable rt, int redundancy) {
+		return this.rt == rt && this.version == rt.version() && this.redundancy == redundancy;
+	}
+
+	/**
+	 * @return The highest cpl with peers, levels above it have no targets
+	 */
+	public int highestCpl() {
+		return this.levels.length - 1;
+	}
+
+	/**
+	 * @return The targets of the level, must not be modified
+	 */
+	public KadPeer[] peers(int cpl) {
+		return this.levels[cpl];
+	}
+
+	/**
+	 * @return True if every peer of the level is a target
+	 */
+	public boolean isFull(int cpl) {
+		return cpl == this.highestCpl() || cpl >= this.last_bucket;
+	}
+
+	/**
+	 * @param redundancy The number of peers wanted for levels that are not sent to in full, at most the redundancy of
+	 *                   the plan
+	 * @return The number of leading peers of {@link #peers(int)} to send to
+	 */
+	public int count(int cpl, int redundancy) {
+		var peers = this.levels[cpl].length;
+		return this.isFull(cpl) ? peers : Math.min(peers, redundancy);
+	}
+
+	private static int highestCpl(RoutingTable rt, KadID self) {
+		for (int i = rt.buckets() - 1; i >= 0; i--) {
+			if (rt.bucketSize(i) == 0) {
+				continue;
+			}
+			return rt.bucketStream(i).map(p -> p.id.cpl(self)).max(Integer::compare).orElse(0);
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,158 @@
+package asd.protocols.overlay.kad.bcast;
+
+import asd.utils.coding.ReedSolomon;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+
+/**
+ * Collects the erasure coded chunks of broadcast messages until their payloads can be rebuilt.
+ * <p>
+ * The chunks of a message are kept until {@link #decode(UUID)} rebuilds its payload, after that only the indices of
+ * the chunks seen are kept so chunks that arrive later are still recognized as duplicates. At most `max_messages`
+ * messages and `max_bytes` of chunks waiting to be decoded are kept, the oldest messages are forgotten first.
+ */
+public class ChunkAssembler {
+	private static class Entry {
+		final ReedSolomon code;
+		final int length;
+		final BitSet seen;
+		byte[][] chunks;
+		int count;
+
+		Entry(ReedSolomon code, int length) {
+			this.code = code;
+			this.length = length;
+			this.seen = new BitSet(code.totalChunks());
+			this.chunks = new byte[code.totalChunks()][];
+			this.count = 0;
+		}
+	}
+
+	private final int max_messages;
+	private final long max_bytes;
+	private final LinkedHashMap<UUID, Entry> messages;
+	private final HashMap<Integer, ReedSolomon> codes;
+	private long bytes;
+
+	public ChunkAssembler(int max_messages, long max_bytes) {
+		this.max_messages = max_messages;
+		this.max_bytes = max_bytes;
+		this.messages = new LinkedHashMap<>();
+		this.codes = new HashMap<>();
+		this.bytes = 0;
+	}
+
+	/**
+	 * The chunks of a message are spread over the peers of a level of the broadcast tree by their index, so the branch
+	 * below one peer carries up to `ceil((data + parity) / branches)` of them.
+	 *
+	 * @return Whether the payload can still be rebuilt after losing every chunk sent down one of the branches
+	 */
+	public static boolean survivesBranchLoss(int data, int parity, int branches) {
+		return (data + parity + branches - 1) / branches <= parity;
+	}
+
+	/**
+	 * @return The code for the given chunk counts, instances are shared
+	 * @throws IllegalArgumentException If the counts are not supported
+	 */
+	public ReedSolomon code(int data, int parity) {
+		var key = data * ReedSolomon.MAX_CHUNKS + parity;
+		var code = this.codes.get(key);
+		if (code == null) {
+			code = new ReedSolomon(data, parity);
+			this.codes.put(key, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Stores a chunk of a message.
+	 *
+	 * @return False if the chunk was seen before, does not match the chunks seen before for the same message or is
+	 *         larger than `max_bytes`
+	 */
+	public boolean add(UUID uuid, int length, int data, int parity, int index, byte[] chunk) {
+		var entry = this.messages.get(uuid);
+		if (entry == null) {
+			if (length < 0 || data < 1 || parity < 0 || data + parity > ReedSolomon.MAX_CHUNKS) {
+				return false;
+			}
+			entry = new Entry(this.code(data, parity), length);
+		} else if (entry.length != length || entry.code.dataChunks() != data || entry.code.parityChunks() != parity) {
+			return false;
+		}
+		if (index < 0 || index >= entry.code.totalChunks() || chunk.length != entry.code.chunkSize(length)
+				|| chunk.length > this.max_bytes) {
+			return false;
+		}
+		if (entry.seen.get(index)) {
+			return false;
+		}
+
+		this.messages.putIfAbsent(uuid, entry);
+		entry.seen.set(index);
+		if (entry.chunks != null) {
+			entry.chunks[index] = chunk;
+			entry.count += 1;
+			this.bytes += chunk.length;
+		}
+		while (this.messages.size() > this.max_messages || this.bytes > this.max_bytes)
+			this.removeOldest();
+		return true;
+	}
+
+	/**
+	 * @return The payload of the message the first time enough of its chunks were added, null otherwise
+	 */
+	public byte[] decode(UUID uuid) {
+		var entry = this.messages.get(uuid);
+		if (entry == null || entry.chunks == null || entry.count < entry.code.dataChunks()) {
+			return null;
+		}
+		var payload = entry.code.decode(entry.chunks, entry.length);
+		this.release(entry);
+		return payload;
+	}
+
+	/**
+	 * Drops a message, used once its payload arrived whole so its chunks are not needed anymore.
+	 */
+	public void forget(UUID uuid) {
+		var entry = this.messages.remove(uuid);
+		if (entry != null) {
+			this.release(entry);
+		}
+	}
+
+	/**
+	 * @return The number of messages tracked
+	 */
+	public int size() {
+		return this.messages.size();
+	}
+
+	/**
+	 * @return The bytes of the chunks waiting to be decoded
+	 */
+	public long bytes() {
+		return this.bytes;
+	}
+
+	private void removeOldest() {
+		var iter = this.messages.values().iterator();
+		var entry = iter.next();
+		iter.remove();
+		this.release(entry);
+	}
+
+	private void release(Entry entry) {
+		if (entry.chunks != null) {
+			this.bytes -= (long) entry.count * entry.code.chunkSize(entry.length);
+			entry.chunks = null;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package asd.protocols.overlay.kad.bcast;
+
+import asd.metrics.MetricsProtoMessage;
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.messages.BroadcastHave;
+import asd.protocols.overlay.kad.messages.BroadcastHaveBatch;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Coalesces the Have announcements sent to the same peer.
+ * <p>
+ * Announcements are held until {@link #flush()} and a flush is scheduled when the first one is queued. Peers with a
+ * single queued announcement get a plain BroadcastHave, peers with more get one BroadcastHaveBatch. A batch that
+ * reaches `max_batch` announcements is sent right away. With `max_batch` <= 1 every announcement is sent immediately.
+ */
+public class HaveBatcher {
+	public interface IO {
+		void send(MetricsProtoMessage msg, Host host);
+
+		void scheduleFlush(Duration delay);
+	}
+
+	private final Duration window;
+	private final int max_batch;
+	private final IO io;
+	private final LinkedHashMap<Host, ArrayList<BroadcastHaveBatch.Entry>> pending;
+	private boolean flush_scheduled;
+
+	public HaveBatcher(Duration window, int max_batch, IO io) {
+		this.window = window;
+		this.max_batch = max_batch;
+		this.io = io;
+		this.pending = new LinkedHashMap<>();
+		this.flush_scheduled = false;
+	}
+
+	public void add(Host host, KadID rtid, UUID uuid) {
+		if (this.max_batch <= 1) {
+			this.io.send(new BroadcastHave(rtid, uuid), host);
+			return;
+		}
+
+		var batch = this.pending.computeIfAbsent(host, k -> new ArrayList<>());
+		batch.add(new BroadcastHaveBatch.Entry(rtid, uuid));
+		if (batch.size() >= this.max_batch) {
+			this.pending.remove(host);
+			this.send(host, batch);
+			return;
+		}
+
+		if (!this.flush_scheduled) {
+			this.flush_scheduled = true;
+			this.io.scheduleFlush(this.window);
+		}
+	}
+
+	public void flush() {
+		this.flush_scheduled = false;
+		if (this.pending.isEmpty()) {
+			return;
+		}
+		var pending = new ArrayList<>(this.pending.entrySet());
+		this.pending.clear();
+		for (var entry : pending)
+			this.send(entry.getKey(), entry.getValue());
+	}
+
+	/**
+	 * @return The number of announcements waiting for a flush
+	 */
+	public int size() {
+		var size = 0;
+		for (var batch : this.pending.values())
+			size += batch.size();
+		return size;
+	}
+
+	private void send(Host host, List<BroadcastHaveBatch.Entry> batch) {
+		if (batch.size() == 1) {
+			var have = batch.get(0);
+			this.io.send(new BroadcastHave(have.rtid(), have.uuid()), host);
+		} else {
+			this.io.send(new BroadcastHaveBatch(List.copyOf(batch)), host);
+		}
+	}
+}
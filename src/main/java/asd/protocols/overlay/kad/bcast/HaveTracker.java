@@ -1,47 +1,60 @@
 package asd.protocols.overlay.kad.bcast;
 
-import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.TimerWheel;
 
 import java.time.Duration;
-import java.time.Instant;
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.UUID;
 
 /**
- * Tracks received Have messages.
+ * Tracks received Have messages, peers are identified by their {@link asd.protocols.overlay.kad.KadAddrBook} handle.
+ * <p>
+ * Records expire `ttl` after they were last added, through the shared {@link TimerWheel}. The records of a peer must be
+ * dropped with {@link #removePeer(int)} when its handle is freed, or the next peer given the handle would inherit them.
  */
 public class HaveTracker {
-	private final HashSet<HaveRecord> records;
-	private final Deque<TimestampedRecord> queue;
+	private final HashMap<HaveRecord, TimerWheel.Timeout> records;
+	private final TimerWheel wheel;
 	private final Duration record_ttl;
-	public HaveTracker(Duration ttl) {
-		this.records = new HashSet<>();
-		this.queue = new ArrayDeque<>();
+
+	public HaveTracker(TimerWheel wheel, Duration ttl) {
+		this.records = new HashMap<>();
+		this.wheel = wheel;
 		this.record_ttl = ttl;
 	}
 
-	public void add(UUID uuid, KadID peer) {
+	public void add(UUID uuid, int peer) {
 		var record = new HaveRecord(uuid, peer);
-		var now = Instant.now();
-		this.records.add(record);
-		this.queue.push(new TimestampedRecord(now, record));
+		var previous = this.records.get(record);
+		if (previous != null) {
+			previous.cancel();
+		}
+		this.records.put(record, this.wheel.schedule(() -> this.records.remove(record), this.record_ttl));
 	}
 
-	public boolean contains(UUID uuid, KadID peer) {
-		return this.records.contains(new HaveRecord(uuid, peer));
+	public boolean contains(UUID uuid, int peer) {
+		return this.records.containsKey(new HaveRecord(uuid, peer));
 	}
 
-	public void checkTimeouts() {
-		var now = Instant.now();
-		while (!this.queue.isEmpty() && this.queue.peek().instant.plus(this.record_ttl).isBefore(now))
-			this.queue.pop();
+	/**
+	 * Drops the records of a peer. Handles are only freed when a node leaves the address book, which is rare enough
+	 * for a pass over every record.
+	 */
+	public void removePeer(int peer) {
+		var iterator = this.records.entrySet().iterator();
+		while (iterator.hasNext()) {
+			var entry = iterator.next();
+			if (entry.getKey().peer() == peer) {
+				entry.getValue().cancel();
+				iterator.remove();
+			}
+		}
 	}
 
-	private record HaveRecord(UUID uuid, KadID peer) {
+	public int size() {
+		return this.records.size();
 	}
 
-	private record TimestampedRecord(Instant instant, HaveRecord record) {
+	private record HaveRecord(UUID uuid, int peer) {
 	}
 }
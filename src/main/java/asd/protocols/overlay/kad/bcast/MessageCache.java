@@ -1,52 +1,146 @@
 package asd.protocols.overlay.kad.bcast;
 
-import java.time.Instant;
-import java.util.ArrayDeque;
-import java.util.HashMap;
+import asd.utils.SeenFilter;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.UUID;
+import java.util.function.LongSupplier;
 
+/**
+ * Keeps recent broadcast messages to answer BroadcastWant requests, and the ids of every message seen to drop
+ * duplicates.
+ * <p>
+ * Payloads are kept for `ttl`, bounded by `max_messages` and by `max_bytes` of payload, the oldest messages are evicted
+ * first. Ids are kept in a separate {@link SeenFilter} that can remember far more messages for far longer, a message
+ * whose payload was evicted is still recognized as a duplicate.
+ */
 public class MessageCache {
-	public final ArrayDeque<QueueItem> queue;
-	public final HashMap<UUID, Message> messages;
-	public MessageCache() {
-		this.queue = new ArrayDeque<>();
-		this.messages = new HashMap<>();
+	private final LinkedHashMap<UUID, Entry> messages;
+	private final SeenFilter seen;
+	private final long ttl;
+	private final int max_messages;
+	private final long max_bytes;
+	private final LongSupplier clock;
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long expirations;
+
+	private record Entry(Message message, long expires) {
+	}
+
+	public MessageCache(Duration ttl, int max_messages, long max_bytes, SeenFilter seen) {
+		this(ttl, max_messages, max_bytes, seen, System::nanoTime);
+	}
+
+	public MessageCache(Duration ttl, int max_messages, long max_bytes, SeenFilter seen, LongSupplier clock) {
+		// Every message gets the same ttl, so insertion order is also expiry order
+		this.messages = new LinkedHashMap<>();
+		this.seen = seen;
+		this.ttl = ttl.toNanos();
+		this.max_messages = max_messages;
+		this.max_bytes = max_bytes;
+		this.clock = clock;
+		this.bytes = 0;
+		this.hits = 0;
+		this.misses = 0;
+		this.evictions = 0;
+		this.expirations = 0;
 	}
 
 	public void add(Message message) {
-		this.clean();
-		this.queue.add(new QueueItem(message.uuid, Instant.now().plusSeconds(10 * 60)));
-		this.messages.put(message.uuid, message);
+		this.seen.add(message.uuid);
+		var now = this.clock.getAsLong();
+		this.expire(now);
+		if (this.messages.containsKey(message.uuid) || this.max_messages == 0
+				|| message.payload.length > this.max_bytes) {
+			return;
+		}
+
+		this.messages.put(message.uuid, new Entry(message, now + this.ttl));
+		this.bytes += message.payload.length;
+		while (this.messages.size() > this.max_messages || this.bytes > this.max_bytes) {
+			this.removeOldest();
+			this.evictions += 1;
+		}
 	}
 
+	/**
+	 * @return The message if its payload is still cached
+	 */
 	public Message get(UUID uuid) {
-		return this.messages.get(uuid);
+		this.expire(this.clock.getAsLong());
+		var entry = this.messages.get(uuid);
+		if (entry == null) {
+			this.misses += 1;
+			return null;
+		}
+		this.hits += 1;
+		return entry.message;
 	}
 
+	/**
+	 * @return True if the payload of the message is cached
+	 */
 	public boolean contains(UUID uuid) {
+		this.expire(this.clock.getAsLong());
 		return this.messages.containsKey(uuid);
 	}
 
-	private void clean() {
-		var now = Instant.now();
-		while (!this.queue.isEmpty()) {
-			var item = this.queue.peek();
-			if (item.expire.isAfter(now)) {
-				break;
-			}
+	/**
+	 * @return True if the message was seen recently, even if its payload is no longer cached
+	 */
+	public boolean seen(UUID uuid) {
+		return this.seen.contains(uuid);
+	}
 
-			this.queue.remove();
-			this.messages.remove(item.uuid);
-		}
+	public int size() {
+		this.expire(this.clock.getAsLong());
+		return this.messages.size();
 	}
 
-	private static class QueueItem {
-		public final UUID uuid;
-		public final Instant expire;
+	public long bytes() {
+		this.expire(this.clock.getAsLong());
+		return this.bytes;
+	}
 
-		public QueueItem(UUID uuid, Instant expire) {
-			this.uuid = uuid;
-			this.expire = expire;
+	public int seenSize() {
+		return this.seen.size();
+	}
+
+	public long hits() {
+		return this.hits;
+	}
+
+	public long misses() {
+		return this.misses;
+	}
+
+	public long evictions() {
+		return this.evictions;
+	}
+
+	public long expirations() {
+		return this.expirations;
+	}
+
+	private void expire(long now) {
+		while (!this.messages.isEmpty()) {
+			var oldest = this.messages.values().iterator().next();
+			if (oldest.expires - now > 0) {
+				break;
+			}
+			this.removeOldest();
+			this.expirations += 1;
 		}
 	}
+
+	private void removeOldest() {
+		var iter = this.messages.values().iterator();
+		var entry = iter.next();
+		iter.remove();
+		this.bytes -= entry.message.payload.length;
+	}
 }
@@ -0,0 +1,185 @@
+package asd.protocols.overlay.kad.bcast;
+
+import asd.protocols.overlay.kad.KadID;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Pulls the messages we learn about from Have messages, deciding which provider each one is requested from.
+ * <p>
+ * Missing messages are queued until {@link #flush()}, a flush is scheduled when the first one is queued. On a flush
+ * each message is assigned to one of its providers by a {@link Policy}, so Haves that arrive while the message is
+ * queued are considered too, and the messages assigned to the same peer and topic are asked for in a single Want of at
+ * most `max_batch` messages. A request times out after the timeout given for its provider and, on the next
+ * {@link #retry()}, the message is queued again to be requested from another provider. Messages whose providers all
+ * failed are dropped until a new Have arrives.
+ */
+public class PullScheduler {
+	public static final String POLICY_FIRST = "first";
+	public static final String POLICY_BALANCED = "balanced";
+
+	/**
+	 * Picks the provider a message is requested from.
+	 */
+	public interface Policy {
+		/**
+		 * @param providers The providers that did not fail this message, never empty
+		 */
+		KadID select(Set<KadID> providers, RequestTracker tracker);
+	}
+
+	public interface IO {
+		void sendWant(KadID peer, KadID rtid, List<UUID> uuids);
+
+		void scheduleFlush(Duration delay);
+	}
+
+	private record Destination(KadID peer, KadID rtid) {
+	}
+
+	private final RequestTracker tracker;
+	private final Policy policy;
+	private final Function<KadID, Duration> timeout;
+	private final Duration window;
+	private final int max_batch;
+	private final IO io;
+	// Messages waiting to be assigned to a provider, and their topic
+	private final LinkedHashMap<UUID, KadID> pending;
+	private boolean flush_scheduled;
+
+	/**
+	 * @param timeout How long to wait for a message requested from a peer
+	 */
+	public PullScheduler(RequestTracker tracker, Policy policy, Function<KadID, Duration> timeout, Duration window,
+			int max_batch, IO io) {
+		this.tracker = tracker;
+		this.policy = policy;
+		this.timeout = timeout;
+		this.window = window;
+		this.max_batch = Math.max(1, max_batch);
+		this.io = io;
+		this.pending = new LinkedHashMap<>();
+		this.flush_scheduled = false;
+	}
+
+	/**
+	 * Creates a policy by name.
+	 *
+	 * @param name         {@link #POLICY_FIRST} to take any provider or {@link #POLICY_BALANCED} to take the provider
+	 *                     with the lowest expected round trip scaled by its requests in flight
+	 * @param expected_rtt The expected round trip to a peer, in milliseconds
+	 */
+	public static Policy policy(String name, ToDoubleFunction<KadID> expected_rtt) {
+		return switch (name) {
+			case POLICY_FIRST -> (providers, tracker) -> providers.iterator().next();
+			case POLICY_BALANCED -> (providers, tracker) -> {
+				KadID best = null;
+				var best_score = Double.POSITIVE_INFINITY;
+				for (var provider : providers) {
+					// One millisecond keeps the load relevant before any round trip was measured
+					var score = (expected_rtt.applyAsDouble(provider) + 1.0) * (1 + tracker.outstanding(provider));
+					if (score < best_score) {
+						best = provider;
+						best_score = score;
+					}
+				}
+				return best;
+			};
+			default -> throw new IllegalArgumentException("Unknown pull policy: " + name);
+		};
+	}
+
+	/**
+	 * Records that `provider` has a message and queues it if it is not being requested already.
+	 */
+	public void have(KadID rtid, UUID uuid, KadID provider) {
+		if (!this.tracker.isTracking(uuid)) {
+			this.tracker.startTracking(rtid, uuid);
+		}
+		this.tracker.addProvider(uuid, provider);
+		if (!this.tracker.isRequesting(uuid)) {
+			this.queue(rtid, uuid);
+		}
+	}
+
+	/**
+	 * Records that a message arrived, from a Want request or not.
+	 *
+	 * @return True if the message was being pulled
+	 */
+	public boolean received(UUID uuid) {
+		if (!this.tracker.isTracking(uuid)) {
+			return false;
+		}
+		this.pending.remove(uuid);
+		this.tracker.endRequest(uuid);
+		return true;
+	}
+
+	/**
+	 * Queues the messages whose requests timed out to be requested from their next provider.
+	 *
+	 * @return The requests that timed out
+	 */
+	public List<RequestTracker.ExpiredRequest> retry() {
+		var expired = this.tracker.checkTimeouts();
+		for (var exp : expired) {
+			if (!this.tracker.isTracking(exp.uuid()) || this.tracker.isRequesting(exp.uuid())) {
+				continue;
+			}
+			this.queue(exp.rtid(), exp.uuid());
+		}
+		return expired;
+	}
+
+	/**
+	 * Assigns the queued messages to their providers and sends the Wants.
+	 */
+	public void flush() {
+		this.flush_scheduled = false;
+		if (this.pending.isEmpty()) {
+			return;
+		}
+		var batches = new LinkedHashMap<Destination, ArrayList<UUID>>();
+		for (var entry : this.pending.entrySet()) {
+			var uuid = entry.getKey();
+			if (!this.tracker.isTracking(uuid) || this.tracker.isRequesting(uuid)) {
+				continue;
+			}
+			var providers = this.tracker.getProviders(uuid);
+			if (providers.isEmpty()) {
+				this.tracker.stopTracking(uuid);
+				continue;
+			}
+			// Assigned one at a time so the load of the messages assigned before is accounted for
+			var provider = this.policy.select(providers, this.tracker);
+			this.tracker.beginRequest(uuid, provider, this.timeout.apply(provider));
+
+			var destination = new Destination(provider, entry.getValue());
+			var batch = batches.computeIfAbsent(destination, k -> new ArrayList<>());
+			batch.add(uuid);
+			if (batch.size() >= this.max_batch) {
+				batches.remove(destination);
+				this.io.sendWant(provider, destination.rtid(), batch);
+			}
+		}
+		this.pending.clear();
+		for (var entry : batches.entrySet())
+			this.io.sendWant(entry.getKey().peer(), entry.getKey().rtid(), entry.getValue());
+	}
+
+	private void queue(KadID rtid, UUID uuid) {
+		this.pending.put(uuid, rtid);
+		if (!this.flush_scheduled) {
+			this.flush_scheduled = true;
+			this.io.scheduleFlush(this.window);
+		}
+	}
+}
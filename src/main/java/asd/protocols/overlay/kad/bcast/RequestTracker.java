@@ -1,23 +1,37 @@
 package asd.protocols.overlay.kad.bcast;
 
 import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.TimerWheel;
 
 import java.time.Duration;
-import java.time.Instant;
 import java.util.*;
 
+/**
+ * Tracks the messages we know about from Have messages but did not receive yet, and the Want request in flight for
+ * each of them.
+ * <p>
+ * Request timeouts are registered with the shared {@link TimerWheel}. A request that times out is handled like a failed
+ * request and is reported by the next {@link #checkTimeouts()}. The number of requests in flight to each peer is kept
+ * so the {@link PullScheduler} can spread them.
+ */
 public class RequestTracker {
 
 	private final HashMap<UUID, State> states;
+	private final TimerWheel wheel;
 	private final Duration requestTimeout;
+	private final ArrayList<ExpiredRequest> expired;
+	private final HashMap<KadID, Integer> outstanding;
 
-	public RequestTracker() {
-		this(Duration.ofSeconds(10));
+	public RequestTracker(TimerWheel wheel) {
+		this(wheel, Duration.ofSeconds(10));
 	}
 
-	public RequestTracker(Duration timeout) {
+	public RequestTracker(TimerWheel wheel, Duration timeout) {
 		this.states = new HashMap<>();
+		this.wheel = wheel;
 		this.requestTimeout = timeout;
+		this.expired = new ArrayList<>();
+		this.outstanding = new HashMap<>();
 	}
 
 	public void startTracking(KadID rtid, UUID uuid) {
@@ -27,7 +41,7 @@ public class RequestTracker {
 
 	public void stopTracking(UUID uuid) {
 		assert this.states.containsKey(uuid);
-		this.states.remove(uuid);
+		this.remove(uuid);
 	}
 
 	public boolean isTracking(UUID uuid) {
@@ -53,43 +67,81 @@ public class RequestTracker {
 		return state.providers.iterator().next();
 	}
 
+	/**
+	 * @return The providers of a message we did not request it from yet, or that did not fail
+	 */
+	public Set<KadID> getProviders(UUID uuid) {
+		assert this.states.containsKey(uuid);
+		return Collections.unmodifiableSet(this.states.get(uuid).providers);
+	}
+
+	/**
+	 * @return The number of requests in flight to a peer
+	 */
+	public int outstanding(KadID id) {
+		return this.outstanding.getOrDefault(id, 0);
+	}
+
 	public void beginRequest(UUID uuid, KadID id) {
+		this.beginRequest(uuid, id, this.requestTimeout);
+	}
+
+	public void beginRequest(UUID uuid, KadID id, Duration timeout) {
 		assert this.states.containsKey(uuid);
 		var state = this.states.get(uuid);
 		assert state.request == null;
-		state.request = new RequestState(id);
+		var request_timeout = this.wheel.schedule(() -> this.onRequestTimeout(uuid), timeout);
+		state.request = new RequestState(id, request_timeout);
+		this.outstanding.merge(id, 1, Integer::sum);
 	}
 
 	public void endRequest(UUID uuid) {
-		this.states.remove(uuid);
+		this.remove(uuid);
 	}
 
 	public void failedRequest(UUID uuid) {
 		assert this.states.containsKey(uuid);
 		var state = this.states.get(uuid);
 		assert state.request != null;
+		state.request.timeout.cancel();
 		state.providers.remove(state.request.peer);
+		this.release(state.request.peer);
 		state.request = null;
 	}
 
+	/**
+	 * @return The requests that timed out since the last call, they were marked as failed and their messages are
+	 *         still tracked
+	 */
 	public List<ExpiredRequest> checkTimeouts() {
-		var now = Instant.now();
-		var expired = new ArrayList<ExpiredRequest>();
-		this.states.entrySet().removeIf(entry -> {
-			var state = entry.getValue();
-			if (state.request == null) {
-				return false;
-			}
-			var remove = state.request.start.plus(this.requestTimeout).isBefore(now);
-			if (remove) {
-				expired.add(new ExpiredRequest(entry.getValue().rtid, entry.getKey()));
-			}
-			return remove;
-		});
+		if (this.expired.isEmpty()) {
+			return List.of();
+		}
+		var expired = new ArrayList<>(this.expired);
+		this.expired.clear();
 		return expired;
 	}
 
-	public record ExpiredRequest(KadID rtid, UUID uuid) {
+	private void onRequestTimeout(UUID uuid) {
+		var state = this.states.get(uuid);
+		var peer = state.request.peer;
+		this.failedRequest(uuid);
+		this.expired.add(new ExpiredRequest(state.rtid, uuid, peer));
+	}
+
+	private void remove(UUID uuid) {
+		var state = this.states.remove(uuid);
+		if (state != null && state.request != null) {
+			state.request.timeout.cancel();
+			this.release(state.request.peer);
+		}
+	}
+
+	private void release(KadID id) {
+		this.outstanding.computeIfPresent(id, (k, count) -> count == 1 ? null : count - 1);
+	}
+
+	public record ExpiredRequest(KadID rtid, UUID uuid, KadID peer) {
 	}
 
 	private static class State {
@@ -106,11 +158,11 @@ public class RequestTracker {
 
 	private static class RequestState {
 		public final KadID peer;
-		public final Instant start;
+		public final TimerWheel.Timeout timeout;
 
-		public RequestState(KadID peer) {
+		public RequestState(KadID peer, TimerWheel.Timeout timeout) {
 			this.peer = peer;
-			this.start = Instant.now();
+			this.timeout = timeout;
 		}
 	}
 }
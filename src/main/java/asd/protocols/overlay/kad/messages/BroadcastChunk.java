@@ -0,0 +1,91 @@
+package asd.protocols.overlay.kad.messages;
+
+import asd.metrics.MetricsMessage;
+import asd.metrics.MetricsProtoMessage;
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.Kademlia;
+import asd.protocols.overlay.kad.TopicRegistry;
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * One erasure coded chunk of a broadcast payload. Any `data_chunks` of the `data_chunks + parity_chunks` chunks of a
+ * message rebuild its payload of `length` bytes.
+ */
+public class BroadcastChunk extends MetricsProtoMessage {
+	public static final short ID = Kademlia.ID + 26;
+	public static final ISerializer<BroadcastChunk> serializer = new ISerializer<BroadcastChunk>() {
+		@Override
+		public void serialize(BroadcastChunk t, ByteBuf out) throws IOException {
+			KadID.serializer.serialize(t.rtid, out);
+			out.writeLong(t.uuid.getMostSignificantBits());
+			out.writeLong(t.uuid.getLeastSignificantBits());
+			KadPeer.serializer.serialize(t.origin, out);
+			out.writeInt(t.hop_count);
+			out.writeInt(t.ceil);
+			out.writeInt(t.length);
+			out.writeShort(t.data_chunks);
+			out.writeShort(t.parity_chunks);
+			out.writeShort(t.index);
+			out.writeInt(t.chunk.length);
+			out.writeBytes(t.chunk);
+		}
+
+		@Override
+		public BroadcastChunk deserialize(ByteBuf in) throws IOException {
+			var rtid = KadID.serializer.deserialize(in);
+			var uuid = new UUID(in.readLong(), in.readLong());
+			var origin = KadPeer.serializer.deserialize(in);
+			var hop_count = in.readInt();
+			var ceil = in.readInt();
+			var length = in.readInt();
+			var data_chunks = in.readShort();
+			var parity_chunks = in.readShort();
+			var index = in.readShort();
+			var chunk = new byte[in.readInt()];
+			in.readBytes(chunk);
+			return new BroadcastChunk(rtid, uuid, origin, hop_count, ceil, length, data_chunks, parity_chunks, index,
+					chunk);
+		}
+	};
+	public final KadID rtid;
+	public final UUID uuid;
+	public final KadPeer origin;
+	public final int hop_count;
+	public final int ceil;
+	public final int length;
+	public final int data_chunks;
+	public final int parity_chunks;
+	public final int index;
+	public final byte[] chunk;
+
+	public BroadcastChunk(KadID rtid, UUID uuid, KadPeer origin, int hop_count, int ceil, int length, int data_chunks,
+			int parity_chunks, int index, byte[] chunk) {
+		super(ID);
+		this.rtid = rtid;
+		this.uuid = uuid;
+		this.origin = origin;
+		this.hop_count = hop_count;
+		this.ceil = ceil;
+		this.length = length;
+		this.data_chunks = data_chunks;
+		this.parity_chunks = parity_chunks;
+		this.index = index;
+		this.chunk = chunk;
+	}
+
+	@Override
+	public MetricsMessage serializeToMetric() {
+		return new MetricsMessage("BroadcastChunk")
+				.property("topic", TopicRegistry.lookup(rtid))
+				.property("message_id", uuid.toString())
+				.property("payload", chunk.length)
+				.property("index", index)
+				.property("ceil", ceil)
+				.property("hop_count", hop_count);
+	}
+}
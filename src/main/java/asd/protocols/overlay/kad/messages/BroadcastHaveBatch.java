@@ -0,0 +1,60 @@
+package asd.protocols.overlay.kad.messages;
+
+import asd.metrics.MetricsMessage;
+import asd.metrics.MetricsProtoMessage;
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.Kademlia;
+import asd.protocols.overlay.kad.TopicRegistry;
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Several {@link BroadcastHave} announcements for the same peer in a single message.
+ */
+public class BroadcastHaveBatch extends MetricsProtoMessage {
+	public static final short ID = Kademlia.ID + 25;
+	public static final ISerializer<BroadcastHaveBatch> serializer = new ISerializer<BroadcastHaveBatch>() {
+		@Override
+		public void serialize(BroadcastHaveBatch t, ByteBuf out) throws IOException {
+			out.writeInt(t.haves.size());
+			for (var have : t.haves) {
+				KadID.serializer.serialize(have.rtid(), out);
+				out.writeLong(have.uuid().getMostSignificantBits());
+				out.writeLong(have.uuid().getLeastSignificantBits());
+			}
+		}
+
+		@Override
+		public BroadcastHaveBatch deserialize(ByteBuf in) throws IOException {
+			var count = in.readInt();
+			var haves = new ArrayList<Entry>(count);
+			for (int i = 0; i < count; ++i) {
+				var rtid = KadID.serializer.deserialize(in);
+				haves.add(new Entry(rtid, new UUID(in.readLong(), in.readLong())));
+			}
+			return new BroadcastHaveBatch(haves);
+		}
+	};
+
+	public record Entry(KadID rtid, UUID uuid) {
+	}
+
+	public final List<Entry> haves;
+
+	public BroadcastHaveBatch(List<Entry> haves) {
+		super(ID);
+		this.haves = haves;
+	}
+
+	@Override
+	public MetricsMessage serializeToMetric() {
+		return new MetricsMessage("BroadcastHaveBatch")
+				.property("topics", this.haves.stream().map(h -> TopicRegistry.lookup(h.rtid())).toList())
+				.property("message_ids", this.haves.stream().map(h -> h.uuid().toString()).toList());
+	}
+}
@@ -9,36 +9,53 @@ import io.netty.buffer.ByteBuf;
 import pt.unl.fct.di.novasys.network.ISerializer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
+/**
+ * Asks a peer that sent us a Have for the messages of a topic we did not receive yet.
+ */
 public class BroadcastWant extends MetricsProtoMessage {
 	public static final short ID = Kademlia.ID + 23;
 	public static final ISerializer<BroadcastWant> serializer = new ISerializer<BroadcastWant>() {
 		@Override
 		public void serialize(BroadcastWant t, ByteBuf out) throws IOException {
 			KadID.serializer.serialize(t.rtid, out);
-			out.writeLong(t.uuid.getMostSignificantBits());
-			out.writeLong(t.uuid.getLeastSignificantBits());
+			out.writeInt(t.uuids.size());
+			for (var uuid : t.uuids) {
+				out.writeLong(uuid.getMostSignificantBits());
+				out.writeLong(uuid.getLeastSignificantBits());
+			}
 		}
 
 		@Override
 		public BroadcastWant deserialize(ByteBuf in) throws IOException {
-			return new BroadcastWant(KadID.serializer.deserialize(in), new UUID(in.readLong(), in.readLong()));
+			var rtid = KadID.serializer.deserialize(in);
+			var count = in.readInt();
+			var uuids = new ArrayList<UUID>(count);
+			for (int i = 0; i < count; ++i)
+				uuids.add(new UUID(in.readLong(), in.readLong()));
+			return new BroadcastWant(rtid, uuids);
 		}
 	};
 	public final KadID rtid;
-	public final UUID uuid;
+	public final List<UUID> uuids;
 
 	public BroadcastWant(KadID rtid, UUID uuid) {
+		this(rtid, List.of(uuid));
+	}
+
+	public BroadcastWant(KadID rtid, List<UUID> uuids) {
 		super(ID);
 		this.rtid = rtid;
-		this.uuid = uuid;
+		this.uuids = uuids;
 	}
 
 	@Override
 	public MetricsMessage serializeToMetric() {
 		return new MetricsMessage("BroadcastWant")
 				.property("topic", TopicRegistry.lookup(rtid))
-				.property("message_id", uuid.toString());
+				.property("message_ids", uuids.stream().map(UUID::toString).toList());
 	}
 }
@@ -0,0 +1,56 @@
+package asd.protocols.overlay.kad.messages;
+
+import asd.metrics.MetricsProtoMessage;
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.Kademlia;
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Several FindNodeRequests to the same peer in a single message, answered with a {@link FindNodeBatchResponse}.
+ */
+public class FindNodeBatchRequest extends MetricsProtoMessage {
+	public static final short ID = Kademlia.ID + 12;
+	public static final ISerializer<FindNodeBatchRequest> serializer = new ISerializer<FindNodeBatchRequest>() {
+		@Override
+		public void serialize(FindNodeBatchRequest m, ByteBuf out) throws IOException {
+			out.writeInt(m.entries.size());
+			for (var entry : m.entries) {
+				out.writeLong(entry.context());
+				KadID.serializer.serialize(entry.rtid(), out);
+				KadID.serializer.serialize(entry.target(), out);
+			}
+		}
+
+		@Override
+		public FindNodeBatchRequest deserialize(ByteBuf in) throws IOException {
+			var size = in.readInt();
+			var entries = new ArrayList<Entry>(size);
+			for (int i = 0; i < size; ++i) {
+				var context = in.readLong();
+				var rtid = KadID.serializer.deserialize(in);
+				var target = KadID.serializer.deserialize(in);
+				entries.add(new Entry(context, rtid, target));
+			}
+			return new FindNodeBatchRequest(entries);
+		}
+	};
+	public final List<Entry> entries;
+
+	public FindNodeBatchRequest(List<Entry> entries) {
+		super(ID);
+		this.entries = entries;
+	}
+
+	@Override
+	public String toString() {
+		return "FindNodeBatchRequest [entries=" + entries + "]";
+	}
+
+	public record Entry(long context, KadID rtid, KadID target) {
+	}
+}
@@ -0,0 +1,59 @@
+package asd.protocols.overlay.kad.messages;
+
+import asd.metrics.MetricsProtoMessage;
+import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.Kademlia;
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The closest peers for each target of a {@link FindNodeBatchRequest}, in the same order.
+ */
+public class FindNodeBatchResponse extends MetricsProtoMessage {
+	public static final short ID = Kademlia.ID + 13;
+	public static final ISerializer<FindNodeBatchResponse> serializer = new ISerializer<FindNodeBatchResponse>() {
+		@Override
+		public void serialize(FindNodeBatchResponse m, ByteBuf out) throws IOException {
+			out.writeInt(m.entries.size());
+			for (var entry : m.entries) {
+				out.writeLong(entry.context());
+				out.writeInt(entry.peers().size());
+				for (var peer : entry.peers())
+					KadPeer.serializer.serialize(peer, out);
+			}
+		}
+
+		@Override
+		public FindNodeBatchResponse deserialize(ByteBuf in) throws IOException {
+			var size = in.readInt();
+			var entries = new ArrayList<Entry>(size);
+			for (int i = 0; i < size; ++i) {
+				var context = in.readLong();
+				var npeers = in.readInt();
+				var peers = new ArrayList<KadPeer>(npeers);
+				for (int j = 0; j < npeers; ++j)
+					peers.add(KadPeer.serializer.deserialize(in));
+				entries.add(new Entry(context, peers));
+			}
+			return new FindNodeBatchResponse(entries);
+		}
+	};
+	public final List<Entry> entries;
+
+	public FindNodeBatchResponse(List<Entry> entries) {
+		super(ID);
+		this.entries = entries;
+	}
+
+	@Override
+	public String toString() {
+		return "FindNodeBatchResponse [entries=" + entries + "]";
+	}
+
+	public record Entry(long context, List<KadPeer> peers) {
+	}
+}
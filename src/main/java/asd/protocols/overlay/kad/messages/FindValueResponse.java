@@ -4,6 +4,8 @@ import asd.metrics.MetricsProtoMessage;
 import asd.protocols.overlay.kad.KadPeer;
 import asd.protocols.overlay.kad.Kademlia;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import pt.unl.fct.di.novasys.network.ISerializer;
 
 import java.io.IOException;
@@ -19,8 +21,9 @@ public class FindValueResponse extends MetricsProtoMessage {
 			out.writeLong(t.context);
 			out.writeBoolean(t.value.isPresent());
 			if (t.value.isPresent()) {
-				out.writeInt(t.value.get().length);
-				out.writeBytes(t.value.get());
+				var value = t.value.get();
+				out.writeInt(value.readableBytes());
+				out.writeBytes(value, value.readerIndex(), value.readableBytes());
 			}
 			out.writeInt(t.peers.size());
 			for (KadPeer peer : t.peers) {
@@ -32,12 +35,12 @@ public class FindValueResponse extends MetricsProtoMessage {
 		public FindValueResponse deserialize(ByteBuf in) throws IOException {
 			var context = in.readLong();
 			var hasValue = in.readBoolean();
-			Optional<byte[]> value = Optional.empty();
+			Optional<ByteBuf> value = Optional.empty();
 			if (hasValue) {
 				var valueLength = in.readInt();
 				var valueBytes = new byte[valueLength];
 				in.readBytes(valueBytes);
-				value = Optional.of(valueBytes);
+				value = Optional.of(Unpooled.wrappedBuffer(valueBytes));
 			}
 			var size = in.readInt();
 			var closest = new ArrayList<KadPeer>(size);
@@ -48,7 +51,10 @@ public class FindValueResponse extends MetricsProtoMessage {
 		}
 	};
 	public final long context;
-	public final Optional<byte[]> value;
+	/**
+	 * The value is only read when the message is serialized, it can be a view over a stored value instead of a copy.
+	 */
+	public final Optional<ByteBuf> value;
 	public final List<KadPeer> peers;
 
 	public FindValueResponse(long context, List<KadPeer> closest) {
@@ -56,16 +62,29 @@ public class FindValueResponse extends MetricsProtoMessage {
 	}
 
 	public FindValueResponse(long context, List<KadPeer> closest, byte[] value) {
-		this(context, closest, Optional.of(value));
+		this(context, closest, Optional.of(Unpooled.wrappedBuffer(value)));
 	}
 
-	public FindValueResponse(long context, List<KadPeer> closest, Optional<byte[]> value) {
+	public FindValueResponse(long context, List<KadPeer> closest, Optional<ByteBuf> value) {
 		super(ID);
 		this.context = context;
 		this.peers = closest;
 		this.value = value;
 	}
 
+	/**
+	 * @return The value as an array, received values are not copied again
+	 */
+	public Optional<byte[]> valueBytes() {
+		return this.value.map(value -> {
+			if (value.hasArray() && value.arrayOffset() == 0 && value.readerIndex() == 0
+					&& value.readableBytes() == value.array().length) {
+				return value.array();
+			}
+			return ByteBufUtil.getBytes(value);
+		});
+	}
+
 	@Override
 	public String toString() {
 		return "FindValueResponse{" +
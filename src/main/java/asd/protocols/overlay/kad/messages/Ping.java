@@ -0,0 +1,38 @@
+package asd.protocols.overlay.kad.messages;
+
+import asd.metrics.MetricsProtoMessage;
+import asd.protocols.overlay.kad.Kademlia;
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+import java.io.IOException;
+
+/**
+ * Liveness check sent to the least recently seen peer of a full bucket before it is evicted. Answered with a
+ * {@link Pong} carrying the same nonce.
+ */
+public class Ping extends MetricsProtoMessage {
+	public static final short ID = Kademlia.ID + 10;
+	public static final ISerializer<Ping> serializer = new ISerializer<Ping>() {
+		@Override
+		public void serialize(Ping t, ByteBuf out) throws IOException {
+			out.writeLong(t.nonce);
+		}
+
+		@Override
+		public Ping deserialize(ByteBuf in) throws IOException {
+			return new Ping(in.readLong());
+		}
+	};
+	public final long nonce;
+
+	public Ping(long nonce) {
+		super(ID);
+		this.nonce = nonce;
+	}
+
+	@Override
+	public String toString() {
+		return "Ping [nonce=" + nonce + "]";
+	}
+}
@@ -0,0 +1,34 @@
+package asd.protocols.overlay.kad.messages;
+
+import asd.metrics.MetricsProtoMessage;
+import asd.protocols.overlay.kad.Kademlia;
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+import java.io.IOException;
+
+public class Pong extends MetricsProtoMessage {
+	public static final short ID = Kademlia.ID + 11;
+	public static final ISerializer<Pong> serializer = new ISerializer<Pong>() {
+		@Override
+		public void serialize(Pong t, ByteBuf out) throws IOException {
+			out.writeLong(t.nonce);
+		}
+
+		@Override
+		public Pong deserialize(ByteBuf in) throws IOException {
+			return new Pong(in.readLong());
+		}
+	};
+	public final long nonce;
+
+	public Pong(long nonce) {
+		super(ID);
+		this.nonce = nonce;
+	}
+
+	@Override
+	public String toString() {
+		return "Pong [nonce=" + nonce + "]";
+	}
+}
@@ -0,0 +1,92 @@
+package asd.protocols.overlay.kad.query;
+
+import java.time.Duration;
+
+/**
+ * Picks how many requests each query path keeps in flight.
+ * <p>
+ * Keeps a fast and a slow moving average of the request round trip times and a moving average of the request failure
+ * rate, shared by every query. Once per `alpha` samples the parallelism is widened by one if requests are failing or
+ * the recent round trips are much slower than usual, and narrowed by one if responses are fast again. The result stays
+ * between the configured alpha and `max`, so with `max` equal to alpha nothing changes.
+ */
+class AlphaController {
+	private static final double FAST_GAIN = 0.25;
+	private static final double SLOW_GAIN = 0.02;
+	private static final double FAILURE_GAIN = 0.1;
+	// Failure rates above this widen, below LOW_FAILURE_RATE allow narrowing
+	private static final double HIGH_FAILURE_RATE = 0.1;
+	private static final double LOW_FAILURE_RATE = 0.02;
+	// How much slower than the long term average the recent round trips must be to widen
+	private static final double SLOW_RTT_FACTOR = 1.5;
+
+	private final int min;
+	private final int max;
+	private double rtt_fast;
+	private double rtt_slow;
+	private double failure_rate;
+	private int alpha;
+	private int samples;
+
+	public AlphaController(int alpha, int max) {
+		if (alpha < 1 || max < alpha) {
+			throw new IllegalArgumentException("alpha must be >= 1 and max must be >= alpha");
+		}
+		this.min = alpha;
+		this.max = max;
+		this.rtt_fast = Double.NaN;
+		this.rtt_slow = Double.NaN;
+		this.failure_rate = 0;
+		this.alpha = alpha;
+		this.samples = 0;
+	}
+
+	public int alpha() {
+		return this.alpha;
+	}
+
+	public int max() {
+		return this.max;
+	}
+
+	public boolean isAdaptive() {
+		return this.max > this.min;
+	}
+
+	public void onResponse(Duration rtt) {
+		var ms = rtt.toNanos() / 1_000_000.0;
+		if (Double.isNaN(this.rtt_fast)) {
+			this.rtt_fast = ms;
+			this.rtt_slow = ms;
+		} else {
+			this.rtt_fast += FAST_GAIN * (ms - this.rtt_fast);
+			this.rtt_slow += SLOW_GAIN * (ms - this.rtt_slow);
+		}
+		this.failure_rate -= FAILURE_GAIN * this.failure_rate;
+		this.adjust();
+	}
+
+	public void onFailure() {
+		this.failure_rate += FAILURE_GAIN * (1.0 - this.failure_rate);
+		this.adjust();
+	}
+
+	private void adjust() {
+		if (!this.isAdaptive()) {
+			return;
+		}
+		this.samples += 1;
+		if (this.samples < this.alpha) {
+			return;
+		}
+		this.samples = 0;
+
+		var slow_rtt = !Double.isNaN(this.rtt_fast) && this.rtt_fast > SLOW_RTT_FACTOR * this.rtt_slow;
+		if (this.failure_rate > HIGH_FAILURE_RATE || slow_rtt) {
+			this.alpha = Math.min(this.max, this.alpha + 1);
+		} else if (this.failure_rate < LOW_FAILURE_RATE
+				&& (Double.isNaN(this.rtt_fast) || this.rtt_fast <= this.rtt_slow)) {
+			this.alpha = Math.max(this.min, this.alpha - 1);
+		}
+	}
+}
@@ -3,6 +3,8 @@ package asd.protocols.overlay.kad.query;
 import asd.protocols.overlay.kad.KadID;
 import asd.protocols.overlay.kad.KadParams;
 import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.RttEstimator;
+import asd.protocols.overlay.kad.TimerWheel;
 import asd.protocols.overlay.kad.routing.RoutingTables;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -17,15 +19,22 @@ public class BasicQueryManager extends QueryManager {
 	private final KadParams kadparams;
 	private final RoutingTables rts;
 	private final KadID self;
-	private final QueryManagerIO qmio;
+	private final BatchingQueryManagerIO qmio;
+	private final AlphaController alpha;
+	private final RttEstimator rtt;
+	private final TimerWheel wheel;
 	private final HashMap<Long, Query> queries;
 	private long next_context;
 
-	public BasicQueryManager(KadParams kadparams, RoutingTables rts, KadID self, QueryManagerIO qmio) {
+	public BasicQueryManager(KadParams kadparams, RoutingTables rts, RttEstimator rtt, TimerWheel wheel, KadID self,
+	                         QueryManagerIO qmio) {
 		this.kadparams = kadparams;
 		this.rts = rts;
 		this.self = self;
-		this.qmio = qmio;
+		this.qmio = new BatchingQueryManagerIO(qmio, kadparams.query_batch_window, kadparams.query_batch_max);
+		this.alpha = new AlphaController(kadparams.alpha, kadparams.query_alpha_max);
+		this.rtt = rtt;
+		this.wheel = wheel;
 		this.queries = new HashMap<>();
 		this.next_context = 0;
 	}
@@ -115,23 +124,15 @@ public class BasicQueryManager extends QueryManager {
 	}
 
 	@Override
-	public void checkTimeouts() {
-		var iter = this.queries.entrySet().iterator();
-		while (iter.hasNext()) {
-			var entry = iter.next();
-			var query = entry.getValue();
-			query.checkTimeouts();
-			if (query.isFinished()) {
-				iter.remove();
-			}
-		}
+	public void flush() {
+		this.qmio.flush();
 	}
 
 	private void startQueryInternal(QueryDescriptor desc) {
 		var context = this.allocateContext();
 		var seeds = this.rts.closest(desc.getRtid(), desc.getTarget());
-		var qio = new QMQueryIO(this.qmio, context);
-		var query = desc.createQuery(qio, this.self, this.kadparams, seeds);
+		var qio = new QMQueryIO(this.qmio, context, this.wheel, () -> this.checkQueryFinished(context));
+		var query = desc.createQuery(qio, this.self, this.kadparams, this.alpha, this.rtt, seeds);
 		this.queries.put(context, query);
 
 		logger.info("Starting query {} with target {} and rtid {} and {} seeds", context, desc.getTarget(),
@@ -142,7 +143,7 @@ public class BasicQueryManager extends QueryManager {
 
 	private void checkQueryFinished(long context) {
 		var query = this.queries.get(context);
-		if (query.isFinished()) {
+		if (query != null && query.isFinished()) {
 			logger.info("Query " + context + " finished");
 			this.queries.remove(context);
 		}
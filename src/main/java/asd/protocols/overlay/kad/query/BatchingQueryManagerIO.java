@@ -0,0 +1,103 @@
+package asd.protocols.overlay.kad.query;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadPeer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Coalesces the FindNode requests that concurrent queries make to the same peer.
+ * <p>
+ * Requests are held until {@link #flush()} and a flush is scheduled when the first one is queued. Peers with a single
+ * queued request get a plain FindNodeRequest, peers with more get one batched request. A batch that reaches
+ * `max_batch` targets is sent right away. With `max_batch` <= 1 every request is sent immediately.
+ */
+class BatchingQueryManagerIO implements QueryManagerIO {
+	private final QueryManagerIO inner;
+	private final Duration window;
+	private final int max_batch;
+	private final LinkedHashMap<KadID, ArrayList<FindNodeTarget>> pending;
+	private boolean flush_scheduled;
+
+	public BatchingQueryManagerIO(QueryManagerIO inner, Duration window, int max_batch) {
+		this.inner = inner;
+		this.window = window;
+		this.max_batch = max_batch;
+		this.pending = new LinkedHashMap<>();
+		this.flush_scheduled = false;
+	}
+
+	public void flush() {
+		this.flush_scheduled = false;
+		if (this.pending.isEmpty()) {
+			return;
+		}
+		var pending = new ArrayList<>(this.pending.entrySet());
+		this.pending.clear();
+		for (var entry : pending)
+			this.send(entry.getKey(), entry.getValue());
+	}
+
+	@Override
+	public void discover(KadPeer peer) {
+		this.inner.discover(peer);
+	}
+
+	@Override
+	public void findNodeRequest(long context, KadID id, KadID rtid, KadID target) {
+		if (this.max_batch <= 1) {
+			this.inner.findNodeRequest(context, id, rtid, target);
+			return;
+		}
+
+		var batch = this.pending.computeIfAbsent(id, k -> new ArrayList<>());
+		batch.add(new FindNodeTarget(context, rtid, target));
+		if (batch.size() >= this.max_batch) {
+			this.pending.remove(id);
+			this.send(id, batch);
+			return;
+		}
+
+		if (!this.flush_scheduled) {
+			this.flush_scheduled = true;
+			this.inner.scheduleFlush(this.window);
+		}
+	}
+
+	@Override
+	public void findNodeRequests(KadID id, List<FindNodeTarget> targets) {
+		this.inner.findNodeRequests(id, targets);
+	}
+
+	@Override
+	public void findValueRequest(long context, KadID id, KadID key) {
+		this.inner.findValueRequest(context, id, key);
+	}
+
+	@Override
+	public void findSwarmRequest(long context, KadID id, KadID swarm) {
+		this.inner.findSwarmRequest(context, id, swarm);
+	}
+
+	@Override
+	public void findPoolRequest(long context, KadID id, KadID pool) {
+		this.inner.findPoolRequest(context, id, pool);
+	}
+
+	@Override
+	public void scheduleFlush(Duration delay) {
+		this.inner.scheduleFlush(delay);
+	}
+
+	private void send(KadID id, List<FindNodeTarget> batch) {
+		if (batch.size() == 1) {
+			var request = batch.get(0);
+			this.inner.findNodeRequest(request.context(), id, request.rtid(), request.target());
+		} else {
+			this.inner.findNodeRequests(id, List.copyOf(batch));
+		}
+	}
+}
@@ -169,8 +169,8 @@ public class CachedQueryManager extends QueryManager {
 	}
 
 	@Override
-	public void checkTimeouts() {
-		this.inner.checkTimeouts();
+	public void flush() {
+		this.inner.flush();
 	}
 
 	private CacheEntry getOrCreateEntry(Object key) {
@@ -3,6 +3,7 @@ package asd.protocols.overlay.kad.query;
 import asd.protocols.overlay.kad.KadID;
 import asd.protocols.overlay.kad.KadParams;
 import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.RttEstimator;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -14,9 +15,10 @@ class FindClosestQuery extends Query {
 	private final KadID rtid;
 	private final FindClosestQueryCallbacks callbacks;
 
-	public FindClosestQuery(QueryIO qio, KadID self, KadParams kadparams, KadID target, List<KadPeer> seeds,
+	public FindClosestQuery(QueryIO qio, KadID self, KadParams kadparams, AlphaController alpha,
+	                        RttEstimator rtt, KadID target, List<KadPeer> seeds,
 	                        FindClosestQueryDescriptor descriptor) {
-		super(qio, self, kadparams, target, seeds);
+		super(qio, self, kadparams, alpha, rtt, QueryType.CLOSEST, target, seeds);
 		this.rtid = descriptor.rtid;
 		this.callbacks = descriptor.callbacks;
 	}
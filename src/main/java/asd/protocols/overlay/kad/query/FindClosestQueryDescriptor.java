@@ -3,6 +3,7 @@ package asd.protocols.overlay.kad.query;
 import asd.protocols.overlay.kad.KadID;
 import asd.protocols.overlay.kad.KadParams;
 import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.RttEstimator;
 
 import java.util.List;
 
@@ -28,8 +29,9 @@ public class FindClosestQueryDescriptor implements QueryDescriptor {
 	}
 
 	@Override
-	public Query createQuery(QueryIO qio, KadID self, KadParams kadparams, List<KadPeer> seeds) {
-		var query = new FindClosestQuery(qio, self, kadparams, this.target, seeds, this);
+	public Query createQuery(QueryIO qio, KadID self, KadParams kadparams, AlphaController alpha,
+	                         RttEstimator rtt, List<KadPeer> seeds) {
+		var query = new FindClosestQuery(qio, self, kadparams, alpha, rtt, this.target, seeds, this);
 		return query;
 	}
 }
@@ -0,0 +1,9 @@
+package asd.protocols.overlay.kad.query;
+
+import asd.protocols.overlay.kad.KadID;
+
+/**
+ * A single FindNode request of a query, used when several are sent to the same peer at once.
+ */
+public record FindNodeTarget(long context, KadID rtid, KadID target) {
+}
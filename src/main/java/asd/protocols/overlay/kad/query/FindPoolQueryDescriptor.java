@@ -3,6 +3,7 @@ package asd.protocols.overlay.kad.query;
 import asd.protocols.overlay.kad.KadID;
 import asd.protocols.overlay.kad.KadParams;
 import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.RttEstimator;
 
 import java.util.List;
 import java.util.Optional;
@@ -29,7 +30,8 @@ public class FindPoolQueryDescriptor implements QueryDescriptor {
 	}
 
 	@Override
-	public Query createQuery(QueryIO qio, KadID self, KadParams kadparams, List<KadPeer> seeds) {
-		return new FindPoolQuery(qio, self, kadparams, this.target_rtid, seeds, this);
+	public Query createQuery(QueryIO qio, KadID self, KadParams kadparams, AlphaController alpha,
+	                         RttEstimator rtt, List<KadPeer> seeds) {
+		return new FindPoolQuery(qio, self, kadparams, alpha, rtt, this.target_rtid, seeds, this);
 	}
 }
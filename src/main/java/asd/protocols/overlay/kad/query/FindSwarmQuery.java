@@ -3,6 +3,7 @@ package asd.protocols.overlay.kad.query;
 import asd.protocols.overlay.kad.KadID;
 import asd.protocols.overlay.kad.KadParams;
 import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.RttEstimator;
 
 import java.util.HashSet;
 import java.util.List;
@@ -12,9 +13,10 @@ class FindSwarmQuery extends Query {
 	private final HashSet<KadID> members;
 	private final int sample_size;
 
-	public FindSwarmQuery(QueryIO qio, KadID self, KadParams kadparams, KadID swarm, List<KadPeer> seeds,
+	public FindSwarmQuery(QueryIO qio, KadID self, KadParams kadparams, AlphaController alpha,
+	                      RttEstimator rtt, KadID swarm, List<KadPeer> seeds,
 	                      FindSwarmQueryDescriptor descriptor) {
-		super(qio, self, kadparams, swarm, seeds);
+		super(qio, self, kadparams, alpha, rtt, QueryType.SWARM, swarm, seeds);
 		this.callbacks = descriptor.callbacks;
 		this.members = new HashSet<>();
 		this.sample_size = descriptor.sample_size.orElse(kadparams.k);
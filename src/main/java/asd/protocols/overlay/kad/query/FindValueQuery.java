@@ -3,6 +3,7 @@ package asd.protocols.overlay.kad.query;
 import asd.protocols.overlay.kad.KadID;
 import asd.protocols.overlay.kad.KadParams;
 import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.RttEstimator;
 
 import java.util.List;
 import java.util.Optional;
@@ -13,9 +14,10 @@ class FindValueQuery extends Query {
 	private KadID provider;
 	private Optional<byte[]> value;
 
-	public FindValueQuery(QueryIO qio, KadID self, KadParams kadparams, KadID target, List<KadPeer> seeds,
+	public FindValueQuery(QueryIO qio, KadID self, KadParams kadparams, AlphaController alpha,
+	                      RttEstimator rtt, KadID target, List<KadPeer> seeds,
 	                      FindValueQueryDescriptor descriptor) {
-		super(qio, self, kadparams, target, seeds);
+		super(qio, self, kadparams, alpha, rtt, QueryType.VALUE, target, seeds);
 		this.callbacks = descriptor.callbacks;
 		this.provider = null;
 		this.value = Optional.empty();
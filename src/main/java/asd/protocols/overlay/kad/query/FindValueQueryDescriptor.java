@@ -3,6 +3,7 @@ package asd.protocols.overlay.kad.query;
 import asd.protocols.overlay.kad.KadID;
 import asd.protocols.overlay.kad.KadParams;
 import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.RttEstimator;
 
 import java.util.List;
 
@@ -26,7 +27,8 @@ public class FindValueQueryDescriptor implements QueryDescriptor {
 	}
 
 	@Override
-	public Query createQuery(QueryIO qio, KadID self, KadParams kadparams, List<KadPeer> seeds) {
-		return new FindValueQuery(qio, self, kadparams, this.key, seeds, this);
+	public Query createQuery(QueryIO qio, KadID self, KadParams kadparams, AlphaController alpha,
+	                         RttEstimator rtt, List<KadPeer> seeds) {
+		return new FindValueQuery(qio, self, kadparams, alpha, rtt, this.key, seeds, this);
 	}
 }
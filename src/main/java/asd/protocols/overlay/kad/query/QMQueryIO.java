@@ -2,14 +2,22 @@ package asd.protocols.overlay.kad.query;
 
 import asd.protocols.overlay.kad.KadID;
 import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.TimerWheel;
+
+import java.time.Duration;
 
 class QMQueryIO implements QueryIO {
 	private final QueryManagerIO qmio;
 	private final long context;
+	private final TimerWheel wheel;
+	// Runs after every scheduled task, lets the manager notice the query finished
+	private final Runnable after_task;
 
-	public QMQueryIO(QueryManagerIO qmio, long context) {
+	public QMQueryIO(QueryManagerIO qmio, long context, TimerWheel wheel, Runnable after_task) {
 		this.qmio = qmio;
 		this.context = context;
+		this.wheel = wheel;
+		this.after_task = after_task;
 	}
 
 	@Override
@@ -36,4 +44,12 @@ class QMQueryIO implements QueryIO {
 	public void findPoolRequest(KadID id, KadID pool) {
 		this.qmio.findPoolRequest(this.context, id, pool);
 	}
+
+	@Override
+	public TimerWheel.Timeout schedule(Runnable task, Duration delay) {
+		return this.wheel.schedule(() -> {
+			task.run();
+			this.after_task.run();
+		}, delay);
+	}
 }
@@ -2,6 +2,7 @@ package asd.protocols.overlay.kad.query;
 
 import asd.protocols.overlay.kad.KadDistance;
 import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.RttEstimator;
 
 import java.util.HashMap;
 import java.util.List;
@@ -16,12 +17,25 @@ class QPeerSet {
 	private final int k;
 	private final KadID target;
 	private final HashMap<KadID, Key> keys;
+	private final RttEstimator rtt;
+	private final int window;
 	private int inprogress;
+
 	public QPeerSet(int k, KadID target) {
+		this(k, target, null, 1);
+	}
+
+	/**
+	 * @param rtt    The round trip estimates used to rank candidates, can be null
+	 * @param window How many of the closest pending peers are ranked by expected round trip, 1 picks the closest
+	 */
+	public QPeerSet(int k, KadID target, RttEstimator rtt, int window) {
 		this.k = k;
 		this.target = target;
 		this.keys = new HashMap<>();
 		this.peers = new TreeMap<>();
+		this.rtt = rtt;
+		this.window = window;
 		this.inprogress = 0;
 	}
 
@@ -60,6 +74,24 @@ class QPeerSet {
 		}
 	}
 
+	/**
+	 * Adds the peers of another set for the same target, keeping their states. Peers already in this set are skipped.
+	 */
+	public void addAll(QPeerSet other) {
+		assert this.target.equals(other.target);
+		for (var entry : other.peers.entrySet()) {
+			var key = entry.getKey();
+			if (this.contains(key.id)) {
+				continue;
+			}
+			this.keys.put(key.id, key);
+			this.peers.put(key, entry.getValue());
+			if (entry.getValue() == State.INPROGRESS) {
+				this.inprogress += 1;
+			}
+		}
+	}
+
 	public boolean contains(KadID id) {
 		return this.keys.containsKey(id);
 	}
@@ -89,9 +121,38 @@ class QPeerSet {
 				.count();
 	}
 
+	/**
+	 * @return The pending peer with the lowest expected round trip among the `window` closest pending peers, the
+	 *         closest one on ties. Only the k closest peers are considered.
+	 */
 	public KadID getCandidate() {
-		return this.peers.entrySet().stream().limit(this.k).filter(entry -> entry.getValue() == State.PENDING)
-				.findFirst().map(entry -> entry.getKey().id).orElse(null);
+		if (this.rtt == null || this.window <= 1) {
+			return this.peers.entrySet().stream().limit(this.k).filter(entry -> entry.getValue() == State.PENDING)
+					.findFirst().map(entry -> entry.getKey().id).orElse(null);
+		}
+
+		KadID best = null;
+		var best_rtt = Double.POSITIVE_INFINITY;
+		var visited = 0;
+		var ranked = 0;
+		for (var entry : this.peers.entrySet()) {
+			if (visited++ == this.k) {
+				break;
+			}
+			if (entry.getValue() != State.PENDING) {
+				continue;
+			}
+			var id = entry.getKey().id;
+			var expected = this.rtt.expected(id);
+			if (best == null || expected < best_rtt) {
+				best = id;
+				best_rtt = expected;
+			}
+			if (++ranked == this.window) {
+				break;
+			}
+		}
+		return best;
 	}
 
 	public Stream<Entry<KadID, State>> stream() {
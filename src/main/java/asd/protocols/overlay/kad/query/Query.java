@@ -1,37 +1,74 @@
 package asd.protocols.overlay.kad.query;
 
+import asd.metrics.Metrics;
 import asd.metrics.Profiling;
 import asd.protocols.overlay.kad.KadID;
 import asd.protocols.overlay.kad.KadParams;
 import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.RttEstimator;
+import asd.protocols.overlay.kad.TimerWheel;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * An iterative lookup.
+ * <p>
+ * The lookup runs over one or more paths, each with its own {@link QPeerSet}. Query types listed in
+ * `kad_query_disjoint` use `kad_query_paths` disjoint paths, as in S/Kademlia: the seeds are dealt between the paths
+ * and a peer is only ever queried by the path that first learned about it, so a few malicious or dead peers cannot
+ * stall every path. Every other query uses a single path. Each path keeps up to {@link AlphaController#alpha()}
+ * requests in flight and the query finishes when every path runs out of candidates.
+ * <p>
+ * Request round trips feed the shared {@link RttEstimator}. A request times out after the estimated timeout of its
+ * peer instead of the global `kad_query_request_timeout`, the timeouts are registered with the shared
+ * {@link TimerWheel}. With `kad_query_rtt_window` > 1 the paths prefer the peers expected to answer faster among
+ * their closest candidates.
+ */
 abstract class Query {
 	private static final Logger logger = LogManager.getLogger(Query.class);
 	private final QueryIO qio;
 	private final KadID self;
 	private final KadParams kadparams;
+	private final AlphaController alpha;
+	private final RttEstimator rtt;
+	private final QueryType type;
 	private final KadID target;
-	private final QPeerSet peers;
-	private final ArrayList<ActiveRequest> active_requests;
+	private final Path[] paths;
+	// The path each known peer belongs to
+	private final HashMap<KadID, Path> owners;
+	// Number of hops from us to each known peer, seeds are at hop 1
+	private final HashMap<KadID, Integer> hops;
+	private final Instant start;
+	private int max_hops;
 	private boolean finished;
 
-	Query(QueryIO qio, KadID self, KadParams kadparams, KadID target, List<KadPeer> seeds) {
+	Query(QueryIO qio, KadID self, KadParams kadparams, AlphaController alpha, RttEstimator rtt, QueryType type,
+	      KadID target, List<KadPeer> seeds) {
 		this.qio = qio;
 		this.self = self;
 		this.kadparams = kadparams;
+		this.alpha = alpha;
+		this.rtt = rtt;
+		this.type = type;
 		this.target = target;
-		this.peers = new QPeerSet(this.kadparams.k, target);
+		this.paths = new Path[kadparams.query_disjoint.contains(type) ? kadparams.query_paths : 1];
+		for (int i = 0; i < this.paths.length; ++i)
+			this.paths[i] = new Path(new QPeerSet(this.kadparams.k, target, rtt, kadparams.query_rtt_window));
+		this.owners = new HashMap<>();
+		this.hops = new HashMap<>();
+		this.start = Instant.now();
+		this.max_hops = 0;
 		this.finished = false;
-		this.active_requests = new ArrayList<>();
 
-		this.addExtraPeers(seeds);
+		for (int i = 0; i < seeds.size(); ++i)
+			this.addExtraPeer(this.paths[i % this.paths.length], seeds.get(i), 1);
 	}
 
 	public final void start() {
@@ -47,158 +84,167 @@ abstract class Query {
 	abstract void onFinish(QPeerSet set);
 
 	protected void onFindNodeResponse(KadID from, List<KadPeer> closest) {
-		if (!(this.peers.isInState(from, QPeerSet.State.INPROGRESS)
-				|| this.peers.isInState(from, QPeerSet.State.FAILED))) {
-			throw new IllegalStateException("Received FindNodeResponse from peer that was not requested: " + from
-					+ ". Peer state is " + this.peers.getState(from));
-		}
-		if (this.isFinished() || this.peers.isInState(from, QPeerSet.State.FAILED)) {
-			return;
-		}
-		this.peers.markFinished(from);
-		this.removeActiveRequest(from);
-		this.addExtraPeers(closest);
-		this.makeRequests();
+		this.onResponse("FindNodeResponse", from, closest);
 	}
 
 	protected void onFindValueResponse(KadID from, List<KadPeer> closest, Optional<byte[]> value) {
-		if (!(this.peers.isInState(from, QPeerSet.State.INPROGRESS)
-				|| this.peers.isInState(from, QPeerSet.State.FAILED))) {
-			throw new IllegalStateException("Received FindValueResponse from peer that was not requested: " + from
-					+ ". Peer state is " + this.peers.getState(from));
-		}
-		if (this.isFinished() || this.peers.isInState(from, QPeerSet.State.FAILED)) {
-			return;
-		}
-		this.peers.markFinished(from);
-		this.removeActiveRequest(from);
-		this.addExtraPeers(closest);
-		this.makeRequests();
+		this.onResponse("FindValueResponse", from, closest);
 	}
 
 	protected void onFindSwarmResponse(KadID from, List<KadPeer> closest, List<KadPeer> members) {
-		if (!(this.peers.isInState(from, QPeerSet.State.INPROGRESS)
-				|| this.peers.isInState(from, QPeerSet.State.FAILED))) {
-			throw new IllegalStateException("Received FindSwarmResponse from peer that was not requested: " + from
-					+ ". Peer state is " + this.peers.getState(from));
-		}
-		if (this.isFinished() || this.peers.isInState(from, QPeerSet.State.FAILED)) {
-			return;
-		}
-		this.peers.markFinished(from);
-		this.removeActiveRequest(from);
-		this.addExtraPeers(closest);
-		this.makeRequests();
+		this.onResponse("FindSwarmResponse", from, closest);
 	}
 
 	protected void onFindPoolResponse(KadID from, List<KadPeer> closest, List<KadPeer> members) {
-		if (!(this.peers.isInState(from, QPeerSet.State.INPROGRESS)
-				|| this.peers.isInState(from, QPeerSet.State.FAILED))) {
-			throw new IllegalStateException("Received FindPoolResponse from peer that was not requested: " + from
-					+ ". Peer state is " + this.peers.getState(from));
-		}
-		if (this.isFinished() || this.peers.isInState(from, QPeerSet.State.FAILED)) {
-			return;
-		}
-		this.peers.markFinished(from);
-		this.removeActiveRequest(from);
-		this.addExtraPeers(closest);
-		this.makeRequests();
+		this.onResponse("FindPoolResponse", from, closest);
 	}
 
 	final void onPeerError(KadID peer) {
 		if (this.isFinished()) {
 			return;
 		}
-		if (!this.peers.contains(peer)) {
+		var path = this.owners.get(peer);
+		if (path == null) {
 			return;
 		}
-		if (this.peers.isInState(peer, QPeerSet.State.FINISHED) || this.peers.isInState(peer, QPeerSet.State.FAILED)) {
+		if (path.peers.isInState(peer, QPeerSet.State.FINISHED) || path.peers.isInState(peer, QPeerSet.State.FAILED)) {
 			return;
 		}
 		logger.warn("Peer {} failed", peer);
-		this.removeActiveRequest(peer);
-		this.peers.markFailed(peer);
+		if (path.peers.isInState(peer, QPeerSet.State.INPROGRESS)) {
+			path.removeActiveRequest(peer);
+			this.alpha.onFailure();
+			this.rtt.failure(peer);
+		}
+		path.peers.markFailed(peer);
 		this.makeRequests();
 	}
 
-	final void checkTimeouts() {
-		if (this.isFinished()) {
-			return;
-		}
+	protected final void finish() {
+		assert !this.finished;
+		this.finished = true;
+		for (var path : this.paths)
+			path.cancelTimeouts();
 
-		var timedout = new ArrayList<KadID>();
-		var now = Instant.now();
+		var name = "query_" + this.type.metricName() + (this.paths.length > 1 ? "_disjoint" : "");
+		Metrics.span(name, Duration.between(this.start, Instant.now()).toNanos() / 1_000_000_000.0);
+		Metrics.queryHops(name, this.max_hops);
 
-		for (var req : this.active_requests) {
-			if (req.start.plus(this.kadparams.query_request_timeout).isBefore(now)) {
-				timedout.add(req.peer);
-			}
+		if (this.paths.length == 1) {
+			this.onFinish(this.paths[0].peers);
+		} else {
+			var merged = new QPeerSet(this.kadparams.k, this.target);
+			for (var path : this.paths)
+				merged.addAll(path.peers);
+			this.onFinish(merged);
 		}
+	}
 
-		for (var peer : timedout) {
-			logger.warn("Peer {} timed out in {}", peer, this.getClass().getName());
-			this.onPeerError(peer);
-		}
+	private void onRequestTimeout(KadID peer) {
+		logger.warn("Peer {} timed out in {}", peer, this.getClass().getName());
+		this.onPeerError(peer);
 	}
 
-	protected final void finish() {
-		assert !this.finished;
-		this.finished = true;
-		this.onFinish(this.peers);
+	private void onResponse(String kind, KadID from, List<KadPeer> closest) {
+		var path = this.owners.get(from);
+		if (path == null || !(path.peers.isInState(from, QPeerSet.State.INPROGRESS)
+				|| path.peers.isInState(from, QPeerSet.State.FAILED))) {
+			throw new IllegalStateException("Received " + kind + " from peer that was not requested: " + from
+					+ ". Peer state is " + (path == null ? null : path.peers.getState(from)));
+		}
+		if (this.isFinished() || path.peers.isInState(from, QPeerSet.State.FAILED)) {
+			return;
+		}
+		path.peers.markFinished(from);
+		var request = path.removeActiveRequest(from);
+		var elapsed = Duration.between(request.start, Instant.now());
+		this.rtt.sample(from, elapsed);
+		this.alpha.onResponse(elapsed);
+
+		var hop = this.hops.get(from);
+		this.max_hops = Math.max(this.max_hops, hop);
+		for (var peer : closest)
+			this.addExtraPeer(path, peer, hop + 1);
+		this.makeRequests();
 	}
 
 	private void makeRequests() {
 		assert !this.isFinished();
 
-		while (this.peers.getNumInProgress() < this.kadparams.alpha && this.peers.getNumCandidates() > 0) {
-			var candidate = this.peers.getCandidate();
-			assert candidate != null;
-			this.peers.markInProgress(candidate);
-			this.addActiveRequest(candidate);
-			this.request(this.qio, candidate, this.target);
+		var alpha = this.alpha.alpha();
+		var idle = true;
+		for (var path : this.paths) {
+			while (path.peers.getNumInProgress() < alpha && path.peers.getNumCandidates() > 0) {
+				var candidate = path.peers.getCandidate();
+				assert candidate != null;
+				path.peers.markInProgress(candidate);
+				path.addActiveRequest(candidate);
+				this.request(this.qio, candidate, this.target);
+			}
+			idle = idle && path.peers.getNumInProgress() == 0 && path.peers.getNumCandidates() == 0;
 		}
 
-		if (this.peers.getNumInProgress() == 0 && this.peers.getNumCandidates() == 0) {
+		if (idle) {
 			this.finish();
 		}
 	}
 
-	private void addExtraPeers(List<KadPeer> peers) {
-		for (var peer : peers) {
-			if (!peer.id.equals(this.self)) {
-				this.qio.discover(peer);
-				this.peers.add(peer.id);
-			}
+	private void addExtraPeer(Path path, KadPeer peer, int hop) {
+		if (peer.id.equals(this.self)) {
+			return;
+		}
+		this.qio.discover(peer);
+		// Peers already known by another path are left to that path to keep the paths disjoint
+		if (this.owners.putIfAbsent(peer.id, path) == null) {
+			this.hops.put(peer.id, hop);
+			path.peers.add(peer.id);
 		}
 	}
 
-	private void addActiveRequest(KadID peer) {
-		assert this.active_requests.size() <= this.kadparams.alpha;
-		this.active_requests.add(new ActiveRequest(peer));
-	}
+	private final class Path {
+		private final QPeerSet peers;
+		private final ArrayList<ActiveRequest> active_requests;
+
+		private Path(QPeerSet peers) {
+			this.peers = peers;
+			this.active_requests = new ArrayList<>();
+		}
 
-	private void removeActiveRequest(KadID peer) {
-		assert this.active_requests.size() <= this.kadparams.alpha;
-		var removed = this.active_requests.removeIf(r -> {
-			if (r.peer.equals(peer)) {
-				r.close();
-				return true;
-			} else {
-				return false;
+		private void addActiveRequest(KadID peer) {
+			assert this.active_requests.size() <= Query.this.alpha.max();
+			var timeout = Query.this.qio.schedule(() -> Query.this.onRequestTimeout(peer), Query.this.rtt.rto(peer));
+			this.active_requests.add(new ActiveRequest(peer, timeout));
+		}
+
+		private ActiveRequest removeActiveRequest(KadID peer) {
+			for (int i = 0; i < this.active_requests.size(); ++i) {
+				var request = this.active_requests.get(i);
+				if (request.peer.equals(peer)) {
+					this.active_requests.remove(i);
+					request.timeout.cancel();
+					request.close();
+					return request;
+				}
 			}
-		});
-		assert removed;
+			throw new IllegalStateException("No active request for peer " + peer);
+		}
+
+		private void cancelTimeouts() {
+			for (var request : this.active_requests)
+				request.timeout.cancel();
+		}
 	}
 
 	private static class ActiveRequest implements AutoCloseable {
 		public final KadID peer;
 		public final Instant start;
+		public final TimerWheel.Timeout timeout;
 		public final Profiling.Span span;
 
-		public ActiveRequest(KadID peer) {
+		public ActiveRequest(KadID peer, TimerWheel.Timeout timeout) {
 			this.peer = peer;
 			this.start = Instant.now();
+			this.timeout = timeout;
 			this.span = Profiling.span("query");
 		}
 
@@ -207,4 +253,4 @@ abstract class Query {
 			this.span.close();
 		}
 	}
-}
\ No newline at end of file
+}
@@ -3,6 +3,7 @@ package asd.protocols.overlay.kad.query;
 import asd.protocols.overlay.kad.KadID;
 import asd.protocols.overlay.kad.KadParams;
 import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.RttEstimator;
 
 import java.util.List;
 
@@ -11,5 +12,6 @@ interface QueryDescriptor {
 
 	KadID getTarget();
 
-	Query createQuery(QueryIO qio, KadID self, KadParams kadparams, List<KadPeer> seeds);
+	Query createQuery(QueryIO qio, KadID self, KadParams kadparams, AlphaController alpha, RttEstimator rtt,
+	                  List<KadPeer> seeds);
 }
@@ -2,6 +2,9 @@ package asd.protocols.overlay.kad.query;
 
 import asd.protocols.overlay.kad.KadID;
 import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.TimerWheel;
+
+import java.time.Duration;
 
 public interface QueryIO {
 	void discover(KadPeer peer);
@@ -13,4 +16,9 @@ public interface QueryIO {
 	void findSwarmRequest(KadID id, KadID swarm);
 
 	void findPoolRequest(KadID id, KadID pool);
+
+	/**
+	 * Runs `task` after `delay`, used for request timeouts.
+	 */
+	TimerWheel.Timeout schedule(Runnable task, Duration delay);
 }
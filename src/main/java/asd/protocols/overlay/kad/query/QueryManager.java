@@ -49,5 +49,8 @@ public abstract class QueryManager {
 
 	public abstract void onPeerError(long context, KadID peer);
 
-	public abstract void checkTimeouts();
+	/**
+	 * Sends the FindNode requests that were held back to be batched.
+	 */
+	public abstract void flush();
 }
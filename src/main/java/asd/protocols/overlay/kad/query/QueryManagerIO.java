@@ -3,14 +3,28 @@ package asd.protocols.overlay.kad.query;
 import asd.protocols.overlay.kad.KadID;
 import asd.protocols.overlay.kad.KadPeer;
 
+import java.time.Duration;
+import java.util.List;
+
 public interface QueryManagerIO {
 	void discover(KadPeer peer);
 
 	void findNodeRequest(long context, KadID id, KadID rtid, KadID target);
 
+	/**
+	 * Sends several FindNode requests to the same peer in one message.
+	 */
+	void findNodeRequests(KadID id, List<FindNodeTarget> targets);
+
 	void findValueRequest(long context, KadID id, KadID key);
 
 	void findSwarmRequest(long context, KadID id, KadID swarm);
 
 	void findPoolRequest(long context, KadID id, KadID pool);
+
+	/**
+	 * Requests a call to {@link QueryManager#flush()} after `delay`. A delay of zero means as soon as the current
+	 * event has been handled.
+	 */
+	void scheduleFlush(Duration delay);
 }
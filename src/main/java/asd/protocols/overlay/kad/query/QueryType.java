@@ -0,0 +1,28 @@
+package asd.protocols.overlay.kad.query;
+
+import java.util.EnumSet;
+
+public enum QueryType {
+	CLOSEST,
+	VALUE,
+	SWARM,
+	POOL;
+
+	/**
+	 * Parses a comma separated list of query types, like `closest,value`.
+	 */
+	public static EnumSet<QueryType> parseList(String list) {
+		var types = EnumSet.noneOf(QueryType.class);
+		for (var name : list.split(",")) {
+			name = name.trim();
+			if (!name.isEmpty()) {
+				types.add(QueryType.valueOf(name.toUpperCase()));
+			}
+		}
+		return types;
+	}
+
+	public String metricName() {
+		return this.name().toLowerCase();
+	}
+}
@@ -3,27 +3,45 @@ package asd.protocols.overlay.kad.routing;
 import asd.protocols.overlay.kad.KadID;
 import asd.protocols.overlay.kad.KadPeer;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.function.ToLongFunction;
 import java.util.stream.Stream;
 
+/**
+ * A k-bucket.
+ * <p>
+ * Peers are kept in least-recently-seen order, the head of the bucket is the peer we heard from the longest time ago
+ * and the tail is the peer we heard from last. Peers that do not fit in a full bucket go to a replacement cache of the
+ * same size, the most recently seen replacement takes the place of a peer that is removed.
+ */
 public class Bucket implements Iterable<KadPeer> {
 	private final KadPeer[] peers;
+	private final ArrayDeque<KadPeer> replacements;
 	private int size;
 
 	public Bucket(int k) {
 		this.peers = new KadPeer[k];
+		this.replacements = new ArrayDeque<>();
 		this.size = 0;
 	}
 
+	/**
+	 * Adds a peer to the tail of the bucket. If the peer is already in the bucket it is moved to the tail instead.
+	 *
+	 * @return True if the peer was not in the bucket and there was room for it
+	 */
 	public boolean add(KadPeer peer) {
-		if (this.isFull()) {
-			return false;
-		}
 		var index = this.findPeerIndex(peer.id);
 		if (index != -1) {
+			this.moveToTail(index);
+			return false;
+		}
+		if (this.isFull()) {
 			return false;
 		}
+		this.removeReplacement(peer.id);
 		this.peers[this.size] = peer;
 		this.size += 1;
 		return true;
@@ -34,7 +52,46 @@ public class Bucket implements Iterable<KadPeer> {
 	}
 
 	/**
-	 * Perform a swap-remove on `index`.
+	 * Moves a peer to the tail of the bucket.
+	 *
+	 * @return True if the peer is in the bucket
+	 */
+	public boolean seen(KadID id) {
+		var index = this.findPeerIndex(id);
+		if (index == -1) {
+			return false;
+		}
+		this.moveToTail(index);
+		return true;
+	}
+
+	/**
+	 * @return The least recently seen peer, null if the bucket is empty
+	 */
+	public KadPeer head() {
+		return this.size == 0 ? null : this.peers[0];
+	}
+
+	/**
+	 * @param last_seen When each peer was last seen, lower is longer ago
+	 * @return The peer seen the longest time ago by `last_seen`, the one closest to the head on ties, null if the
+	 *         bucket is empty
+	 */
+	public KadPeer stalest(ToLongFunction<KadPeer> last_seen) {
+		KadPeer stalest = null;
+		var oldest = Long.MAX_VALUE;
+		for (int i = 0; i < this.size; ++i) {
+			var seen = last_seen.applyAsLong(this.peers[i]);
+			if (stalest == null || seen < oldest) {
+				stalest = this.peers[i];
+				oldest = seen;
+			}
+		}
+		return stalest;
+	}
+
+	/**
+	 * Remove the peer at `index`, keeping the order of the remaining peers.
 	 *
 	 * @param index Index of the peer to remove
 	 * @return The peer at `index`
@@ -44,7 +101,7 @@ public class Bucket implements Iterable<KadPeer> {
 			throw new IndexOutOfBoundsException();
 		}
 		var peer = this.peers[index];
-		this.peers[index] = this.peers[this.size - 1];
+		System.arraycopy(this.peers, index + 1, this.peers, index, this.size - index - 1);
 		this.peers[this.size - 1] = null;
 		this.size -= 1;
 		return peer;
@@ -59,6 +116,41 @@ public class Bucket implements Iterable<KadPeer> {
 		return true;
 	}
 
+	/**
+	 * Adds a peer to the replacement cache, the oldest replacement is dropped if the cache is full. A peer that is
+	 * already in the cache becomes the most recent replacement.
+	 */
+	public void addReplacement(KadPeer peer) {
+		this.removeReplacement(peer.id);
+		if (this.replacements.size() == this.peers.length) {
+			this.replacements.removeFirst();
+		}
+		this.replacements.addLast(peer);
+	}
+
+	public boolean removeReplacement(KadID id) {
+		return this.replacements.removeIf(p -> p.id.equals(id));
+	}
+
+	public int replacements() {
+		return this.replacements.size();
+	}
+
+	/**
+	 * Moves the most recently seen replacement into the bucket.
+	 *
+	 * @return The promoted peer, null if the bucket is full or there are no replacements
+	 */
+	public KadPeer promote() {
+		if (this.isFull() || this.replacements.isEmpty()) {
+			return null;
+		}
+		var peer = this.replacements.removeLast();
+		this.peers[this.size] = peer;
+		this.size += 1;
+		return peer;
+	}
+
 	public KadPeer get(int index) {
 		if (index >= this.size) {
 			throw new IndexOutOfBoundsException();
@@ -82,6 +174,19 @@ public class Bucket implements Iterable<KadPeer> {
 		return Arrays.stream(this.peers, 0, this.size);
 	}
 
+	/**
+	 * @return The replacement cache, oldest first
+	 */
+	public Stream<KadPeer> replacementStream() {
+		return this.replacements.stream();
+	}
+
+	private void moveToTail(int index) {
+		var peer = this.peers[index];
+		System.arraycopy(this.peers, index + 1, this.peers, index, this.size - index - 1);
+		this.peers[this.size - 1] = peer;
+	}
+
 	private int findPeerIndex(KadID id) {
 		for (int i = 0; i < this.size; ++i)
 			if (this.peers[i].id.equals(id)) {
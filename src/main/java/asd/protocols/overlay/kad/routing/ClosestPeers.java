@@ -0,0 +1,18 @@
+package asd.protocols.overlay.kad.routing;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadPeer;
+
+import java.util.List;
+
+/**
+ * Answers closest peer queries, implemented by the routing tables and by their snapshots.
+ */
+public interface ClosestPeers {
+	/**
+	 * @param id     The target
+	 * @param ignore A peer to exclude from the result, can be null
+	 * @return Up to k peers, closest first
+	 */
+	List<KadPeer> closest(KadID id, KadID ignore);
+}
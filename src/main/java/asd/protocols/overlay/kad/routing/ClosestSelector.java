@@ -0,0 +1,109 @@
+package asd.protocols.overlay.kad.routing;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadPeer;
+
+/**
+ * Bounded max-heap that keeps the `capacity` peers closest to a target.
+ * <p>
+ * The heap array is reused across selections so a selection only allocates the array it returns. Instances are not
+ * thread safe, use one per thread.
+ */
+final class ClosestSelector {
+	private KadPeer[] heap;
+	private int size;
+	private int capacity;
+	private KadID target;
+
+	ClosestSelector() {
+		this.heap = new KadPeer[0];
+		this.size = 0;
+		this.capacity = 0;
+		this.target = null;
+	}
+
+	void reset(KadID target, int capacity) {
+		if (this.heap.length < capacity) {
+			this.heap = new KadPeer[capacity];
+		}
+		for (int i = 0; i < this.size; ++i)
+			this.heap[i] = null;
+		this.size = 0;
+		this.capacity = capacity;
+		this.target = target;
+	}
+
+	void offer(KadPeer peer) {
+		if (this.size < this.capacity) {
+			this.heap[this.size] = peer;
+			this.siftUp(this.size);
+			this.size += 1;
+		} else if (this.capacity > 0 && this.target.compareDistances(peer.id, this.heap[0].id) < 0) {
+			this.heap[0] = peer;
+			this.siftDown(0);
+		}
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Empties the selector.
+	 *
+	 * @return The selected peers, closest first
+	 */
+	KadPeer[] drain() {
+		var peers = new KadPeer[this.size];
+		for (int i = peers.length - 1; i >= 0; --i) {
+			peers[i] = this.heap[0];
+			this.size -= 1;
+			this.heap[0] = this.heap[this.size];
+			this.heap[this.size] = null;
+			this.siftDown(0);
+		}
+		this.target = null;
+		return peers;
+	}
+
+	// The peer furthest away from the target is kept at the root
+	private boolean further(int i, int j) {
+		return this.target.compareDistances(this.heap[i].id, this.heap[j].id) > 0;
+	}
+
+	private void siftUp(int index) {
+		while (index > 0) {
+			var parent = (index - 1) / 2;
+			if (!this.further(index, parent)) {
+				break;
+			}
+			this.swap(index, parent);
+			index = parent;
+		}
+	}
+
+	private void siftDown(int index) {
+		while (true) {
+			var left = 2 * index + 1;
+			var right = left + 1;
+			var largest = index;
+			if (left < this.size && this.further(left, largest)) {
+				largest = left;
+			}
+			if (right < this.size && this.further(right, largest)) {
+				largest = right;
+			}
+			if (largest == index) {
+				break;
+			}
+			this.swap(index, largest);
+			index = largest;
+		}
+	}
+
+	private void swap(int i, int j) {
+		var tmp = this.heap[i];
+		this.heap[i] = this.heap[j];
+		this.heap[j] = tmp;
+	}
+}
@@ -0,0 +1,194 @@
+package asd.protocols.overlay.kad.routing;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadPeer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Routing table that keeps one bucket per cpl in a list and grows it by unfolding the last bucket when it gets full.
+ */
+public class ListRoutingTable extends RoutingTable {
+	private final ArrayList<Bucket> buckets;
+
+	public ListRoutingTable(int k, KadID self) {
+		super(k, self);
+		this.buckets = new ArrayList<>();
+
+		this.buckets.add(new Bucket(this.k));
+	}
+
+	@Override
+	public boolean add(KadPeer peer) {
+		var cpl = this.self.cpl(peer.id);
+		var bucket = this.getOrCreateBucketForCpl(cpl);
+		if (bucket.add(peer)) {
+			this.changed(Math.min(cpl, this.buckets.size() - 1));
+			return true;
+		}
+		if (!bucket.contains(peer.id)) {
+			bucket.addReplacement(peer);
+		}
+		return false;
+	}
+
+	@Override
+	public KadPeer evict(KadID id) {
+		var cpl = this.self.cpl(id);
+		var bucket = this.getBucketForCpl(cpl);
+		if (!bucket.removeByID(id)) {
+			bucket.removeReplacement(id);
+			return null;
+		}
+		this.changed(Math.min(cpl, this.buckets.size() - 1));
+		return bucket.promote();
+	}
+
+	@Override
+	public boolean seen(KadID id) {
+		return this.getBucketForCpl(this.self.cpl(id)).seen(id);
+	}
+
+	@Override
+	public KadPeer stalest(KadID id) {
+		return this.getBucketForCpl(this.self.cpl(id)).head();
+	}
+
+	@Override
+	public KadPeer stalest(KadID id, ToLongFunction<KadPeer> last_seen) {
+		return this.getBucketForCpl(this.self.cpl(id)).stalest(last_seen);
+	}
+
+	@Override
+	public int size() {
+		return this.buckets.stream().mapToInt(Bucket::size).sum();
+	}
+
+	@Override
+	public int buckets() {
+		return this.buckets.size();
+	}
+
+	@Override
+	public int bucketSize(int index) {
+		return this.getBucketForCpl(index).size();
+	}
+
+	@Override
+	public Stream<KadPeer> bucketStream(int index) {
+		return this.getBucketForCpl(index).stream();
+	}
+
+	public Bucket bucket(int index) {
+		return this.buckets.get(index);
+	}
+
+	public Bucket lastBucket() {
+		return this.buckets.get(this.buckets.size() - 1);
+	}
+
+	@Override
+	public List<KadPeer> closest(KadID id, KadID ignore) {
+		var selector = SELECTOR.get();
+		selector.reset(id, this.k);
+		var bucket_idx = Math.min(this.self.cpl(id), this.bucketsSize() - 1);
+		var iter_count = this.buckets.size();
+		var visited = 0;
+		for (int i = 0; i < iter_count && visited < this.k; ++i) {
+			var idx = Math.floorMod(bucket_idx - i, iter_count);
+			var bucket = this.buckets.get(idx);
+			for (int j = 0; j < bucket.size(); ++j) {
+				var peer = bucket.get(j);
+				if (!peer.id.equals(ignore)) {
+					selector.offer(peer);
+					visited += 1;
+				}
+			}
+		}
+		return Arrays.asList(selector.drain());
+	}
+
+	@Override
+	public boolean contains(KadID id) {
+		var cpl = this.self.cpl(id);
+		var bucket = this.getBucketForCpl(cpl);
+		return bucket.contains(id);
+	}
+
+	@Override
+	public Stream<KadPeer> stream() {
+		return this.buckets.stream().flatMap(Bucket::stream);
+	}
+
+	private Bucket getBucketForCpl(int cpl) {
+		if (cpl < this.buckets.size()) {
+			return this.buckets.get(cpl);
+		}
+		var last = this.buckets.get(this.buckets.size() - 1);
+		return last;
+	}
+
+	private Bucket getOrCreateBucketForCpl(int cpl) {
+		if (cpl < this.buckets.size()) {
+			if (cpl == this.buckets.size() - 1) {
+				if (this.buckets.get(cpl).isFull()) {
+					this.unfoldLastBucket();
+				}
+			}
+			return this.buckets.get(cpl);
+		}
+
+		while (true) {
+			var last = this.buckets.get(this.buckets.size() - 1);
+			if (!last.isFull()) {
+				break;
+			}
+
+			this.unfoldLastBucket();
+		}
+
+		var bucket_index = Math.min(cpl, this.buckets.size() - 1);
+		return this.buckets.get(bucket_index);
+	}
+
+	private void unfoldLastBucket() {
+		var last_cpl = this.buckets.size() - 1;
+		var last = this.buckets.get(last_cpl);
+		var new_last = new Bucket(this.k);
+		this.buckets.add(new_last);
+		this.changed(last_cpl);
+		this.changed(last_cpl + 1);
+		assert last.isFull();
+
+		int index = 0;
+		while (index < last.size()) {
+			var peer = last.get(index);
+			var cpl = this.self.cpl(peer.id);
+			if (cpl == last_cpl) {
+				index += 1;
+			} else {
+				last.remove(index);
+				new_last.add(peer);
+			}
+		}
+
+		var moved = last.replacementStream().filter(p -> this.self.cpl(p.id) != last_cpl).toList();
+		for (var peer : moved) {
+			last.removeReplacement(peer.id);
+			new_last.addReplacement(peer);
+		}
+	}
+
+	// Testing utilities
+	int bucketsSize() {
+		return this.buckets.size();
+	}
+
+	Bucket getBucket(int index) {
+		return this.buckets.get(index);
+	}
+}
@@ -0,0 +1,77 @@
+package asd.protocols.overlay.kad.routing;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.TimerWheel;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Tracks the pings sent to challenge the least recently seen peer of a full bucket.
+ * <p>
+ * Ping timeouts are registered with the shared {@link TimerWheel} and reported by the next {@link #checkTimeouts()}.
+ */
+public class PingTracker {
+	private final HashMap<KadID, PendingPing> pending;
+	private final TimerWheel wheel;
+	private final Duration timeout;
+	private final ArrayList<KadID> expired;
+	private long next_nonce;
+
+	public PingTracker(TimerWheel wheel, Duration timeout) {
+		this.pending = new HashMap<>();
+		this.wheel = wheel;
+		this.timeout = timeout;
+		this.expired = new ArrayList<>();
+		this.next_nonce = 0;
+	}
+
+	public boolean isPending(KadID peer) {
+		return this.pending.containsKey(peer);
+	}
+
+	/**
+	 * @return The nonce to send in the ping
+	 */
+	public long begin(KadID peer) {
+		assert !this.pending.containsKey(peer);
+		var nonce = this.next_nonce++;
+		var timeout = this.wheel.schedule(() -> {
+			this.pending.remove(peer);
+			this.expired.add(peer);
+		}, this.timeout);
+		this.pending.put(peer, new PendingPing(nonce, Instant.now(), timeout));
+		return nonce;
+	}
+
+	/**
+	 * @return The round trip time or null if there was no ping pending for this peer and nonce
+	 */
+	public Duration end(KadID peer, long nonce) {
+		var ping = this.pending.get(peer);
+		if (ping == null || ping.nonce != nonce) {
+			return null;
+		}
+		this.pending.remove(peer);
+		ping.timeout.cancel();
+		return Duration.between(ping.start, Instant.now());
+	}
+
+	/**
+	 * @return The peers that did not answer in time, they are no longer tracked
+	 */
+	public List<KadID> checkTimeouts() {
+		if (this.expired.isEmpty()) {
+			return List.of();
+		}
+		var expired = new ArrayList<>(this.expired);
+		this.expired.clear();
+		return expired;
+	}
+
+	private record PendingPing(long nonce, Instant start, TimerWheel.Timeout timeout) {
+	}
+}
@@ -0,0 +1,91 @@
+package asd.protocols.overlay.kad.routing;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadPeer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable copy of the buckets of a {@link RoutingTable}.
+ * <p>
+ * Snapshots answer closest queries exactly like the table they were taken from did at the time, and can be used from
+ * any thread once published. See {@link RoutingTables#snapshot(KadID)}.
+ * <p>
+ * Buckets are never changed after they are copied, so a new snapshot of the same table shares the buckets that did
+ * not change since the previous one and only copies the others.
+ */
+public final class RoutingSnapshot implements ClosestPeers {
+	private final int k;
+	private final KadID self;
+	private final int version;
+	private final KadPeer[][] buckets;
+
+	private RoutingSnapshot(int k, KadID self, int version, KadPeer[][] buckets) {
+		this.k = k;
+		this.self = self;
+		this.version = version;
+		this.buckets = buckets;
+	}
+
+	static RoutingSnapshot of(RoutingTable rt) {
+		return of(rt, null);
+	}
+
+	/**
+	 * @param previous An older snapshot of the same table, can be null
+	 */
+	static RoutingSnapshot of(RoutingTable rt, RoutingSnapshot previous) {
+		var buckets = new KadPeer[rt.buckets()][];
+		for (int i = 0; i < buckets.length; ++i) {
+			if (previous != null && i < previous.buckets.length && rt.bucketVersion(i) <= previous.version) {
+				buckets[i] = previous.buckets[i];
+			} else {
+				buckets[i] = rt.bucketStream(i).toArray(KadPeer[]::new);
+			}
+		}
+		return new RoutingSnapshot(rt.k, rt.self, rt.version(), buckets);
+	}
+
+	/**
+	 * @return The {@link RoutingTable#version()} of the table when the snapshot was taken
+	 */
+	public int version() {
+		return this.version;
+	}
+
+	public int size() {
+		var size = 0;
+		for (var bucket : this.buckets)
+			size += bucket.length;
+		return size;
+	}
+
+	@Override
+	public List<KadPeer> closest(KadID id, KadID ignore) {
+		var selector = RoutingTable.SELECTOR.get();
+		selector.reset(id, this.k);
+		var iter_count = this.buckets.length;
+		var bucket_idx = Math.min(this.self.cpl(id), iter_count - 1);
+		var visited = 0;
+		for (int i = 0; i < iter_count && visited < this.k; ++i) {
+			var bucket = this.buckets[Math.floorMod(bucket_idx - i, iter_count)];
+			for (var peer : bucket) {
+				if (!peer.id.equals(ignore)) {
+					selector.offer(peer);
+					visited += 1;
+				}
+			}
+		}
+		return Arrays.asList(selector.drain());
+	}
+
+	public List<KadPeer> closest(KadID id) {
+		return this.closest(id, null);
+	}
+
+	// Testing utilities
+	KadPeer[] bucket(int index) {
+		return this.buckets[index];
+	}
+}
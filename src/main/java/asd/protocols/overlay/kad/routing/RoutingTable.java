@@ -1,107 +1,181 @@
 package asd.protocols.overlay.kad.routing;
 
 import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadParams;
 import asd.protocols.overlay.kad.KadPeer;
-import asd.protocols.overlay.kad.PeerDistanceComparator;
-import asd.utils.ASDUtils;
+import asd.utils.sampling.Sampler;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-public class RoutingTable {
-	private final int k;
-	private final KadID self;
-	private final ArrayList<Bucket> buckets;
-
-	public RoutingTable(int k, KadID self) {
+/**
+ * A Kademlia routing table.
+ * <p>
+ * Peers are grouped in buckets by their cpl with our own id. Bucket `i` holds the peers with cpl `i`, except for the
+ * last bucket that holds every peer with cpl greater or equal to its index. Implementations only differ in how the
+ * buckets are stored and split, see {@link ListRoutingTable} and {@link TrieRoutingTable}.
+ */
+public abstract class RoutingTable implements ClosestPeers {
+	static final ThreadLocal<ClosestSelector> SELECTOR = ThreadLocal.withInitial(ClosestSelector::new);
+
+	public static final String TYPE_LIST = "list";
+	public static final String TYPE_TRIE = "trie";
+
+	protected final int k;
+	protected final KadID self;
+	private int version;
+	// bucket_versions[i] is the version of the last change to bucket i
+	private int[] bucket_versions;
+
+	protected RoutingTable(int k, KadID self) {
 		this.k = k;
 		this.self = self;
-		this.buckets = new ArrayList<>();
-
-		this.buckets.add(new Bucket(this.k));
-	}
-
-	public boolean add(KadPeer peer) {
-		var cpl = this.self.cpl(peer.id);
-		var bucket = this.getOrCreateBucketForCpl(cpl);
-		return bucket.add(peer);
-	}
+		this.version = 0;
+		this.bucket_versions = new int[1];
+	}
+
+	/**
+	 * Creates a routing table of the type selected by `kad_rt_type`.
+	 *
+	 * @param params The kademlia parameters
+	 * @param k      The bucket size, this is not always `params.k`
+	 * @param self   Our own id
+	 */
+	public static RoutingTable create(KadParams params, int k, KadID self) {
+		return switch (params.rt_type) {
+			case TYPE_LIST -> new ListRoutingTable(k, self);
+			case TYPE_TRIE -> new TrieRoutingTable(k, self, params.rt_relax);
+			default -> throw new IllegalArgumentException("Unknown routing table type: " + params.rt_type);
+		};
+	}
+
+	/**
+	 * Adds a peer to the tail of its bucket. A peer that is already in the table is moved to the tail of its bucket
+	 * and a peer that does not fit in its bucket is kept in the bucket's replacement cache.
+	 *
+	 * @return True if the peer was added to the table
+	 */
+	public abstract boolean add(KadPeer peer);
+
+	/**
+	 * Removes a peer from the table or from the replacement caches. The slot freed in the bucket is taken by the most
+	 * recently seen replacement of that bucket.
+	 *
+	 * @return The replacement that took the slot, null if there was none or the peer was not in the table
+	 */
+	public abstract KadPeer evict(KadID id);
 
 	public boolean remove(KadID id) {
-		var cpl = this.self.cpl(id);
-		var bucket = this.getBucketForCpl(cpl);
-		return bucket.removeByID(id);
-	}
-
-	public int size() {
-		return this.buckets.stream().mapToInt(Bucket::size).sum();
-	}
-
-	public int buckets() {
-		return this.buckets.size();
-	}
-
-	public Bucket bucket(int index) {
-		return this.buckets.get(index);
-	}
-
-	public Bucket lastBucket() {
-		return this.buckets.get(this.buckets.size() - 1);
-	}
-
-	public List<KadPeer> getPeersFromBucket(int index) {
-		var bucket = this.getBucketForCpl(index);
-		var peers = new ArrayList<KadPeer>(bucket.size());
-		for (var peer : bucket)
-			peers.add(peer);
-		return peers;
-	}
-
-	public List<KadPeer> closest(KadID id, KadID ignore) {
-		var peers = new ArrayList<KadPeer>(this.k);
-		var bucket_idx = Math.min(this.self.cpl(id), this.bucketsSize() - 1);
-		var iter_count = this.buckets.size();
-		for (int i = 0; i < iter_count && peers.size() < this.k; ++i) {
-			var idx = Math.floorMod(bucket_idx - i, iter_count);
-			var bucket = this.buckets.get(idx);
-			for (var peer : bucket)
-				if (!peer.id.equals(ignore)) {
-					peers.add(peer);
-				}
+		var contained = this.contains(id);
+		this.evict(id);
+		return contained;
+	}
+
+	public abstract boolean contains(KadID id);
+
+	/**
+	 * Moves a peer we just heard from to the tail of its bucket.
+	 *
+	 * @return True if the peer is in the table
+	 */
+	public abstract boolean seen(KadID id);
+
+	/**
+	 * @return The least recently seen peer of the bucket `id` belongs to, null if that bucket is empty
+	 */
+	public abstract KadPeer stalest(KadID id);
+
+	/**
+	 * @param last_seen When each peer was last seen, lower is longer ago
+	 * @return The peer of the bucket `id` belongs to that was seen the longest time ago by `last_seen`, null if that
+	 *         bucket is empty
+	 */
+	public abstract KadPeer stalest(KadID id, ToLongFunction<KadPeer> last_seen);
+
+	public abstract int size();
+
+	/**
+	 * @return A counter that changes whenever a peer enters or leaves the table or the buckets are split. Peers moving
+	 *         inside their bucket after being seen do not change it
+	 */
+	public int version() {
+		return this.version;
+	}
+
+	/**
+	 * @param index The bucket index
+	 * @return The {@link #version()} of the last change to the bucket, a bucket that was split changes along with the
+	 *         buckets its peers moved to
+	 */
+	public int bucketVersion(int index) {
+		return index < this.bucket_versions.length ? this.bucket_versions[index] : 0;
+	}
+
+	/**
+	 * Records a change to the peers of bucket `index`.
+	 */
+	protected void changed(int index) {
+		this.version += 1;
+		if (index >= this.bucket_versions.length) {
+			var length = Math.max(index + 1, 2 * this.bucket_versions.length);
+			this.bucket_versions = Arrays.copyOf(this.bucket_versions, length);
 		}
-		Collections.sort(peers, new PeerDistanceComparator(id));
-		while (peers.size() > this.k)
-			peers.remove(peers.size() - 1);
-		return peers;
-	}
+		this.bucket_versions[index] = this.version;
+	}
+
+	/**
+	 * @return The number of buckets, the last one holds the peers with cpl >= buckets() - 1
+	 */
+	public abstract int buckets();
+
+	/**
+	 * @param index The bucket index, indices past the last bucket map to the last bucket
+	 * @return The number of peers in the bucket
+	 */
+	public abstract int bucketSize(int index);
+
+	/**
+	 * @param index The bucket index, indices past the last bucket map to the last bucket
+	 * @return The peers in the bucket
+	 */
+	public abstract Stream<KadPeer> bucketStream(int index);
+
+	/**
+	 * Finds the k peers closest to `id`.
+	 * <p>
+	 * Buckets are visited starting at the bucket `id` would belong to and moving towards bucket 0 until at least k
+	 * candidates were seen. The candidates go through a bounded heap instead of being collected and sorted, the only
+	 * allocation is the returned list.
+	 *
+	 * @param id     The target
+	 * @param ignore A peer to exclude from the result, can be null
+	 * @return Up to k peers, closest first
+	 */
+	@Override
+	public abstract List<KadPeer> closest(KadID id, KadID ignore);
 
 	public List<KadPeer> closest(KadID id) {
 		return this.closest(id, null);
 	}
 
-	public boolean contains(KadID id) {
-		var cpl = this.self.cpl(id);
-		var bucket = this.getBucketForCpl(cpl);
-		return bucket.contains(id);
+	public List<KadPeer> getPeersFromBucket(int index) {
+		return this.bucketStream(index).collect(Collectors.toCollection(ArrayList::new));
 	}
 
 	public List<KadPeer> getSample(int size) {
-		var peers = new ArrayList<KadPeer>(size);
-		for (var bucket : this.buckets) {
-			for (int i = 0; i < bucket.size(); ++i) {
-				peers.add(bucket.get(i));
-				if (peers.size() >= size) {
-					return peers;
-				}
-			}
-		}
-		return peers;
+		return this.stream().limit(size).collect(Collectors.toCollection(ArrayList::new));
 	}
 
-	public List<KadPeer> getBroadcastSample(int left_bucket, int size) {
+	public List<KadPeer> getSample() {
+		return this.getSample(this.k);
+	}
+
+	public List<KadPeer> getBroadcastSample(Sampler sampler, int left_bucket, int size) {
 		// Note: Experimenting with flooding all buckets
 		// var peers = new ArrayList<KadPeer>(this.size());
 		// for (var bucket : this.buckets) {
@@ -113,122 +187,40 @@ public class RoutingTable {
 		assert size >= 2;
 		var lsize = 2;
 		var rsize = size - lsize;
-		var lpeers = new HashSet<KadPeer>();
-		var rpeers = new HashSet<KadPeer>();
-		var lbucket = this.getBucketForCpl(left_bucket);
-		for (var p : lbucket)
-			lpeers.add(p);
-		for (int i = left_bucket + 1; i < this.buckets.size(); ++i) {
-			var bucket = this.buckets.get(i);
-			for (var p : bucket)
-				rpeers.add(p);
-		}
-
 		var peers = new ArrayList<KadPeer>(size);
-		var lsample = ASDUtils.sample(lsize, lpeers);
-		var rsample = ASDUtils.sample(rsize, rpeers);
-		lsample.forEach(peers::add);
-		rsample.forEach(peers::add);
+		sampler.reservoir(this.bucketStream(left_bucket).iterator(), lsize, peers);
+		var rpeers = IntStream.range(left_bucket + 1, this.buckets()).boxed().flatMap(this::bucketStream);
+		sampler.reservoir(rpeers.iterator(), rsize, peers);
 
 		return peers;
 	}
 
-	public List<KadPeer> getSample() {
-		return this.getSample(this.k);
-	}
-
 	public boolean isEmpty() {
 		return this.size() == 0;
 	}
 
 	public Stream<KadPeer> stream() {
-		return this.buckets.stream().flatMap(Bucket::stream);
-	}
-
-	private Bucket getBucketForCpl(int cpl) {
-		if (cpl < this.buckets.size()) {
-			return this.buckets.get(cpl);
-		}
-		var last = this.buckets.get(this.buckets.size() - 1);
-		return last;
-	}
-
-	private Bucket getOrCreateBucketForCpl(int cpl) {
-		if (cpl < this.buckets.size()) {
-			if (cpl == this.buckets.size() - 1) {
-				if (this.buckets.get(cpl).isFull()) {
-					this.unfoldLastBucket();
-				}
-			}
-			return this.buckets.get(cpl);
-		}
-
-		while (true) {
-			var last = this.buckets.get(this.buckets.size() - 1);
-			if (!last.isFull()) {
-				break;
-			}
-
-			this.unfoldLastBucket();
-		}
-
-		var bucket_index = Math.min(cpl, this.buckets.size() - 1);
-		return this.buckets.get(bucket_index);
-	}
-
-	private void unfoldLastBucket() {
-		var last_cpl = this.buckets.size() - 1;
-		var last = this.buckets.get(last_cpl);
-		var new_last = new Bucket(this.k);
-		this.buckets.add(new_last);
-		assert last.isFull();
-
-		int index = 0;
-		while (index < last.size()) {
-			var peer = last.get(index);
-			var cpl = this.self.cpl(peer.id);
-			if (cpl == last_cpl) {
-				index += 1;
-			} else {
-				last.remove(index);
-				new_last.add(peer);
-			}
-		}
+		return IntStream.range(0, this.buckets()).boxed().flatMap(this::bucketStream);
 	}
 
 	@Override
 	public String toString() {
 		var sb = new StringBuilder();
-		for (int i = 0; i < this.buckets.size(); ++i) {
-			var bucket = this.buckets.get(i);
+		for (int i = 0; i < this.buckets(); ++i) {
 			sb.append(String.format("Bucket %d:\n", i));
-			for (int j = 0; j < bucket.size(); ++j) {
-				var peer = bucket.get(j);
+			this.bucketStream(i).forEach(peer -> {
 				sb.append(String.format("\t%s cpl: %d\n", peer, this.self.cpl(peer.id)));
-			}
+			});
 		}
 		return sb.toString();
 	}
 
-	// Testing utilities
-	int bucketsSize() {
-		return this.buckets.size();
-	}
-
-	Bucket getBucket(int index) {
-		return this.buckets.get(index);
-	}
-
 	// Metrics utilities
 	public List<List<String>> dumpForMetrics() {
 		var dump = new ArrayList<List<String>>();
-		for (int i = 0; i < this.buckets.size(); ++i) {
-			var bucket = this.buckets.get(i);
+		for (int i = 0; i < this.buckets(); ++i) {
 			var row = new ArrayList<String>();
-			for (int j = 0; j < bucket.size(); ++j) {
-				var peer = bucket.get(j);
-				row.add(String.valueOf(peer.host.getPort()));
-			}
+			this.bucketStream(i).forEach(peer -> row.add(String.valueOf(peer.host.getPort())));
 			dump.add(row);
 		}
 		return dump;
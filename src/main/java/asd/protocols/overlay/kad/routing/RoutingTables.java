@@ -13,18 +13,20 @@ public class RoutingTables {
 	private final KadParams params;
 	private final KadID self;
 	private final HashMap<KadID, RoutingTable> tables;
+	private final HashMap<KadID, RoutingSnapshot> snapshots;
 
 	public RoutingTables(KadParams params, KadID self) {
 		this.params = params;
 		this.self = self;
 		this.tables = new HashMap<>();
+		this.snapshots = new HashMap<>();
 
-		this.tables.put(KadID.DEFAULT_RTID, new RoutingTable(this.params.k, this.self));
+		this.tables.put(KadID.DEFAULT_RTID, RoutingTable.create(this.params, this.params.k, this.self));
 	}
 
 	public RoutingTable create(KadID rtid) {
 		if (!this.contains(rtid)) {
-			this.tables.put(rtid, new RoutingTable(this.params.pubsub_k, this.self));
+			this.tables.put(rtid, RoutingTable.create(this.params, this.params.pubsub_k, this.self));
 		}
 		return this.tables.get(rtid);
 	}
@@ -40,12 +42,44 @@ public class RoutingTables {
 	public void remove(KadID rtid) {
 		if (!rtid.equals(KadID.DEFAULT_RTID)) {
 			this.tables.remove(rtid);
+			this.snapshots.remove(rtid);
 		}
 	}
 
-	public void removePeer(KadID peer) {
-		for (RoutingTable rt : this.tables.values())
-			rt.remove(peer);
+	/**
+	 * Removes a peer from every table.
+	 *
+	 * @return The replacements that took the freed slots
+	 */
+	public List<KadPeer> removePeer(KadID peer) {
+		var replacements = new ArrayList<KadPeer>();
+		for (RoutingTable rt : this.tables.values()) {
+			var replacement = rt.evict(peer);
+			if (replacement != null) {
+				replacements.add(replacement);
+			}
+		}
+		return replacements;
+	}
+
+	/**
+	 * The snapshot is only taken again if the table changed since the previous call, and then only the buckets that
+	 * changed are copied. Snapshots are immutable, they can be handed to other threads while this thread keeps changing
+	 * the tables.
+	 *
+	 * @return A snapshot of the table, null if there is no such table
+	 */
+	public RoutingSnapshot snapshot(KadID rtid) {
+		var rt = this.tables.get(rtid);
+		if (rt == null) {
+			return null;
+		}
+		var snapshot = this.snapshots.get(rtid);
+		if (snapshot == null || snapshot.version() != rt.version()) {
+			snapshot = RoutingSnapshot.of(rt, snapshot);
+			this.snapshots.put(rtid, snapshot);
+		}
+		return snapshot;
 	}
 
 	public RoutingTable main() {
@@ -1,87 +1,197 @@
 package asd.protocols.overlay.kad.routing;
 
 import asd.protocols.overlay.kad.KadID;
-import asd.protocols.overlay.kad.KadParams;
-import asd.utils.ASDUtils;
+import asd.utils.sampling.Sampler;
 
-import java.time.Instant;
-import java.util.ArrayDeque;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
 
+/**
+ * Members of the swarms and pools we are responsible for, as announced with JoinSwarm and JoinPool requests.
+ * <p>
+ * Members are forgotten `ttl` after they last joined, joining again refreshes the deadline. Each swarm keeps its
+ * members in an array, sampling shuffles only the first `sample_size` slots of that array (a partial Fisher-Yates) so a
+ * sample costs O(sample_size) however large the swarm is. A map from member to its slot and deadline keeps the members
+ * in join order, which is also deadline order, so adding, refreshing and expiring are O(1) per member.
+ * <p>
+ * At most `max_members` are kept per swarm, a full swarm evicts the member that joined least recently. At most
+ * `max_swarms` swarms are kept, the swarm least recently joined or sampled is evicted first.
+ */
 public class SwarmTracker {
-	private final KadParams params;
-	private final HashMap<KadID, Swarm> swarms;
+	private final Duration ttl;
+	private final int sample_size;
+	private final int max_members;
+	private final Sampler sampler;
+	private final LongSupplier clock;
+	// Access ordered, the first swarm is the least recently used
+	private final LinkedHashMap<KadID, Swarm> swarms;
 
-	public SwarmTracker(KadParams params) {
-		this.params = params;
-		this.swarms = new HashMap<>();
+	public SwarmTracker(Duration ttl, int sample_size, int max_swarms, int max_members, Sampler sampler) {
+		this(ttl, sample_size, max_swarms, max_members, sampler, System::nanoTime);
 	}
 
+	public SwarmTracker(Duration ttl, int sample_size, int max_swarms, int max_members, Sampler sampler,
+			LongSupplier clock) {
+		if (max_swarms < 1 || max_members < 1) {
+			throw new IllegalArgumentException("max_swarms and max_members must be positive");
+		}
+		this.ttl = ttl;
+		this.sample_size = sample_size;
+		this.max_members = max_members;
+		this.sampler = sampler;
+		this.clock = clock;
+		this.swarms = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<KadID, Swarm> eldest) {
+				return this.size() > max_swarms;
+			}
+		};
+	}
+
+	/**
+	 * Adds a member to a swarm or refreshes its deadline if it is already a member.
+	 */
 	public void add(KadID swarm_id, KadID peer) {
-		var swarm = this.getOrCreateSwarm(swarm_id);
-		swarm.addMember(peer);
+		var now = this.clock.getAsLong();
+		var swarm = this.swarms.get(swarm_id);
+		if (swarm == null) {
+			swarm = new Swarm();
+			this.swarms.put(swarm_id, swarm);
+		}
+		swarm.expire(now);
+		swarm.add(peer, now + this.ttl.toNanos(), this.max_members);
 	}
 
-	public List<KadID> getSwarmSample(KadID swarm) {
-		var swarmObj = this.swarms.get(swarm);
-		if (swarmObj == null) {
+	/**
+	 * @return Up to `sample_size` random members of the swarm
+	 */
+	public List<KadID> getSwarmSample(KadID swarm_id) {
+		var swarm = this.swarms.get(swarm_id);
+		if (swarm == null) {
 			return List.of();
 		}
-		return swarmObj.sample();
+		swarm.expire(this.clock.getAsLong());
+		if (swarm.size == 0) {
+			this.swarms.remove(swarm_id);
+			return List.of();
+		}
+		return swarm.sample(this.sample_size, this.sampler);
 	}
 
-	private Swarm getOrCreateSwarm(KadID swarm_id) {
+	/**
+	 * @return The number of members of a swarm that have not expired
+	 */
+	public int size(KadID swarm_id) {
 		var swarm = this.swarms.get(swarm_id);
 		if (swarm == null) {
-			swarm = new Swarm(swarm_id);
-			this.swarms.put(swarm_id, swarm);
+			return 0;
 		}
-		return swarm;
+		swarm.expire(this.clock.getAsLong());
+		return swarm.size;
 	}
 
-	private static class QueueItem {
-		public final KadID id;
-		public final Instant expire;
+	/**
+	 * @return The number of swarms tracked, including swarms whose members all expired but were not looked at since
+	 */
+	public int swarms() {
+		return this.swarms.size();
+	}
 
-		public QueueItem(KadID id, Instant expire) {
-			this.id = id;
-			this.expire = expire;
+	private static final class Member {
+		private int position;
+		private final long deadline;
+
+		private Member(int position, long deadline) {
+			this.position = position;
+			this.deadline = deadline;
 		}
 	}
 
-	private static class Swarm {
-		public final KadID id;
-		public final ArrayDeque<QueueItem> queue;
-		public final HashSet<KadID> members;
+	private static final class Swarm {
+		// Insertion ordered, members are re-inserted when they join again so the first is the next to expire
+		private final LinkedHashMap<KadID, Member> members;
+		private KadID[] ids;
+		private int size;
 
-		public Swarm(KadID id) {
-			this.id = id;
-			this.queue = new ArrayDeque<>();
-			this.members = new HashSet<>();
+		private Swarm() {
+			this.members = new LinkedHashMap<>();
+			this.ids = new KadID[4];
+			this.size = 0;
 		}
 
-		public void addMember(KadID id) {
-			this.clean();
-			this.queue.add(new QueueItem(id, Instant.now().plusSeconds(10 * 60)));
-			this.members.add(id);
+		private void add(KadID id, long deadline, int max_members) {
+			var member = this.members.remove(id);
+			if (member != null) {
+				this.members.put(id, new Member(member.position, deadline));
+				return;
+			}
+			if (this.size >= max_members) {
+				this.removeOldest();
+			}
+			if (this.size == this.ids.length) {
+				this.ids = Arrays.copyOf(this.ids, this.ids.length * 2);
+			}
+			this.ids[this.size] = id;
+			this.members.put(id, new Member(this.size, deadline));
+			this.size += 1;
 		}
 
-		public List<KadID> sample() {
-			return ASDUtils.sample(20, this.members).stream().toList();
+		private List<KadID> sample(int count, Sampler sampler) {
+			var n = Math.min(count, this.size);
+			var sample = new ArrayList<KadID>(n);
+			for (int i = 0; i < n; ++i) {
+				this.swap(i, i + sampler.nextInt(this.size - i));
+				sample.add(this.ids[i]);
+			}
+			return sample;
 		}
 
-		private void clean() {
-			var now = Instant.now();
-			while (!this.queue.isEmpty()) {
-				var item = this.queue.peek();
-				if (item.expire.isAfter(now)) {
+		private void expire(long now) {
+			Iterator<Map.Entry<KadID, Member>> iter = this.members.entrySet().iterator();
+			while (iter.hasNext()) {
+				var entry = iter.next();
+				if (entry.getValue().deadline - now > 0) {
 					break;
 				}
-				this.queue.remove();
-				this.members.remove(item.id);
+				iter.remove();
+				this.removeAt(entry.getValue().position);
+			}
+		}
+
+		private void removeOldest() {
+			var iter = this.members.values().iterator();
+			var member = iter.next();
+			iter.remove();
+			this.removeAt(member.position);
+		}
+
+		// Moves the last member into the freed slot
+		private void removeAt(int position) {
+			this.size -= 1;
+			if (position != this.size) {
+				var last = this.ids[this.size];
+				this.ids[position] = last;
+				this.members.get(last).position = position;
+			}
+			this.ids[this.size] = null;
+		}
+
+		private void swap(int a, int b) {
+			if (a == b) {
+				return;
 			}
+			var id_a = this.ids[a];
+			var id_b = this.ids[b];
+			this.ids[a] = id_b;
+			this.ids[b] = id_a;
+			this.members.get(id_a).position = b;
+			this.members.get(id_b).position = a;
 		}
 	}
 }
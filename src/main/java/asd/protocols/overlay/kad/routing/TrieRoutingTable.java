@@ -0,0 +1,294 @@
+package asd.protocols.overlay.kad.routing;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadPeer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Routing table backed by a binary prefix trie of buckets.
+ * <p>
+ * The trie is stored as its spine, the path of our own id. At each depth `d` of the spine hangs the subtree of the ids
+ * with cpl `d`, which is bucket `d`, and the leaf at the end of the spine is our own bucket. Our own bucket is split
+ * when it gets full, exactly like {@link ListRoutingTable} unfolds its last bucket, so with `relax` set to 0 both
+ * tables hold the same peers in the same order.
+ * <p>
+ * With `relax` > 0 the leaves of the other subtrees can also be split, up to `relax` levels below the point where they
+ * leave our own path. This keeps more peers close to us in the id space than a single k-bucket would (relaxed
+ * splitting as described in S/Kademlia), at the cost of a larger table.
+ * <p>
+ * Every peer is indexed by id to the bucket that holds it, so `contains` is a hash lookup and `remove` only scans that
+ * bucket.
+ */
+public class TrieRoutingTable extends RoutingTable {
+	private static final int MAX_DEPTH = KadID.ID_LENGTH * 8;
+
+	private static final class Node {
+		// Number of leading bits shared by the ids under this node
+		private final int depth;
+		// Non null only on leaves
+		private Bucket bucket;
+		private Node zero;
+		private Node one;
+
+		private Node(int depth, Bucket bucket) {
+			this.depth = depth;
+			this.bucket = bucket;
+		}
+
+		private boolean isLeaf() {
+			return this.bucket != null;
+		}
+
+		private Node child(KadID id) {
+			return id.bit(this.depth) == 0 ? this.zero : this.one;
+		}
+	}
+
+	private final int relax;
+	// branches[d] is the subtree of the peers with cpl d
+	private final ArrayList<Node> branches;
+	private final HashMap<KadID, Bucket> index;
+	// Holds the peers with cpl >= branches.size()
+	private Bucket own;
+
+	public TrieRoutingTable(int k, KadID self, int relax) {
+		super(k, self);
+		if (relax < 0) {
+			throw new IllegalArgumentException("relax must be >= 0");
+		}
+		this.relax = relax;
+		this.branches = new ArrayList<>();
+		this.index = new HashMap<>();
+		this.own = new Bucket(this.k);
+	}
+
+	public TrieRoutingTable(int k, KadID self) {
+		this(k, self, 0);
+	}
+
+	@Override
+	public boolean add(KadPeer peer) {
+		var cpl = this.self.cpl(peer.id);
+		var depth = this.branches.size();
+		if (cpl == depth && this.own.isFull()) {
+			this.splitOwn();
+		} else if (cpl > depth) {
+			while (this.own.isFull() && this.branches.size() < MAX_DEPTH)
+				this.splitOwn();
+		}
+
+		Bucket bucket;
+		if (cpl >= this.branches.size()) {
+			bucket = this.own;
+		} else {
+			bucket = this.leafForAdd(cpl, peer.id).bucket;
+		}
+
+		if (!bucket.add(peer)) {
+			if (!this.index.containsKey(peer.id)) {
+				bucket.addReplacement(peer);
+			}
+			return false;
+		}
+		this.index.put(peer.id, bucket);
+		this.changed(this.bucketIndex(cpl));
+		return true;
+	}
+
+	@Override
+	public KadPeer evict(KadID id) {
+		var bucket = this.index.remove(id);
+		if (bucket == null) {
+			this.bucketFor(id).removeReplacement(id);
+			return null;
+		}
+		bucket.removeByID(id);
+		this.changed(this.bucketIndex(this.self.cpl(id)));
+		var promoted = bucket.promote();
+		if (promoted != null) {
+			this.index.put(promoted.id, bucket);
+		}
+		return promoted;
+	}
+
+	@Override
+	public boolean seen(KadID id) {
+		var bucket = this.index.get(id);
+		return bucket != null && bucket.seen(id);
+	}
+
+	@Override
+	public KadPeer stalest(KadID id) {
+		return this.bucketFor(id).head();
+	}
+
+	@Override
+	public KadPeer stalest(KadID id, ToLongFunction<KadPeer> last_seen) {
+		return this.bucketFor(id).stalest(last_seen);
+	}
+
+	@Override
+	public boolean contains(KadID id) {
+		return this.index.containsKey(id);
+	}
+
+	@Override
+	public int size() {
+		return this.index.size();
+	}
+
+	@Override
+	public int buckets() {
+		return this.branches.size() + 1;
+	}
+
+	@Override
+	public int bucketSize(int index) {
+		if (index >= this.branches.size()) {
+			return this.own.size();
+		}
+		return size(this.branches.get(index));
+	}
+
+	@Override
+	public Stream<KadPeer> bucketStream(int index) {
+		if (index >= this.branches.size()) {
+			return this.own.stream();
+		}
+		return stream(this.branches.get(index));
+	}
+
+	@Override
+	public List<KadPeer> closest(KadID id, KadID ignore) {
+		var selector = SELECTOR.get();
+		selector.reset(id, this.k);
+		var iter_count = this.buckets();
+		var bucket_idx = Math.min(this.self.cpl(id), iter_count - 1);
+		var visited = 0;
+		for (int i = 0; i < iter_count && visited < this.k; ++i) {
+			var idx = Math.floorMod(bucket_idx - i, iter_count);
+			if (idx == this.branches.size()) {
+				visited += offer(this.own, selector, ignore);
+			} else {
+				visited += offer(this.branches.get(idx), selector, ignore);
+			}
+		}
+		return Arrays.asList(selector.drain());
+	}
+
+	private Bucket bucketFor(KadID id) {
+		var cpl = this.self.cpl(id);
+		if (cpl >= this.branches.size()) {
+			return this.own;
+		}
+		var node = this.branches.get(cpl);
+		while (!node.isLeaf())
+			node = node.child(id);
+		return node.bucket;
+	}
+
+	/**
+	 * Finds the leaf of branch `cpl` that `id` belongs to, splitting full leaves while the relaxation allows it.
+	 */
+	private Node leafForAdd(int cpl, KadID id) {
+		var node = this.branches.get(cpl);
+		while (true) {
+			while (!node.isLeaf())
+				node = node.child(id);
+
+			var splittable = node.depth - (cpl + 1) < this.relax && node.depth < MAX_DEPTH;
+			if (!node.bucket.isFull() || !splittable || this.index.containsKey(id)) {
+				return node;
+			}
+			this.split(cpl, node);
+		}
+	}
+
+	private int bucketIndex(int cpl) {
+		return Math.min(cpl, this.branches.size());
+	}
+
+	private void split(int cpl, Node node) {
+		var bucket = node.bucket;
+		node.zero = new Node(node.depth + 1, new Bucket(this.k));
+		node.one = new Node(node.depth + 1, new Bucket(this.k));
+		node.bucket = null;
+		this.changed(cpl);
+		for (var peer : bucket) {
+			var child = node.child(peer.id).bucket;
+			child.add(peer);
+			this.index.put(peer.id, child);
+		}
+		bucket.replacementStream().forEach(peer -> node.child(peer.id).bucket.addReplacement(peer));
+	}
+
+	// Same as ListRoutingTable::unfoldLastBucket, the previous own bucket becomes the branch
+	private void splitOwn() {
+		var depth = this.branches.size();
+		var branch = this.own;
+		var own = new Bucket(this.k);
+		this.branches.add(new Node(depth + 1, branch));
+		this.changed(depth);
+		this.changed(depth + 1);
+		assert branch.isFull();
+
+		int index = 0;
+		while (index < branch.size()) {
+			var peer = branch.get(index);
+			var cpl = this.self.cpl(peer.id);
+			if (cpl == depth) {
+				index += 1;
+			} else {
+				branch.remove(index);
+				own.add(peer);
+				this.index.put(peer.id, own);
+			}
+		}
+
+		var moved = branch.replacementStream().filter(p -> this.self.cpl(p.id) != depth).toList();
+		for (var peer : moved) {
+			branch.removeReplacement(peer.id);
+			own.addReplacement(peer);
+		}
+		this.own = own;
+	}
+
+	private static int offer(Node node, ClosestSelector selector, KadID ignore) {
+		if (node.isLeaf()) {
+			return offer(node.bucket, selector, ignore);
+		}
+		return offer(node.zero, selector, ignore) + offer(node.one, selector, ignore);
+	}
+
+	private static int offer(Bucket bucket, ClosestSelector selector, KadID ignore) {
+		var offered = 0;
+		for (int i = 0; i < bucket.size(); ++i) {
+			var peer = bucket.get(i);
+			if (!peer.id.equals(ignore)) {
+				selector.offer(peer);
+				offered += 1;
+			}
+		}
+		return offered;
+	}
+
+	private static int size(Node node) {
+		if (node.isLeaf()) {
+			return node.bucket.size();
+		}
+		return size(node.zero) + size(node.one);
+	}
+
+	private static Stream<KadPeer> stream(Node node) {
+		if (node.isLeaf()) {
+			return node.bucket.stream();
+		}
+		return Stream.concat(stream(node.zero), stream(node.one));
+	}
+}
@@ -0,0 +1,17 @@
+package asd.protocols.overlay.kad.timers;
+
+import asd.protocols.overlay.kad.Kademlia;
+import pt.unl.fct.di.novasys.babel.generic.ProtoTimer;
+
+public class FlushHavesTimer extends ProtoTimer {
+	public static final short ID = Kademlia.ID + 7;
+
+	public FlushHavesTimer() {
+		super(ID);
+	}
+
+	@Override
+	public ProtoTimer clone() {
+		return this;
+	}
+}
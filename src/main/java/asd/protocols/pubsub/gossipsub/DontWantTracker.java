@@ -0,0 +1,77 @@
+package asd.protocols.pubsub.gossipsub;
+
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The message ids each peer told us it does not want with an IDontWant.
+ * <p>
+ * Ids expire `ttlTicks` heartbeats after they were received, by then the message has gone through the mesh. At most
+ * `maxPerPeer` ids are kept per peer, later ones are ignored until older ones expire, so a peer can not make us keep
+ * an unbounded number of ids.
+ */
+public class DontWantTracker {
+
+	private final int ttlTicks;
+	private final int maxPerPeer;
+	private final Map<Host, LinkedHashMap<UUID, Long>> dontWant; // peer => msgId => tick it expires at
+	private long tick;
+
+	public DontWantTracker(int ttlTicks, int maxPerPeer) {
+		this.ttlTicks = ttlTicks;
+		this.maxPerPeer = maxPerPeer;
+		this.dontWant = new HashMap<>();
+		this.tick = 0;
+	}
+
+	public void add(Host peer, UUID msgId) {
+		var msgIds = dontWant.computeIfAbsent(peer, k -> new LinkedHashMap<>());
+		if (msgIds.size() >= maxPerPeer) {
+			return;
+		}
+		msgIds.putIfAbsent(msgId, tick + ttlTicks);
+	}
+
+	public boolean contains(Host peer, UUID msgId) {
+		var msgIds = dontWant.get(peer);
+		return msgIds != null && msgIds.containsKey(msgId);
+	}
+
+	public void remove(Host peer) {
+		dontWant.remove(peer);
+	}
+
+	/**
+	 * Advances one heartbeat and drops the ids that expired
+	 */
+	public void tick() {
+		tick++;
+		var peers = dontWant.values().iterator();
+		while (peers.hasNext()) {
+			var msgIds = peers.next();
+			// ids are in the order they were added, so they expire in order
+			var entries = msgIds.values().iterator();
+			while (entries.hasNext() && entries.next() <= tick) {
+				entries.remove();
+			}
+			if (msgIds.isEmpty()) {
+				peers.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of ids kept over all peers
+	 */
+	public int size() {
+		var size = 0;
+		for (var msgIds : dontWant.values()) {
+			size += msgIds.size();
+		}
+		return size;
+	}
+}
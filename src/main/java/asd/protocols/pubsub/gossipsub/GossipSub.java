@@ -9,9 +9,14 @@ import asd.protocols.overlay.kad.ipc.JoinSwarm;
 import asd.protocols.overlay.kad.ipc.JoinSwarmReply;
 import asd.protocols.pubsub.common.*;
 import asd.protocols.pubsub.gossipsub.messages.*;
+import asd.protocols.pubsub.gossipsub.score.PeerScore;
+import asd.protocols.pubsub.gossipsub.score.PeerScoreParams;
+import asd.protocols.pubsub.gossipsub.timers.FlushTimer;
 import asd.protocols.pubsub.gossipsub.timers.HeartbeatTimer;
 import asd.protocols.pubsub.gossipsub.timers.InfoTimer;
 import asd.utils.ASDUtils;
+import asd.utils.SeenFilter;
+import asd.utils.sampling.Sampler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import pt.unl.fct.di.novasys.babel.core.GenericProtocol;
@@ -21,9 +26,9 @@ import pt.unl.fct.di.novasys.channel.tcp.events.*;
 import pt.unl.fct.di.novasys.network.data.Host;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
 
-import static asd.utils.ASDUtils.sample;
 
 public class GossipSub extends GenericProtocol {
 
@@ -35,28 +40,37 @@ public class GossipSub extends GenericProtocol {
 	private final int heartbeatInitialDelayMs;
 	private final int degree, degreeLow, degreeHigh;
 	private final int degreeLazy;
+	private final int degreeScore; // mesh peers kept by score when pruning an oversubscribed mesh
 	private final int maxIHaveLength;
 	private final float gossipFactor;
 	private final int peersInPrune;
 	private final int fanoutTTLMs;
+	private final int iDontWantMinSize; // messages at least this large are announced to the mesh with an IDontWant
 	private final Set<Host> peers; // peers with connection
 	private final Set<Host> direct; // direct peers
-	private final Map<String, Set<Host>> topics; // map of topics to which peers are subscribed to
+	private final PeerIndex peerIndex; // dense ids of the peers in topics, mesh and fanout
+	private final TopicPeers topics; // map of topics to which peers are subscribed to
 	private final Set<String> subscriptions; // set of subscriptions
-	private final Map<String, Set<Host>> mesh; // map of topic meshes (topic => set of peers)
+	private final TopicPeers mesh; // map of topic meshes (topic => set of peers)
 	/*
 	 * Map of topics to set of peers.
 	 * These mesh peers are the ones to which self is publishing without a topic
 	 * membership (topic => set of peers)
 	 */
-	private final Map<String, Set<Host>> fanout;
+	private final TopicPeers fanout;
 	private final Map<String, Long> fanoutLastPub; // map of last publish time for fanout topics (topic => last publish
 	// time)
 	private final Map<Host, IHave> pendingGossip; // map of pending messages to gossip (host => IHave messages)
 	private final Map<String, Set<PublishMessage>> pendingPublishes; // map of pending publish messages
 	private final MessageCache messageCache; // cache that contains the messages for last few heartbeat ticks
-	private final Set<UUID> seenMessages; // set of ids of seen messages (maybe turn to cache)
+	private final SeenFilter seenMessages; // ids of recently seen messages
+	private final Sampler sampler; // picks the random peers and message ids
+	private final RpcBatcher rpcBatcher; // merges the messages sent to each peer into one envelope
+	private final PeerScoreParams scoreParams;
+	private final PeerScore peerScore;
+	private final DontWantTracker dontWant; // ids each peer told us it does not want
 	private int channelId = -1;
+	private long heartbeatTicks = 0;
 
 	public GossipSub(Properties props, Host self) throws HandlerRegistrationException, IOException {
 		super(NAME, ID);
@@ -71,17 +85,20 @@ public class GossipSub extends GenericProtocol {
 		this.degreeLow = Integer.parseInt(props.getProperty("gossipsub_degree_low"));
 		this.degreeHigh = Integer.parseInt(props.getProperty("gossipsub_degree_high"));
 		this.degreeLazy = Integer.parseInt(props.getProperty("gossipsub_degree_lazy"));
+		this.degreeScore = Integer.parseInt(props.getProperty("gossipsub_degree_score", "4"));
 		this.maxIHaveLength = Integer.parseInt(props.getProperty("gossipsub_max_i_have_length"));
 		this.gossipFactor = Float.parseFloat(props.getProperty("gossipsub_gossip_factor"));
 		this.peersInPrune = Integer.parseInt(props.getProperty("gossipsub_prune_peers"));
 		this.fanoutTTLMs = (int) (Double.parseDouble(props.getProperty("gossipsub_fanout_ttl")) * 1000.0);
+		this.iDontWantMinSize = Integer.parseInt(props.getProperty("gossipsub_idontwant_min_size", "65536"));
 
 		this.peers = new HashSet<>();
 		this.direct = new HashSet<>();
-		this.topics = new HashMap<>();
+		this.peerIndex = new PeerIndex();
+		this.topics = new TopicPeers(peerIndex);
 		this.subscriptions = new HashSet<>();
-		this.mesh = new HashMap<>();
-		this.fanout = new HashMap<>();
+		this.mesh = new TopicPeers(peerIndex);
+		this.fanout = new TopicPeers(peerIndex);
 		this.fanoutLastPub = new HashMap<>();
 		this.pendingGossip = new HashMap<>();
 		this.pendingPublishes = new HashMap<>();
@@ -89,7 +106,30 @@ public class GossipSub extends GenericProtocol {
 		int historyLength = Integer.parseInt(props.getProperty("gossipsub_history_length"));
 		int historyGossip = Integer.parseInt(props.getProperty("gossipsub_history_gossip"));
 		this.messageCache = new MessageCache(historyGossip, historyLength);
-		this.seenMessages = new HashSet<>();
+		var seenFilter = props.getProperty("gossipsub_seen_filter", SeenFilter.TYPE_BLOOM);
+		var seenMax = Integer.parseInt(props.getProperty("gossipsub_seen_max", "100000"));
+		var seenFpp = Double.parseDouble(props.getProperty("gossipsub_seen_fpp", "0.000001"));
+		var seenTTLMs = (long) (Double.parseDouble(props.getProperty("gossipsub_seen_ttl", "120")) * 1000.0);
+		this.seenMessages = SeenFilter.create(seenFilter, seenMax, seenFpp, Duration.ofMillis(seenTTLMs));
+		this.sampler = Sampler.create(props, self);
+		this.scoreParams = new PeerScoreParams(props);
+		this.peerScore = new PeerScore(scoreParams, this::getMillisSinceBabelStart);
+		var iDontWantTTL = Integer.parseInt(props.getProperty("gossipsub_idontwant_ttl", "3"));
+		var iDontWantMax = Integer.parseInt(props.getProperty("gossipsub_idontwant_max", "1000"));
+		this.dontWant = new DontWantTracker(iDontWantTTL, iDontWantMax);
+		var rpcWindowMs = (long) (Double.parseDouble(props.getProperty("gossipsub_rpc_window", "0")) * 1000.0);
+		var rpcMaxBytes = Integer.parseInt(props.getProperty("gossipsub_rpc_max_bytes", "65536"));
+		this.rpcBatcher = new RpcBatcher(rpcWindowMs, rpcMaxBytes, new RpcBatcher.IO() {
+			@Override
+			public void send(ProtoMessage msg, Host peer) {
+				GossipSub.this.sendMessage(msg, peer);
+			}
+
+			@Override
+			public void scheduleFlush(long delayMs) {
+				GossipSub.this.setupTimer(new FlushTimer(), delayMs);
+			}
+		});
 
 		/*-------------------- Register Request Events ------------------------------- */
 		this.registerRequestHandler(SubscriptionRequest.REQUEST_ID, this::uponSubscriptionRequest);
@@ -103,6 +143,7 @@ public class GossipSub extends GenericProtocol {
 		/*-------------------- Register Timer Events ------------------------------- */
 		this.registerTimerHandler(HeartbeatTimer.ID, this::onHeartbeat);
 		this.registerTimerHandler(InfoTimer.ID, this::onInfoTimer);
+		this.registerTimerHandler(FlushTimer.ID, this::onFlushTimer);
 
 		this.subscribeNotification(ChannelCreatedNotification.ID, this::onChannelCreated);
 	}
@@ -116,19 +157,23 @@ public class GossipSub extends GenericProtocol {
 			this.registerMessageHandler(this.channelId, Graft.ID, this::uponGraft);
 			this.registerMessageHandler(this.channelId, IHave.ID, this::uponIHave);
 			this.registerMessageHandler(this.channelId, IWant.ID, this::uponIWant);
+			this.registerMessageHandler(this.channelId, IDontWant.ID, this::uponIDontWant);
 			this.registerMessageHandler(this.channelId, Prune.ID, this::uponPrune);
 			this.registerMessageHandler(this.channelId, PublishMessage.ID, this::uponPublishMessage);
 			this.registerMessageHandler(this.channelId, SubscribeMessage.ID, this::uponSubscribeMessage);
 			this.registerMessageHandler(this.channelId, UnsubscribeMessage.ID, this::uponUnsubscribeMessage);
+			this.registerMessageHandler(this.channelId, Rpc.ID, this::uponRpc);
 
 			/*---------------------- Register Message Serializers -------------------------- */
 			this.registerMessageSerializer(this.channelId, Graft.ID, Graft.serializer);
 			this.registerMessageSerializer(this.channelId, IHave.ID, IHave.serializer);
 			this.registerMessageSerializer(this.channelId, IWant.ID, IWant.serializer);
+			this.registerMessageSerializer(this.channelId, IDontWant.ID, IDontWant.serializer);
 			this.registerMessageSerializer(this.channelId, Prune.ID, Prune.serializer);
 			this.registerMessageSerializer(this.channelId, PublishMessage.ID, PublishMessage.serializer);
 			this.registerMessageSerializer(this.channelId, SubscribeMessage.ID, SubscribeMessage.serializer);
 			this.registerMessageSerializer(this.channelId, UnsubscribeMessage.ID, UnsubscribeMessage.serializer);
+			this.registerMessageSerializer(this.channelId, Rpc.ID, Rpc.serializer);
 
 			/*-------------------- Register Channel Events ------------------------------- */
 			this.registerChannelEventHandler(this.channelId, OutConnectionDown.EVENT_ID, this::onOutConnectionDown);
@@ -209,7 +254,7 @@ public class GossipSub extends GenericProtocol {
 		messageCache.put(publishMessage);
 
 		for (var peer : toSend) {
-			sendMessage(publishMessage, peer);
+			rpcBatcher.send(publishMessage, peer);
 		}
 		sendReply(new PublishReply(topic, msgId), AutomatedApp.PROTO_ID);
 	}
@@ -240,12 +285,12 @@ public class GossipSub extends GenericProtocol {
 		var topic = reply.swarm;
 
 		if (!swarmPeers.isEmpty()) {
-			this.mesh.computeIfAbsent(topic, k -> new HashSet<>());
-			this.mesh.get(topic).addAll(swarmPeers);
+			this.mesh.computeIfAbsent(topic).addAll(swarmPeers);
 
 			for (var peer : swarmPeers) {
 				logger.trace("JOIN: Add mesh link to {} in {}", peer, topic);
-				sendMessage(new Graft(Set.of(topic)), peer);
+				peerScore.graft(peer, topic);
+				rpcBatcher.send(new Graft(Set.of(topic)), peer);
 			}
 		}
 	}
@@ -264,7 +309,7 @@ public class GossipSub extends GenericProtocol {
 				seenMessages.add(publishMessage.getMsgId());
 				messageCache.put(publishMessage);
 				for (var peer : swarmPeers) {
-					sendMessage(publishMessage, peer);
+					rpcBatcher.send(publishMessage, peer);
 				}
 				sendReply(new PublishReply(topic, publishMessage.getMsgId()), AutomatedApp.PROTO_ID);
 			}
@@ -275,46 +320,86 @@ public class GossipSub extends GenericProtocol {
 	/*--------------------------------- Timer Handlers ---------------------------------------- */
 
 	private void onHeartbeat(HeartbeatTimer timer, long timerId) {
+		// everything the heartbeat sends to a peer goes out in one envelope
+		rpcBatcher.hold();
+		heartbeatTicks++;
+		Map<Host, Double> scores = new HashMap<>();
+
 		Map<Host, Set<String>> toGraft = new HashMap<>();
 		Map<Host, Set<String>> toPrune = new HashMap<>();
 
 		Map<String, Set<Host>> peersToGossipByTopic = new HashMap<>();
 
 		// maintain the mesh for topics we have joined
-		for (var meshEntry : mesh.entrySet()) {
-			var topic = meshEntry.getKey();
-			var meshPeers = meshEntry.getValue();
+		for (var topic : mesh.topics()) {
+			var meshPeers = mesh.get(topic);
 
 			var peersInTopic = this.topics.get(topic);
 			Set<Host> candidateMeshPeers = new HashSet<>();
 			Set<Host> peersToGossip = new HashSet<>();
 			peersToGossipByTopic.put(topic, peersToGossip);
 
+			// drop the mesh peers with a negative score
+			for (var peer : new ArrayList<>(meshPeers)) {
+				if (score(peer, scores) < 0) {
+					prunePeer(peer, topic, meshPeers, toPrune);
+				}
+			}
+
 			if (peersInTopic != null && !peersInTopic.isEmpty()) {
 				for (var peer : peersInTopic) {
 					if (!meshPeers.contains(peer) && !this.direct.contains(peer)) {
-						candidateMeshPeers.add(peer);
+						var candidateScore = score(peer, scores);
+						if (candidateScore >= 0) {
+							candidateMeshPeers.add(peer);
+						}
 						// instead of having to find gossip peers after heartbeat which require another
 						// loop
 						// we prepare peers to gossip in a topic within heartbeat to improve performance
-						peersToGossip.add(peer);
+						if (candidateScore >= scoreParams.gossipThreshold) {
+							peersToGossip.add(peer);
+						}
 					}
 				}
 			}
 			// not enough peers
 			if (meshPeers.size() < degreeLow) {
 				var iNeed = degree - meshPeers.size();
-				var newMeshPeers = sample(iNeed, candidateMeshPeers);
+				var newMeshPeers = sampler.sample(candidateMeshPeers, iNeed);
 				for (var peer : newMeshPeers) {
 					graftPeer(peer, topic, meshPeers, peersToGossip, toGraft);
 				}
 			}
-			// too much peers
+			// too much peers, keep the degreeScore best scoring ones and fill up to degree at random
 			if (meshPeers.size() > degreeHigh) {
-				var excess = meshPeers.size() - degree;
-				var someMeshPeers = sample(excess, meshPeers);
-				for (var peer : someMeshPeers) {
-					prunePeer(peer, topic, meshPeers, toPrune);
+				List<Host> byScore = new ArrayList<>(meshPeers);
+				byScore.sort(Comparator.comparingDouble((Host peer) -> score(peer, scores)).reversed());
+				var keepByScore = Math.min(degreeScore, degree);
+				var rest = byScore.subList(keepByScore, byScore.size());
+				var keep = new HashSet<>(byScore.subList(0, keepByScore));
+				sampler.sample(rest, degree - keepByScore, keep);
+				for (var peer : byScore) {
+					if (!keep.contains(peer)) {
+						prunePeer(peer, topic, meshPeers, toPrune);
+					}
+				}
+			}
+			// opportunistic grafting, when the mesh is stuck with poorly performing peers graft better ones
+			if (scoreParams.opportunisticGraftTicks > 0 && heartbeatTicks % scoreParams.opportunisticGraftTicks == 0
+					&& meshPeers.size() > 1) {
+				var meshScores = meshPeers.stream().mapToDouble(peer -> score(peer, scores)).sorted().toArray();
+				var median = meshScores[meshScores.length / 2];
+				if (median < scoreParams.opportunisticGraftThreshold) {
+					List<Host> better = new ArrayList<>();
+					for (var peer : candidateMeshPeers) {
+						if (score(peer, scores) > median) {
+							better.add(peer);
+						}
+					}
+					for (var peer : sampler.sample(better, scoreParams.opportunisticGraftPeers)) {
+						logger.trace("HEARTBEAT: Opportunistically graft {} in {}", peer, topic);
+						graftPeer(peer, topic, meshPeers, peersToGossip, toGraft);
+					}
 				}
 			}
 		}
@@ -330,9 +415,8 @@ public class GossipSub extends GenericProtocol {
 			}
 		});
 		// maintain our fanout for topics we are publishing, but we have not joined
-		for (var entry : fanout.entrySet()) {
-			var topic = entry.getKey();
-			var fanoutPeers = entry.getValue();
+		for (var topic : fanout.topics()) {
+			var fanoutPeers = fanout.get(topic);
 			var peersInTopic = topics.get(topic);
 			// checks whether our peers are still in the topic
 			fanoutPeers.removeIf((peer) -> peersInTopic == null || !peersInTopic.contains(peer));
@@ -354,7 +438,7 @@ public class GossipSub extends GenericProtocol {
 			// do we need more peers?
 			if (fanoutPeers.size() < degree) {
 				var iNeed = degree - fanoutPeers.size();
-				var newFanoutPeers = sample(iNeed, candidateFanoutPeers);
+				var newFanoutPeers = sampler.sample(candidateFanoutPeers, iNeed);
 				for (var peer : newFanoutPeers) {
 					fanoutPeers.add(peer);
 					peersToGossip.remove(peer);
@@ -362,13 +446,20 @@ public class GossipSub extends GenericProtocol {
 			}
 		}
 		emitGossip(peersToGossipByTopic);
-		// send GRAFT and PRUNE messages (no piggyback)
+		// queue GRAFT and PRUNE messages, they piggyback on the gossip
 		sendGrafts(toGraft);
 		sendPrunes(toPrune);
-		// flush all gossip (IWANTs) (not piggybacking here)
+		// queue all gossip (IHAVEs) and send one envelope per peer
 		flush();
+		rpcBatcher.flush();
 		// advance the message history window
 		messageCache.shift();
+		peerScore.decay();
+		dontWant.tick();
+	}
+
+	private void onFlushTimer(FlushTimer timer, long timerId) {
+		rpcBatcher.flush();
 	}
 
 	private void onInfoTimer(InfoTimer timer, long timerId) {
@@ -377,7 +468,10 @@ public class GossipSub extends GenericProtocol {
 		logger.debug("topics:\n{}", topics);
 		logger.debug("mesh:\n{}", mesh);
 		logger.debug("fanout:\n{}", fanout);
-		logger.debug("seen messages:\n{}", seenMessages);
+		logger.debug("seen messages: {}", seenMessages.size());
+		for (var entry : peerScore.scores().entrySet()) {
+			Metrics.peerScore(entry.getKey(), entry.getValue());
+		}
 	}
 
 	/*--------------------------------- Message Handlers ---------------------------------------- */
@@ -385,14 +479,14 @@ public class GossipSub extends GenericProtocol {
 	private void uponSubscribeMessage(SubscribeMessage subscribe, Host from, short sourceProto, int channelId) {
 		String topic = subscribe.getTopic();
 		logger.trace("subscription add from {} topic {}", from, topic);
-		var topicsSet = this.topics.computeIfAbsent(topic, k -> new HashSet<>());
+		var topicsSet = this.topics.computeIfAbsent(topic);
 		topicsSet.add(from);
 	}
 
 	private void uponUnsubscribeMessage(UnsubscribeMessage unsubscribe, Host from, short sourceProto, int channelId) {
 		String topic = unsubscribe.getTopic();
 		logger.trace("subscription delete from {} topic {}", from, topic);
-		var topicsSet = this.topics.computeIfAbsent(topic, k -> new HashSet<>());
+		var topicsSet = this.topics.computeIfAbsent(topic);
 		topicsSet.remove(from);
 	}
 
@@ -403,19 +497,57 @@ public class GossipSub extends GenericProtocol {
 		var hopCount = publish.getHopCount();
 
 		if (seenMessages.add(msgId)) {
+			peerScore.deliverMessage(from, topic, msgId);
 			messageCache.put(publish);
 			var delivered = deliverMessage(publish);
 			Metrics.pubMessageReceived(from, msgId, topic, hopCount, delivered);
 
-			Set<Host> exclude = new HashSet<>();
-			exclude.add(from);
-			exclude.add(publish.getPropagationSource());
-			forwardMessage(publish, exclude);
+			if (publish.getMsg().length >= iDontWantMinSize) {
+				sendIDontWant(publish, from);
+			}
+			forwardMessage(publish, from);
 		} else {
+			peerScore.duplicateMessage(from, topic, msgId);
 			Metrics.pubMessageReceived(from, msgId, topic, hopCount, false);
 		}
 	}
 
+	private void uponRpc(Rpc rpc, Host from, short sourceProto, int channelId) {
+		// same order as libp2p: subscriptions, then published messages, then control messages
+		for (var entry : rpc.getSubscriptions().entrySet()) {
+			if (entry.getValue()) {
+				uponSubscribeMessage(new SubscribeMessage(entry.getKey()), from, sourceProto, channelId);
+			} else {
+				uponUnsubscribeMessage(new UnsubscribeMessage(entry.getKey()), from, sourceProto, channelId);
+			}
+		}
+		for (var publish : rpc.getPublishes()) {
+			uponPublishMessage(publish, from, sourceProto, channelId);
+		}
+		if (rpc.getGraft() != null) {
+			uponGraft(rpc.getGraft(), from, sourceProto, channelId);
+		}
+		if (rpc.getPrune() != null) {
+			uponPrune(rpc.getPrune(), from, sourceProto, channelId);
+		}
+		if (rpc.getIHave() != null) {
+			uponIHave(rpc.getIHave(), from, sourceProto, channelId);
+		}
+		if (rpc.getIWant() != null) {
+			uponIWant(rpc.getIWant(), from, sourceProto, channelId);
+		}
+		if (rpc.getIDontWant() != null) {
+			uponIDontWant(rpc.getIDontWant(), from, sourceProto, channelId);
+		}
+	}
+
+	private void uponIDontWant(IDontWant iDontWant, Host from, short sourceProto, int channelId) {
+		logger.trace("IDONTWANT: {} messages from {}", iDontWant.getMessageIds().size(), from);
+		for (var msgId : iDontWant.getMessageIds()) {
+			dontWant.add(from, msgId);
+		}
+	}
+
 	private void uponIWant(IWant iWant, Host from, short sourceProto, int channelId) {
 		Set<PublishMessage> toSend = new HashSet<>();
 		for (UUID msgId : iWant.getMessageIds()) {
@@ -434,7 +566,7 @@ public class GossipSub extends GenericProtocol {
 		}
 
 		for (var message : toSend) {
-			sendMessage(message, from);
+			rpcBatcher.send(message, from);
 		}
 	}
 
@@ -458,10 +590,10 @@ public class GossipSub extends GenericProtocol {
 
 		var iAsk = Math.min(iWant.size(), maxIHaveLength);
 		if (iAsk > iWant.size()) {
-			iWant = sample(iAsk, iWant);
+			iWant = sampler.sample(iWant, iAsk, new HashSet<>());
 		}
 		logger.trace("IHAVE: Asking for {} out of {} messages from {}", iAsk, iWant.size(), from);
-		sendMessage(new IWant(iWant), from);
+		rpcBatcher.send(new IWant(iWant), from);
 	}
 
 	private void uponGraft(Graft graft, Host from, short sourceProto, int channelId) {
@@ -471,6 +603,7 @@ public class GossipSub extends GenericProtocol {
 			return;
 		}
 
+		var negative = peerScore.score(from) < 0;
 		for (var topic : graft.getTopics()) {
 			var peersInMesh = mesh.get(topic);
 			if (peersInMesh == null || peersInMesh.isEmpty()) {
@@ -479,8 +612,14 @@ public class GossipSub extends GenericProtocol {
 			if (peersInMesh.contains(from)) {
 				continue;
 			}
+			if (negative) {
+				logger.trace("GRAFT: Refuse mesh link from {} in {} with negative score", from, topic);
+				rpcBatcher.send(new Prune(Map.of(topic, Set.of())), from);
+				continue;
+			}
 			logger.trace("GRAFT: Add mesh link from {} in {}", from, topic);
 			peersInMesh.add(from);
+			peerScore.graft(from, topic);
 		}
 	}
 
@@ -496,6 +635,7 @@ public class GossipSub extends GenericProtocol {
 
 			logger.trace("PRUNE: Remove mesh link to {} in {}", from, topic);
 			peersInMesh.remove(from);
+			peerScore.prune(from, topic);
 
 			// PX TODO: not sure this is correct
 			for (var peer : peersPX) {
@@ -540,9 +680,9 @@ public class GossipSub extends GenericProtocol {
 	private void sendSubscriptions(Host peer, Set<String> topics, boolean subscribe) {
 		for (var topic : topics) {
 			if (subscribe) {
-				sendMessage(new SubscribeMessage(topic), peer);
+				rpcBatcher.send(new SubscribeMessage(topic), peer);
 			} else {
-				sendMessage(new UnsubscribeMessage(topic), peer);
+				rpcBatcher.send(new UnsubscribeMessage(topic), peer);
 			}
 		}
 	}
@@ -557,36 +697,69 @@ public class GossipSub extends GenericProtocol {
 		return deliver;
 	}
 
-	private void forwardMessage(PublishMessage publish, Set<Host> exclude) {
-		var topic = publish.getTopic();
-		var toSend = selectPeersToForward(topic, exclude);
-		for (var peer : toSend) {
-			sendMessage(publish, peer);
+	/**
+	 * Tells the mesh peers of the message's topic, except the peer it came from and its source, that we already have
+	 * it so they do not send us a copy. Sent right away, a delayed IDontWant would arrive after the duplicates.
+	 */
+	private void sendIDontWant(PublishMessage publish, Host from) {
+		var meshPeers = this.mesh.get(publish.getTopic());
+		if (meshPeers == null || meshPeers.isEmpty()) {
+			return;
+		}
+		var source = publish.getPropagationSource();
+		IDontWant iDontWant = null;
+		for (var peer : meshPeers) {
+			if (peer.equals(from) || peer.equals(source)) {
+				continue;
+			}
+			if (iDontWant == null) {
+				iDontWant = new IDontWant(Set.of(publish.getMsgId()));
+			}
+			rpcBatcher.sendNow(iDontWant, peer);
 		}
 	}
 
-	private Set<Host> selectPeersToForward(String topic, Set<Host> exclude) {
-		Set<Host> toSend = new HashSet<>();
+	/**
+	 * Sends the message to the direct peers subscribed to its topic and to the mesh peers of the topic, except to the
+	 * peer it came from, its source and the peers that sent an IDontWant for it. Walks the topic's peer sets by id,
+	 * nothing is allocated per message.
+	 */
+	private void forwardMessage(PublishMessage publish, Host from) {
+		var topic = publish.getTopic();
+		var source = publish.getPropagationSource();
+		var msgId = publish.getMsgId();
 
 		var peersInTopic = this.topics.get(topic);
+		var directInTopic = false;
 		if (peersInTopic != null && !peersInTopic.isEmpty()) {
 			for (var peer : this.direct) {
-				if (peersInTopic.contains(peer) && !exclude.contains(peer)) {
-					toSend.add(peer);
+				if (peersInTopic.contains(peer) && !peer.equals(from) && !peer.equals(source)
+						&& !dontWant.contains(peer, msgId)) {
+					rpcBatcher.send(publish, peer);
+					directInTopic = true;
 				}
 			}
 		}
 
 		var meshPeers = this.mesh.get(topic);
-		if (meshPeers != null && !meshPeers.isEmpty()) {
-			for (var peer : meshPeers) {
-				if (!exclude.contains(peer)) {
-					toSend.add(peer);
+		if (meshPeers != null) {
+			var fromId = peerIndex.id(from);
+			var sourceId = peerIndex.id(source);
+			for (var id = meshPeers.nextPeer(0); id >= 0; id = meshPeers.nextPeer(id + 1)) {
+				if (id == fromId || id == sourceId) {
+					continue;
+				}
+				var peer = meshPeers.host(id);
+				// already sent to as a direct peer
+				if (directInTopic && this.direct.contains(peer) && peersInTopic.containsId(id)) {
+					continue;
+				}
+				if (dontWant.contains(peer, msgId)) {
+					continue;
 				}
+				rpcBatcher.send(publish, peer);
 			}
 		}
-
-		return toSend;
 	}
 
 	private void join(String topic) {
@@ -602,16 +775,16 @@ public class GossipSub extends GenericProtocol {
 		// do,
 		// removing the fanout entry.
 		var fanoutPeers = fanout.get(topic);
-		if (fanoutPeers != null && fanoutPeers.isEmpty()) {
-			// Remove fanout entry and the last published time
-			fanout.remove(topic);
-			fanoutLastPub.remove(topic);
-
+		if (fanoutPeers != null && !fanoutPeers.isEmpty()) {
 			for (var peer : fanoutPeers) {
 				if (!this.direct.contains(peer)) {
 					toAdd.add(peer);
 				}
 			}
+
+			// Remove fanout entry and the last published time
+			fanout.remove(topic);
+			fanoutLastPub.remove(topic);
 		}
 
 		// check if we need to get more peers, which we randomly select
@@ -631,7 +804,8 @@ public class GossipSub extends GenericProtocol {
 
 		for (var peer : toAdd) {
 			logger.trace("JOIN: Add mesh link to {} in {}", peer, topic);
-			sendMessage(new Graft(Set.of(topic)), peer);
+			peerScore.graft(peer, topic);
+			rpcBatcher.send(new Graft(Set.of(topic)), peer);
 		}
 	}
 
@@ -642,14 +816,8 @@ public class GossipSub extends GenericProtocol {
 			return new HashSet<>();
 		}
 
-		Set<Host> peersToReturn = new HashSet<>();
-		for (var peer : peersInTopic) {
-			if (exclude == null || !exclude.contains(peer)) {
-				peersToReturn.add(peer);
-			}
-		}
-
-		return sample(count, peersToReturn);
+		var candidates = peersInTopic.stream().filter(peer -> exclude == null || !exclude.contains(peer));
+		return sampler.reservoir(candidates.iterator(), count, new HashSet<>());
 	}
 
 	private void leave(String topic) {
@@ -660,7 +828,8 @@ public class GossipSub extends GenericProtocol {
 		if (meshPeers != null && !meshPeers.isEmpty()) {
 			for (var peer : meshPeers) {
 				logger.trace("LEAVE: Remove mesh link to {} in {}", peer, topic);
-				sendMessage(makePrune(peer, topic), peer);
+				peerScore.prune(peer, topic);
+				rpcBatcher.send(makePrune(peer, topic), peer);
 			}
 			this.mesh.remove(topic);
 		}
@@ -712,6 +881,7 @@ public class GossipSub extends GenericProtocol {
 
 	private void addPeer(Host peer) {
 		if (this.peers.add(peer)) {
+			peerScore.addPeer(peer);
 			logger.trace("new peer {}", peer);
 		}
 	}
@@ -720,19 +890,14 @@ public class GossipSub extends GenericProtocol {
 		this.direct.remove(peer);
 		if (this.peers.remove(peer)) {
 			// closeConnection(peer);
-			// remove peer from topics map
-			for (var topicPeers : topics.values()) {
-				topicPeers.remove(peer);
-			}
-			// Remove this peer from the mesh
-			for (var meshPeers : mesh.values()) {
-				meshPeers.remove(peer);
-			}
-			// Remove this peer from the fanout
-			for (var fanoutPeers : fanout.values()) {
-				fanoutPeers.remove(peer);
-			}
+			// remove peer from topics map, the mesh and the fanout, only visiting the topics it is in
+			topics.removePeer(peer);
+			mesh.removePeer(peer);
+			fanout.removePeer(peer);
 			pendingGossip.remove(peer);
+			rpcBatcher.remove(peer);
+			peerScore.removePeer(peer);
+			dontWant.remove(peer);
 
 			logger.trace("deleted peer {}", peer);
 		}
@@ -742,6 +907,7 @@ public class GossipSub extends GenericProtocol {
 		logger.trace("HEARTBEAT: Remove mesh link to {} in {}", peer, topic);
 		// remove peer from mesh
 		meshPeers.remove(peer);
+		peerScore.prune(peer, topic);
 		// add to toPrune
 		toPrune.computeIfAbsent(peer, k -> new HashSet<>());
 		toPrune.get(peer).add(topic);
@@ -752,6 +918,7 @@ public class GossipSub extends GenericProtocol {
 		logger.trace("HEARTBEAT: Add mesh link to {} in {}", peer, topic);
 		// add peer to mesh
 		peerMesh.add(peer);
+		peerScore.graft(peer, topic);
 		// when we add a new mesh peer, we don't want to gossip messages to it
 		peersToGossip.remove(peer);
 		// add to toGraft
@@ -759,6 +926,13 @@ public class GossipSub extends GenericProtocol {
 		toGraft.get(peer).add(topic);
 	}
 
+	/**
+	 * Scores are computed once per heartbeat
+	 */
+	private double score(Host peer, Map<Host, Double> scores) {
+		return scores.computeIfAbsent(peer, peerScore::score);
+	}
+
 	private void emitGossip(Map<String, Set<Host>> peersToGossipByTopic) {
 		var msgIdsByTopic = messageCache.getMessageIDsByTopic(peersToGossipByTopic.keySet());
 		for (var entry : peersToGossipByTopic.entrySet()) {
@@ -787,18 +961,20 @@ public class GossipSub extends GenericProtocol {
 		}
 		var target = degreeLazy;
 		var factor = gossipFactor * candidatesToGossip.size();
-		Set<Host> peersToGossip = new HashSet<>(candidatesToGossip);
+		Collection<Host> peersToGossip = candidatesToGossip;
 		if (factor > target) {
 			target = Math.round(factor);
 		}
 		if (target <= candidatesToGossip.size()) {
-			peersToGossip = sample(target, peersToGossip);
+			peersToGossip = sampler.sample(candidatesToGossip, target);
 		}
 
 		for (var peer : peersToGossip) {
-			Set<UUID> peerMsgIds = new HashSet<>(msgIds);
+			Set<UUID> peerMsgIds;
 			if (msgIds.size() > maxIHaveLength) {
-				peerMsgIds = sample(maxIHaveLength, peerMsgIds);
+				peerMsgIds = sampler.sample(msgIds, maxIHaveLength, new HashSet<>());
+			} else {
+				peerMsgIds = new HashSet<>(msgIds);
 			}
 			pushGossip(peer, topic, peerMsgIds);
 		}
@@ -819,7 +995,7 @@ public class GossipSub extends GenericProtocol {
 			var peer = entry.getKey();
 			var topics = entry.getValue();
 			var graft = new Graft(topics);
-			sendMessage(graft, peer);
+			rpcBatcher.send(graft, peer);
 		}
 	}
 
@@ -831,18 +1007,18 @@ public class GossipSub extends GenericProtocol {
 			for (var topic : topics) {
 				prune.append(makePrune(peer, topic));
 			}
-			sendMessage(prune, peer);
+			rpcBatcher.send(prune, peer);
 		}
 	}
 
 	/**
-	 * Flush gossip messages
+	 * Queue the pending gossip messages
 	 */
 	private void flush() {
 		for (var entry : pendingGossip.entrySet()) {
 			var peer = entry.getKey();
 			var iHave = entry.getValue();
-			sendMessage(iHave, peer);
+			rpcBatcher.send(iHave, peer);
 		}
 		pendingGossip.clear();
 	}
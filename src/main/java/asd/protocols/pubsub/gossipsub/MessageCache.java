@@ -1,33 +1,43 @@
 package asd.protocols.pubsub.gossipsub;
 
 import asd.protocols.pubsub.gossipsub.messages.PublishMessage;
-import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.*;
 
+/**
+ * Messages seen in the last `historyLength` heartbeats, the ids of the last `historyGossip` ones are gossiped.
+ * <p>
+ * The history is a ring of windows, each window keeps the ids put during one heartbeat in an array per topic.
+ * {@link #shift()} reuses the oldest window as the new current one, evicting only its messages, and the gossip ids of
+ * a topic are read straight from its arrays.
+ */
 public class MessageCache {
 
 	// msgId -> message
 	private final Map<UUID, PublishMessage> messages;
-	private final List<Set<Pair<UUID, String>>> history;
-	private final int historyGossip, historyLength;
+	private final Window[] history;
+	private final int historyGossip;
+	private int current; // index of the window messages are put in
 
 	public MessageCache(int historyGossip, int historyLength) {
+		if (historyLength < 1) {
+			throw new IllegalArgumentException("historyLength must be at least 1");
+		}
 		messages = new HashMap<>();
-		history = new LinkedList<>();
-		history.add(0, new HashSet<>());
-		this.historyGossip = historyGossip;
-		this.historyLength = historyLength;
+		history = new Window[historyLength];
+		for (int i = 0; i < historyLength; i++) {
+			history[i] = new Window();
+		}
+		this.historyGossip = Math.min(historyGossip, historyLength);
+		current = 0;
 	}
 
 	public void put(PublishMessage publishMessage) {
 		var msgId = publishMessage.getMsgId();
-		if (messages.containsKey(msgId)) {
+		if (messages.putIfAbsent(msgId, publishMessage) != null) {
 			return;
 		}
-
-		messages.put(publishMessage.getMsgId(), publishMessage);
-		history.get(0).add(Pair.of(msgId, publishMessage.getTopic()));
+		history[current].add(publishMessage.getTopic(), msgId);
 	}
 
 	public boolean contains(UUID msgId) {
@@ -38,30 +48,77 @@ public class MessageCache {
 		return messages.get(msgId);
 	}
 
+	/**
+	 * Starts a new window, the messages of the oldest one are evicted once there are `historyLength` windows
+	 */
 	public void shift() {
-		if (history.size() == historyLength) {
-			var lastEntries = history.remove(history.size() - 1);
-			history.add(0, new HashSet<>());
-			for (var entry : lastEntries) {
-				messages.remove(entry.getLeft());
-			}
-		}
+		current = (current + 1) % history.length;
+		history[current].evict(messages);
 	}
 
 	public Map<String, Set<UUID>> getMessageIDsByTopic(Set<String> topics) {
 		Map<String, Set<UUID>> msgIdsByTopic = new HashMap<>();
-		//only return 'gossip' most recent message sets in history
-		for (int i = 0; i < Math.min(historyGossip, history.size()); i++) {
-			for (var entry : history.get(i)) {
-				var msgId = entry.getLeft();
-				var msg = messages.get(msgId);
-				if (msg != null && topics.contains(msg.getTopic())) {
-					var topic = msg.getTopic();
-					msgIdsByTopic.computeIfAbsent(topic, k -> new HashSet<>());
-					msgIdsByTopic.get(topic).add(msgId);
+		for (var topic : topics) {
+			Set<UUID> msgIds = null;
+			//only return 'gossip' most recent windows in history
+			for (int i = 0; i < historyGossip; i++) {
+				var ids = history[Math.floorMod(current - i, history.length)].ids(topic);
+				if (ids == null || ids.size == 0) {
+					continue;
+				}
+				if (msgIds == null) {
+					msgIds = new HashSet<>();
+					msgIdsByTopic.put(topic, msgIds);
+				}
+				for (int j = 0; j < ids.size; j++) {
+					msgIds.add(ids.ids[j]);
 				}
 			}
 		}
 		return msgIdsByTopic;
 	}
+
+	private static class TopicIds {
+		UUID[] ids = new UUID[8];
+		int size = 0;
+
+		void add(UUID msgId) {
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = msgId;
+		}
+	}
+
+	private static class Window {
+		private final Map<String, TopicIds> topics = new HashMap<>();
+
+		void add(String topic, UUID msgId) {
+			topics.computeIfAbsent(topic, k -> new TopicIds()).add(msgId);
+		}
+
+		TopicIds ids(String topic) {
+			return topics.get(topic);
+		}
+
+		/**
+		 * Removes the window's messages and empties it. The arrays are kept for reuse, except those of topics that had
+		 * no messages since the last eviction.
+		 */
+		void evict(Map<UUID, PublishMessage> messages) {
+			var iterator = topics.values().iterator();
+			while (iterator.hasNext()) {
+				var ids = iterator.next();
+				if (ids.size == 0) {
+					iterator.remove();
+					continue;
+				}
+				for (int i = 0; i < ids.size; i++) {
+					messages.remove(ids.ids[i]);
+				}
+				Arrays.fill(ids.ids, 0, ids.size, null);
+				ids.size = 0;
+			}
+		}
+	}
 }
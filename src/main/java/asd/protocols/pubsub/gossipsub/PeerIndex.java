@@ -0,0 +1,88 @@
+package asd.protocols.pubsub.gossipsub;
+
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dense int ids for the peers referenced by the GossipSub peer sets.
+ * <p>
+ * Ids are reference counted, every topic membership of a peer holds one reference. An id is freed and reused for
+ * another peer once its last membership is gone, which keeps the ids, and the bitsets indexed by them, small under
+ * churn.
+ */
+public class PeerIndex {
+	public static final int NONE = -1;
+
+	private final Map<Host, Integer> ids;
+	private Host[] hosts;
+	private int[] refs;
+	private int[] free;
+	private int freeCount;
+	private int nextId;
+
+	public PeerIndex() {
+		ids = new HashMap<>();
+		hosts = new Host[64];
+		refs = new int[64];
+		free = new int[16];
+		freeCount = 0;
+		nextId = 0;
+	}
+
+	/**
+	 * @return The id of the peer or {@link #NONE} if it is not referenced by any set
+	 */
+	public int id(Host host) {
+		var id = ids.get(host);
+		return id == null ? NONE : id;
+	}
+
+	public Host host(int id) {
+		return hosts[id];
+	}
+
+	/**
+	 * @return The number of peers with an id
+	 */
+	public int size() {
+		return ids.size();
+	}
+
+	/**
+	 * Adds a reference to the peer, giving it an id if it has none
+	 *
+	 * @return The id of the peer
+	 */
+	int retain(Host host) {
+		var id = id(host);
+		if (id == NONE) {
+			id = freeCount > 0 ? free[--freeCount] : nextId++;
+			if (id == hosts.length) {
+				hosts = Arrays.copyOf(hosts, id * 2);
+				refs = Arrays.copyOf(refs, id * 2);
+			}
+			hosts[id] = host;
+			ids.put(host, id);
+		}
+		refs[id]++;
+		return id;
+	}
+
+	/**
+	 * Drops a reference to the peer, its id is freed when it was the last one
+	 */
+	void release(int id) {
+		if (--refs[id] > 0) {
+			return;
+		}
+		ids.remove(hosts[id]);
+		hosts[id] = null;
+		if (freeCount == free.length) {
+			free = Arrays.copyOf(free, freeCount * 2);
+		}
+		free[freeCount++] = id;
+	}
+}
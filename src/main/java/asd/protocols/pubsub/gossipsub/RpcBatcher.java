@@ -0,0 +1,153 @@
+package asd.protocols.pubsub.gossipsub;
+
+import asd.protocols.pubsub.gossipsub.messages.*;
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Queues the messages sent to each peer and sends them as one {@link Rpc} envelope per peer.
+ * <p>
+ * Messages are held for `windowMs` after the first one is queued, then every peer's envelope is sent. An envelope that
+ * would grow past `maxBytes` is sent before the message is added. Envelopes holding a single message are sent as that
+ * message. With a window of 0 messages are sent right away, except between {@link #hold()} and {@link #flush()}, which
+ * the heartbeat uses to piggyback its Graft, Prune and IHave messages.
+ */
+public class RpcBatcher {
+	public interface IO {
+		void send(ProtoMessage msg, Host peer);
+
+		void scheduleFlush(long delayMs);
+	}
+
+	// Framing of an envelope and of each message in it, the sizes are estimates
+	private static final int RPC_OVERHEAD = 32;
+	private static final int ID_SIZE = 16;
+
+	private final long windowMs;
+	private final int maxBytes;
+	private final IO io;
+	private final Map<Host, Rpc> pending;
+	private final Map<Host, Integer> pendingBytes;
+	private boolean holding;
+	private boolean flushScheduled;
+
+	public RpcBatcher(long windowMs, int maxBytes, IO io) {
+		this.windowMs = windowMs;
+		this.maxBytes = maxBytes;
+		this.io = io;
+		this.pending = new LinkedHashMap<>();
+		this.pendingBytes = new LinkedHashMap<>();
+		this.holding = false;
+		this.flushScheduled = false;
+	}
+
+	public void send(ProtoMessage msg, Host peer) {
+		if (windowMs <= 0 && !holding) {
+			io.send(msg, peer);
+			return;
+		}
+
+		var size = estimateSize(msg);
+		var rpc = pending.get(peer);
+		if (rpc != null && pendingBytes.get(peer) + size > maxBytes) {
+			pending.remove(peer);
+			pendingBytes.remove(peer);
+			sendRpc(rpc, peer);
+			rpc = null;
+		}
+		if (rpc == null) {
+			rpc = new Rpc();
+			pending.put(peer, rpc);
+			pendingBytes.put(peer, RPC_OVERHEAD);
+		}
+		rpc.add(msg);
+		pendingBytes.merge(peer, size, Integer::sum);
+
+		if (!holding && !flushScheduled) {
+			flushScheduled = true;
+			io.scheduleFlush(windowMs);
+		}
+	}
+
+	/**
+	 * Sends a message right away, ahead of the messages queued for the peer. For messages that lose their value when
+	 * delayed, like IDontWant.
+	 */
+	public void sendNow(ProtoMessage msg, Host peer) {
+		io.send(msg, peer);
+	}
+
+	/**
+	 * Queues every message until the next {@link #flush()}, even when there is no window.
+	 */
+	public void hold() {
+		holding = true;
+	}
+
+	public void flush() {
+		holding = false;
+		flushScheduled = false;
+		if (pending.isEmpty()) {
+			return;
+		}
+		var toSend = new ArrayList<>(pending.entrySet());
+		pending.clear();
+		pendingBytes.clear();
+		for (var entry : toSend) {
+			sendRpc(entry.getValue(), entry.getKey());
+		}
+	}
+
+	/**
+	 * Drops the messages queued for a peer that went away
+	 */
+	public void remove(Host peer) {
+		pending.remove(peer);
+		pendingBytes.remove(peer);
+	}
+
+	/**
+	 * @return The number of peers with queued messages
+	 */
+	public int size() {
+		return pending.size();
+	}
+
+	private void sendRpc(Rpc rpc, Host peer) {
+		var single = rpc.single();
+		io.send(single != null ? single : rpc, peer);
+	}
+
+	static int estimateSize(ProtoMessage msg) {
+		if (msg instanceof PublishMessage publish) {
+			return RPC_OVERHEAD + publish.getTopic().length() + ID_SIZE + publish.getMsg().length;
+		} else if (msg instanceof IHave iHave) {
+			var size = RPC_OVERHEAD;
+			for (var entry : iHave.getMsgIdsPerTopic().entrySet()) {
+				size += entry.getKey().length() + 8 + ID_SIZE * entry.getValue().size();
+			}
+			return size;
+		} else if (msg instanceof IWant iWant) {
+			return RPC_OVERHEAD + ID_SIZE * iWant.getMessageIds().size();
+		} else if (msg instanceof IDontWant iDontWant) {
+			return RPC_OVERHEAD + ID_SIZE * iDontWant.getMessageIds().size();
+		} else if (msg instanceof Prune prune) {
+			var size = RPC_OVERHEAD;
+			for (var entry : prune.getPeersPerTopic().entrySet()) {
+				size += entry.getKey().length() + 8 + 8 * entry.getValue().size();
+			}
+			return size;
+		} else if (msg instanceof Graft graft) {
+			var size = RPC_OVERHEAD;
+			for (var topic : graft.getTopics()) {
+				size += topic.length() + 4;
+			}
+			return size;
+		}
+		return RPC_OVERHEAD;
+	}
+}
@@ -0,0 +1,244 @@
+package asd.protocols.pubsub.gossipsub;
+
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.util.*;
+
+/**
+ * A topic => set of peers relation, such as the subscribers, mesh or fanout peers of each topic.
+ * <p>
+ * Each topic gets a dense int id and a {@link PeerSet}, a bitset over the {@link PeerIndex} ids of its peers, and each
+ * peer keeps a reverse bitset of the topics it is in. Removing a peer only visits the topics it is in, and the peers of
+ * a topic can be walked by id without allocating. Topics present in the relation are the ones returned by
+ * {@link #get(String)}, a removed topic keeps its id and set so joining it again reuses them.
+ */
+public class TopicPeers {
+
+	private final PeerIndex index;
+	private final Map<String, PeerSet> sets; // every topic ever added
+	private final List<PeerSet> setsById;
+	private BitSet[] peerTopics; // peer id => ids of its topics
+
+	public TopicPeers(PeerIndex index) {
+		this.index = index;
+		this.sets = new HashMap<>();
+		this.setsById = new ArrayList<>();
+		this.peerTopics = new BitSet[64];
+	}
+
+	/**
+	 * @return The peers of the topic, null if the topic is not present
+	 */
+	public PeerSet get(String topic) {
+		var set = sets.get(topic);
+		return set != null && set.present ? set : null;
+	}
+
+	public boolean containsKey(String topic) {
+		return get(topic) != null;
+	}
+
+	/**
+	 * @return The peers of the topic, adding it with no peers if it is not present
+	 */
+	public PeerSet computeIfAbsent(String topic) {
+		var set = sets.get(topic);
+		if (set == null) {
+			set = new PeerSet(topic, setsById.size());
+			sets.put(topic, set);
+			setsById.add(set);
+		}
+		set.present = true;
+		return set;
+	}
+
+	/**
+	 * Replaces the peers of the topic
+	 */
+	public PeerSet put(String topic, Collection<Host> peers) {
+		var set = computeIfAbsent(topic);
+		set.clear();
+		set.addAll(peers);
+		return set;
+	}
+
+	/**
+	 * Removes the topic and all its peers
+	 */
+	public void remove(String topic) {
+		var set = get(topic);
+		if (set != null) {
+			set.clear();
+			set.present = false;
+		}
+	}
+
+	/**
+	 * @return The topics present in the relation
+	 */
+	public List<String> topics() {
+		List<String> topics = new ArrayList<>();
+		for (var set : setsById) {
+			if (set.present) {
+				topics.add(set.topic);
+			}
+		}
+		return topics;
+	}
+
+	/**
+	 * Removes the peer from every topic it is in
+	 */
+	public void removePeer(Host peer) {
+		var id = index.id(peer);
+		if (id == PeerIndex.NONE || id >= peerTopics.length || peerTopics[id] == null) {
+			return;
+		}
+		var topics = peerTopics[id];
+		// each removal clears its bit, the id can only be freed once the bitset is empty
+		for (var topicId = topics.nextSetBit(0); topicId >= 0; topicId = topics.nextSetBit(topicId + 1)) {
+			setsById.get(topicId).removeId(id);
+		}
+	}
+
+	@Override
+	public String toString() {
+		var builder = new StringBuilder("{");
+		for (var topic : topics()) {
+			if (builder.length() > 1) {
+				builder.append(", ");
+			}
+			builder.append(topic).append('=').append(get(topic));
+		}
+		return builder.append('}').toString();
+	}
+
+	private BitSet peerTopics(int id) {
+		if (id >= peerTopics.length) {
+			peerTopics = Arrays.copyOf(peerTopics, Math.max(id + 1, peerTopics.length * 2));
+		}
+		if (peerTopics[id] == null) {
+			peerTopics[id] = new BitSet();
+		}
+		return peerTopics[id];
+	}
+
+	/**
+	 * The peers of one topic. It is a regular set of hosts, {@link #nextPeer(int)} and {@link #host(int)} walk it by id
+	 * without allocating.
+	 */
+	public class PeerSet extends AbstractSet<Host> {
+		private final String topic;
+		private final int topicId;
+		private final BitSet members;
+		private int size;
+		private boolean present;
+
+		private PeerSet(String topic, int topicId) {
+			this.topic = topic;
+			this.topicId = topicId;
+			this.members = new BitSet();
+			this.size = 0;
+			this.present = false;
+		}
+
+		/**
+		 * @return The smallest id of a peer in the set that is greater or equal to `from`, -1 if there is none
+		 */
+		public int nextPeer(int from) {
+			return members.nextSetBit(from);
+		}
+
+		public Host host(int id) {
+			return index.host(id);
+		}
+
+		public boolean containsId(int id) {
+			return id >= 0 && members.get(id);
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof Host host && containsId(index.id(host));
+		}
+
+		@Override
+		public boolean add(Host host) {
+			if (contains(host)) {
+				return false;
+			}
+			var id = index.retain(host);
+			members.set(id);
+			size++;
+			peerTopics(id).set(topicId);
+			return true;
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (!(o instanceof Host host)) {
+				return false;
+			}
+			var id = index.id(host);
+			if (!containsId(id)) {
+				return false;
+			}
+			removeId(id);
+			return true;
+		}
+
+		@Override
+		public void clear() {
+			for (var id = members.nextSetBit(0); id >= 0; id = members.nextSetBit(id + 1)) {
+				peerTopics[id].clear(topicId);
+				index.release(id);
+			}
+			members.clear();
+			size = 0;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Iterator<Host> iterator() {
+			return new Iterator<>() {
+				private int next = members.nextSetBit(0);
+				private int last = -1;
+
+				@Override
+				public boolean hasNext() {
+					return next >= 0;
+				}
+
+				@Override
+				public Host next() {
+					if (next < 0) {
+						throw new NoSuchElementException();
+					}
+					last = next;
+					next = members.nextSetBit(next + 1);
+					return index.host(last);
+				}
+
+				@Override
+				public void remove() {
+					if (last < 0) {
+						throw new IllegalStateException();
+					}
+					removeId(last);
+					last = -1;
+				}
+			};
+		}
+
+		private void removeId(int id) {
+			members.clear(id);
+			size--;
+			peerTopics[id].clear(topicId);
+			index.release(id);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package asd.protocols.pubsub.gossipsub.messages;
+
+import asd.protocols.pubsub.gossipsub.GossipSub;
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Asks a peer not to send the listed messages, we already have them. Sent for large messages only, see the
+ * `gossipsub_idontwant_min_size` property.
+ */
+public class IDontWant extends ProtoMessage {
+
+	public static final short ID = GossipSub.ID + 9;
+	public static ISerializer<IDontWant> serializer = new ISerializer<>() {
+		@Override
+		public void serialize(IDontWant iDontWant, ByteBuf byteBuf) throws IOException {
+			byteBuf.writeInt(iDontWant.messageIds.size());
+			for (var msgId : iDontWant.messageIds) {
+				byteBuf.writeLong(msgId.getMostSignificantBits());
+				byteBuf.writeLong(msgId.getLeastSignificantBits());
+			}
+		}
+
+		@Override
+		public IDontWant deserialize(ByteBuf byteBuf) throws IOException {
+			var numIds = byteBuf.readInt();
+			Set<UUID> msgIds = new HashSet<>(numIds);
+
+			for (int i = 0; i < numIds; i++) {
+				var mostSigBits = byteBuf.readLong();
+				var leastSigBits = byteBuf.readLong();
+				msgIds.add(new UUID(mostSigBits, leastSigBits));
+			}
+			return new IDontWant(msgIds);
+		}
+	};
+	private final Set<UUID> messageIds;
+
+	public IDontWant(Set<UUID> messageIds) {
+		super(ID);
+		this.messageIds = messageIds;
+	}
+
+	public Set<UUID> getMessageIds() {
+		return messageIds;
+	}
+}
@@ -0,0 +1,217 @@
+package asd.protocols.pubsub.gossipsub.messages;
+
+import asd.protocols.pubsub.gossipsub.GossipSub;
+import asd.utils.ASDUtils;
+import io.netty.buffer.ByteBuf;
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.network.ISerializer;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Envelope that carries everything queued for a peer in one wire message, like the RPC frame of libp2p's gossipsub:
+ * subscription changes, published messages and the Graft, Prune, IHave, IWant and IDontWant control messages.
+ * Control messages of the same type are merged into one.
+ */
+public class Rpc extends ProtoMessage {
+
+	public static final short ID = GossipSub.ID + 8;
+	public static ISerializer<Rpc> serializer = new ISerializer<>() {
+		@Override
+		public void serialize(Rpc rpc, ByteBuf byteBuf) throws IOException {
+			byteBuf.writeInt(rpc.subscriptions.size());
+			for (var entry : rpc.subscriptions.entrySet()) {
+				ASDUtils.stringSerializer.serialize(entry.getKey(), byteBuf);
+				byteBuf.writeBoolean(entry.getValue());
+			}
+
+			byteBuf.writeInt(rpc.publishes.size());
+			for (var publish : rpc.publishes) {
+				PublishMessage.serializer.serialize(publish, byteBuf);
+			}
+
+			byteBuf.writeBoolean(rpc.graft != null);
+			if (rpc.graft != null) {
+				Graft.serializer.serialize(rpc.graft, byteBuf);
+			}
+			byteBuf.writeBoolean(rpc.prune != null);
+			if (rpc.prune != null) {
+				Prune.serializer.serialize(rpc.prune, byteBuf);
+			}
+			byteBuf.writeBoolean(rpc.iHave != null);
+			if (rpc.iHave != null) {
+				IHave.serializer.serialize(rpc.iHave, byteBuf);
+			}
+			byteBuf.writeBoolean(rpc.iWant != null);
+			if (rpc.iWant != null) {
+				IWant.serializer.serialize(rpc.iWant, byteBuf);
+			}
+			byteBuf.writeBoolean(rpc.iDontWant != null);
+			if (rpc.iDontWant != null) {
+				IDontWant.serializer.serialize(rpc.iDontWant, byteBuf);
+			}
+		}
+
+		@Override
+		public Rpc deserialize(ByteBuf byteBuf) throws IOException {
+			var rpc = new Rpc();
+
+			var numSubscriptions = byteBuf.readInt();
+			for (int i = 0; i < numSubscriptions; i++) {
+				var topic = ASDUtils.stringSerializer.deserialize(byteBuf);
+				rpc.subscriptions.put(topic, byteBuf.readBoolean());
+			}
+
+			var numPublishes = byteBuf.readInt();
+			for (int i = 0; i < numPublishes; i++) {
+				rpc.publishes.add(PublishMessage.serializer.deserialize(byteBuf));
+			}
+
+			if (byteBuf.readBoolean()) {
+				rpc.graft = Graft.serializer.deserialize(byteBuf);
+			}
+			if (byteBuf.readBoolean()) {
+				rpc.prune = Prune.serializer.deserialize(byteBuf);
+			}
+			if (byteBuf.readBoolean()) {
+				rpc.iHave = IHave.serializer.deserialize(byteBuf);
+			}
+			if (byteBuf.readBoolean()) {
+				rpc.iWant = IWant.serializer.deserialize(byteBuf);
+			}
+			if (byteBuf.readBoolean()) {
+				rpc.iDontWant = IDontWant.serializer.deserialize(byteBuf);
+			}
+			return rpc;
+		}
+	};
+	private final Map<String, Boolean> subscriptions; // topic => true to subscribe, false to unsubscribe
+	private final List<PublishMessage> publishes;
+	private Graft graft;
+	private Prune prune;
+	private IHave iHave;
+	private IWant iWant;
+	private IDontWant iDontWant;
+
+	public Rpc() {
+		super(ID);
+		this.subscriptions = new LinkedHashMap<>();
+		this.publishes = new ArrayList<>();
+	}
+
+	/**
+	 * Adds a message to the envelope, merging it with the queued message of the same type if there is one.
+	 *
+	 * @throws IllegalArgumentException if the message is not a GossipSub message
+	 */
+	public void add(ProtoMessage msg) {
+		if (msg instanceof SubscribeMessage subscribe) {
+			subscriptions.put(subscribe.getTopic(), true);
+		} else if (msg instanceof UnsubscribeMessage unsubscribe) {
+			subscriptions.put(unsubscribe.getTopic(), false);
+		} else if (msg instanceof PublishMessage publish) {
+			publishes.add(publish);
+		} else if (msg instanceof Graft other) {
+			if (graft == null) {
+				graft = new Graft(new HashSet<>());
+			}
+			graft.getTopics().addAll(other.getTopics());
+		} else if (msg instanceof Prune other) {
+			if (prune == null) {
+				prune = new Prune(new HashMap<>());
+			}
+			prune.append(other);
+		} else if (msg instanceof IHave other) {
+			if (iHave == null) {
+				iHave = new IHave();
+			}
+			for (var entry : other.getMsgIdsPerTopic().entrySet()) {
+				iHave.getMsgIdsPerTopic().computeIfAbsent(entry.getKey(), k -> new HashSet<>())
+						.addAll(entry.getValue());
+			}
+		} else if (msg instanceof IWant other) {
+			if (iWant == null) {
+				iWant = new IWant(new HashSet<>());
+			}
+			iWant.getMessageIds().addAll(other.getMessageIds());
+		} else if (msg instanceof IDontWant other) {
+			if (iDontWant == null) {
+				iDontWant = new IDontWant(new HashSet<>());
+			}
+			iDontWant.getMessageIds().addAll(other.getMessageIds());
+		} else {
+			throw new IllegalArgumentException("Not a GossipSub message: " + msg.getClass().getName());
+		}
+	}
+
+	/**
+	 * @return The number of subscription changes, published messages and control messages in the envelope
+	 */
+	public int count() {
+		var count = subscriptions.size() + publishes.size();
+		for (var control : new ProtoMessage[]{graft, prune, iHave, iWant, iDontWant}) {
+			if (control != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public boolean isEmpty() {
+		return count() == 0;
+	}
+
+	/**
+	 * @return The only message in the envelope, null if it holds none or more than one
+	 */
+	public ProtoMessage single() {
+		if (count() != 1) {
+			return null;
+		}
+		for (var entry : subscriptions.entrySet()) {
+			return entry.getValue() ? new SubscribeMessage(entry.getKey()) : new UnsubscribeMessage(entry.getKey());
+		}
+		if (!publishes.isEmpty()) {
+			return publishes.get(0);
+		}
+		if (graft != null) {
+			return graft;
+		}
+		if (prune != null) {
+			return prune;
+		}
+		if (iHave != null) {
+			return iHave;
+		}
+		return iWant != null ? iWant : iDontWant;
+	}
+
+	public Map<String, Boolean> getSubscriptions() {
+		return subscriptions;
+	}
+
+	public List<PublishMessage> getPublishes() {
+		return publishes;
+	}
+
+	public Graft getGraft() {
+		return graft;
+	}
+
+	public Prune getPrune() {
+		return prune;
+	}
+
+	public IHave getIHave() {
+		return iHave;
+	}
+
+	public IWant getIWant() {
+		return iWant;
+	}
+
+	public IDontWant getIDontWant() {
+		return iDontWant;
+	}
+}
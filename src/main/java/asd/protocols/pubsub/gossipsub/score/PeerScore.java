@@ -0,0 +1,225 @@
+package asd.protocols.pubsub.gossipsub.score;
+
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.net.InetAddress;
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * GossipSub v1.1 peer scoring.
+ * <p>
+ * Keeps per peer and topic counters of the time in mesh (P1), first message deliveries (P2), mesh message deliveries
+ * and their deficit (P3), the deficit left when a peer was pruned (P3b) and invalid messages (P4), plus the number of
+ * connected peers sharing the peer's IP address (P6). A peer's score is the weighted sum of these, see
+ * {@link PeerScoreParams}. Counters decay on every {@link #decay()}, the stats of disconnected peers are kept until
+ * they decay to zero so reconnecting does not reset a bad score.
+ */
+public class PeerScore {
+
+	private final PeerScoreParams params;
+	private final LongSupplier clock; // milliseconds
+	private final Map<Host, PeerStats> peerStats;
+	private final Map<InetAddress, Integer> peersPerIp;
+	// first delivery time and topic of recent messages, to credit mesh peers that deliver them right after
+	private final Map<UUID, Long> deliveries;
+
+	public PeerScore(PeerScoreParams params, LongSupplier clock) {
+		this.params = params;
+		this.clock = clock;
+		this.peerStats = new HashMap<>();
+		this.peersPerIp = new HashMap<>();
+		this.deliveries = new LinkedHashMap<>();
+	}
+
+	public void addPeer(Host peer) {
+		var stats = peerStats.computeIfAbsent(peer, k -> new PeerStats());
+		if (!stats.connected) {
+			stats.connected = true;
+			peersPerIp.merge(peer.getAddress(), 1, Integer::sum);
+		}
+	}
+
+	public void removePeer(Host peer) {
+		var stats = peerStats.get(peer);
+		if (stats == null || !stats.connected) {
+			return;
+		}
+		stats.connected = false;
+		peersPerIp.computeIfPresent(peer.getAddress(), (k, count) -> count == 1 ? null : count - 1);
+		var now = clock.getAsLong();
+		for (var topicStats : stats.topics.values()) {
+			prune(topicStats, now);
+		}
+	}
+
+	/**
+	 * The peer was added to our mesh of the topic
+	 */
+	public void graft(Host peer, String topic) {
+		var topicStats = topicStats(peer, topic);
+		if (!topicStats.inMesh) {
+			topicStats.inMesh = true;
+			topicStats.graftTime = clock.getAsLong();
+			topicStats.meshDeliveries = 0;
+		}
+	}
+
+	/**
+	 * The peer was removed from our mesh of the topic
+	 */
+	public void prune(Host peer, String topic) {
+		var stats = peerStats.get(peer);
+		if (stats == null) {
+			return;
+		}
+		var topicStats = stats.topics.get(topic);
+		if (topicStats != null) {
+			prune(topicStats, clock.getAsLong());
+		}
+	}
+
+	/**
+	 * The peer sent us a message we had not seen before
+	 */
+	public void deliverMessage(Host peer, String topic, UUID msgId) {
+		var now = clock.getAsLong();
+		deliveries.put(msgId, now);
+		var topicStats = topicStats(peer, topic);
+		topicStats.firstDeliveries = Math.min(topicStats.firstDeliveries + 1, params.firstDeliveriesCap);
+		if (topicStats.inMesh) {
+			topicStats.meshDeliveries = Math.min(topicStats.meshDeliveries + 1, params.meshDeliveriesCap);
+		}
+	}
+
+	/**
+	 * The peer sent us a message we had already seen, it counts as a mesh delivery if it arrived within
+	 * `meshDeliveriesWindowMs` of the first one
+	 */
+	public void duplicateMessage(Host peer, String topic, UUID msgId) {
+		var firstSeen = deliveries.get(msgId);
+		if (firstSeen == null || clock.getAsLong() - firstSeen > params.meshDeliveriesWindowMs) {
+			return;
+		}
+		var stats = peerStats.get(peer);
+		var topicStats = stats == null ? null : stats.topics.get(topic);
+		if (topicStats != null && topicStats.inMesh) {
+			topicStats.meshDeliveries = Math.min(topicStats.meshDeliveries + 1, params.meshDeliveriesCap);
+		}
+	}
+
+	public void invalidMessage(Host peer, String topic) {
+		topicStats(peer, topic).invalidMessages += 1;
+	}
+
+	public double score(Host peer) {
+		var stats = peerStats.get(peer);
+		if (stats == null) {
+			return 0;
+		}
+		var now = clock.getAsLong();
+		var score = 0.0;
+		for (var topicStats : stats.topics.values()) {
+			var topicScore = 0.0;
+			if (topicStats.inMesh) {
+				var meshTime = now - topicStats.graftTime;
+				var p1 = Math.min((double) meshTime / Math.max(1, params.timeInMeshQuantumMs), params.timeInMeshCap);
+				topicScore += p1 * params.timeInMeshWeight;
+				var deficit = meshDeliveryDeficit(topicStats, now);
+				topicScore += deficit * deficit * params.meshDeliveriesWeight;
+			}
+			topicScore += topicStats.firstDeliveries * params.firstDeliveriesWeight;
+			topicScore += topicStats.meshFailurePenalty * params.meshFailurePenaltyWeight;
+			topicScore += topicStats.invalidMessages * topicStats.invalidMessages * params.invalidMessagesWeight;
+			score += topicScore * params.topicWeight;
+		}
+
+		var colocated = peersPerIp.getOrDefault(peer.getAddress(), 0);
+		var surplus = colocated - params.ipColocationThreshold;
+		if (surplus > 0) {
+			score += (double) surplus * surplus * params.ipColocationWeight;
+		}
+		return score;
+	}
+
+	/**
+	 * Scores of the connected peers
+	 */
+	public Map<Host, Double> scores() {
+		Map<Host, Double> scores = new HashMap<>();
+		for (var entry : peerStats.entrySet()) {
+			if (entry.getValue().connected) {
+				scores.put(entry.getKey(), score(entry.getKey()));
+			}
+		}
+		return scores;
+	}
+
+	/**
+	 * Decays the counters, meant to be called once per heartbeat
+	 */
+	public void decay() {
+		var now = clock.getAsLong();
+		var iterator = peerStats.values().iterator();
+		while (iterator.hasNext()) {
+			var stats = iterator.next();
+			var idle = !stats.connected;
+			for (var topicStats : stats.topics.values()) {
+				topicStats.firstDeliveries = decay(topicStats.firstDeliveries, params.firstDeliveriesDecay);
+				topicStats.meshDeliveries = decay(topicStats.meshDeliveries, params.meshDeliveriesDecay);
+				topicStats.meshFailurePenalty = decay(topicStats.meshFailurePenalty, params.meshFailurePenaltyDecay);
+				topicStats.invalidMessages = decay(topicStats.invalidMessages, params.invalidMessagesDecay);
+				idle &= topicStats.firstDeliveries == 0 && topicStats.meshFailurePenalty == 0
+						&& topicStats.invalidMessages == 0;
+			}
+			if (idle) {
+				iterator.remove();
+			}
+		}
+		// deliveries are in the order they were first seen
+		var deliveryIterator = deliveries.values().iterator();
+		while (deliveryIterator.hasNext() && now - deliveryIterator.next() > params.meshDeliveriesWindowMs) {
+			deliveryIterator.remove();
+		}
+	}
+
+	private double decay(double value, double factor) {
+		value *= factor;
+		return value < params.decayToZero ? 0 : value;
+	}
+
+	private TopicStats topicStats(Host peer, String topic) {
+		return peerStats.computeIfAbsent(peer, k -> new PeerStats()).topics.computeIfAbsent(topic,
+				k -> new TopicStats());
+	}
+
+	private void prune(TopicStats topicStats, long now) {
+		if (!topicStats.inMesh) {
+			return;
+		}
+		var deficit = meshDeliveryDeficit(topicStats, now);
+		topicStats.meshFailurePenalty += deficit * deficit;
+		topicStats.inMesh = false;
+	}
+
+	private double meshDeliveryDeficit(TopicStats topicStats, long now) {
+		if (now - topicStats.graftTime < params.meshDeliveriesActivationMs) {
+			return 0;
+		}
+		return Math.max(0, params.meshDeliveriesThreshold - topicStats.meshDeliveries);
+	}
+
+	private static class PeerStats {
+		final Map<String, TopicStats> topics = new HashMap<>();
+		boolean connected = false;
+	}
+
+	private static class TopicStats {
+		boolean inMesh = false;
+		long graftTime = 0;
+		double firstDeliveries = 0;
+		double meshDeliveries = 0;
+		double meshFailurePenalty = 0;
+		double invalidMessages = 0;
+	}
+}
@@ -0,0 +1,100 @@
+package asd.protocols.pubsub.gossipsub.score;
+
+import java.util.Properties;
+
+/**
+ * Weights, caps, decays and thresholds of {@link PeerScore}, read from the `gossipsub_score_*` properties. The same
+ * topic parameters apply to every topic. Times are in seconds in the properties and in milliseconds here, decays are
+ * the factor a counter is multiplied by at every heartbeat.
+ */
+public class PeerScoreParams {
+	public final double topicWeight;
+
+	// P1: time in mesh
+	public final double timeInMeshWeight;
+	public final long timeInMeshQuantumMs;
+	public final double timeInMeshCap;
+
+	// P2: first message deliveries
+	public final double firstDeliveriesWeight;
+	public final double firstDeliveriesDecay;
+	public final double firstDeliveriesCap;
+
+	// P3: mesh message delivery deficit, off with a threshold of 0 since the right one depends on the publish rate
+	public final double meshDeliveriesWeight;
+	public final double meshDeliveriesDecay;
+	public final double meshDeliveriesThreshold;
+	public final double meshDeliveriesCap;
+	public final long meshDeliveriesActivationMs;
+	public final long meshDeliveriesWindowMs;
+
+	// P3b: deficit left when a peer is pruned
+	public final double meshFailurePenaltyWeight;
+	public final double meshFailurePenaltyDecay;
+
+	// P4: invalid messages
+	public final double invalidMessagesWeight;
+	public final double invalidMessagesDecay;
+
+	// P6: peers sharing an IP address
+	public final double ipColocationWeight;
+	public final int ipColocationThreshold;
+
+	// Counters below this value are set to 0 by the decay
+	public final double decayToZero;
+
+	// Peers below this score get no gossip
+	public final double gossipThreshold;
+
+	// Every `opportunisticGraftTicks` heartbeats, meshes whose median score is below the threshold graft
+	// `opportunisticGraftPeers` peers scoring above the median
+	public final int opportunisticGraftTicks;
+	public final int opportunisticGraftPeers;
+	public final double opportunisticGraftThreshold;
+
+	public PeerScoreParams(Properties props) {
+		this.topicWeight = parseDouble(props, "gossipsub_score_topic_weight", "1");
+
+		this.timeInMeshWeight = parseDouble(props, "gossipsub_score_time_in_mesh_weight", "0.01");
+		this.timeInMeshQuantumMs = parseMs(props, "gossipsub_score_time_in_mesh_quantum", "1");
+		this.timeInMeshCap = parseDouble(props, "gossipsub_score_time_in_mesh_cap", "3600");
+
+		this.firstDeliveriesWeight = parseDouble(props, "gossipsub_score_first_deliveries_weight", "1");
+		this.firstDeliveriesDecay = parseDouble(props, "gossipsub_score_first_deliveries_decay", "0.5");
+		this.firstDeliveriesCap = parseDouble(props, "gossipsub_score_first_deliveries_cap", "100");
+
+		this.meshDeliveriesWeight = parseDouble(props, "gossipsub_score_mesh_deliveries_weight", "-1");
+		this.meshDeliveriesDecay = parseDouble(props, "gossipsub_score_mesh_deliveries_decay", "0.5");
+		this.meshDeliveriesThreshold = parseDouble(props, "gossipsub_score_mesh_deliveries_threshold", "0");
+		this.meshDeliveriesCap = parseDouble(props, "gossipsub_score_mesh_deliveries_cap", "100");
+		this.meshDeliveriesActivationMs = parseMs(props, "gossipsub_score_mesh_deliveries_activation", "5");
+		this.meshDeliveriesWindowMs = parseMs(props, "gossipsub_score_mesh_deliveries_window", "0.01");
+
+		this.meshFailurePenaltyWeight = parseDouble(props, "gossipsub_score_mesh_failure_penalty_weight", "-1");
+		this.meshFailurePenaltyDecay = parseDouble(props, "gossipsub_score_mesh_failure_penalty_decay", "0.5");
+
+		this.invalidMessagesWeight = parseDouble(props, "gossipsub_score_invalid_messages_weight", "-100");
+		this.invalidMessagesDecay = parseDouble(props, "gossipsub_score_invalid_messages_decay", "0.3");
+
+		this.ipColocationWeight = parseDouble(props, "gossipsub_score_ip_colocation_weight", "0");
+		this.ipColocationThreshold = Integer.parseInt(props.getProperty("gossipsub_score_ip_colocation_threshold",
+				"1"));
+
+		this.decayToZero = parseDouble(props, "gossipsub_score_decay_to_zero", "0.01");
+		this.gossipThreshold = parseDouble(props, "gossipsub_score_gossip_threshold", "-10");
+
+		this.opportunisticGraftTicks = Integer.parseInt(props.getProperty("gossipsub_opportunistic_graft_ticks",
+				"60"));
+		this.opportunisticGraftPeers = Integer.parseInt(props.getProperty("gossipsub_opportunistic_graft_peers",
+				"2"));
+		this.opportunisticGraftThreshold = parseDouble(props, "gossipsub_opportunistic_graft_threshold", "1");
+	}
+
+	private static double parseDouble(Properties props, String key, String defaultValue) {
+		return Double.parseDouble(props.getProperty(key, defaultValue));
+	}
+
+	private static long parseMs(Properties props, String key, String defaultValue) {
+		return (long) (Double.parseDouble(props.getProperty(key, defaultValue)) * 1000.0);
+	}
+}
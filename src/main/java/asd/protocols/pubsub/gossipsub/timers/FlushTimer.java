@@ -0,0 +1,18 @@
+package asd.protocols.pubsub.gossipsub.timers;
+
+import asd.protocols.pubsub.gossipsub.GossipSub;
+import pt.unl.fct.di.novasys.babel.generic.ProtoTimer;
+
+public class FlushTimer extends ProtoTimer {
+
+	public static final short ID = GossipSub.ID + 3;
+
+	public FlushTimer() {
+		super(ID);
+	}
+
+	@Override
+	public ProtoTimer clone() {
+		return this;
+	}
+}
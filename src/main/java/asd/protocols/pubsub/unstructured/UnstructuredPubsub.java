@@ -5,6 +5,7 @@ import asd.protocols.dissemination.plumtree.PlumTree;
 import asd.protocols.dissemination.plumtree.ipc.Broadcast;
 import asd.protocols.dissemination.plumtree.notifications.DeliverBroadcast;
 import asd.protocols.pubsub.common.*;
+import asd.utils.SeenFilter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import pt.unl.fct.di.novasys.babel.core.GenericProtocol;
@@ -12,10 +13,10 @@ import pt.unl.fct.di.novasys.babel.exceptions.HandlerRegistrationException;
 import pt.unl.fct.di.novasys.network.data.Host;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
-import java.util.UUID;
 
 public class UnstructuredPubsub extends GenericProtocol {
 
@@ -24,14 +25,19 @@ public class UnstructuredPubsub extends GenericProtocol {
 	private static final Logger logger = LogManager.getLogger(UnstructuredPubsub.class);
 	private final Host self;
 	private final Set<String> subscribedTopics;
-	private final Set<UUID> seenMessages;
+	private final SeenFilter seenMessages;
 
-	public UnstructuredPubsub(Host self) throws HandlerRegistrationException {
+	public UnstructuredPubsub(Properties props, Host self) throws HandlerRegistrationException {
 		super(PROTO_NAME, PROTO_ID);
 
+		var seenFilter = props.getProperty("unstructured_seen_filter", SeenFilter.TYPE_BLOOM);
+		var seenMax = Integer.parseInt(props.getProperty("unstructured_seen_max", "100000"));
+		var seenFpp = Double.parseDouble(props.getProperty("unstructured_seen_fpp", "0.000001"));
+		var seenTTLMs = (long) (Double.parseDouble(props.getProperty("unstructured_seen_ttl", "120")) * 1000.0);
+
 		this.self = self;
 		this.subscribedTopics = new HashSet<>();
-		this.seenMessages = new HashSet<>();
+		this.seenMessages = SeenFilter.create(seenFilter, seenMax, seenFpp, Duration.ofMillis(seenTTLMs));
 
 		registerRequestHandler(SubscriptionRequest.REQUEST_ID, this::uponSubscriptionRequest);
 		registerRequestHandler(PublishRequest.REQUEST_ID, this::uponPublishRequest);
@@ -50,7 +56,7 @@ public class UnstructuredPubsub extends GenericProtocol {
 		var hopCount = deliverBroadcast.getHopCount();
 
 		if (subscribedTopics.contains(deliverBroadcast.getTopic())) {
-			if (!seenMessages.contains(deliverBroadcast.getMsgId())) {
+			if (seenMessages.add(deliverBroadcast.getMsgId())) {
 				logger.info("Delivering Broadcast to topic: " + deliverBroadcast.getTopic());
 				var deliver = new DeliverNotification(
 						deliverBroadcast.getTopic(),
@@ -81,6 +87,7 @@ public class UnstructuredPubsub extends GenericProtocol {
 		sendRequest(new Broadcast(request.getMessage(), request.getTopic(), request.getMsgID(), request.getSender()),
 				PlumTree.PROTOCOL_ID);
 
+		seenMessages.add(request.getMsgID());
 		if (subscribedTopics.contains(request.getTopic())) {
 			var deliver = new DeliverNotification(
 					request.getTopic(),
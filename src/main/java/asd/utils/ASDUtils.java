@@ -40,14 +40,4 @@ public class ASDUtils {
 		}
 		return new LinkedList<>(hosts);
 	}
-
-	public static <T> Set<T> sample(int size, Set<T> set) {
-		List<T> list = new ArrayList<>(set);
-		Set<T> subset = new HashSet<>();
-		Collections.shuffle(list);
-		for (int i = 0; i < Math.min(size, list.size()); i++) {
-			subset.add(list.get(i));
-		}
-		return subset;
-	}
 }
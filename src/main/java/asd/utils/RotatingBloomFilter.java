@@ -0,0 +1,162 @@
+package asd.utils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link SeenFilter} made of two Bloom filters, the current generation and the previous one.
+ * <p>
+ * Ids are inserted in the current generation and looked up in both. Once the current generation is `ttl` old or holds
+ * `capacity` ids it becomes the previous one and the old previous generation is cleared and reused, so every id is
+ * remembered for at least `ttl` and at least the last `capacity` ids are remembered. Each generation is sized for
+ * `capacity` ids at half of `fpp`, the false positive rate over both stays under `fpp`. That is about
+ * {@code 2 * 1.44 * log2(2 / fpp)} bits per id, around 8 bytes with a rate of one in a million.
+ * <p>
+ * The bit indices come from double hashing of the two halves of the id, version 4 UUIDs are already random so no
+ * stronger hash is needed.
+ */
+public class RotatingBloomFilter implements SeenFilter {
+	private static final long MAX_BITS = (long) (Integer.MAX_VALUE - 8) * Long.SIZE;
+
+	private final int capacity;
+	private final int hashes;
+	private final long bits;
+	private final long ttl;
+	private final LongSupplier clock;
+	private long[] current;
+	private long[] previous;
+	private int current_count;
+	private int previous_count;
+	private long rotated_at;
+
+	public RotatingBloomFilter(int capacity, double fpp, Duration ttl) {
+		this(capacity, fpp, ttl, System::nanoTime);
+	}
+
+	public RotatingBloomFilter(int capacity, double fpp, Duration ttl, LongSupplier clock) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		if (!(fpp > 0.0 && fpp < 1.0)) {
+			throw new IllegalArgumentException("fpp must be between 0 and 1");
+		}
+		if (ttl.isZero() || ttl.isNegative()) {
+			throw new IllegalArgumentException("ttl must be positive");
+		}
+		var ln2 = Math.log(2.0);
+		var bits = (long) Math.ceil(-capacity * Math.log(fpp / 2.0) / (ln2 * ln2));
+		// Whole longs, and never fewer than one per filter
+		bits = Math.max(Long.SIZE, (bits + Long.SIZE - 1) / Long.SIZE * Long.SIZE);
+		if (bits > MAX_BITS) {
+			throw new IllegalArgumentException("capacity and fpp need more bits than a filter can hold");
+		}
+		this.capacity = capacity;
+		this.hashes = Math.max(1, (int) Math.round((double) bits / capacity * ln2));
+		this.bits = bits;
+		this.ttl = ttl.toNanos();
+		this.clock = clock;
+		this.current = new long[(int) (bits / Long.SIZE)];
+		this.previous = new long[(int) (bits / Long.SIZE)];
+		this.current_count = 0;
+		this.previous_count = 0;
+		this.rotated_at = clock.getAsLong();
+	}
+
+	@Override
+	public boolean add(UUID uuid) {
+		this.rotate(this.clock.getAsLong());
+		var msb = uuid.getMostSignificantBits();
+		var lsb = uuid.getLeastSignificantBits();
+		if (this.test(this.current, msb, lsb) || this.test(this.previous, msb, lsb)) {
+			return false;
+		}
+		if (this.current_count == this.capacity) {
+			this.swap(this.clock.getAsLong());
+		}
+
+		var h1 = mix(msb);
+		var h2 = mix(lsb) | 1;
+		for (int i = 0; i < this.hashes; ++i) {
+			var bit = Long.remainderUnsigned(h1 + i * h2, this.bits);
+			this.current[(int) (bit >>> 6)] |= 1L << bit;
+		}
+		this.current_count += 1;
+		return true;
+	}
+
+	@Override
+	public boolean contains(UUID uuid) {
+		this.rotate(this.clock.getAsLong());
+		var msb = uuid.getMostSignificantBits();
+		var lsb = uuid.getLeastSignificantBits();
+		return this.test(this.current, msb, lsb) || this.test(this.previous, msb, lsb);
+	}
+
+	/**
+	 * @return The number of ids added to both generations, ids mistaken for seen ones are not counted
+	 */
+	@Override
+	public int size() {
+		this.rotate(this.clock.getAsLong());
+		return this.current_count + this.previous_count;
+	}
+
+	/**
+	 * @return The number of hash functions per generation
+	 */
+	public int hashes() {
+		return this.hashes;
+	}
+
+	/**
+	 * @return The number of bits per generation
+	 */
+	public long bits() {
+		return this.bits;
+	}
+
+	private boolean test(long[] filter, long msb, long lsb) {
+		var h1 = mix(msb);
+		var h2 = mix(lsb) | 1;
+		for (int i = 0; i < this.hashes; ++i) {
+			var bit = Long.remainderUnsigned(h1 + i * h2, this.bits);
+			if ((filter[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rotate(long now) {
+		var elapsed = now - this.rotated_at;
+		if (elapsed - 2 * this.ttl >= 0) {
+			// The filter went unused for over a generation, both generations are stale
+			Arrays.fill(this.current, 0);
+			Arrays.fill(this.previous, 0);
+			this.current_count = 0;
+			this.previous_count = 0;
+			this.rotated_at = now;
+		} else if (elapsed - this.ttl >= 0) {
+			this.swap(now);
+		}
+	}
+
+	private void swap(long now) {
+		var filter = this.previous;
+		Arrays.fill(filter, 0);
+		this.previous = this.current;
+		this.previous_count = this.current_count;
+		this.current = filter;
+		this.current_count = 0;
+		this.rotated_at = now;
+	}
+
+	// Finalizer of SplitMix64
+	private static long mix(long h) {
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 31);
+	}
+}
@@ -0,0 +1,47 @@
+package asd.utils;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Remembers the ids of recently seen messages to drop duplicates, with a memory footprint fixed at creation no matter
+ * how many messages go through.
+ * <p>
+ * Ids are remembered for at least `ttl` after they were first added unless more than `capacity` ids are added within
+ * that time, then the oldest are forgotten first.
+ */
+public interface SeenFilter {
+	String TYPE_BLOOM = "bloom";
+	String TYPE_EXACT = "exact";
+
+	/**
+	 * Adds an id to the filter.
+	 *
+	 * @return True if the id was not seen before
+	 */
+	boolean add(UUID uuid);
+
+	boolean contains(UUID uuid);
+
+	/**
+	 * @return The number of ids remembered
+	 */
+	int size();
+
+	/**
+	 * Creates a filter of the given type.
+	 *
+	 * @param type     {@link #TYPE_BLOOM} for a {@link RotatingBloomFilter} or {@link #TYPE_EXACT} for a
+	 *                 {@link SeenSet}
+	 * @param capacity How many ids are remembered at least
+	 * @param fpp      Probability of an unseen id being reported as seen, ignored by exact filters
+	 * @param ttl      How long ids are remembered at least
+	 */
+	static SeenFilter create(String type, int capacity, double fpp, Duration ttl) {
+		return switch (type) {
+			case TYPE_BLOOM -> new RotatingBloomFilter(capacity, fpp, ttl);
+			case TYPE_EXACT -> new SeenSet(capacity, ttl);
+			default -> throw new IllegalArgumentException("Unknown seen filter type: " + type);
+		};
+	}
+}
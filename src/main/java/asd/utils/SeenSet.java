@@ -0,0 +1,140 @@
+package asd.utils;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the ids of the messages we have seen, for deduplication.
+ * <p>
+ * Ids are stored as raw longs in a ring ordered by insertion, indexed by an open addressing table with linear probing.
+ * That is about 40 bytes per id instead of the few hundred a {@code HashSet<UUID>} entry costs. Ids are forgotten
+ * `ttl` after they were first added, or earlier if the set is full, oldest first.
+ * <p>
+ * Unlike {@link RotatingBloomFilter} there are no false positives, at the cost of a few times more memory per id.
+ */
+public class SeenSet implements SeenFilter {
+	private final long[] msbs;
+	private final long[] lsbs;
+	private final long[] expires;
+	// Ring index + 1 of the id in each slot, 0 for empty slots
+	private final int[] table;
+	private final int mask;
+	private final long ttl;
+	private final LongSupplier clock;
+	private int head;
+	private int count;
+
+	public SeenSet(int capacity, Duration ttl) {
+		this(capacity, ttl, System::nanoTime);
+	}
+
+	public SeenSet(int capacity, Duration ttl, LongSupplier clock) {
+		if (capacity < 1 || capacity > (1 << 28)) {
+			throw new IllegalArgumentException("capacity must be between 1 and 2^28");
+		}
+		var table_size = Integer.highestOneBit(capacity) << 2;
+		this.msbs = new long[capacity];
+		this.lsbs = new long[capacity];
+		this.expires = new long[capacity];
+		this.table = new int[table_size];
+		this.mask = table_size - 1;
+		this.ttl = ttl.toNanos();
+		this.clock = clock;
+		this.head = 0;
+		this.count = 0;
+	}
+
+	@Override
+	public boolean add(UUID uuid) {
+		var now = this.clock.getAsLong();
+		this.expire(now);
+		var msb = uuid.getMostSignificantBits();
+		var lsb = uuid.getLeastSignificantBits();
+		if (this.find(msb, lsb) != -1) {
+			return false;
+		}
+		if (this.count == this.msbs.length) {
+			this.removeOldest();
+		}
+
+		var index = (this.head + this.count) % this.msbs.length;
+		this.msbs[index] = msb;
+		this.lsbs[index] = lsb;
+		this.expires[index] = now + this.ttl;
+		this.count += 1;
+
+		var slot = hash(msb, lsb) & this.mask;
+		while (this.table[slot] != 0)
+			slot = (slot + 1) & this.mask;
+		this.table[slot] = index + 1;
+		return true;
+	}
+
+	@Override
+	public boolean contains(UUID uuid) {
+		this.expire(this.clock.getAsLong());
+		return this.find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) != -1;
+	}
+
+	@Override
+	public int size() {
+		this.expire(this.clock.getAsLong());
+		return this.count;
+	}
+
+	private void expire(long now) {
+		while (this.count > 0 && this.expires[this.head] - now <= 0)
+			this.removeOldest();
+	}
+
+	private void removeOldest() {
+		var slot = this.find(this.msbs[this.head], this.lsbs[this.head]);
+		assert slot != -1 && this.table[slot] == this.head + 1;
+		this.removeSlot(slot);
+		this.head = (this.head + 1) % this.msbs.length;
+		this.count -= 1;
+	}
+
+	// Backward shift deletion, keeps every probe sequence unbroken without tombstones
+	private void removeSlot(int hole) {
+		var slot = hole;
+		while (true) {
+			slot = (slot + 1) & this.mask;
+			var value = this.table[slot];
+			if (value == 0) {
+				break;
+			}
+			var home = hash(this.msbs[value - 1], this.lsbs[value - 1]) & this.mask;
+			// Move the entry into the hole unless its home lies cyclically in (hole, slot]
+			var distance_home = (slot - home) & this.mask;
+			var distance_hole = (slot - hole) & this.mask;
+			if (distance_home >= distance_hole) {
+				this.table[hole] = value;
+				hole = slot;
+			}
+		}
+		this.table[hole] = 0;
+	}
+
+	private int find(long msb, long lsb) {
+		var slot = hash(msb, lsb) & this.mask;
+		while (true) {
+			var value = this.table[slot];
+			if (value == 0) {
+				return -1;
+			}
+			if (this.msbs[value - 1] == msb && this.lsbs[value - 1] == lsb) {
+				return slot;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+	}
+
+	private static int hash(long msb, long lsb) {
+		var h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+		h ^= h >>> 32;
+		h *= 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32);
+	}
+}
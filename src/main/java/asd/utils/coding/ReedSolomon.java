@@ -0,0 +1,192 @@
+package asd.utils.coding;
+
+import java.util.Arrays;
+
+/**
+ * Systematic Reed-Solomon erasure code over GF(2^8).
+ * <p>
+ * A payload is split into `data` chunks of the same size, the last one padded with zeros, followed by `parity` chunks.
+ * The parity rows of the generator matrix form a Cauchy matrix so any `data` of the `data + parity` chunks are enough
+ * to rebuild the payload. Instances are immutable and can be shared.
+ */
+public final class ReedSolomon {
+	public static final int MAX_CHUNKS = 256;
+
+	// Log and anti-log tables for the field generated by x^8 + x^4 + x^3 + x^2 + 1, EXP is doubled to skip a modulo
+	private static final byte[] EXP = new byte[510];
+	private static final int[] LOG = new int[256];
+
+	static {
+		var x = 1;
+		for (int i = 0; i < 255; ++i) {
+			EXP[i] = (byte) x;
+			EXP[i + 255] = (byte) x;
+			LOG[x] = i;
+			x <<= 1;
+			if ((x & 0x100) != 0)
+				x ^= 0x11D;
+		}
+	}
+
+	private final int data;
+	private final int parity;
+	private final byte[][] matrix;
+
+	public ReedSolomon(int data, int parity) {
+		if (data < 1 || parity < 0 || data + parity > MAX_CHUNKS)
+			throw new IllegalArgumentException("Invalid chunk counts: " + data + " data, " + parity + " parity");
+		this.data = data;
+		this.parity = parity;
+		this.matrix = new byte[parity][data];
+		for (int i = 0; i < parity; ++i)
+			for (int j = 0; j < data; ++j)
+				this.matrix[i][j] = inverse((data + i) ^ j);
+	}
+
+	public int dataChunks() {
+		return this.data;
+	}
+
+	public int parityChunks() {
+		return this.parity;
+	}
+
+	public int totalChunks() {
+		return this.data + this.parity;
+	}
+
+	/**
+	 * @return The size of each chunk of a payload with `length` bytes
+	 */
+	public int chunkSize(int length) {
+		return Math.max(1, (length + this.data - 1) / this.data);
+	}
+
+	/**
+	 * @return The `data + parity` chunks of the payload, the first `data` are slices of the payload itself
+	 */
+	public byte[][] encode(byte[] payload) {
+		var size = this.chunkSize(payload.length);
+		var chunks = new byte[this.totalChunks()][];
+		for (int i = 0; i < this.data; ++i) {
+			var from = Math.min(i * size, payload.length);
+			chunks[i] = Arrays.copyOfRange(payload, from, from + size);
+		}
+		for (int i = 0; i < this.parity; ++i) {
+			var chunk = new byte[size];
+			for (int j = 0; j < this.data; ++j)
+				multiplyAdd(this.matrix[i][j], chunks[j], chunk);
+			chunks[this.data + i] = chunk;
+		}
+		return chunks;
+	}
+
+	/**
+	 * Rebuilds a payload from its chunks.
+	 *
+	 * @param chunks The chunks by their index, null for the missing ones. At least `data` chunks must be present and
+	 *               all of them with the size given by {@link #chunkSize(int)}
+	 * @param length The length of the payload
+	 */
+	public byte[] decode(byte[][] chunks, int length) {
+		if (chunks.length != this.totalChunks())
+			throw new IllegalArgumentException("Expected " + this.totalChunks() + " chunks, got " + chunks.length);
+		var size = this.chunkSize(length);
+		var rows = new int[this.data];
+		var present = 0;
+		for (int i = 0; i < chunks.length && present < this.data; ++i) {
+			if (chunks[i] == null)
+				continue;
+			if (chunks[i].length != size)
+				throw new IllegalArgumentException(
+						"Chunk " + i + " has " + chunks[i].length + " bytes, expected " + size);
+			rows[present++] = i;
+		}
+		if (present < this.data)
+			throw new IllegalArgumentException("Need " + this.data + " chunks, got " + present);
+
+		// Missing data chunks are the rows of the inverted submatrix applied to the chunks we have
+		var shards = Arrays.copyOf(chunks, this.data);
+		if (rows[this.data - 1] != this.data - 1) {
+			var sub = new byte[this.data][];
+			for (int r = 0; r < this.data; ++r) {
+				if (rows[r] < this.data) {
+					sub[r] = new byte[this.data];
+					sub[r][rows[r]] = 1;
+				} else {
+					sub[r] = this.matrix[rows[r] - this.data].clone();
+				}
+			}
+			var inverse = invert(sub);
+			for (int i = 0; i < this.data; ++i) {
+				if (shards[i] != null)
+					continue;
+				shards[i] = new byte[size];
+				for (int r = 0; r < this.data; ++r)
+					multiplyAdd(inverse[i][r], chunks[rows[r]], shards[i]);
+			}
+		}
+
+		var payload = new byte[length];
+		for (int i = 0; i < this.data && i * size < length; ++i)
+			System.arraycopy(shards[i], 0, payload, i * size, Math.min(size, length - i * size));
+		return payload;
+	}
+
+	private static byte multiply(int a, int b) {
+		if (a == 0 || b == 0)
+			return 0;
+		return EXP[LOG[a & 0xFF] + LOG[b & 0xFF]];
+	}
+
+	private static byte inverse(int a) {
+		return EXP[255 - LOG[a & 0xFF]];
+	}
+
+	// out ^= c * in
+	private static void multiplyAdd(byte c, byte[] in, byte[] out) {
+		if (c == 0)
+			return;
+		var log_c = LOG[c & 0xFF];
+		for (int i = 0; i < in.length; ++i) {
+			var b = in[i] & 0xFF;
+			if (b != 0)
+				out[i] ^= EXP[LOG[b] + log_c];
+		}
+	}
+
+	// Gauss-Jordan elimination, `m` is overwritten. Every square submatrix of the generator is invertible.
+	private static byte[][] invert(byte[][] m) {
+		var n = m.length;
+		var inv = new byte[n][n];
+		for (int i = 0; i < n; ++i)
+			inv[i][i] = 1;
+		for (int col = 0; col < n; ++col) {
+			var pivot = col;
+			while (m[pivot][col] == 0)
+				++pivot;
+			var tmp = m[pivot];
+			m[pivot] = m[col];
+			m[col] = tmp;
+			tmp = inv[pivot];
+			inv[pivot] = inv[col];
+			inv[col] = tmp;
+
+			var scale = inverse(m[col][col]);
+			for (int j = 0; j < n; ++j) {
+				m[col][j] = multiply(m[col][j], scale);
+				inv[col][j] = multiply(inv[col][j], scale);
+			}
+			for (int row = 0; row < n; ++row) {
+				var factor = m[row][col];
+				if (row == col || factor == 0)
+					continue;
+				for (int j = 0; j < n; ++j) {
+					m[row][j] ^= multiply(m[col][j], factor);
+					inv[row][j] ^= multiply(inv[col][j], factor);
+				}
+			}
+		}
+		return inv;
+	}
+}
@@ -0,0 +1,223 @@
+package asd.utils.sampling;
+
+import pt.unl.fct.di.novasys.network.data.Host;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.RandomAccess;
+import java.util.SplittableRandom;
+import java.util.function.IntFunction;
+
+/**
+ * Random sampling without replacement, each element is picked with the same probability and at most once.
+ * <p>
+ * Collections are copied to a buffer that is reused between calls and only the first `count` slots are shuffled (a
+ * partial Fisher-Yates), so a sample costs one pass over the collection and `count` random numbers. Indexable
+ * containers are sampled in place with Floyd's algorithm, which draws `count` indices without copying anything, so a
+ * sample costs O(count) whatever the size of the container. Iterators are sampled with a reservoir, which holds at
+ * most `count` elements.
+ * <p>
+ * Samples are sets, the order of the elements in a sample is not random. A sampler is not thread safe, each protocol
+ * owns its own and {@link #split()} derives independent samplers from it. Samplers created with the same seed pick
+ * the same samples from the same inputs, see {@link #create(Properties, Host)}.
+ */
+public final class Sampler {
+	/**
+	 * Property with the seed of the samplers of all nodes, each node mixes its own address into it. Without it the
+	 * seed is random.
+	 */
+	public static final String SEED_PROPERTY = "sampling_seed";
+
+	// Up to this Floyd's algorithm looks for repeated indices by scanning the picked ones, above it they are kept in a
+	// hash set
+	private static final int FLOYD_MAX_COUNT = 32;
+
+	private final SplittableRandom rng;
+	private Object[] buffer;
+	private int[] indices;
+	private int[] picked; // open addressing hash set of indices, -1 is an empty slot
+
+	public Sampler(long seed) {
+		this(new SplittableRandom(seed));
+	}
+
+	private Sampler(SplittableRandom rng) {
+		this.rng = rng;
+		this.buffer = new Object[16];
+		this.indices = new int[FLOYD_MAX_COUNT];
+		this.picked = new int[0];
+	}
+
+	/**
+	 * Creates the sampler of a node from {@link #SEED_PROPERTY}. Nodes that share the seed still sample differently
+	 * from each other, but every run of the same node with the same seed does the same.
+	 */
+	public static Sampler create(Properties props, Host self) {
+		var seed = props.getProperty(SEED_PROPERTY, "");
+		if (seed.isEmpty()) {
+			return new Sampler(new SplittableRandom());
+		}
+		return new Sampler(Long.parseLong(seed) * 0x9E3779B97F4A7C15L + self.hashCode());
+	}
+
+	/**
+	 * @return A sampler with its own random sequence, independent of this one
+	 */
+	public Sampler split() {
+		return new Sampler(this.rng.split());
+	}
+
+	/**
+	 * @return A random int between 0 (inclusive) and `bound` (exclusive)
+	 */
+	public int nextInt(int bound) {
+		return this.rng.nextInt(bound);
+	}
+
+	/**
+	 * @return Up to `count` random elements of `items`
+	 */
+	public <T> List<T> sample(Collection<? extends T> items, int count) {
+		return this.sample(items, count, new ArrayList<>(Math.max(0, Math.min(count, items.size()))));
+	}
+
+	/**
+	 * Adds up to `count` random elements of `items` to `out`.
+	 *
+	 * @return `out`
+	 */
+	@SuppressWarnings("unchecked")
+	public <T, C extends Collection<? super T>> C sample(Collection<? extends T> items, int count, C out) {
+		if (items instanceof List<? extends T> list && items instanceof RandomAccess) {
+			return this.sampleIndexed(list::get, list.size(), count, out);
+		}
+		var size = items.size();
+		if (count >= size) {
+			out.addAll(items);
+			return out;
+		}
+		if (count <= 0) {
+			return out;
+		}
+		if (this.buffer.length < size) {
+			this.buffer = new Object[Math.max(size, this.buffer.length * 2)];
+		}
+		var n = 0;
+		for (var item : items)
+			this.buffer[n++] = item;
+		for (int i = 0; i < count; ++i) {
+			var j = i + this.rng.nextInt(n - i);
+			var picked = this.buffer[j];
+			this.buffer[j] = this.buffer[i];
+			this.buffer[i] = picked;
+			out.add((T) picked);
+		}
+		// Do not keep the elements alive
+		Arrays.fill(this.buffer, 0, n, null);
+		return out;
+	}
+
+	/**
+	 * Adds up to `count` random elements of an indexable container to `out`, without copying the container.
+	 *
+	 * @param get  Returns the element at an index
+	 * @param size The number of elements in the container
+	 * @return `out`
+	 */
+	public <T, C extends Collection<? super T>> C sampleIndexed(IntFunction<? extends T> get, int size, int count,
+			C out) {
+		if (count >= size) {
+			for (int i = 0; i < size; ++i)
+				out.add(get.apply(i));
+			return out;
+		}
+		if (count <= 0) {
+			return out;
+		}
+
+		if (count <= FLOYD_MAX_COUNT) {
+			// Floyd's algorithm, few enough indices to look for repeats among them
+			for (int j = size - count, picked = 0; j < size; ++j, ++picked) {
+				var index = this.rng.nextInt(j + 1);
+				for (int p = 0; p < picked; ++p) {
+					if (this.indices[p] == index) {
+						index = j;
+						break;
+					}
+				}
+				this.indices[picked] = index;
+				out.add(get.apply(index));
+			}
+			return out;
+		}
+
+		// Floyd's algorithm with the picked indices in a hash set at most half full
+		var capacity = Integer.highestOneBit(count * 2 - 1) << 1;
+		if (this.picked.length < capacity) {
+			this.picked = new int[capacity];
+		}
+		Arrays.fill(this.picked, 0, capacity, -1);
+		var shift = 32 - Integer.numberOfTrailingZeros(capacity);
+		for (int j = size - count; j < size; ++j) {
+			var index = this.rng.nextInt(j + 1);
+			if (!this.addPicked(index, shift)) {
+				// j was not a candidate before this round, it can not have been picked
+				index = j;
+				this.addPicked(index, shift);
+			}
+			out.add(get.apply(index));
+		}
+		return out;
+	}
+
+	// Adds an index to the hash set of picked indices, whose capacity is 2^(32 - shift)
+	private boolean addPicked(int index, int shift) {
+		var mask = (1 << (32 - shift)) - 1;
+		for (int slot = (index * 0x9E3779B9) >>> shift; ; slot = (slot + 1) & mask) {
+			if (this.picked[slot] == index) {
+				return false;
+			}
+			if (this.picked[slot] == -1) {
+				this.picked[slot] = index;
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Adds up to `count` random elements of `items` to `out`, consuming the iterator. Only `count` elements are held
+	 * at a time so the iterator can be a lazily filtered view of a larger collection.
+	 *
+	 * @return `out`
+	 */
+	@SuppressWarnings("unchecked")
+	public <T, C extends Collection<? super T>> C reservoir(Iterator<? extends T> items, int count, C out) {
+		if (count <= 0) {
+			return out;
+		}
+		if (this.buffer.length < count) {
+			this.buffer = new Object[count];
+		}
+		var seen = 0;
+		while (items.hasNext()) {
+			var item = items.next();
+			if (seen < count) {
+				this.buffer[seen] = item;
+			} else {
+				var j = this.rng.nextInt(seen + 1);
+				if (j < count)
+					this.buffer[j] = item;
+			}
+			seen += 1;
+		}
+		var n = Math.min(seen, count);
+		for (int i = 0; i < n; ++i)
+			out.add((T) this.buffer[i]);
+		Arrays.fill(this.buffer, 0, n, null);
+		return out;
+	}
+}
@@ -0,0 +1,113 @@
+package asd.protocols.overlay.kad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class KadAddrBookTest {
+	@Test
+	public void internTest() {
+		var book = new KadAddrBook();
+		var peer = KadTestUtils.randomPeer();
+		var handle = book.add(peer);
+		assertEquals(handle, book.add(new KadPeer(peer.id, peer.host)));
+		assertEquals(handle, book.add(peer.id, peer.host));
+		assertSame(peer, book.getPeerFromID(peer.id));
+		assertSame(peer, book.getPeerFromHost(peer.host));
+		assertSame(peer, book.peer(handle));
+		assertEquals(handle, book.handle(peer.id));
+		assertEquals(handle, book.handle(peer.host));
+		assertEquals(KadAddrBook.NONE, book.handle(KadID.random()));
+
+		var other = KadTestUtils.randomPeer();
+		var missing = KadID.random();
+		book.add(other);
+		assertEquals(List.of(other, peer), book.idsToPeers(List.of(other.id, missing, peer.id)));
+		assertEquals(2, book.size());
+	}
+
+	@Test
+	public void addressChangeTest() {
+		var book = new KadAddrBook();
+		var peer = KadTestUtils.randomPeer();
+		var handle = book.add(peer);
+
+		// Same id at a new address keeps the handle
+		var moved = new KadPeer(peer.id, KadTestUtils.randomPeer().host);
+		assertEquals(handle, book.add(moved));
+		assertSame(moved, book.getPeerFromID(peer.id));
+		assertFalse(book.contains(peer.host));
+		assertTrue(book.contains(moved.host));
+
+		// A new id at a known address replaces the old node
+		var restarted = new KadPeer(KadID.random(), moved.host);
+		book.add(restarted);
+		assertFalse(book.contains(peer.id));
+		assertSame(restarted, book.getPeerFromHost(moved.host));
+		assertEquals(1, book.size());
+
+		// Handles of removed peers are reused
+		book.remove(restarted.id);
+		assertEquals(0, book.size());
+		var next = KadTestUtils.randomPeer();
+		assertEquals(handle, book.add(next));
+		assertNull(book.getPeerFromHost(moved.host));
+	}
+
+	@Test
+	public void removeListenerTest() {
+		var book = new KadAddrBook();
+		var removed = new ArrayList<Integer>();
+		book.onRemove(removed::add);
+		var peer = KadTestUtils.randomPeer();
+		var handle = book.add(peer);
+
+		// A known address with a new id frees the old handle
+		book.add(new KadPeer(KadID.random(), peer.host));
+		assertEquals(List.of(handle), removed);
+		book.remove(peer.host);
+		assertEquals(2, removed.size());
+	}
+
+	@Test
+	public void statsTest() {
+		var now = new long[] { 1000 };
+		var book = new KadAddrBook(() -> now[0]);
+		var peer = KadTestUtils.randomPeer();
+		var handle = book.add(peer);
+		assertNull(book.sinceSeen(handle));
+		assertEquals(Long.MIN_VALUE, book.lastSeen(handle));
+		assertTrue(Double.isNaN(book.srtt(handle)));
+
+		book.seen(handle);
+		now[0] += Duration.ofSeconds(2).toNanos();
+		assertEquals(Duration.ofSeconds(2), book.sinceSeen(handle));
+		assertEquals(1000, book.lastSeen(handle));
+
+		book.rtt(handle, 80.0, 40.0);
+		assertEquals(80.0, book.srtt(handle), 0.0);
+		assertEquals(40.0, book.rttvar(handle), 0.0);
+
+		book.failure(handle);
+		book.failure(handle);
+		assertEquals(2, book.failures(handle));
+		book.seen(handle);
+		assertEquals(0, book.failures(handle));
+
+		// A reused handle starts without stats
+		book.failure(handle);
+		book.remove(peer.id);
+		assertEquals(handle, book.add(KadTestUtils.randomPeer()));
+		assertNull(book.sinceSeen(handle));
+		assertTrue(Double.isNaN(book.srtt(handle)));
+		assertEquals(0, book.failures(handle));
+	}
+}
@@ -4,6 +4,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Test;
 
 import asd.protocols.overlay.kad.routing.Bucket;
@@ -73,4 +76,38 @@ public class KadBucketTest {
 		assertFalse(bucket.removeByID(p1.id));
 	}
 
+	@Test
+	public void lrsOrderTest() {
+		var bucket = new Bucket(3);
+		var a = KadTestUtils.randomPeer();
+		var b = KadTestUtils.randomPeer();
+		var c = KadTestUtils.randomPeer();
+		var d = KadTestUtils.randomPeer();
+		assertTrue(bucket.add(a));
+		assertTrue(bucket.add(b));
+		assertTrue(bucket.add(c));
+		assertEquals(a, bucket.head());
+
+		// Hearing from a peer again moves it to the tail
+		assertFalse(bucket.add(a));
+		assertEquals(List.of(b, c, a), bucket.stream().toList());
+		assertTrue(bucket.seen(b.id));
+		assertEquals(List.of(c, a, b), bucket.stream().toList());
+		assertFalse(bucket.seen(d.id));
+
+		assertFalse(bucket.add(d));
+		assertEquals(null, bucket.promote());
+		bucket.addReplacement(d);
+		assertEquals(1, bucket.replacements());
+		assertTrue(bucket.removeByID(a.id));
+		assertEquals(List.of(c, b), bucket.stream().toList());
+		assertEquals(d, bucket.promote());
+		assertEquals(List.of(c, b, d), bucket.stream().toList());
+		assertEquals(0, bucket.replacements());
+
+		// The stalest peer by an outside last seen time, ties go to the head
+		var last_seen = Map.of(c, 5L, b, 3L, d, 3L);
+		assertEquals(b, bucket.stalest(last_seen::get));
+		assertEquals(null, new Bucket(K).stalest(last_seen::get));
+	}
 }
@@ -0,0 +1,126 @@
+package asd.protocols.overlay.kad;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the long backed KadID against the previous byte[] backed implementation, kept here as `ByteKadID`.
+ * Run with `-prof gc` to see the allocation rate of each operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KadIDBenchmark {
+	private KadID a, b, c;
+	private ByteKadID byte_a, byte_b, byte_c;
+
+	@Setup
+	public void setup() {
+		this.a = KadID.random();
+		this.b = KadID.randomWithCpl(this.a, 12);
+		this.c = KadID.randomWithCpl(this.a, 40);
+		this.byte_a = new ByteKadID(this.a.toByteArray());
+		this.byte_b = new ByteKadID(this.b.toByteArray());
+		this.byte_c = new ByteKadID(this.c.toByteArray());
+	}
+
+	@Benchmark
+	public int cpl() {
+		return this.a.cpl(this.c);
+	}
+
+	@Benchmark
+	public int cplBytes() {
+		return this.byte_a.cpl(this.byte_c);
+	}
+
+	@Benchmark
+	public KadDistance distanceTo() {
+		return this.a.distanceTo(this.b);
+	}
+
+	@Benchmark
+	public byte[] distanceToBytes() {
+		return this.byte_a.distanceTo(this.byte_b);
+	}
+
+	@Benchmark
+	public int compareTo() {
+		return this.a.compareDistances(this.b, this.c);
+	}
+
+	@Benchmark
+	public int compareToBytes() {
+		return ByteKadID.compare(this.byte_a.distanceTo(this.byte_b), this.byte_a.distanceTo(this.byte_c));
+	}
+
+	@Benchmark
+	public int hashCodeLongs() {
+		return this.a.hashCode();
+	}
+
+	@Benchmark
+	public int hashCodeBytes() {
+		return this.byte_a.hashCode();
+	}
+
+	/**
+	 * The byte[] backed identifier that KadID used to be.
+	 */
+	static final class ByteKadID {
+		private final byte[] id;
+
+		ByteKadID(byte[] id) {
+			this.id = Arrays.copyOf(id, KadID.ID_LENGTH);
+		}
+
+		static int compare(byte[] d1, byte[] d2) {
+			for (int i = 0; i < KadID.ID_LENGTH; ++i) {
+				var diff = (d1[i] & 0xFF) - (d2[i] & 0xFF);
+				if (diff != 0) {
+					return diff;
+				}
+			}
+			return 0;
+		}
+
+		byte[] distanceTo(ByteKadID other) {
+			var distance = new byte[KadID.ID_LENGTH];
+			for (int i = 0; i < KadID.ID_LENGTH; ++i)
+				distance[i] = (byte) (this.id[i] ^ other.id[i]);
+			return distance;
+		}
+
+		int cpl(ByteKadID other) {
+			int cpl = 0;
+			for (int i = 0; i < KadID.ID_LENGTH; ++i) {
+				var xor = (byte) (this.id[i] ^ other.id[i]);
+				var lz = KadUtils.byteLeadingZeroes(xor);
+				cpl += lz;
+				if (lz != 8) {
+					break;
+				}
+			}
+			return cpl;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(this.id);
+		}
+	}
+}
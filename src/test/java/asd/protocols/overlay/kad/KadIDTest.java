@@ -1,11 +1,16 @@
 package asd.protocols.overlay.kad;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+
 import org.junit.Test;
 
+import io.netty.buffer.Unpooled;
+
 public class KadIDTest {
 
     @Test
@@ -145,4 +150,35 @@ public class KadIDTest {
         }
     }
 
+    @Test
+    public void compareDistancesTest() {
+        for (int i = 0; i < 10000; ++i) {
+            var id0 = KadID.random();
+            var id1 = KadID.random();
+            var id2 = KadID.randomWithCpl(id1, (int) (Math.random() * 160));
+
+            var expected = Integer.signum(id0.distanceTo(id1).compareTo(id0.distanceTo(id2)));
+            assertEquals(expected, Integer.signum(id0.compareDistances(id1, id2)));
+            assertEquals(-expected, Integer.signum(id0.compareDistances(id2, id1)));
+            assertEquals(0, id0.compareDistances(id1, id1));
+        }
+    }
+
+    @Test
+    public void serializerTest() throws IOException {
+        var bytes = new byte[KadID.ID_LENGTH];
+        for (int i = 0; i < bytes.length; ++i)
+            bytes[i] = (byte) (0xF0 + i);
+        var id = new KadID(bytes);
+        assertArrayEquals(bytes, id.toByteArray());
+
+        var buf = Unpooled.buffer();
+        KadID.serializer.serialize(id, buf);
+        assertEquals(KadID.ID_LENGTH, buf.readableBytes());
+
+        var wire = new byte[KadID.ID_LENGTH];
+        buf.getBytes(buf.readerIndex(), wire);
+        assertArrayEquals(bytes, wire);
+        assertEquals(id, KadID.serializer.deserialize(buf));
+    }
 }
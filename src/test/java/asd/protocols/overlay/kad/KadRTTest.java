@@ -1,17 +1,30 @@
 package asd.protocols.overlay.kad;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
 import org.junit.Test;
 
+import asd.protocols.overlay.kad.routing.ListRoutingTable;
+import asd.protocols.overlay.kad.routing.PingTracker;
 import asd.protocols.overlay.kad.routing.RoutingTable;
+import asd.protocols.overlay.kad.routing.TrieRoutingTable;
+import asd.utils.sampling.Sampler;
 
 public class KadRTTest {
     private static final int K = 20;
 
     static KadID self = KadID.random();
-    static RoutingTable rt = new RoutingTable(K, self);
+    static RoutingTable rt = new ListRoutingTable(K, self);
 
     @Test
     public void peerAddTest() {
@@ -31,7 +44,7 @@ public class KadRTTest {
     @Test
     public void findClosestTest() {
         var self = KadID.random();
-        var rt = new RoutingTable(K, self);
+        var rt = new ListRoutingTable(K, self);
 
         for (int i = 0; i < 10; ++i)
             for (int j = 0; j < K; ++j)
@@ -47,4 +60,208 @@ public class KadRTTest {
                 assertEquals(i, self.cpl(p.id));
         }
     }
+
+    @Test
+    public void closestMatchesSortTest() {
+        var self = KadID.random();
+        var rt = new ListRoutingTable(K, self);
+        var ignore = KadTestUtils.randomPeer(KadID.randomWithCpl(self, 3));
+        rt.add(ignore);
+        for (int i = 0; i < 5000; ++i)
+            rt.add(KadTestUtils.randomPeer());
+
+        for (int i = 0; i < 200; ++i) {
+            var target = i % 2 == 0 ? KadID.random() : KadID.randomWithCpl(self, i % 12);
+            var expected = KadTestUtils.sortedClosest(rt, self, K, target, ignore.id);
+            var actual = rt.closest(target, ignore.id);
+            assertEquals(expected, actual);
+        }
+        assertEquals(KadTestUtils.sortedClosest(rt, self, K, self, null), rt.closest(self));
+    }
+
+    @Test
+    public void trieMatchesListTest() {
+        var self = KadID.random();
+        var list = new ListRoutingTable(K, self);
+        var trie = new TrieRoutingTable(K, self);
+        var known = new ArrayList<KadPeer>();
+        var rng = ThreadLocalRandom.current();
+
+        for (int i = 0; i < 20000; ++i) {
+            var action = rng.nextInt(10);
+            if (action < 6 || known.isEmpty()) {
+                var peer = i % 3 == 0 ? KadTestUtils.randomPeer(KadID.randomWithCpl(self, rng.nextInt(16)))
+                        : KadTestUtils.randomPeer();
+                var added = list.add(peer);
+                assertEquals(added, trie.add(peer));
+                if (added) {
+                    known.add(peer);
+                }
+            } else if (action < 8) {
+                // Re-adding known peers can still unfold the last bucket
+                var peer = known.get(rng.nextInt(known.size()));
+                assertFalse(list.add(peer));
+                assertFalse(trie.add(peer));
+            } else {
+                var peer = known.remove(rng.nextInt(known.size()));
+                assertTrue(list.remove(peer.id));
+                assertTrue(trie.remove(peer.id));
+                assertFalse(trie.remove(peer.id));
+            }
+        }
+
+        assertEquals(list.size(), trie.size());
+        assertEquals(list.buckets(), trie.buckets());
+        for (int i = 0; i < list.buckets(); ++i) {
+            assertEquals(list.bucketSize(i), trie.bucketSize(i));
+            assertEquals(list.bucketStream(i).toList(), trie.bucketStream(i).toList());
+        }
+        for (var peer : known) {
+            assertTrue(trie.contains(peer.id));
+        }
+        assertEquals(list.getSample(), trie.getSample());
+
+        for (int i = 0; i < 200; ++i) {
+            var target = i % 2 == 0 ? KadID.random() : KadID.randomWithCpl(self, i % 12);
+            // Peers promoted from the replacement caches are not in `known`, it can run out
+            var ignore = known.isEmpty() ? null : known.get(rng.nextInt(known.size())).id;
+            assertEquals(list.closest(target, ignore), trie.closest(target, ignore));
+        }
+    }
+
+    @Test
+    public void trieBroadcastSampleTest() {
+        var self = KadID.random();
+        var list = new ListRoutingTable(K, self);
+        var trie = new TrieRoutingTable(K, self);
+        for (int i = 0; i < 5000; ++i) {
+            var peer = KadTestUtils.randomPeer();
+            list.add(peer);
+            trie.add(peer);
+        }
+
+        var sampler = new Sampler(1);
+        for (int left = 0; left < list.buckets() + 2; ++left) {
+            var lset = bucketSet(list, left);
+            var rset = new HashSet<KadPeer>();
+            for (int i = left + 1; i < list.buckets(); ++i)
+                rset.addAll(bucketSet(list, i));
+
+            for (var rt : new RoutingTable[] { list, trie }) {
+                var sample = rt.getBroadcastSample(sampler, left, 5);
+                var lcount = Math.min(2, lset.size());
+                assertEquals(lcount + Math.min(3, rset.size()), sample.size());
+                assertEquals(sample.size(), Set.copyOf(sample).size());
+                for (int i = 0; i < sample.size(); ++i)
+                    assertTrue((i < lcount ? lset : rset).contains(sample.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void trieRelaxedSplitTest() {
+        var self = KadID.random();
+        var classic = new TrieRoutingTable(K, self, 0);
+        var relaxed = new TrieRoutingTable(K, self, 3);
+        var peers = new ArrayList<KadPeer>();
+        for (int i = 0; i < 5000; ++i) {
+            var peer = KadTestUtils.randomPeer();
+            peers.add(peer);
+            classic.add(peer);
+            relaxed.add(peer);
+        }
+
+        // The buckets far from us can hold up to 2^3 * K peers
+        assertEquals(classic.buckets(), relaxed.buckets());
+        assertTrue(relaxed.size() > classic.size());
+        for (int i = 0; i < relaxed.buckets() - 1; ++i) {
+            assertTrue(relaxed.bucketSize(i) <= 8 * K);
+            assertTrue(relaxed.bucketSize(i) >= classic.bucketSize(i));
+            for (var peer : bucketSet(relaxed, i))
+                assertEquals(i, self.cpl(peer.id));
+        }
+
+        var contained = peers.stream().filter(p -> relaxed.contains(p.id)).collect(Collectors.toList());
+        assertEquals(relaxed.size(), contained.size());
+        assertEquals(relaxed.size(), relaxed.stream().count());
+
+        for (int i = 0; i < 200; ++i) {
+            var target = KadID.random();
+            assertEquals(KadTestUtils.sortedClosest(relaxed, self, K, target, null), relaxed.closest(target));
+        }
+
+        // Removed peers are replaced from the replacement caches until those run out
+        for (var peer : contained)
+            assertTrue(relaxed.remove(peer.id));
+        while (!relaxed.isEmpty())
+            assertTrue(relaxed.remove(relaxed.stream().findFirst().get().id));
+        assertEquals(0, relaxed.stream().count());
+    }
+
+    private static Set<KadPeer> bucketSet(RoutingTable rt, int index) {
+        return rt.bucketStream(index).collect(Collectors.toSet());
+    }
+    @Test
+    public void replacementCacheTest() {
+        var self = KadID.random();
+        for (var rt : new RoutingTable[] { new ListRoutingTable(K, self), new TrieRoutingTable(K, self, 2) }) {
+            var members = new ArrayList<KadPeer>();
+            var replacements = new ArrayList<KadPeer>();
+            for (int i = 0; i < 4 * K; ++i) {
+                var peer = KadTestUtils.randomPeer(KadID.randomWithCpl(self, 0));
+                if (rt.add(peer)) {
+                    members.add(peer);
+                } else {
+                    replacements.add(peer);
+                }
+            }
+            assertEquals(rt.size(), members.size());
+            for (var peer : replacements)
+                assertFalse(rt.contains(peer.id));
+
+            var target = replacements.get(0).id;
+            var stalest = rt.stalest(target);
+            assertTrue(rt.contains(stalest.id));
+            assertTrue(rt.seen(stalest.id));
+            assertTrue(rt.stalest(target) != stalest);
+
+            // The freed slot goes to the most recent replacement of the same bucket
+            var evicted = rt.stalest(target);
+            var promoted = rt.evict(evicted.id);
+            assertFalse(rt.contains(evicted.id));
+            assertTrue(promoted != null);
+            assertTrue(replacements.contains(promoted));
+            assertTrue(rt.contains(promoted.id));
+            assertEquals(members.size(), rt.size());
+
+            // Removing a peer that is only a replacement does not change the table
+            var cached = replacements.stream().filter(p -> !rt.contains(p.id)).findFirst().get();
+            assertFalse(rt.remove(cached.id));
+            assertEquals(members.size(), rt.size());
+        }
+    }
+
+    @Test
+    public void pingTrackerTest() {
+        var now = new long[] { 0 };
+        var wheel = new TimerWheel(Duration.ofMillis(10), 8, () -> now[0]);
+        var tracker = new PingTracker(wheel, Duration.ofMillis(20));
+        var a = KadID.random();
+        var b = KadID.random();
+        var nonce_a = tracker.begin(a);
+        var nonce_b = tracker.begin(b);
+        assertTrue(tracker.isPending(a));
+        assertEquals(null, tracker.end(a, nonce_b));
+        assertTrue(tracker.end(a, nonce_a) != null);
+        assertFalse(tracker.isPending(a));
+
+        assertEquals(1, wheel.size());
+        now[0] += Duration.ofMillis(40).toNanos();
+        assertEquals(List.of(), tracker.checkTimeouts());
+        wheel.advance();
+        assertEquals(List.of(b), tracker.checkTimeouts());
+        assertFalse(tracker.isPending(b));
+        assertEquals(null, tracker.end(b, nonce_b));
+    }
 }
+
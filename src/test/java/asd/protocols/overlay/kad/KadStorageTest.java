@@ -0,0 +1,184 @@
+package asd.protocols.overlay.kad;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KadStorageTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private long now = 1_000_000;
+
+	private KadStorage open(Path directory, int segment_size, int max_keys) throws IOException {
+		return new KadStorage(directory, segment_size, max_keys, Duration.ofHours(1), () -> this.now);
+	}
+
+	private static byte[] value(int size, int fill) {
+		var value = new byte[size];
+		for (int i = 0; i < size; ++i)
+			value[i] = (byte) (fill + i);
+		return value;
+	}
+
+	@Test
+	public void storeGetTest() throws IOException {
+		var storage = this.open(this.folder.newFolder().toPath(), 1 << 16, 1000);
+		var key = KadID.random();
+		assertEquals(Optional.empty(), storage.get(key));
+
+		assertTrue(storage.store(key, value(100, 1)));
+		assertArrayEquals(value(100, 1), storage.get(key).get());
+		assertTrue(storage.store(key, value(50, 2)));
+		assertArrayEquals(value(50, 2), storage.get(key).get());
+		assertEquals(1, storage.size());
+		assertEquals(40 + 50 + 4, storage.liveBytes());
+
+		// Views are read only and not copied to the heap
+		var view = storage.view(key).get();
+		assertTrue(view.isReadOnly());
+		assertTrue(view.isDirect());
+		assertEquals(50, view.remaining());
+
+		// Values larger than a segment are refused
+		assertFalse(storage.store(KadID.random(), new byte[1 << 16]));
+		assertTrue(storage.store(KadID.random(), new byte[0]));
+		assertEquals(2, storage.size());
+	}
+
+	@Test
+	public void ttlTest() throws IOException {
+		var storage = this.open(this.folder.newFolder().toPath(), 1 << 16, 2);
+		var short_key = KadID.random();
+		var long_key = KadID.random();
+		storage.store(short_key, value(10, 0), Duration.ofSeconds(10));
+		storage.store(long_key, value(10, 0));
+
+		// Full until something expires
+		assertFalse(storage.store(KadID.random(), value(10, 0)));
+		this.now += Duration.ofSeconds(11).toMillis();
+		assertFalse(storage.contains(short_key));
+		assertTrue(storage.contains(long_key));
+		assertTrue(storage.store(KadID.random(), value(10, 0)));
+
+		this.now += Duration.ofHours(2).toMillis();
+		assertEquals(2, storage.expire());
+		assertEquals(0, storage.size());
+		assertEquals(0, storage.liveBytes());
+	}
+
+	@Test
+	public void compactionTest() throws IOException {
+		var storage = this.open(this.folder.newFolder().toPath(), 4096, 1000);
+		var keys = new KadID[10];
+		for (int i = 0; i < keys.length; ++i)
+			keys[i] = KadID.random();
+		for (int round = 0; round < 50; ++round)
+			for (int i = 0; i < keys.length; ++i)
+				assertTrue(storage.store(keys[i], value(100, round + i)));
+
+		var segments = storage.segments();
+		var bytes = storage.bytes();
+		assertTrue(segments > 10);
+		assertTrue(storage.compact(0.5) > 0);
+		assertTrue(storage.segments() < segments);
+		assertTrue(storage.bytes() < bytes);
+		assertEquals(10 * (40 + 100 + 4), storage.liveBytes());
+		for (int i = 0; i < keys.length; ++i)
+			assertArrayEquals(value(100, 49 + i), storage.get(keys[i]).get());
+
+		// Everything dead is reclaimed once the keys expire
+		storage.store(KadID.random(), value(10, 0), Duration.ofSeconds(1));
+		this.now += Duration.ofHours(2).toMillis();
+		storage.compact(0.5);
+		assertEquals(0, storage.size());
+		assertEquals(1, storage.segments());
+	}
+
+	@Test
+	public void restartTest() throws IOException {
+		var directory = this.folder.newFolder().toPath();
+		var storage = this.open(directory, 4096, 1000);
+		var values = new HashMap<KadID, byte[]>();
+		for (int i = 0; i < 100; ++i) {
+			var key = KadID.random();
+			values.put(key, value(64, i));
+			storage.store(key, value(64, i));
+		}
+		var expired = KadID.random();
+		storage.store(expired, value(10, 0), Duration.ofSeconds(5));
+		var replaced = values.keySet().iterator().next();
+		storage.store(replaced, value(32, 7));
+		values.put(replaced, value(32, 7));
+		storage.close();
+
+		// A record torn by a crash at the tail of the last segment is discarded
+		storage = this.open(directory, 4096, 1000);
+		var torn = KadID.random();
+		storage.store(torn, value(64, 0));
+		storage.close();
+		Path last;
+		try (var files = Files.list(directory)) {
+			last = files.sorted().reduce((a, b) -> b).get();
+		}
+		try (var file = new RandomAccessFile(last.toFile(), "rw")) {
+			var position = 0L;
+			var previous = 0L;
+			for (var size = file.readInt(); size != 0; size = file.readInt()) {
+				previous = position;
+				position += size;
+				file.seek(position);
+			}
+			// Flip the first byte of its value
+			file.seek(previous + 40);
+			var first = file.readByte();
+			file.seek(previous + 40);
+			file.writeByte(~first);
+		}
+
+		this.now += Duration.ofSeconds(10).toMillis();
+		var reopened = this.open(directory, 4096, 1000);
+		assertEquals(values.size(), reopened.size());
+		assertFalse(reopened.contains(expired));
+		assertFalse(reopened.contains(torn));
+		for (var entry : values.entrySet())
+			assertArrayEquals(entry.getValue(), reopened.get(entry.getKey()).get());
+		assertTrue(reopened.store(torn, value(64, 1)));
+		assertArrayEquals(value(64, 1), reopened.get(torn).get());
+	}
+
+	@Test
+	public void dueTest() throws IOException {
+		var storage = this.open(this.folder.newFolder().toPath(), 1 << 16, 1000);
+		var old_keys = new HashSet<KadID>();
+		for (int i = 0; i < 5; ++i) {
+			var key = KadID.random();
+			old_keys.add(key);
+			storage.store(key, value(10, i), Duration.ofHours(24));
+		}
+		this.now += Duration.ofMinutes(30).toMillis();
+		var new_key = KadID.random();
+		storage.store(new_key, value(10, 0), Duration.ofHours(24));
+
+		this.now += Duration.ofMinutes(40).toMillis();
+		assertEquals(old_keys, new HashSet<>(storage.due(Duration.ofHours(1))));
+		assertTrue(storage.due(Duration.ofHours(1)).isEmpty());
+		this.now += Duration.ofMinutes(30).toMillis();
+		assertEquals(List.of(new_key), storage.due(Duration.ofHours(1)));
+	}
+}
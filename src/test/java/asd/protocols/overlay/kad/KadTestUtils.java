@@ -1,8 +1,12 @@
 package asd.protocols.overlay.kad;
 
 import java.net.Inet4Address;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
+import asd.protocols.overlay.kad.routing.RoutingTable;
 import pt.unl.fct.di.novasys.network.data.Host;
 
 public class KadTestUtils {
@@ -18,4 +22,21 @@ public class KadTestUtils {
 		var host = new Host(Inet4Address.getLoopbackAddress(), port);
 		return new KadPeer(id, host);
 	}
+
+	/**
+	 * The collect-sort-trim implementation of {@link RoutingTable#closest(KadID, KadID)}, used as a reference.
+	 */
+	public static List<KadPeer> sortedClosest(RoutingTable rt, KadID self, int k, KadID id, KadID ignore) {
+		var peers = new ArrayList<KadPeer>(k);
+		var bucket_idx = Math.min(self.cpl(id), rt.buckets() - 1);
+		var iter_count = rt.buckets();
+		for (int i = 0; i < iter_count && peers.size() < k; ++i) {
+			var idx = Math.floorMod(bucket_idx - i, iter_count);
+			rt.bucketStream(idx).filter(peer -> !peer.id.equals(ignore)).forEach(peers::add);
+		}
+		Collections.sort(peers, new PeerDistanceComparator(id));
+		while (peers.size() > k)
+			peers.remove(peers.size() - 1);
+		return peers;
+	}
 }
@@ -0,0 +1,60 @@
+package asd.protocols.overlay.kad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RequestWorkersTest {
+	@Test
+	public void inlineTest() {
+		try (var workers = new RequestWorkers(0)) {
+			assertTrue(workers.isInline());
+			var threads = new ArrayList<Thread>();
+			workers.execute("peer", () -> threads.add(Thread.currentThread()));
+			assertEquals(1, threads.size());
+			assertSame(Thread.currentThread(), threads.get(0));
+		}
+	}
+
+	@Test
+	public void orderTest() throws InterruptedException {
+		var keys = 8;
+		var tasks = 1000;
+		var done = new CountDownLatch(keys * tasks);
+		var seen = new ArrayList<List<Integer>>();
+		for (int i = 0; i < keys; ++i)
+			seen.add(Collections.synchronizedList(new ArrayList<>()));
+
+		try (var workers = new RequestWorkers(3)) {
+			for (int i = 0; i < tasks; ++i) {
+				for (int key = 0; key < keys; ++key) {
+					var list = seen.get(key);
+					var value = i;
+					workers.execute(key, () -> {
+						list.add(value);
+						done.countDown();
+					});
+				}
+			}
+			// A failing task does not stop its stripe
+			workers.execute(0, () -> {
+				throw new IllegalStateException();
+			});
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+		}
+
+		for (var list : seen) {
+			assertEquals(tasks, list.size());
+			for (int i = 0; i < tasks; ++i)
+				assertEquals(i, (int) list.get(i));
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package asd.protocols.overlay.kad;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import asd.protocols.overlay.kad.routing.ListRoutingTable;
+import asd.protocols.overlay.kad.routing.RoutingTable;
+import asd.protocols.overlay.kad.routing.TrieRoutingTable;
+
+/**
+ * Cost of answering a FindNode from the routing table. `peers` is the number of peers offered to the table, buckets
+ * keep at most `k` of them so the larger `k` values are the ones that stress the selection.
+ * Run with `-prof gc` to compare the allocation rate against the sort based implementation.
+ * <p>
+ * `contains` and `churn` (removing and adding back a known peer) compare the cost of keeping the table up to date
+ * between the list and the trie implementations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingTableBenchmark {
+	private static final int TARGETS = 1024;
+
+	@Param({ "1000", "10000", "100000" })
+	public int peers;
+
+	@Param({ "20", "1000" })
+	public int k;
+
+	@Param({ "list", "trie" })
+	public String impl;
+
+	private KadID self;
+	private RoutingTable rt;
+	private KadID[] targets;
+	private KadPeer[] known;
+	private int next;
+
+	@Setup
+	public void setup() {
+		this.self = KadID.random();
+		this.rt = switch (this.impl) {
+			case "list" -> new ListRoutingTable(this.k, this.self);
+			case "trie" -> new TrieRoutingTable(this.k, this.self);
+			default -> throw new IllegalArgumentException(this.impl);
+		};
+		for (int i = 0; i < this.peers; ++i)
+			this.rt.add(KadTestUtils.randomPeer());
+
+		var known = this.rt.stream().toList();
+		this.targets = new KadID[TARGETS];
+		this.known = new KadPeer[TARGETS];
+		for (int i = 0; i < TARGETS; ++i) {
+			this.targets[i] = KadID.random();
+			this.known[i] = known.get((i * 7919) % known.size());
+		}
+		this.next = 0;
+	}
+
+	@Benchmark
+	public List<KadPeer> closest() {
+		return this.rt.closest(this.nextTarget(), null);
+	}
+
+	@Benchmark
+	public List<KadPeer> closestSorted() {
+		return KadTestUtils.sortedClosest(this.rt, this.self, this.k, this.nextTarget(), null);
+	}
+
+	@Benchmark
+	public boolean contains() {
+		// Half of the lookups are for peers in the table
+		var index = this.next;
+		this.next = (this.next + 1) % TARGETS;
+		return this.rt.contains(index % 2 == 0 ? this.known[index].id : this.targets[index]);
+	}
+
+	@Benchmark
+	public boolean churn() {
+		var peer = this.known[this.next];
+		this.next = (this.next + 1) % TARGETS;
+		this.rt.remove(peer.id);
+		return this.rt.add(peer);
+	}
+
+	private KadID nextTarget() {
+		var target = this.targets[this.next];
+		this.next = (this.next + 1) % TARGETS;
+		return target;
+	}
+}
@@ -0,0 +1,102 @@
+package asd.protocols.overlay.kad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+public class RttEstimatorTest {
+	private static final Duration MIN_RTO = Duration.ofMillis(10);
+	private static final Duration MAX_RTO = Duration.ofSeconds(20);
+
+	private final KadAddrBook book = new KadAddrBook();
+
+	private KadID peer() {
+		var peer = KadTestUtils.randomPeer();
+		this.book.add(peer);
+		return peer.id;
+	}
+
+	@Test
+	public void rtoTest() {
+		var estimator = new RttEstimator(this.book, MIN_RTO, MAX_RTO);
+		var peer = this.peer();
+		assertEquals(MAX_RTO, estimator.rto(peer));
+		assertEquals(0.0, estimator.expected(peer), 0.0);
+
+		// The first sample sets rttvar to half the round trip
+		estimator.sample(peer, Duration.ofMillis(100));
+		assertEquals(Duration.ofMillis(300), estimator.rto(peer));
+
+		// Stable round trips shrink the variance
+		for (int i = 0; i < 100; ++i)
+			estimator.sample(peer, Duration.ofMillis(100));
+		assertTrue(estimator.rto(peer).toMillis() >= 100);
+		assertTrue(estimator.rto(peer).toMillis() <= 101);
+		assertEquals(100.0, estimator.expected(peer), 0.5);
+
+		// Failures back off until the next sample, the failures are kept in the book
+		var rto = estimator.rto(peer);
+		estimator.failure(peer);
+		assertEquals(rto.multipliedBy(2), estimator.rto(peer));
+		for (int i = 0; i < 20; ++i)
+			estimator.failure(peer);
+		assertEquals(21, this.book.failures(this.book.handle(peer)));
+		assertEquals(rto.multipliedBy(64), estimator.rto(peer));
+		estimator.sample(peer, Duration.ofMillis(100));
+		assertEquals(0, this.book.failures(this.book.handle(peer)));
+		assertTrue(estimator.rto(peer).toMillis() <= 101);
+
+		// Any message from the peer also ends the back off
+		estimator.failure(peer);
+		this.book.seen(this.book.handle(peer));
+		assertTrue(estimator.rto(peer).toMillis() <= 101);
+
+		var slow = this.peer();
+		estimator.sample(slow, Duration.ofSeconds(1));
+		for (int i = 0; i < 20; ++i)
+			estimator.failure(slow);
+		assertEquals(MAX_RTO, estimator.rto(slow));
+
+		var fast = this.peer();
+		estimator.sample(fast, Duration.ofNanos(1000));
+		assertEquals(MIN_RTO, estimator.rto(fast));
+	}
+
+	@Test
+	public void unknownPeerTest() {
+		var estimator = new RttEstimator(this.book, MIN_RTO, MAX_RTO);
+		estimator.sample(this.peer(), Duration.ofMillis(40));
+		// Peers that are not in the book only count towards the average
+		estimator.sample(KadID.random(), Duration.ofMillis(40));
+
+		// Peers without samples are expected to take the average round trip
+		var unknown = KadID.random();
+		assertEquals(40.0, estimator.expected(unknown), 0.001);
+		assertEquals(MAX_RTO, estimator.rto(unknown));
+		estimator.failure(unknown);
+		assertFalse(estimator.contains(unknown));
+
+		var known = this.peer();
+		estimator.failure(known);
+		assertFalse(estimator.contains(known));
+		assertEquals(MAX_RTO, estimator.rto(known));
+		assertEquals(40.0, estimator.expected(known), 0.001);
+	}
+
+	@Test
+	public void addressChangeTest() {
+		var estimator = new RttEstimator(this.book, MIN_RTO, MAX_RTO);
+		var peer = this.peer();
+		estimator.sample(peer, Duration.ofMillis(100));
+		assertTrue(estimator.contains(peer));
+
+		// The round trip to the old address says nothing about the new one
+		this.book.add(KadTestUtils.randomPeer(peer));
+		assertFalse(estimator.contains(peer));
+		assertEquals(MAX_RTO, estimator.rto(peer));
+	}
+}
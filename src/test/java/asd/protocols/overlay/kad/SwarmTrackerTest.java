@@ -0,0 +1,105 @@
+package asd.protocols.overlay.kad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import asd.protocols.overlay.kad.routing.SwarmTracker;
+import asd.utils.sampling.Sampler;
+
+public class SwarmTrackerTest {
+	private long now = 0;
+
+	private SwarmTracker tracker(int max_swarms, int max_members) {
+		return new SwarmTracker(Duration.ofMinutes(10), 5, max_swarms, max_members, new Sampler(1),
+				() -> this.now);
+	}
+
+	@Test
+	public void sampleTest() {
+		var tracker = this.tracker(10, 1000);
+		var swarm = KadID.random();
+		assertEquals(List.of(), tracker.getSwarmSample(swarm));
+
+		var members = new HashSet<KadID>();
+		for (int i = 0; i < 3; ++i) {
+			var member = KadID.random();
+			members.add(member);
+			tracker.add(swarm, member);
+		}
+		assertEquals(members, new HashSet<>(tracker.getSwarmSample(swarm)));
+
+		for (int i = 0; i < 100; ++i) {
+			var member = KadID.random();
+			members.add(member);
+			tracker.add(swarm, member);
+		}
+		// Samples have no repeated members and every member is eventually sampled
+		var counts = new HashMap<KadID, Integer>();
+		for (int i = 0; i < 2000; ++i) {
+			var sample = tracker.getSwarmSample(swarm);
+			assertEquals(5, sample.size());
+			assertEquals(5, new HashSet<>(sample).size());
+			assertTrue(members.containsAll(sample));
+			for (var member : sample)
+				counts.merge(member, 1, Integer::sum);
+		}
+		assertEquals(members.size(), counts.size());
+		assertEquals(members.size(), tracker.size(swarm));
+	}
+
+	@Test
+	public void expireTest() {
+		var tracker = this.tracker(10, 1000);
+		var swarm = KadID.random();
+		var refreshed = KadID.random();
+		var stale = KadID.random();
+		tracker.add(swarm, refreshed);
+		tracker.add(swarm, stale);
+
+		this.now += Duration.ofMinutes(6).toNanos();
+		tracker.add(swarm, refreshed);
+		this.now += Duration.ofMinutes(6).toNanos();
+		assertEquals(List.of(refreshed), tracker.getSwarmSample(swarm));
+
+		this.now += Duration.ofMinutes(6).toNanos();
+		assertEquals(0, tracker.size(swarm));
+		assertEquals(List.of(), tracker.getSwarmSample(swarm));
+		assertEquals(0, tracker.swarms());
+	}
+
+	@Test
+	public void capacityTest() {
+		var tracker = this.tracker(2, 3);
+		var swarm = KadID.random();
+		var members = new KadID[4];
+		for (int i = 0; i < members.length; ++i) {
+			members[i] = KadID.random();
+			this.now += 1;
+			tracker.add(swarm, members[i]);
+		}
+		// The member that joined least recently is evicted
+		assertEquals(3, tracker.size(swarm));
+		assertEquals(new HashSet<>(List.of(members[1], members[2], members[3])),
+				new HashSet<>(tracker.getSwarmSample(swarm)));
+		tracker.add(swarm, members[1]);
+		tracker.add(swarm, members[0]);
+		assertEquals(new HashSet<>(List.of(members[0], members[1], members[3])),
+				new HashSet<>(tracker.getSwarmSample(swarm)));
+
+		// The swarm used least recently is forgotten
+		var other = KadID.random();
+		tracker.add(other, KadID.random());
+		tracker.getSwarmSample(swarm);
+		tracker.add(KadID.random(), KadID.random());
+		assertEquals(2, tracker.swarms());
+		assertEquals(3, tracker.size(swarm));
+		assertEquals(0, tracker.size(other));
+	}
+}
@@ -0,0 +1,150 @@
+package asd.protocols.overlay.kad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import asd.protocols.overlay.kad.bcast.HaveTracker;
+import asd.protocols.overlay.kad.bcast.RequestTracker;
+
+public class TimerWheelTest {
+	private static final Duration TICK = Duration.ofMillis(10);
+
+	private long now = 0;
+
+	private TimerWheel wheel(int slots) {
+		return new TimerWheel(TICK, slots, () -> this.now);
+	}
+
+	private void sleep(long millis) {
+		this.now += Duration.ofMillis(millis).toNanos();
+	}
+
+	@Test
+	public void expiryTest() {
+		var wheel = this.wheel(8);
+		var fired = new ArrayList<Integer>();
+		wheel.schedule(() -> fired.add(1), Duration.ofMillis(15));
+		wheel.schedule(() -> fired.add(2), Duration.ofMillis(30));
+		var cancelled = wheel.schedule(() -> fired.add(3), Duration.ofMillis(20));
+		// Past a full turn of the wheel
+		wheel.schedule(() -> fired.add(4), Duration.ofMillis(250));
+		assertEquals(4, wheel.size());
+
+		assertTrue(cancelled.cancel());
+		assertFalse(cancelled.cancel());
+		assertFalse(cancelled.isPending());
+		assertEquals(3, wheel.size());
+
+		this.sleep(15);
+		assertEquals(0, wheel.advance());
+		this.sleep(5);
+		assertEquals(1, wheel.advance());
+		assertEquals(List.of(1), fired);
+
+		this.sleep(100);
+		assertEquals(1, wheel.advance());
+		assertEquals(List.of(1, 2), fired);
+		assertEquals(1, wheel.size());
+
+		this.sleep(130);
+		assertEquals(1, wheel.advance());
+		assertEquals(List.of(1, 2, 4), fired);
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void longGapTest() {
+		var wheel = this.wheel(4);
+		var fired = new int[] { 0 };
+		for (int i = 0; i < 1000; ++i)
+			wheel.schedule(() -> fired[0] += 1, Duration.ofMillis(i));
+		this.sleep(10_000);
+		assertEquals(1000, wheel.advance());
+		assertEquals(1000, fired[0]);
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void rescheduleTest() {
+		var wheel = this.wheel(8);
+		var fired = new int[] { 0 };
+		Runnable[] task = new Runnable[1];
+		task[0] = () -> {
+			fired[0] += 1;
+			wheel.schedule(task[0], Duration.ZERO);
+		};
+		wheel.schedule(task[0], Duration.ZERO);
+
+		// Tasks scheduled while advancing wait for the next tick
+		assertEquals(1, wheel.advance());
+		assertEquals(0, wheel.advance());
+		this.sleep(10);
+		assertEquals(1, wheel.advance());
+		assertEquals(2, fired[0]);
+		assertEquals(1, wheel.size());
+	}
+
+	@Test
+	public void haveTrackerTest() {
+		var wheel = this.wheel(16);
+		var tracker = new HaveTracker(wheel, Duration.ofMillis(50));
+		var uuid = UUID.randomUUID();
+		var a = 0;
+		var b = 1;
+		tracker.add(uuid, a);
+		this.sleep(30);
+		tracker.add(uuid, b);
+		// Adding again pushes the expiry back
+		tracker.add(uuid, a);
+		assertEquals(2, tracker.size());
+		assertEquals(2, wheel.size());
+
+		this.sleep(60);
+		wheel.advance();
+		assertEquals(0, tracker.size());
+		assertFalse(tracker.contains(uuid, a));
+		assertFalse(tracker.contains(uuid, b));
+	}
+
+	@Test
+	public void requestTrackerTest() {
+		var wheel = this.wheel(16);
+		var tracker = new RequestTracker(wheel, Duration.ofMillis(50));
+		var rtid = KadID.DEFAULT_RTID;
+		var uuid = UUID.randomUUID();
+		var done = UUID.randomUUID();
+		var a = KadID.random();
+		var b = KadID.random();
+
+		tracker.startTracking(rtid, uuid);
+		tracker.addProvider(uuid, a);
+		tracker.addProvider(uuid, b);
+		var first = tracker.getProvider(uuid);
+		tracker.beginRequest(uuid, first);
+		tracker.startTracking(rtid, done);
+		tracker.addProvider(done, a);
+		tracker.beginRequest(done, a);
+		tracker.endRequest(done);
+		assertEquals(1, wheel.size());
+
+		this.sleep(60);
+		assertEquals(List.of(), tracker.checkTimeouts());
+		wheel.advance();
+		assertEquals(List.of(new RequestTracker.ExpiredRequest(rtid, uuid, first)), tracker.checkTimeouts());
+		assertEquals(List.of(), tracker.checkTimeouts());
+
+		// The provider that timed out is dropped and the message is still tracked
+		assertTrue(tracker.isTracking(uuid));
+		assertFalse(tracker.isRequesting(uuid));
+		assertEquals(first.equals(a) ? b : a, tracker.getProvider(uuid));
+		assertFalse(tracker.isTracking(done));
+	}
+}
@@ -0,0 +1,91 @@
+package asd.protocols.overlay.kad;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import asd.protocols.overlay.kad.messages.FindValueResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Cost of answering a FindValue, from the storage lookup to the serialized response. `copy` copies the value to the
+ * heap and wraps the copy like before, `view` wraps the mapped value so it is only copied into the channel buffer.
+ * Run with `-prof gc` to compare the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueServingBenchmark {
+	private static final int KEYS = 16;
+
+	@Param({ "4096", "65536", "1048576" })
+	public int size;
+
+	@Param({ "copy", "view" })
+	public String mode;
+
+	private Path directory;
+	private KadStorage storage;
+	private KadID[] keys;
+	private List<KadPeer> closest;
+	private ByteBuf out;
+	private int next;
+
+	@Setup
+	public void setup() throws IOException {
+		this.directory = Files.createTempDirectory("kad-storage-bench-");
+		this.storage = new KadStorage(this.directory, 64 << 20, KEYS, Duration.ofHours(1));
+		this.keys = new KadID[KEYS];
+		var value = new byte[this.size];
+		for (int i = 0; i < KEYS; ++i) {
+			this.keys[i] = KadID.random();
+			this.storage.store(this.keys[i], value);
+		}
+		this.closest = List.of(KadTestUtils.randomPeer(), KadTestUtils.randomPeer(), KadTestUtils.randomPeer());
+		this.out = Unpooled.directBuffer(this.size + 4096);
+	}
+
+	@TearDown
+	public void teardown() throws IOException {
+		this.storage.close();
+		try (var files = Files.walk(this.directory)) {
+			for (var path : files.sorted(Comparator.reverseOrder()).toList())
+				Files.delete(path);
+		}
+	}
+
+	@Benchmark
+	public int serve() throws IOException {
+		var key = this.keys[this.next++ % KEYS];
+		Optional<ByteBuf> value = switch (this.mode) {
+			case "copy" -> this.storage.get(key).map(Unpooled::wrappedBuffer);
+			case "view" -> this.storage.view(key).map(Unpooled::wrappedBuffer);
+			default -> throw new IllegalArgumentException(this.mode);
+		};
+		this.out.clear();
+		FindValueResponse.serializer.serialize(new FindValueResponse(0, this.closest, value), this.out);
+		return this.out.writerIndex();
+	}
+}
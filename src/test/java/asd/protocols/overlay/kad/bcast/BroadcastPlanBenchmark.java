@@ -0,0 +1,99 @@
+package asd.protocols.overlay.kad.bcast;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadTestUtils;
+import asd.protocols.overlay.kad.routing.RoutingTable;
+import asd.protocols.overlay.kad.routing.TrieRoutingTable;
+
+/**
+ * Per message cost of finding the broadcast targets when messages are spread over `topics` topics with `peers`
+ * subscribers each. `uncached` streams the buckets for every message, as the broadcast did before the plans were
+ * cached, `cached` looks up the topic's plan and only iterates over it. Sending is left out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastPlanBenchmark {
+	private static final int K = 5;
+	private static final int RFAC = 2;
+
+	@Param({ "1", "10", "100", "1000" })
+	public int topics;
+
+	@Param({ "50" })
+	public int peers;
+
+	private KadID self;
+	private KadID[] rtids;
+	private RoutingTable[] rts;
+	private HashMap<KadID, BroadcastPlan> plans;
+	private int next;
+
+	@Setup
+	public void setup() {
+		this.self = KadID.random();
+		this.rtids = new KadID[this.topics];
+		this.rts = new RoutingTable[this.topics];
+		this.plans = new HashMap<>();
+		for (int i = 0; i < this.topics; ++i) {
+			this.rtids[i] = KadID.random();
+			this.rts[i] = new TrieRoutingTable(K, this.self);
+			for (int j = 0; j < this.peers; ++j)
+				this.rts[i].add(KadTestUtils.randomPeer());
+		}
+		this.next = 0;
+	}
+
+	@Benchmark
+	public int uncached() {
+		var topic = this.nextTopic();
+		return targets(BroadcastPlan.build(this.rts[topic], this.self, RFAC));
+	}
+
+	@Benchmark
+	public int cached() {
+		var topic = this.nextTopic();
+		var rt = this.rts[topic];
+		var plan = this.plans.get(this.rtids[topic]);
+		if (plan == null || !plan.isValidFor(rt, RFAC)) {
+			plan = BroadcastPlan.build(rt, this.self, RFAC);
+			this.plans.put(this.rtids[topic], plan);
+		}
+		return targets(plan);
+	}
+
+	private static int targets(BroadcastPlan plan) {
+		var hash = 0;
+		for (int cpl = 0; cpl <= plan.highestCpl(); ++cpl) {
+			var peers = plan.peers(cpl);
+			var count = plan.count(cpl, RFAC);
+			for (int i = 0; i < count; ++i)
+				hash += peers[i].host.getPort();
+		}
+		return hash;
+	}
+
+	private int nextTopic() {
+		var topic = this.next;
+		this.next = (this.next + 1) % this.topics;
+		return topic;
+	}
+}
@@ -0,0 +1,72 @@
+package asd.protocols.overlay.kad.bcast;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.KadTestUtils;
+import asd.protocols.overlay.kad.routing.ListRoutingTable;
+import asd.protocols.overlay.kad.routing.RoutingTable;
+import asd.protocols.overlay.kad.routing.TrieRoutingTable;
+
+public class BroadcastPlanTest {
+	private static final int K = 5;
+	private static final int REDUNDANCY = 2;
+
+	@Test
+	public void planTest() {
+		var self = KadID.random();
+		for (var rt : new RoutingTable[] { new ListRoutingTable(K, self), new TrieRoutingTable(K, self, 2) }) {
+			for (int i = 0; i < 200; ++i)
+				rt.add(KadTestUtils.randomPeer());
+			var plan = BroadcastPlan.build(rt, self, REDUNDANCY);
+
+			var highest = rt.stream().mapToInt(p -> p.id.cpl(self)).max().getAsInt();
+			assertEquals(highest, plan.highestCpl());
+			for (int cpl = 0; cpl <= highest; ++cpl) {
+				var level = cpl;
+				var expected = rt.bucketStream(cpl).filter(p -> level < rt.buckets() || p.id.cpl(self) == level)
+						.toArray(KadPeer[]::new);
+				var full = cpl == highest || cpl >= rt.buckets() - 1;
+				assertEquals(full, plan.isFull(cpl));
+				if (!full && expected.length > REDUNDANCY)
+					expected = Arrays.copyOf(expected, REDUNDANCY);
+				assertArrayEquals(expected, plan.peers(cpl));
+				assertEquals(full ? expected.length : Math.min(1, expected.length), plan.count(cpl, 1));
+			}
+		}
+	}
+
+	@Test
+	public void invalidateTest() {
+		var self = KadID.random();
+		var rt = new ListRoutingTable(K, self);
+		var peer = KadTestUtils.randomPeer();
+		rt.add(peer);
+		var plan = BroadcastPlan.build(rt, self, REDUNDANCY);
+		assertTrue(plan.isValidFor(rt, REDUNDANCY));
+		assertFalse(plan.isValidFor(rt, REDUNDANCY + 1));
+		assertFalse(plan.isValidFor(new ListRoutingTable(K, self), REDUNDANCY));
+
+		// Peers moving inside their bucket keep the plan
+		rt.seen(peer.id);
+		rt.add(peer);
+		assertTrue(plan.isValidFor(rt, REDUNDANCY));
+
+		rt.add(KadTestUtils.randomPeer());
+		assertFalse(plan.isValidFor(rt, REDUNDANCY));
+		plan = BroadcastPlan.build(rt, self, REDUNDANCY);
+		rt.remove(peer.id);
+		assertFalse(plan.isValidFor(rt, REDUNDANCY));
+		plan = BroadcastPlan.build(rt, self, REDUNDANCY);
+		rt.remove(peer.id);
+		assertTrue(plan.isValidFor(rt, REDUNDANCY));
+	}
+}
@@ -0,0 +1,95 @@
+package asd.protocols.overlay.kad.bcast;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class ChunkAssemblerTest {
+	@Test
+	public void assembleTest() {
+		var assembler = new ChunkAssembler(16, 1 << 20);
+		var code = assembler.code(3, 2);
+		var payload = new byte[1000];
+		new Random(1).nextBytes(payload);
+		var chunks = code.encode(payload);
+		var uuid = UUID.randomUUID();
+
+		assertTrue(assembler.add(uuid, payload.length, 3, 2, 4, chunks[4]));
+		assertFalse(assembler.add(uuid, payload.length, 3, 2, 4, chunks[4]));
+		assertTrue(assembler.add(uuid, payload.length, 3, 2, 1, chunks[1]));
+		assertNull(assembler.decode(uuid));
+
+		// Chunks that do not match the message are dropped
+		assertFalse(assembler.add(uuid, payload.length + 1, 3, 2, 0, chunks[0]));
+		assertFalse(assembler.add(uuid, payload.length, 3, 2, 5, chunks[0]));
+		assertFalse(assembler.add(uuid, payload.length, 3, 2, 0, new byte[1]));
+
+		assertEquals(2 * chunks[0].length, assembler.bytes());
+		assertTrue(assembler.add(uuid, payload.length, 3, 2, 3, chunks[3]));
+		assertArrayEquals(payload, assembler.decode(uuid));
+		assertEquals(0, assembler.bytes());
+		assertNull(assembler.decode(uuid));
+
+		// Late chunks are still recognized after the payload was rebuilt
+		assertTrue(assembler.add(uuid, payload.length, 3, 2, 0, chunks[0]));
+		assertFalse(assembler.add(uuid, payload.length, 3, 2, 0, chunks[0]));
+		assertNull(assembler.decode(uuid));
+	}
+
+	@Test
+	public void capacityTest() {
+		var assembler = new ChunkAssembler(2, 1 << 20);
+		var uuids = new UUID[3];
+		for (int i = 0; i < uuids.length; ++i) {
+			uuids[i] = UUID.randomUUID();
+			assertTrue(assembler.add(uuids[i], 10, 2, 1, 0, new byte[5]));
+		}
+		assertEquals(2, assembler.size());
+		// The oldest message was forgotten
+		assertTrue(assembler.add(uuids[0], 10, 2, 1, 0, new byte[5]));
+		assertFalse(assembler.add(uuids[2], 10, 2, 1, 0, new byte[5]));
+		assertFalse(assembler.add(UUID.randomUUID(), 10, 0, 1, 0, new byte[5]));
+	}
+
+	@Test
+	public void byteCapacityTest() {
+		var assembler = new ChunkAssembler(16, 12);
+		var first = UUID.randomUUID();
+		var second = UUID.randomUUID();
+		assertTrue(assembler.add(first, 10, 2, 1, 0, new byte[5]));
+		assertTrue(assembler.add(first, 10, 2, 1, 1, new byte[5]));
+		assertEquals(10, assembler.bytes());
+
+		// Going over the byte cap forgets the oldest message
+		assertTrue(assembler.add(second, 10, 2, 1, 0, new byte[5]));
+		assertEquals(1, assembler.size());
+		assertEquals(5, assembler.bytes());
+		assertNull(assembler.decode(first));
+
+		// Chunks larger than the cap are never kept
+		assertFalse(assembler.add(UUID.randomUUID(), 40, 2, 1, 0, new byte[20]));
+
+		assembler.forget(second);
+		assertEquals(0, assembler.size());
+		assertEquals(0, assembler.bytes());
+	}
+
+	@Test
+	public void branchLossTest() {
+		// 12 chunks over 2 branches leave 6 when one is lost, 8 are needed
+		assertFalse(ChunkAssembler.survivesBranchLoss(8, 4, 2));
+		assertTrue(ChunkAssembler.survivesBranchLoss(4, 4, 2));
+		assertTrue(ChunkAssembler.survivesBranchLoss(8, 4, 3));
+		assertTrue(ChunkAssembler.survivesBranchLoss(8, 4, 4));
+		assertTrue(ChunkAssembler.survivesBranchLoss(8, 3, 4));
+		assertFalse(ChunkAssembler.survivesBranchLoss(8, 3, 3));
+		assertFalse(ChunkAssembler.survivesBranchLoss(8, 8, 1));
+	}
+}
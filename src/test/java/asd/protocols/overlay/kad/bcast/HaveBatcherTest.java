@@ -0,0 +1,90 @@
+package asd.protocols.overlay.kad.bcast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import asd.metrics.MetricsProtoMessage;
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadTestUtils;
+import asd.protocols.overlay.kad.messages.BroadcastHave;
+import asd.protocols.overlay.kad.messages.BroadcastHaveBatch;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+public class HaveBatcherTest {
+	private record Sent(MetricsProtoMessage msg, Host host) {
+	}
+
+	private final ArrayList<Sent> sent = new ArrayList<>();
+	private int flushes = 0;
+
+	private HaveBatcher batcher(int max_batch) {
+		return new HaveBatcher(Duration.ofMillis(10), max_batch, new HaveBatcher.IO() {
+			@Override
+			public void send(MetricsProtoMessage msg, Host host) {
+				sent.add(new Sent(msg, host));
+			}
+
+			@Override
+			public void scheduleFlush(Duration delay) {
+				flushes += 1;
+			}
+		});
+	}
+
+	@Test
+	public void batchTest() {
+		var batcher = this.batcher(3);
+		var a = KadTestUtils.randomPeer().host;
+		var b = KadTestUtils.randomPeer().host;
+		var rtid = KadID.DEFAULT_RTID;
+		var uuids = new ArrayList<UUID>();
+		for (int i = 0; i < 5; ++i) {
+			uuids.add(UUID.randomUUID());
+			batcher.add(a, rtid, uuids.get(i));
+		}
+		var single = UUID.randomUUID();
+		batcher.add(b, rtid, single);
+
+		// The first full batch leaves right away
+		assertEquals(1, this.sent.size());
+		assertEquals(1, this.flushes);
+		assertEquals(3, batcher.size());
+		var full = (BroadcastHaveBatch) this.sent.get(0).msg();
+		assertEquals(a, this.sent.get(0).host());
+		assertEquals(uuids.subList(0, 3), full.haves.stream().map(BroadcastHaveBatch.Entry::uuid).toList());
+
+		// A peer with a single announcement gets a plain Have
+		batcher.flush();
+		assertEquals(0, batcher.size());
+		assertEquals(3, this.sent.size());
+		var rest = (BroadcastHaveBatch) this.sent.get(1).msg();
+		assertEquals(List.of(new BroadcastHaveBatch.Entry(rtid, uuids.get(3)),
+				new BroadcastHaveBatch.Entry(rtid, uuids.get(4))), rest.haves);
+		var have = (BroadcastHave) this.sent.get(2).msg();
+		assertEquals(b, this.sent.get(2).host());
+		assertEquals(single, have.uuid);
+
+		// Nothing is pending so nothing is sent
+		batcher.flush();
+		assertEquals(3, this.sent.size());
+	}
+
+	@Test
+	public void unbatchedTest() {
+		var batcher = this.batcher(1);
+		var host = KadTestUtils.randomPeer().host;
+		batcher.add(host, KadID.DEFAULT_RTID, UUID.randomUUID());
+		batcher.add(host, KadID.DEFAULT_RTID, UUID.randomUUID());
+		assertEquals(2, this.sent.size());
+		assertEquals(0, this.flushes);
+		for (var s : this.sent)
+			assertTrue(s.msg() instanceof BroadcastHave);
+	}
+}
@@ -0,0 +1,55 @@
+package asd.protocols.overlay.kad.bcast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import asd.protocols.overlay.kad.KadAddrBook;
+import asd.protocols.overlay.kad.KadTestUtils;
+import asd.protocols.overlay.kad.TimerWheel;
+
+public class HaveTrackerTest {
+	private long now = 0;
+
+	private TimerWheel wheel() {
+		return new TimerWheel(Duration.ofMillis(10), 16, () -> this.now);
+	}
+
+	@Test
+	public void removePeerTest() {
+		var wheel = this.wheel();
+		var tracker = new HaveTracker(wheel, Duration.ofMillis(50));
+		var uuid = UUID.randomUUID();
+		tracker.add(uuid, 0);
+		tracker.add(UUID.randomUUID(), 0);
+		tracker.add(uuid, 1);
+
+		// A reused handle must not inherit the records of the removed peer
+		tracker.removePeer(0);
+		assertFalse(tracker.contains(uuid, 0));
+		assertTrue(tracker.contains(uuid, 1));
+		assertEquals(1, tracker.size());
+		assertEquals(1, wheel.size());
+	}
+
+	@Test
+	public void handleReuseTest() {
+		var book = new KadAddrBook();
+		var tracker = new HaveTracker(this.wheel(), Duration.ofMillis(50));
+		book.onRemove(tracker::removePeer);
+		var peer = KadTestUtils.randomPeer();
+		var handle = book.add(peer);
+		var uuid = UUID.randomUUID();
+		tracker.add(uuid, handle);
+
+		book.remove(peer.id);
+		assertEquals(handle, book.add(KadTestUtils.randomPeer()));
+		assertFalse(tracker.contains(uuid, handle));
+		assertEquals(0, tracker.size());
+	}
+}
@@ -0,0 +1,88 @@
+package asd.protocols.overlay.kad.bcast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadTestUtils;
+import asd.utils.SeenSet;
+
+public class MessageCacheTest {
+	private long now = 0;
+
+	private static Message message(int size) {
+		return new Message(KadID.DEFAULT_RTID, UUID.randomUUID(), KadTestUtils.randomPeer(), new byte[size], 0);
+	}
+
+	private void sleep(Duration duration) {
+		this.now += duration.toNanos();
+	}
+
+	@Test
+	public void boundsTest() {
+		var cache = new MessageCache(Duration.ofMinutes(10), 4, 1000,
+				new SeenSet(100, Duration.ofHours(1), () -> this.now), () -> this.now);
+		var messages = new Message[6];
+		for (int i = 0; i < messages.length; ++i) {
+			messages[i] = message(100);
+			cache.add(messages[i]);
+		}
+
+		// Bounded by count, the payloads of the oldest are gone but their ids are remembered
+		assertEquals(4, cache.size());
+		assertEquals(400, cache.bytes());
+		assertEquals(2, cache.evictions());
+		assertFalse(cache.contains(messages[0].uuid));
+		assertTrue(cache.seen(messages[0].uuid));
+		assertEquals(null, cache.get(messages[1].uuid));
+		assertEquals(messages[5], cache.get(messages[5].uuid));
+		assertEquals(1, cache.hits());
+		assertEquals(1, cache.misses());
+
+		// Bounded by payload bytes
+		var large = message(850);
+		cache.add(large);
+		assertEquals(2, cache.size());
+		assertEquals(950, cache.bytes());
+		assertEquals(5, cache.evictions());
+		assertTrue(cache.contains(large.uuid));
+		assertTrue(cache.contains(messages[5].uuid));
+
+		// Payloads larger than the cache are only remembered as seen
+		var huge = message(1001);
+		cache.add(huge);
+		assertFalse(cache.contains(huge.uuid));
+		assertTrue(cache.seen(huge.uuid));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void ttlTest() {
+		var cache = new MessageCache(Duration.ofSeconds(10), 100, 1 << 20,
+				new SeenSet(100, Duration.ofSeconds(60), () -> this.now), () -> this.now);
+		var first = message(10);
+		cache.add(first);
+		this.sleep(Duration.ofSeconds(5));
+		var second = message(10);
+		cache.add(second);
+
+		this.sleep(Duration.ofSeconds(6));
+		assertFalse(cache.contains(first.uuid));
+		assertTrue(cache.contains(second.uuid));
+		assertEquals(1, cache.expirations());
+		assertEquals(10, cache.bytes());
+
+		this.sleep(Duration.ofSeconds(40));
+		assertEquals(0, cache.size());
+		assertTrue(cache.seen(first.uuid));
+		this.sleep(Duration.ofSeconds(10));
+		assertFalse(cache.seen(first.uuid));
+		assertTrue(cache.seen(second.uuid));
+	}
+}
@@ -0,0 +1,130 @@
+package asd.protocols.overlay.kad.bcast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.TimerWheel;
+
+public class PullSchedulerTest {
+	private record Want(KadID peer, KadID rtid, List<UUID> uuids) {
+	}
+
+	private long now = 0;
+	private final TimerWheel wheel = new TimerWheel(Duration.ofMillis(10), 16, () -> this.now);
+	private final RequestTracker tracker = new RequestTracker(this.wheel, Duration.ofSeconds(1));
+	private final ArrayList<Want> sent = new ArrayList<>();
+	private final HashMap<KadID, Double> rtts = new HashMap<>();
+	private int flushes = 0;
+
+	private PullScheduler scheduler(String policy, int max_batch) {
+		return new PullScheduler(this.tracker, PullScheduler.policy(policy, id -> this.rtts.getOrDefault(id, 0.0)),
+				id -> Duration.ofMillis(50), Duration.ZERO, max_batch, new PullScheduler.IO() {
+					@Override
+					public void sendWant(KadID peer, KadID rtid, List<UUID> uuids) {
+						sent.add(new Want(peer, rtid, List.copyOf(uuids)));
+					}
+
+					@Override
+					public void scheduleFlush(Duration delay) {
+						flushes += 1;
+					}
+				});
+	}
+
+	@Test
+	public void batchTest() {
+		var scheduler = this.scheduler(PullScheduler.POLICY_FIRST, 3);
+		var rtid = KadID.DEFAULT_RTID;
+		var other_rtid = KadID.random();
+		var peer = KadID.random();
+		var uuids = new ArrayList<UUID>();
+		for (int i = 0; i < 6; ++i) {
+			uuids.add(UUID.randomUUID());
+			scheduler.have(rtid, uuids.get(i), peer);
+		}
+		var other = UUID.randomUUID();
+		scheduler.have(other_rtid, other, peer);
+		assertEquals(List.of(), this.sent);
+		assertEquals(1, this.flushes);
+
+		// A message that arrives while it is queued is not asked for
+		assertTrue(scheduler.received(uuids.get(5)));
+		assertFalse(scheduler.received(uuids.get(5)));
+		scheduler.flush();
+		assertEquals(List.of(new Want(peer, rtid, uuids.subList(0, 3)), new Want(peer, rtid, uuids.subList(3, 5)),
+				new Want(peer, other_rtid, List.of(other))), this.sent);
+		assertEquals(6, this.tracker.outstanding(peer));
+
+		// Haves for messages being requested only add providers
+		scheduler.have(rtid, uuids.get(0), KadID.random());
+		assertEquals(1, this.flushes);
+		assertEquals(2, this.tracker.getProviders(uuids.get(0)).size());
+	}
+
+	@Test
+	public void balancedTest() {
+		var scheduler = this.scheduler(PullScheduler.POLICY_BALANCED, 100);
+		var rtid = KadID.DEFAULT_RTID;
+		var fast = KadID.random();
+		var slow = KadID.random();
+		this.rtts.put(fast, 10.0);
+		this.rtts.put(slow, 40.0);
+
+		// Messages go to the fast provider until its load outweighs its round trip
+		for (int i = 0; i < 10; ++i) {
+			var uuid = UUID.randomUUID();
+			scheduler.have(rtid, uuid, slow);
+			scheduler.have(rtid, uuid, fast);
+		}
+		scheduler.flush();
+		assertEquals(2, this.sent.size());
+		var counts = new HashMap<KadID, Integer>();
+		for (var want : this.sent)
+			counts.put(want.peer(), want.uuids().size());
+		assertEquals(8, (int) counts.get(fast));
+		assertEquals(2, (int) counts.get(slow));
+		assertEquals(8, this.tracker.outstanding(fast));
+	}
+
+	@Test
+	public void retryTest() {
+		var scheduler = this.scheduler(PullScheduler.POLICY_BALANCED, 10);
+		var rtid = KadID.DEFAULT_RTID;
+		var a = KadID.random();
+		var b = KadID.random();
+		this.rtts.put(a, 1.0);
+		this.rtts.put(b, 100.0);
+		var uuid = UUID.randomUUID();
+		scheduler.have(rtid, uuid, a);
+		scheduler.have(rtid, uuid, b);
+		scheduler.flush();
+		assertEquals(List.of(new Want(a, rtid, List.of(uuid))), this.sent);
+
+		// The request to a times out and b is asked next
+		this.now += Duration.ofMillis(60).toNanos();
+		this.wheel.advance();
+		assertEquals(List.of(new RequestTracker.ExpiredRequest(rtid, uuid, a)), scheduler.retry());
+		scheduler.flush();
+		assertEquals(new Want(b, rtid, List.of(uuid)), this.sent.get(1));
+		assertEquals(0, this.tracker.outstanding(a));
+		assertEquals(1, this.tracker.outstanding(b));
+
+		// Without providers left the message is dropped
+		this.now += Duration.ofMillis(60).toNanos();
+		this.wheel.advance();
+		assertEquals(1, scheduler.retry().size());
+		scheduler.flush();
+		assertFalse(this.tracker.isTracking(uuid));
+		assertEquals(2, this.sent.size());
+	}
+}
@@ -0,0 +1,141 @@
+package asd.protocols.overlay.kad.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import asd.protocols.overlay.kad.KadAddrBook;
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadParams;
+import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.KadTestUtils;
+import asd.protocols.overlay.kad.RttEstimator;
+import asd.protocols.overlay.kad.TimerWheel;
+import asd.protocols.overlay.kad.routing.RoutingTable;
+import asd.protocols.overlay.kad.routing.RoutingTables;
+
+public class BatchingQueryManagerIOTest {
+    private static KadParams params(int batch_max) {
+        return new KadParams(20, RoutingTable.TYPE_LIST, 0, Duration.ofSeconds(5), 3, Duration.ofSeconds(20),
+                Duration.ZERO, batch_max, 3, Set.of(), 3, 1, Duration.ofMinutes(10), Duration.ofSeconds(18), 5, 1);
+    }
+
+    @Test
+    public void coalesceTest() {
+        var io = new RecordingIO();
+        var batching = new BatchingQueryManagerIO(io, Duration.ZERO, 4);
+        var a = KadID.random();
+        var b = KadID.random();
+
+        batching.findNodeRequest(0, a, KadID.DEFAULT_RTID, KadID.random());
+        batching.findNodeRequest(1, a, KadID.DEFAULT_RTID, KadID.random());
+        batching.findNodeRequest(2, b, KadID.DEFAULT_RTID, KadID.random());
+        assertEquals(1, io.flushes);
+        assertEquals(0, io.single.size());
+        assertEquals(0, io.batches.size());
+
+        batching.flush();
+        assertEquals(List.of(b), io.single);
+        assertEquals(1, io.batches.size());
+        assertEquals(List.of(0L, 1L), io.batches.get(a).stream().map(FindNodeTarget::context).toList());
+
+        // A full batch does not wait for the flush
+        for (int i = 0; i < 4; ++i)
+            batching.findNodeRequest(10 + i, b, KadID.DEFAULT_RTID, KadID.random());
+        assertEquals(4, io.batches.get(b).size());
+        assertEquals(2, io.flushes);
+        batching.flush();
+        assertEquals(2, io.batches.size());
+        assertEquals(1, io.single.size());
+    }
+
+    @Test
+    public void disabledTest() {
+        var io = new RecordingIO();
+        var batching = new BatchingQueryManagerIO(io, Duration.ZERO, 1);
+        var a = KadID.random();
+        batching.findNodeRequest(0, a, KadID.DEFAULT_RTID, KadID.random());
+        batching.findNodeRequest(1, a, KadID.DEFAULT_RTID, KadID.random());
+        assertEquals(List.of(a, a), io.single);
+        assertEquals(0, io.flushes);
+    }
+
+    @Test
+    public void concurrentQueriesTest() {
+        var params = params(32);
+        var self = KadID.random();
+        var rts = new RoutingTables(params, self);
+        var peers = new ArrayList<KadPeer>();
+        for (int i = 0; i < params.alpha; ++i) {
+            var peer = KadTestUtils.randomPeer();
+            peers.add(peer);
+            rts.main().add(peer);
+        }
+
+        var io = new RecordingIO();
+        var rtt = new RttEstimator(new KadAddrBook(), Duration.ofSeconds(1), Duration.ofSeconds(20));
+        var qm = new BasicQueryManager(params, rts, rtt, new TimerWheel(Duration.ofMillis(100), 64), self, io);
+        var finished = new int[] { 0 };
+        var queries = 10;
+        for (int i = 0; i < queries; ++i)
+            qm.findClosest(KadID.random(), result -> finished[0] += 1);
+        qm.flush();
+
+        // Every query contacts the same alpha peers, one message per peer carries all of them
+        assertEquals(0, io.single.size());
+        assertEquals(params.alpha, io.batches.size());
+        for (var peer : peers) {
+            var batch = io.batches.get(peer.id);
+            assertEquals(queries, batch.size());
+            for (var target : batch)
+                qm.onFindNodeResponse(target.context(), peer.id, List.of());
+        }
+        assertEquals(queries, finished[0]);
+        assertTrue(io.flushes >= 1);
+    }
+
+    private static class RecordingIO implements QueryManagerIO {
+        final List<KadID> single = new ArrayList<>();
+        final Map<KadID, List<FindNodeTarget>> batches = new HashMap<>();
+        int flushes = 0;
+
+        @Override
+        public void discover(KadPeer peer) {
+        }
+
+        @Override
+        public void findNodeRequest(long context, KadID id, KadID rtid, KadID target) {
+            this.single.add(id);
+        }
+
+        @Override
+        public void findNodeRequests(KadID id, List<FindNodeTarget> targets) {
+            this.batches.put(id, targets);
+        }
+
+        @Override
+        public void findValueRequest(long context, KadID id, KadID key) {
+        }
+
+        @Override
+        public void findSwarmRequest(long context, KadID id, KadID swarm) {
+        }
+
+        @Override
+        public void findPoolRequest(long context, KadID id, KadID pool) {
+        }
+
+        @Override
+        public void scheduleFlush(Duration delay) {
+            this.flushes += 1;
+        }
+    }
+}
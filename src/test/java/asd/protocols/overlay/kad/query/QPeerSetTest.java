@@ -3,13 +3,17 @@ package asd.protocols.overlay.kad.query;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.stream.Collectors;
 
 import org.junit.Test;
 
+import asd.protocols.overlay.kad.KadAddrBook;
 import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadTestUtils;
+import asd.protocols.overlay.kad.RttEstimator;
 
 public class QPeerSetTest {
     private static int K = 20;
@@ -55,4 +59,39 @@ public class QPeerSetTest {
 
         assertEquals(original, sorted);
     }
+
+    @Test
+    public void rttWindowTest() {
+        var target = KadID.random();
+        var book = new KadAddrBook();
+        var rtt = new RttEstimator(book, Duration.ofMillis(10), Duration.ofSeconds(20));
+        var ids = new KadID[] {
+                KadID.randomWithCpl(target, 12),
+                KadID.randomWithCpl(target, 10),
+                KadID.randomWithCpl(target, 8),
+                KadID.randomWithCpl(target, 6),
+        };
+        for (var id : ids)
+            book.add(KadTestUtils.randomPeer(id));
+        rtt.sample(ids[0], Duration.ofMillis(300));
+        rtt.sample(ids[1], Duration.ofMillis(200));
+        rtt.sample(ids[2], Duration.ofMillis(300));
+        rtt.sample(ids[3], Duration.ofMillis(5));
+
+        var closest = new QPeerSet(K, target, rtt, 1);
+        var ranked = new QPeerSet(K, target, rtt, 3);
+        for (var id : ids) {
+            closest.add(id);
+            ranked.add(id);
+        }
+
+        assertEquals(ids[0], closest.getCandidate());
+        // The fastest peer is outside of the window until a closer one is requested
+        assertEquals(ids[1], ranked.getCandidate());
+        ranked.markInProgress(ids[1]);
+        assertEquals(ids[3], ranked.getCandidate());
+        ranked.markInProgress(ids[3]);
+        // Ties go to the closest peer
+        assertEquals(ids[0], ranked.getCandidate());
+    }
 }
@@ -0,0 +1,174 @@
+package asd.protocols.overlay.kad.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import asd.protocols.overlay.kad.KadAddrBook;
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadParams;
+import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.KadTestUtils;
+import asd.protocols.overlay.kad.RttEstimator;
+import asd.protocols.overlay.kad.TimerWheel;
+import asd.protocols.overlay.kad.routing.RoutingTable;
+
+public class QueryTest {
+    private static KadParams params(int alpha, Set<QueryType> disjoint) {
+        return new KadParams(20, RoutingTable.TYPE_LIST, 0, Duration.ofSeconds(5), alpha, Duration.ofSeconds(20),
+                Duration.ZERO, 32, 3, disjoint, alpha, 1, Duration.ofMinutes(10), Duration.ofSeconds(18), 5, 1);
+    }
+
+    private static RttEstimator rtt() {
+        return new RttEstimator(new KadAddrBook(), Duration.ofSeconds(1), Duration.ofSeconds(20));
+    }
+
+    @Test
+    public void disjointPathsTest() {
+        var params = params(1, Set.of(QueryType.CLOSEST));
+        var self = KadID.random();
+        var target = KadID.random();
+        var seeds = new ArrayList<KadPeer>();
+        for (int i = 0; i < 6; ++i)
+            seeds.add(KadTestUtils.randomPeer());
+        var shared = List.of(KadTestUtils.randomPeer(), KadTestUtils.randomPeer(), KadTestUtils.randomPeer());
+
+        var io = new RecordingIO();
+        var result = new ArrayList<KadID>();
+        var descriptor = new FindClosestQueryDescriptor(KadID.DEFAULT_RTID, target, r -> result.addAll(r.closest));
+        var query = new FindClosestQuery(io, self, params, new AlphaController(1, 1), rtt(), target, seeds,
+                descriptor);
+        query.start();
+
+        // One request in flight per path
+        assertEquals(3, io.requests.size());
+
+        // Every peer answers with the same peers, only the first path to learn about them may query them
+        var requested = new HashSet<KadID>();
+        while (!io.requests.isEmpty()) {
+            var peer = io.requests.poll();
+            assertTrue(requested.add(peer));
+            query.onFindNodeResponse(peer, shared);
+        }
+        assertTrue(query.isFinished());
+        assertEquals(seeds.size() + shared.size(), requested.size());
+        assertEquals(seeds.size() + shared.size(), result.size());
+    }
+
+    @Test
+    public void singlePathTest() {
+        var params = params(1, Set.of(QueryType.VALUE));
+        var self = KadID.random();
+        var target = KadID.random();
+        var seeds = List.of(KadTestUtils.randomPeer(), KadTestUtils.randomPeer(), KadTestUtils.randomPeer());
+
+        var io = new RecordingIO();
+        var descriptor = new FindClosestQueryDescriptor(KadID.DEFAULT_RTID, target, null);
+        var query = new FindClosestQuery(io, self, params, new AlphaController(1, 1), rtt(), target, seeds,
+                descriptor);
+        query.start();
+        assertEquals(1, io.requests.size());
+        query.onPeerError(io.requests.poll());
+        assertEquals(1, io.requests.size());
+    }
+
+    @Test
+    public void rtoTimeoutTest() {
+        var params = params(1, Set.of());
+        var self = KadID.random();
+        var target = KadID.random();
+        var seeds = List.of(KadTestUtils.randomPeer(), KadTestUtils.randomPeer());
+        var book = new KadAddrBook();
+        var rtt = new RttEstimator(book, Duration.ofMillis(10), params.query_request_timeout);
+        for (var seed : seeds) {
+            book.add(seed);
+            rtt.sample(seed.id, Duration.ofNanos(1000));
+        }
+
+        var io = new RecordingIO();
+        var descriptor = new FindClosestQueryDescriptor(KadID.DEFAULT_RTID, target, null);
+        var query = new FindClosestQuery(io, self, params, new AlphaController(1, 1), rtt, target, seeds,
+                descriptor);
+        query.start();
+        var first = io.requests.poll();
+
+        // Fast peers time out long before the global request timeout
+        io.now += Duration.ofMillis(5).toNanos();
+        assertEquals(0, io.wheel.advance());
+        io.now += Duration.ofMillis(5).toNanos();
+        assertEquals(1, io.wheel.advance());
+        assertEquals(1, io.requests.size());
+        assertEquals(1, io.wheel.size());
+        assertTrue(!first.equals(io.requests.peek()));
+    }
+
+    @Test
+    public void alphaControllerTest() {
+        var rtt = Duration.ofMillis(10);
+        var controller = new AlphaController(3, 6);
+        for (int i = 0; i < 30; ++i)
+            controller.onResponse(rtt);
+        assertEquals(3, controller.alpha());
+
+        for (int i = 0; i < 30; ++i)
+            controller.onFailure();
+        assertEquals(6, controller.alpha());
+
+        for (int i = 0; i < 200; ++i)
+            controller.onResponse(rtt);
+        assertEquals(3, controller.alpha());
+
+        // Round trips getting slower also widen
+        for (int i = 0; i < 20; ++i)
+            controller.onResponse(Duration.ofMillis(100));
+        assertTrue(controller.alpha() > 3);
+
+        var fixed = new AlphaController(3, 3);
+        for (int i = 0; i < 30; ++i)
+            fixed.onFailure();
+        assertEquals(3, fixed.alpha());
+    }
+
+    private static class RecordingIO implements QueryIO {
+        final ArrayDeque<KadID> requests = new ArrayDeque<>();
+        final TimerWheel wheel = new TimerWheel(Duration.ofMillis(1), 64, () -> this.now);
+        long now = 0;
+
+        @Override
+        public void discover(KadPeer peer) {
+        }
+
+        @Override
+        public void findNodeRequest(KadID id, KadID rtid, KadID target) {
+            this.requests.add(id);
+        }
+
+        @Override
+        public void findValueRequest(KadID id, KadID key) {
+            this.requests.add(id);
+        }
+
+        @Override
+        public void findSwarmRequest(KadID id, KadID swarm) {
+            this.requests.add(id);
+        }
+
+        @Override
+        public void findPoolRequest(KadID id, KadID pool) {
+            this.requests.add(id);
+        }
+
+        @Override
+        public TimerWheel.Timeout schedule(Runnable task, Duration delay) {
+            return this.wheel.schedule(task, delay);
+        }
+    }
+}
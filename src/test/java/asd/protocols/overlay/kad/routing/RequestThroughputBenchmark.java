@@ -0,0 +1,131 @@
+package asd.protocols.overlay.kad.routing;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.KadTestUtils;
+import asd.protocols.overlay.kad.RequestWorkers;
+
+/**
+ * FindNode requests answered with `kad_request_threads` = `threads` while the routing table changes. Each operation
+ * is one request as the protocol thread sees it, `churn` peers leave and join the table, the table's snapshot is
+ * taken and the closest peers are looked up on a request worker. `full` copies every bucket whenever the table
+ * changed like before, `incremental` is {@link RoutingTables#snapshot(KadID)} that only copies the changed buckets.
+ * At most `IN_FLIGHT` requests wait for the workers, so the throughput is the slower of the protocol thread and the
+ * workers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestThroughputBenchmark {
+	private static final int K = 20;
+	private static final int TARGETS = 1024;
+	private static final int IN_FLIGHT = 1024;
+
+	@Param({ "1000", "10000" })
+	public int peers;
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	@Param({ "0", "1", "8" })
+	public int churn;
+
+	@Param({ "full", "incremental" })
+	public String mode;
+
+	private RoutingTables rts;
+	private RoutingTable rt;
+	private RoutingSnapshot snapshot;
+	private RequestWorkers workers;
+	private Semaphore in_flight;
+	private KadID[] targets;
+	private KadPeer[] known;
+	private int next;
+
+	@Setup
+	public void setup() {
+		var self = KadID.random();
+		this.rts = new RoutingTables(RoutingSnapshotTest.params(K), self);
+		this.rt = this.rts.main();
+		for (int i = 0; i < this.peers; ++i)
+			this.rt.add(KadTestUtils.randomPeer());
+
+		var known = this.rt.stream().toList();
+		this.targets = new KadID[TARGETS];
+		this.known = new KadPeer[TARGETS];
+		for (int i = 0; i < TARGETS; ++i) {
+			this.targets[i] = KadID.random();
+			this.known[i] = known.get((i * 7919) % known.size());
+		}
+		this.workers = new RequestWorkers(this.threads);
+		this.in_flight = new Semaphore(IN_FLIGHT);
+		this.next = 0;
+	}
+
+	@TearDown(Level.Iteration)
+	public void drain() throws InterruptedException {
+		this.in_flight.acquire(IN_FLIGHT);
+		this.in_flight.release(IN_FLIGHT);
+	}
+
+	@TearDown
+	public void teardown() {
+		this.workers.close();
+	}
+
+	@Benchmark
+	public void request() throws InterruptedException {
+		for (int i = 0; i < this.churn; ++i) {
+			var peer = this.known[(this.next + i) % TARGETS];
+			this.rt.remove(peer.id);
+			this.rt.add(peer);
+		}
+		var view = this.view();
+		var target = this.targets[this.next];
+		var from = this.known[this.next];
+		this.next = (this.next + 1) % TARGETS;
+
+		this.in_flight.acquire();
+		this.workers.execute(from.host, () -> {
+			try {
+				List<KadPeer> closest = view.closest(target, from.id);
+				if (closest.isEmpty()) {
+					throw new IllegalStateException("No closest peers");
+				}
+			} finally {
+				this.in_flight.release();
+			}
+		});
+	}
+
+	private RoutingSnapshot view() {
+		if (this.mode.equals("incremental")) {
+			return this.rts.snapshot(KadID.DEFAULT_RTID);
+		}
+		if (this.snapshot == null || this.snapshot.version() != this.rt.version()) {
+			this.snapshot = RoutingSnapshot.of(this.rt);
+		}
+		return this.snapshot;
+	}
+}
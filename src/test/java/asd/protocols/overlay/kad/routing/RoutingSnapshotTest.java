@@ -0,0 +1,111 @@
+package asd.protocols.overlay.kad.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadParams;
+import asd.protocols.overlay.kad.KadTestUtils;
+
+public class RoutingSnapshotTest {
+	private static final int K = 5;
+
+	static KadParams params(int k) {
+		return new KadParams(k, RoutingTable.TYPE_LIST, 0, Duration.ofSeconds(5), 3, Duration.ofSeconds(20),
+				Duration.ZERO, 32, 3, Set.of(), 3, 1, Duration.ofMinutes(10), Duration.ofSeconds(18), 5, 1);
+	}
+
+	@Test
+	public void closestTest() {
+		var self = KadID.random();
+		for (var rt : new RoutingTable[] { new ListRoutingTable(K, self), new TrieRoutingTable(K, self, 2) }) {
+			for (int i = 0; i < 200; ++i)
+				rt.add(KadTestUtils.randomPeer());
+			var snapshot = RoutingSnapshot.of(rt);
+			assertEquals(rt.size(), snapshot.size());
+			for (int i = 0; i < 100; ++i) {
+				var target = KadID.random();
+				var ignore = rt.closest(target).get(0).id;
+				assertEquals(rt.closest(target), snapshot.closest(target));
+				assertEquals(rt.closest(target, ignore), snapshot.closest(target, ignore));
+			}
+
+			// Later changes to the table are not seen by the snapshot
+			var before = snapshot.closest(self);
+			for (int i = 0; i < 200; ++i)
+				rt.add(KadTestUtils.randomPeer());
+			assertEquals(before, snapshot.closest(self));
+		}
+	}
+
+	@Test
+	public void reuseTest() {
+		var self = KadID.random();
+		var rt = new ListRoutingTable(K, self);
+		rt.add(KadTestUtils.randomPeer());
+		var snapshot = RoutingSnapshot.of(rt);
+		assertEquals(rt.version(), snapshot.version());
+
+		var rtid = KadID.random();
+		var rts = new RoutingTables(params(K), self);
+		assertEquals(null, rts.snapshot(rtid));
+		var table = rts.create(rtid);
+		var first = rts.snapshot(rtid);
+		assertSame(first, rts.snapshot(rtid));
+		table.add(KadTestUtils.randomPeer());
+		var second = rts.snapshot(rtid);
+		assertNotSame(first, second);
+		assertEquals(1, second.size());
+		rts.remove(rtid);
+		assertEquals(null, rts.snapshot(rtid));
+	}
+
+	@Test
+	public void incrementalTest() {
+		var self = KadID.random();
+		for (var rt : new RoutingTable[] { new ListRoutingTable(K, self), new TrieRoutingTable(K, self, 2) }) {
+			for (int i = 0; i < 200; ++i)
+				rt.add(KadTestUtils.randomPeer());
+			var first = RoutingSnapshot.of(rt);
+
+			// Only the bucket of the evicted peer is copied again
+			var peer = rt.bucketStream(0).findFirst().get();
+			rt.evict(peer.id);
+			var second = RoutingSnapshot.of(rt, first);
+			assertEquals(rt.version(), second.version());
+			assertNotSame(first.bucket(0), second.bucket(0));
+			for (int i = 1; i < rt.buckets(); ++i)
+				assertSame(first.bucket(i), second.bucket(i));
+
+			// Churn that also splits buckets, every snapshot built from the previous one matches the table
+			var random = new Random(1);
+			var peers = new ArrayList<>(rt.stream().toList());
+			var snapshot = second;
+			for (int round = 0; round < 50; ++round) {
+				for (int i = 0; i < 10; ++i) {
+					if (random.nextBoolean() && !peers.isEmpty()) {
+						rt.evict(peers.remove(random.nextInt(peers.size())).id);
+					} else {
+						var added = KadTestUtils.randomPeer();
+						if (rt.add(added))
+							peers.add(added);
+					}
+				}
+				snapshot = RoutingSnapshot.of(rt, snapshot);
+				assertEquals(rt.size(), snapshot.size());
+				for (int i = 0; i < 20; ++i) {
+					var target = KadID.random();
+					assertEquals(rt.closest(target), snapshot.closest(target));
+				}
+			}
+		}
+	}
+}
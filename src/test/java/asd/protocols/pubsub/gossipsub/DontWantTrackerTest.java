@@ -0,0 +1,68 @@
+package asd.protocols.pubsub.gossipsub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import pt.unl.fct.di.novasys.network.data.Host;
+
+public class DontWantTrackerTest {
+	private static Host host(int port) {
+		return new Host(InetAddress.getLoopbackAddress(), port);
+	}
+
+	@Test
+	public void containsTest() {
+		var tracker = new DontWantTracker(3, 10);
+		var id = UUID.randomUUID();
+		tracker.add(host(1), id);
+		assertTrue(tracker.contains(host(1), id));
+		assertFalse(tracker.contains(host(2), id));
+		assertFalse(tracker.contains(host(1), UUID.randomUUID()));
+
+		tracker.remove(host(1));
+		assertFalse(tracker.contains(host(1), id));
+		assertEquals(0, tracker.size());
+	}
+
+	@Test
+	public void expiryTest() {
+		var tracker = new DontWantTracker(2, 10);
+		var first = UUID.randomUUID();
+		var second = UUID.randomUUID();
+		tracker.add(host(1), first);
+		tracker.tick();
+		tracker.add(host(1), second);
+		assertEquals(2, tracker.size());
+
+		tracker.tick();
+		assertFalse(tracker.contains(host(1), first));
+		assertTrue(tracker.contains(host(1), second));
+
+		tracker.tick();
+		assertFalse(tracker.contains(host(1), second));
+		assertEquals(0, tracker.size());
+	}
+
+	@Test
+	public void capTest() {
+		var tracker = new DontWantTracker(5, 2);
+		var ids = new UUID[]{UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()};
+		for (var id : ids) {
+			tracker.add(host(1), id);
+		}
+		assertTrue(tracker.contains(host(1), ids[0]));
+		assertTrue(tracker.contains(host(1), ids[1]));
+		assertFalse(tracker.contains(host(1), ids[2]));
+
+		// the cap is per peer
+		tracker.add(host(2), ids[2]);
+		assertTrue(tracker.contains(host(2), ids[2]));
+		assertEquals(3, tracker.size());
+	}
+}
@@ -0,0 +1,74 @@
+package asd.protocols.pubsub.gossipsub;
+
+import asd.protocols.pubsub.gossipsub.messages.PublishMessage;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.*;
+
+/**
+ * The previous {@link MessageCache}, a list of windows that holds the (id, topic) pairs put in each heartbeat. Kept as
+ * the reference the ring buffer cache is checked and benchmarked against.
+ * <p>
+ * Unlike the original, {@link #shift()} starts a new window on every call instead of only rotating once the list is
+ * full, which it never was.
+ */
+public class ListMessageCache {
+
+	// msgId -> message
+	private final Map<UUID, PublishMessage> messages;
+	private final List<Set<Pair<UUID, String>>> history;
+	private final int historyGossip, historyLength;
+
+	public ListMessageCache(int historyGossip, int historyLength) {
+		messages = new HashMap<>();
+		history = new LinkedList<>();
+		history.add(0, new HashSet<>());
+		this.historyGossip = historyGossip;
+		this.historyLength = historyLength;
+	}
+
+	public void put(PublishMessage publishMessage) {
+		var msgId = publishMessage.getMsgId();
+		if (messages.containsKey(msgId)) {
+			return;
+		}
+
+		messages.put(publishMessage.getMsgId(), publishMessage);
+		history.get(0).add(Pair.of(msgId, publishMessage.getTopic()));
+	}
+
+	public boolean contains(UUID msgId) {
+		return messages.containsKey(msgId);
+	}
+
+	public PublishMessage get(UUID msgId) {
+		return messages.get(msgId);
+	}
+
+	public void shift() {
+		history.add(0, new HashSet<>());
+		if (history.size() > historyLength) {
+			var lastEntries = history.remove(history.size() - 1);
+			for (var entry : lastEntries) {
+				messages.remove(entry.getLeft());
+			}
+		}
+	}
+
+	public Map<String, Set<UUID>> getMessageIDsByTopic(Set<String> topics) {
+		Map<String, Set<UUID>> msgIdsByTopic = new HashMap<>();
+		//only return 'gossip' most recent message sets in history
+		for (int i = 0; i < Math.min(historyGossip, history.size()); i++) {
+			for (var entry : history.get(i)) {
+				var msgId = entry.getLeft();
+				var msg = messages.get(msgId);
+				if (msg != null && topics.contains(msg.getTopic())) {
+					var topic = msg.getTopic();
+					msgIdsByTopic.computeIfAbsent(topic, k -> new HashSet<>());
+					msgIdsByTopic.get(topic).add(msgId);
+				}
+			}
+		}
+		return msgIdsByTopic;
+	}
+}
@@ -0,0 +1,93 @@
+package asd.protocols.pubsub.gossipsub;
+
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import asd.protocols.pubsub.gossipsub.messages.PublishMessage;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+/**
+ * One heartbeat of the message cache with the default 1 second heartbeat: `rate` messages spread over `topics` topics
+ * are put, the gossip ids of every topic are read and the window is shifted. `list` is the previous cache, `ring` the
+ * current one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCacheBenchmark {
+	private static final int HISTORY_GOSSIP = 3;
+	private static final int HISTORY_LENGTH = 5;
+
+	@Param({"10000"})
+	public int rate;
+
+	@Param({"100"})
+	public int topics;
+
+	private PublishMessage[] messages;
+	private Set<String> topicSet;
+	private ListMessageCache list;
+	private MessageCache ring;
+	private int next;
+
+	@Setup
+	public void setup() {
+		var source = new Host(InetAddress.getLoopbackAddress(), 1000);
+		// enough distinct messages that none is put again while still cached
+		this.messages = new PublishMessage[rate * (HISTORY_LENGTH + 1)];
+		for (int i = 0; i < messages.length; i++) {
+			messages[i] = new PublishMessage(source, "topic-" + (i % topics), UUID.randomUUID(), new byte[0]);
+		}
+		this.topicSet = new HashSet<>();
+		for (int i = 0; i < topics; i++) {
+			topicSet.add("topic-" + i);
+		}
+		this.list = new ListMessageCache(HISTORY_GOSSIP, HISTORY_LENGTH);
+		this.ring = new MessageCache(HISTORY_GOSSIP, HISTORY_LENGTH);
+		this.next = 0;
+	}
+
+	@Benchmark
+	public int list() {
+		for (int i = 0; i < rate; i++) {
+			list.put(nextMessage());
+		}
+		var gossip = list.getMessageIDsByTopic(topicSet);
+		list.shift();
+		return gossip.size();
+	}
+
+	@Benchmark
+	public int ring() {
+		for (int i = 0; i < rate; i++) {
+			ring.put(nextMessage());
+		}
+		var gossip = ring.getMessageIDsByTopic(topicSet);
+		ring.shift();
+		return gossip.size();
+	}
+
+	private PublishMessage nextMessage() {
+		var msg = messages[next];
+		next = (next + 1) % messages.length;
+		return msg;
+	}
+}
@@ -0,0 +1,95 @@
+package asd.protocols.pubsub.gossipsub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import asd.protocols.pubsub.gossipsub.messages.PublishMessage;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+public class MessageCacheTest {
+	private static final Host SOURCE = new Host(InetAddress.getLoopbackAddress(), 1000);
+
+	private static PublishMessage message(String topic) {
+		return new PublishMessage(SOURCE, topic, UUID.randomUUID(), new byte[0]);
+	}
+
+	@Test
+	public void shiftTest() {
+		var cache = new MessageCache(2, 3);
+		var first = message("t1");
+		cache.put(first);
+		assertSame(first, cache.get(first.getMsgId()));
+		assertEquals(Set.of(first.getMsgId()), cache.getMessageIDsByTopic(Set.of("t1")).get("t1"));
+		assertTrue(cache.getMessageIDsByTopic(Set.of("t2")).isEmpty());
+
+		cache.shift();
+		assertEquals(Set.of(first.getMsgId()), cache.getMessageIDsByTopic(Set.of("t1")).get("t1"));
+		// only the last two windows are gossiped
+		cache.shift();
+		assertTrue(cache.contains(first.getMsgId()));
+		assertTrue(cache.getMessageIDsByTopic(Set.of("t1")).isEmpty());
+		// and the message is gone after three
+		cache.shift();
+		assertFalse(cache.contains(first.getMsgId()));
+		assertNull(cache.get(first.getMsgId()));
+
+		// a message is only kept once
+		var again = message("t1");
+		cache.put(again);
+		cache.shift();
+		cache.put(again);
+		cache.shift();
+		cache.shift();
+		assertFalse(cache.contains(again.getMsgId()));
+	}
+
+	@Test
+	public void equivalenceTest() {
+		var random = new Random(42);
+		for (var historyGossip : new int[]{1, 3, 5, 7}) {
+			var cache = new MessageCache(historyGossip, 5);
+			var reference = new ListMessageCache(historyGossip, 5);
+			var topics = new ArrayList<String>();
+			for (int i = 0; i < 20; i++) {
+				topics.add("topic-" + i);
+			}
+			var put = new ArrayList<PublishMessage>();
+
+			for (int round = 0; round < 50; round++) {
+				var count = random.nextInt(100);
+				for (int i = 0; i < count; i++) {
+					var msg = random.nextInt(10) == 0 && !put.isEmpty()
+							? put.get(random.nextInt(put.size()))
+							: message(topics.get(random.nextInt(topics.size())));
+					put.add(msg);
+					cache.put(msg);
+					reference.put(msg);
+				}
+
+				var asked = new HashSet<String>();
+				for (int i = 0; i < 5; i++) {
+					asked.add(topics.get(random.nextInt(topics.size())));
+				}
+				assertEquals(reference.getMessageIDsByTopic(asked), cache.getMessageIDsByTopic(asked));
+				for (var msg : put) {
+					assertEquals(reference.contains(msg.getMsgId()), cache.contains(msg.getMsgId()));
+					assertSame(reference.get(msg.getMsgId()), cache.get(msg.getMsgId()));
+				}
+				cache.shift();
+				reference.shift();
+			}
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package asd.protocols.pubsub.gossipsub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import asd.protocols.pubsub.gossipsub.messages.Graft;
+import asd.protocols.pubsub.gossipsub.messages.IHave;
+import asd.protocols.pubsub.gossipsub.messages.Prune;
+import asd.protocols.pubsub.gossipsub.messages.PublishMessage;
+import asd.protocols.pubsub.gossipsub.messages.Rpc;
+import pt.unl.fct.di.novasys.babel.generic.ProtoMessage;
+import pt.unl.fct.di.novasys.network.data.Host;
+
+public class RpcBatcherTest {
+	private static class RecordingIO implements RpcBatcher.IO {
+		final List<ProtoMessage> sent = new ArrayList<>();
+		final List<Host> to = new ArrayList<>();
+		int flushes = 0;
+
+		@Override
+		public void send(ProtoMessage msg, Host peer) {
+			sent.add(msg);
+			to.add(peer);
+		}
+
+		@Override
+		public void scheduleFlush(long delayMs) {
+			flushes++;
+		}
+	}
+
+	private static Host host(int port) throws UnknownHostException {
+		return new Host(InetAddress.getLoopbackAddress(), port);
+	}
+
+	private static PublishMessage publish(Host source, int size) {
+		return new PublishMessage(source, "topic", UUID.randomUUID(), new byte[size]);
+	}
+
+	@Test
+	public void batchTest() throws UnknownHostException {
+		var io = new RecordingIO();
+		var batcher = new RpcBatcher(10, 65536, io);
+		var a = host(1000);
+		var b = host(1001);
+
+		for (int i = 0; i < 5; i++) {
+			batcher.send(publish(a, 100), a);
+		}
+		batcher.send(new Graft(Set.of("topic")), a);
+		var single = publish(a, 100);
+		batcher.send(single, b);
+		assertEquals(0, io.sent.size());
+		assertEquals(1, io.flushes);
+		assertEquals(2, batcher.size());
+
+		batcher.flush();
+		assertEquals(List.of(a, b), io.to);
+		var rpc = (Rpc) io.sent.get(0);
+		assertEquals(5, rpc.getPublishes().size());
+		assertEquals(Set.of("topic"), rpc.getGraft().getTopics());
+		// a single message is not wrapped
+		assertSame(single, io.sent.get(1));
+		assertEquals(0, batcher.size());
+
+		batcher.send(publish(a, 100), a);
+		assertEquals(2, io.flushes);
+	}
+
+	@Test
+	public void maxBytesTest() throws UnknownHostException {
+		var io = new RecordingIO();
+		var batcher = new RpcBatcher(10, 1000, io);
+		var a = host(1000);
+
+		for (int i = 0; i < 10; i++) {
+			batcher.send(publish(a, 300), a);
+		}
+		batcher.flush();
+		var publishes = 0;
+		for (var msg : io.sent) {
+			var count = msg instanceof Rpc rpc ? rpc.getPublishes().size() : 1;
+			assertTrue(count * 300 <= 1000);
+			publishes += count;
+		}
+		assertEquals(10, publishes);
+		assertTrue(io.sent.size() >= 4);
+	}
+
+	@Test
+	public void holdTest() throws UnknownHostException {
+		var io = new RecordingIO();
+		var batcher = new RpcBatcher(0, 65536, io);
+		var a = host(1000);
+
+		// without a window messages go out right away
+		batcher.send(publish(a, 10), a);
+		assertEquals(1, io.sent.size());
+
+		batcher.hold();
+		batcher.send(new Graft(Set.of("t1")), a);
+		batcher.send(new Prune(Map.of("t2", Set.of())), a);
+		batcher.send(new IHave(Map.of("t3", Set.of(UUID.randomUUID()))), a);
+		assertEquals(1, io.sent.size());
+		assertEquals(0, io.flushes);
+		batcher.flush();
+		assertEquals(2, io.sent.size());
+		assertEquals(3, ((Rpc) io.sent.get(1)).count());
+
+		batcher.send(publish(a, 10), a);
+		assertEquals(3, io.sent.size());
+	}
+}
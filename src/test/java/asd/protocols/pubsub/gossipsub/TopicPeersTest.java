@@ -0,0 +1,132 @@
+package asd.protocols.pubsub.gossipsub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import pt.unl.fct.di.novasys.network.data.Host;
+
+public class TopicPeersTest {
+	private static Host host(int port) {
+		return new Host(InetAddress.getLoopbackAddress(), port);
+	}
+
+	@Test
+	public void setTest() {
+		var index = new PeerIndex();
+		var mesh = new TopicPeers(index);
+		assertNull(mesh.get("t1"));
+		assertFalse(mesh.containsKey("t1"));
+
+		var set = mesh.computeIfAbsent("t1");
+		assertTrue(mesh.containsKey("t1"));
+		assertTrue(set.isEmpty());
+		assertTrue(set.add(host(1)));
+		assertFalse(set.add(host(1)));
+		assertTrue(set.add(host(2)));
+		assertEquals(Set.of(host(1), host(2)), set);
+		assertEquals(2, index.size());
+
+		var ids = new ArrayList<Host>();
+		for (var id = set.nextPeer(0); id >= 0; id = set.nextPeer(id + 1)) {
+			ids.add(set.host(id));
+		}
+		assertEquals(Set.of(host(1), host(2)), new HashSet<>(ids));
+
+		set.removeIf(peer -> peer.equals(host(1)));
+		assertEquals(Set.of(host(2)), set);
+		assertEquals(1, index.size());
+
+		// a removed topic keeps its set
+		mesh.remove("t1");
+		assertNull(mesh.get("t1"));
+		assertEquals(0, index.size());
+		assertSame(set, mesh.computeIfAbsent("t1"));
+		assertTrue(set.isEmpty());
+
+		mesh.put("t2", List.of(host(3), host(4)));
+		assertEquals(List.of("t1", "t2"), mesh.topics());
+		assertEquals(Set.of(host(3), host(4)), mesh.get("t2"));
+	}
+
+	@Test
+	public void removePeerTest() {
+		var index = new PeerIndex();
+		var topics = new TopicPeers(index);
+		var mesh = new TopicPeers(index);
+		for (int t = 0; t < 10; t++) {
+			topics.computeIfAbsent("t" + t).add(host(1));
+			topics.get("t" + t).add(host(2));
+		}
+		mesh.computeIfAbsent("t0").add(host(1));
+
+		topics.removePeer(host(1));
+		for (int t = 0; t < 10; t++) {
+			assertEquals(Set.of(host(2)), topics.get("t" + t));
+		}
+		// still in the mesh, so it keeps its id
+		assertTrue(mesh.get("t0").contains(host(1)));
+		assertEquals(2, index.size());
+		mesh.removePeer(host(1));
+		assertEquals(1, index.size());
+
+		// freed ids are reused and do not bring back old memberships
+		topics.computeIfAbsent("t0").add(host(3));
+		assertEquals(Set.of(host(2), host(3)), topics.get("t0"));
+		assertEquals(Set.of(host(2)), topics.get("t1"));
+		assertTrue(mesh.get("t0").isEmpty());
+	}
+
+	@Test
+	public void randomTest() {
+		var random = new Random(7);
+		var index = new PeerIndex();
+		var relations = List.of(new TopicPeers(index), new TopicPeers(index));
+		var references = List.<Map<String, Set<Host>>>of(new HashMap<>(), new HashMap<>());
+
+		for (int i = 0; i < 10000; i++) {
+			var r = random.nextInt(2);
+			var relation = relations.get(r);
+			var reference = references.get(r);
+			var topic = "t" + random.nextInt(20);
+			var peer = host(random.nextInt(50));
+			switch (random.nextInt(10)) {
+				case 0 -> {
+					relation.removePeer(peer);
+					reference.values().forEach(peers -> peers.remove(peer));
+				}
+				case 1 -> {
+					relation.remove(topic);
+					reference.remove(topic);
+				}
+				case 2, 3, 4 -> assertEquals(reference.computeIfAbsent(topic, k -> new HashSet<>()).remove(peer),
+						relation.computeIfAbsent(topic).remove(peer));
+				default -> assertEquals(reference.computeIfAbsent(topic, k -> new HashSet<>()).add(peer),
+						relation.computeIfAbsent(topic).add(peer));
+			}
+		}
+
+		var referenced = new HashSet<Host>();
+		for (int r = 0; r < 2; r++) {
+			for (var entry : references.get(r).entrySet()) {
+				assertEquals(entry.getValue(), relations.get(r).get(entry.getKey()));
+				referenced.addAll(entry.getValue());
+			}
+			assertEquals(references.get(r).keySet(), new HashSet<>(relations.get(r).topics()));
+		}
+		assertEquals(referenced.size(), index.size());
+	}
+}
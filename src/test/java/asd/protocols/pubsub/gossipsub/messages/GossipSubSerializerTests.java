@@ -64,6 +64,14 @@ public class GossipSubSerializerTests extends TestCase {
         assertEquals(inMsg.getMessageIds(), outMsg.getMessageIds());
     }
 
+    public void testIDontWant() throws IOException {
+        var inMsg = new IDontWant(Set.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()));
+        var buf = Unpooled.buffer();
+        IDontWant.serializer.serialize(inMsg, buf);
+        var outMsg = IDontWant.serializer.deserialize(buf);
+        assertEquals(inMsg.getMessageIds(), outMsg.getMessageIds());
+    }
+
     public void testIHave() throws IOException {
         var inMsg = new IHave(Map.of(
                 "t1", Set.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()),
@@ -82,4 +90,32 @@ public class GossipSubSerializerTests extends TestCase {
         var outMsg = Graft.serializer.deserialize(buf);
         assertEquals(inMsg.getTopics(), outMsg.getTopics());
     }
-}
\ No newline at end of file
+
+    public void testRpc() throws IOException {
+        var host = new Host(InetAddress.getLocalHost(), 2444);
+        var inMsg = new Rpc();
+        inMsg.add(new SubscribeMessage("t1"));
+        inMsg.add(new UnsubscribeMessage("t2"));
+        inMsg.add(new PublishMessage(host, "t1", UUID.randomUUID(), new byte[] {0x01, 0x02}));
+        inMsg.add(new PublishMessage(host, "t3", UUID.randomUUID(), new byte[] {0x03}));
+        inMsg.add(new Graft(Set.of("t1")));
+        inMsg.add(new Graft(Set.of("t2")));
+        inMsg.add(new IWant(Set.of(UUID.randomUUID(), UUID.randomUUID())));
+        inMsg.add(new IDontWant(Set.of(UUID.randomUUID())));
+        var buf = Unpooled.buffer();
+        Rpc.serializer.serialize(inMsg, buf);
+        var outMsg = Rpc.serializer.deserialize(buf);
+        assertEquals(inMsg.getSubscriptions(), outMsg.getSubscriptions());
+        assertEquals(2, outMsg.getPublishes().size());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(inMsg.getPublishes().get(i).getMsgId(), outMsg.getPublishes().get(i).getMsgId());
+            assertArrayEquals(inMsg.getPublishes().get(i).getMsg(), outMsg.getPublishes().get(i).getMsg());
+        }
+        assertEquals(Set.of("t1", "t2"), outMsg.getGraft().getTopics());
+        assertNull(outMsg.getPrune());
+        assertNull(outMsg.getIHave());
+        assertEquals(inMsg.getIWant().getMessageIds(), outMsg.getIWant().getMessageIds());
+        assertEquals(inMsg.getIDontWant().getMessageIds(), outMsg.getIDontWant().getMessageIds());
+        assertEquals(7, outMsg.count());
+    }
+}
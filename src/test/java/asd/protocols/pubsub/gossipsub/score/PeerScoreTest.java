@@ -0,0 +1,140 @@
+package asd.protocols.pubsub.gossipsub.score;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import pt.unl.fct.di.novasys.network.data.Host;
+
+public class PeerScoreTest {
+	private static final double DELTA = 1e-9;
+
+	private long now = 0;
+
+	private PeerScore create(Properties props) {
+		return new PeerScore(new PeerScoreParams(props), () -> this.now);
+	}
+
+	private static Host host(String address, int port) throws UnknownHostException {
+		return new Host(InetAddress.getByName(address), port);
+	}
+
+	@Test
+	public void firstDeliveriesTest() throws UnknownHostException {
+		var props = new Properties();
+		props.setProperty("gossipsub_score_time_in_mesh_weight", "0");
+		var score = create(props);
+		var fast = host("10.0.0.1", 1000);
+		var slow = host("10.0.0.2", 1000);
+		score.addPeer(fast);
+		score.addPeer(slow);
+
+		for (int i = 0; i < 10; i++) {
+			var msgId = UUID.randomUUID();
+			score.deliverMessage(fast, "topic", msgId);
+			score.duplicateMessage(slow, "topic", msgId);
+		}
+		assertEquals(10, score.score(fast), DELTA);
+		assertEquals(0, score.score(slow), DELTA);
+
+		score.decay();
+		assertEquals(5, score.score(fast), DELTA);
+		for (int i = 0; i < 20; i++) {
+			score.decay();
+		}
+		assertEquals(0, score.score(fast), DELTA);
+	}
+
+	@Test
+	public void meshDeliveriesTest() throws UnknownHostException {
+		var props = new Properties();
+		props.setProperty("gossipsub_score_time_in_mesh_weight", "0");
+		props.setProperty("gossipsub_score_first_deliveries_weight", "0");
+		props.setProperty("gossipsub_score_mesh_deliveries_threshold", "4");
+		var score = create(props);
+		var peer = host("10.0.0.1", 1000);
+		var other = host("10.0.0.2", 1000);
+		score.addPeer(peer);
+		score.addPeer(other);
+		score.graft(peer, "topic");
+
+		// no penalty before the activation time
+		assertEquals(0, score.score(peer), DELTA);
+		now += 5000;
+		assertEquals(-16, score.score(peer), DELTA);
+
+		// duplicates within the window count as mesh deliveries
+		var msgId = UUID.randomUUID();
+		score.deliverMessage(other, "topic", msgId);
+		now += 5;
+		score.duplicateMessage(peer, "topic", msgId);
+		assertEquals(-9, score.score(peer), DELTA);
+		msgId = UUID.randomUUID();
+		score.deliverMessage(other, "topic", msgId);
+		now += 50;
+		score.duplicateMessage(peer, "topic", msgId);
+		assertEquals(-9, score.score(peer), DELTA);
+
+		// the deficit stays as a penalty after the prune
+		score.prune(peer, "topic");
+		assertEquals(-9, score.score(peer), DELTA);
+		score.decay();
+		assertEquals(-4.5, score.score(peer), DELTA);
+	}
+
+	@Test
+	public void timeInMeshTest() throws UnknownHostException {
+		var props = new Properties();
+		props.setProperty("gossipsub_score_time_in_mesh_cap", "10");
+		var score = create(props);
+		var peer = host("10.0.0.1", 1000);
+		score.addPeer(peer);
+		score.graft(peer, "topic");
+		now += 5000;
+		assertEquals(0.05, score.score(peer), DELTA);
+		now += 50000;
+		assertEquals(0.1, score.score(peer), DELTA);
+		score.prune(peer, "topic");
+		assertEquals(0, score.score(peer), DELTA);
+	}
+
+	@Test
+	public void penaltiesTest() throws UnknownHostException {
+		var props = new Properties();
+		props.setProperty("gossipsub_score_ip_colocation_weight", "-1");
+		props.setProperty("gossipsub_score_ip_colocation_threshold", "1");
+		var score = create(props);
+		var a = host("10.0.0.1", 1000);
+		var b = host("10.0.0.1", 1001);
+		var c = host("10.0.0.1", 1002);
+		score.addPeer(a);
+		assertEquals(0, score.score(a), DELTA);
+		score.addPeer(b);
+		score.addPeer(c);
+		assertEquals(-4, score.score(a), DELTA);
+		score.removePeer(c);
+		assertEquals(-1, score.score(a), DELTA);
+
+		score.invalidMessage(a, "topic");
+		score.invalidMessage(a, "topic");
+		assertEquals(-401, score.score(a), DELTA);
+
+		// a bad score is kept across reconnections until it decays
+		score.removePeer(a);
+		score.addPeer(a);
+		assertTrue(score.score(a) < -400);
+		score.removePeer(a);
+		for (int i = 0; i < 10; i++) {
+			score.decay();
+		}
+		assertEquals(0, score.score(a), DELTA);
+		assertTrue(score.scores().containsKey(b));
+		assertEquals(1, score.scores().size());
+	}
+}
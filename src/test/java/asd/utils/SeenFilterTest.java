@@ -0,0 +1,124 @@
+package asd.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Test;
+
+public class SeenFilterTest {
+	private long now = 0;
+
+	private void sleep(Duration duration) {
+		this.now += duration.toNanos();
+	}
+
+	@Test
+	public void seenSetTest() {
+		var capacity = 1000;
+		var set = new SeenSet(capacity, Duration.ofHours(1), () -> this.now);
+		var window = new ArrayDeque<UUID>();
+		var members = new HashSet<UUID>();
+		var rng = ThreadLocalRandom.current();
+
+		for (int i = 0; i < 20000; ++i) {
+			if (rng.nextInt(4) == 0 && !window.isEmpty()) {
+				var known = window.peekLast();
+				assertFalse(set.add(known));
+				continue;
+			}
+			var uuid = UUID.randomUUID();
+			assertTrue(set.add(uuid));
+			window.add(uuid);
+			members.add(uuid);
+			if (window.size() > capacity) {
+				members.remove(window.poll());
+			}
+		}
+
+		// Exactly the last `capacity` ids are remembered
+		assertEquals(capacity, set.size());
+		for (var uuid : members)
+			assertTrue(set.contains(uuid));
+		for (int i = 0; i < 1000; ++i)
+			assertFalse(set.contains(UUID.randomUUID()));
+
+		this.sleep(Duration.ofHours(2));
+		assertFalse(set.contains(window.peekLast()));
+		assertEquals(0, set.size());
+	}
+
+	@Test
+	public void bloomTest() {
+		var capacity = 1000;
+		var filter = new RotatingBloomFilter(capacity, 0.01, Duration.ofHours(1), () -> this.now);
+		var window = new ArrayDeque<UUID>();
+		var false_positives = 0;
+
+		for (int i = 0; i < 20000; ++i) {
+			var uuid = UUID.randomUUID();
+			if (!filter.add(uuid)) {
+				false_positives += 1;
+				continue;
+			}
+			window.add(uuid);
+			if (window.size() > capacity) {
+				window.poll();
+			}
+			assertFalse(filter.add(uuid));
+		}
+
+		// No false negatives within the last `capacity` ids, and the rate of false positives stays near `fpp`
+		assertTrue(false_positives < 400);
+		for (var uuid : window)
+			assertTrue(filter.contains(uuid));
+		var unseen_positives = 0;
+		for (int i = 0; i < 10000; ++i) {
+			if (filter.contains(UUID.randomUUID())) {
+				unseen_positives += 1;
+			}
+		}
+		assertTrue(unseen_positives < 200);
+		assertTrue(filter.size() <= 2 * capacity);
+	}
+
+	@Test
+	public void bloomTtlTest() {
+		var filter = new RotatingBloomFilter(100, 0.0001, Duration.ofSeconds(60), () -> this.now);
+		var first = UUID.randomUUID();
+		assertTrue(filter.add(first));
+		this.sleep(Duration.ofSeconds(59));
+		var second = UUID.randomUUID();
+		assertTrue(filter.add(second));
+
+		// The generation holding both ids rotates out after one more ttl
+		this.sleep(Duration.ofSeconds(2));
+		assertTrue(filter.contains(first));
+		assertTrue(filter.contains(second));
+		assertEquals(2, filter.size());
+		this.sleep(Duration.ofSeconds(57));
+		assertTrue(filter.contains(second));
+		this.sleep(Duration.ofSeconds(3));
+		assertFalse(filter.contains(first));
+		assertFalse(filter.contains(second));
+		assertEquals(0, filter.size());
+
+		// Both generations are dropped after a long gap
+		assertTrue(filter.add(first));
+		this.sleep(Duration.ofHours(1));
+		assertFalse(filter.contains(first));
+	}
+
+	@Test
+	public void createTest() {
+		var ttl = Duration.ofSeconds(1);
+		assertTrue(SeenFilter.create(SeenFilter.TYPE_BLOOM, 10, 0.01, ttl) instanceof RotatingBloomFilter);
+		assertTrue(SeenFilter.create(SeenFilter.TYPE_EXACT, 10, 0.01, ttl) instanceof SeenSet);
+	}
+}
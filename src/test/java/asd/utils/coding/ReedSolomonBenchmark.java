@@ -0,0 +1,139 @@
+package asd.utils.coding;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import asd.protocols.overlay.kad.KadID;
+import asd.protocols.overlay.kad.KadPeer;
+import asd.protocols.overlay.kad.KadTestUtils;
+import asd.protocols.overlay.kad.bcast.ChunkAssembler;
+import asd.protocols.overlay.kad.messages.BroadcastChunk;
+import asd.protocols.overlay.kad.messages.BroadcastHave;
+import asd.protocols.overlay.kad.messages.BroadcastMessage;
+import asd.protocols.overlay.kad.messages.BroadcastWant;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * What one level of the Kademlia broadcast tree costs per broadcast message, the level's subtree gets the message
+ * once and still gets it after losing any one of the peers it was sent to. `duplication` is the plain mode, a whole
+ * copy to each of `rfac` peers. `coded` is a coded topic with the default code, 8 data and 4 parity chunks spread over
+ * 4 peers, and the payload is rebuilt without the chunks of one of them. `haveWant` is what a relay below the level
+ * pays in the plain mode, one Have per redundant branch, one Want back and one pulled copy. Coded relays forward the
+ * chunks they get until they rebuild the payload and announce it with Haves after that, so they pay at most `coded`.
+ * The `bytes` counter is the serialized bytes per message, the time is the CPU cost of serializing, encoding and
+ * decoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReedSolomonBenchmark {
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Traffic {
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			this.bytes = 0;
+		}
+	}
+
+	private static final int DATA_CHUNKS = 8;
+	private static final int PARITY_CHUNKS = 4;
+	private static final int BRANCHES = 4;
+
+	@Param({ "1024", "65536", "1048576" })
+	public int size;
+
+	@Param({ "2", "3" })
+	public int rfac;
+
+	private byte[] payload;
+	private ReedSolomon code;
+	private KadID rtid;
+	private UUID uuid;
+	private KadPeer origin;
+	private ByteBuf buf;
+
+	@Setup
+	public void setup() {
+		if (!ChunkAssembler.survivesBranchLoss(DATA_CHUNKS, PARITY_CHUNKS, BRANCHES)) {
+			throw new IllegalStateException("The code does not survive losing a branch");
+		}
+		this.payload = new byte[this.size];
+		new Random(1).nextBytes(this.payload);
+		this.code = new ReedSolomon(DATA_CHUNKS, PARITY_CHUNKS);
+		this.rtid = KadID.random();
+		this.uuid = UUID.randomUUID();
+		this.origin = KadTestUtils.randomPeer();
+		this.buf = Unpooled.buffer(this.size * 2);
+	}
+
+	@Benchmark
+	public long duplication(Traffic traffic) throws IOException {
+		var bytes = 0L;
+		for (int i = 0; i < this.rfac; ++i) {
+			this.buf.clear();
+			BroadcastMessage.serializer.serialize(
+					new BroadcastMessage(this.rtid, this.uuid, this.origin, 1, 1, false, this.payload), this.buf);
+			bytes += this.buf.readableBytes();
+		}
+		traffic.bytes += bytes;
+		return bytes;
+	}
+
+	@Benchmark
+	public byte[] coded(Traffic traffic) throws IOException {
+		var chunks = this.code.encode(this.payload);
+		for (int i = 0; i < chunks.length; ++i) {
+			this.buf.clear();
+			BroadcastChunk.serializer.serialize(new BroadcastChunk(this.rtid, this.uuid, this.origin, 1, 1,
+					this.payload.length, this.code.dataChunks(), this.code.parityChunks(), i, chunks[i]), this.buf);
+			traffic.bytes += this.buf.readableBytes();
+		}
+		// Chunks are assigned to branches by their index, drop the ones sent down the first branch
+		for (int i = 0; i < chunks.length; i += BRANCHES)
+			chunks[i] = null;
+		return this.code.decode(chunks, this.payload.length);
+	}
+
+	@Benchmark
+	public long haveWant(Traffic traffic) throws IOException {
+		var bytes = 0L;
+		for (int i = 0; i < this.rfac; ++i) {
+			this.buf.clear();
+			BroadcastHave.serializer.serialize(new BroadcastHave(this.rtid, this.uuid), this.buf);
+			bytes += this.buf.readableBytes();
+		}
+		this.buf.clear();
+		BroadcastWant.serializer.serialize(new BroadcastWant(this.rtid, List.of(this.uuid)), this.buf);
+		bytes += this.buf.readableBytes();
+		this.buf.clear();
+		BroadcastMessage.serializer.serialize(
+				new BroadcastMessage(this.rtid, this.uuid, this.origin, 1, 1, false, this.payload), this.buf);
+		bytes += this.buf.readableBytes();
+		traffic.bytes += bytes;
+		return bytes;
+	}
+}
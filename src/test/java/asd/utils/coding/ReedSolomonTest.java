@@ -0,0 +1,66 @@
+package asd.utils.coding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ReedSolomonTest {
+	@Test
+	public void anySubsetTest() {
+		var random = new Random(1);
+		var code = new ReedSolomon(4, 3);
+		for (var length : new int[] { 0, 1, 4, 7, 1000, 4099 }) {
+			var payload = new byte[length];
+			random.nextBytes(payload);
+			var chunks = code.encode(payload);
+			assertEquals(7, chunks.length);
+
+			// Every subset of 4 out of 7 chunks rebuilds the payload
+			for (int mask = 0; mask < 1 << 7; ++mask) {
+				if (Integer.bitCount(mask) != 4)
+					continue;
+				var subset = new byte[7][];
+				for (int i = 0; i < 7; ++i)
+					if ((mask & (1 << i)) != 0)
+						subset[i] = chunks[i];
+				assertArrayEquals(payload, code.decode(subset, length));
+			}
+		}
+	}
+
+	@Test
+	public void systematicTest() {
+		var code = new ReedSolomon(3, 2);
+		var payload = new byte[] { 1, 2, 3, 4, 5, 6, 7 };
+		var chunks = code.encode(payload);
+		assertEquals(3, code.chunkSize(payload.length));
+		assertArrayEquals(new byte[] { 1, 2, 3 }, chunks[0]);
+		assertArrayEquals(new byte[] { 4, 5, 6 }, chunks[1]);
+		assertArrayEquals(new byte[] { 7, 0, 0 }, chunks[2]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void notEnoughChunksTest() {
+		var code = new ReedSolomon(3, 2);
+		var chunks = code.encode(new byte[30]);
+		chunks[0] = null;
+		chunks[1] = null;
+		chunks[4] = null;
+		code.decode(chunks, 30);
+	}
+
+	@Test
+	public void maxChunksTest() {
+		var random = new Random(2);
+		var code = new ReedSolomon(200, 56);
+		var payload = new byte[10000];
+		random.nextBytes(payload);
+		var chunks = code.encode(payload);
+		for (int i = 0; i < 56; ++i)
+			chunks[i * 3] = null;
+		assertArrayEquals(payload, code.decode(chunks, payload.length));
+	}
+}
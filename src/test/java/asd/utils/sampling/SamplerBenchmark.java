@@ -0,0 +1,85 @@
+package asd.utils.sampling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Samples 6 elements, the GossipSub mesh degree, from sets of `size` elements. `legacy` is the previous
+ * `ASDUtils.sample` that shuffled a copy of the whole set. Run with `-prof gc` to compare the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamplerBenchmark {
+	private static final int COUNT = 6;
+
+	@Param({ "8", "100", "1000", "10000" })
+	public int size;
+
+	private Set<Integer> set;
+	private List<Integer> list;
+	private Sampler sampler;
+	private List<Integer> out;
+
+	@Setup
+	public void setup() {
+		this.set = new HashSet<>();
+		for (int i = 0; i < this.size; ++i)
+			this.set.add(i);
+		this.list = new ArrayList<>(this.set);
+		this.sampler = new Sampler(1);
+		this.out = new ArrayList<>(COUNT);
+	}
+
+	private static <T> Set<T> legacySample(int size, Set<T> set) {
+		List<T> list = new ArrayList<>(set);
+		Set<T> subset = new HashSet<>();
+		Collections.shuffle(list);
+		for (int i = 0; i < Math.min(size, list.size()); i++) {
+			subset.add(list.get(i));
+		}
+		return subset;
+	}
+
+	@Benchmark
+	public Set<Integer> legacy() {
+		return legacySample(COUNT, this.set);
+	}
+
+	@Benchmark
+	public List<Integer> fisherYates() {
+		this.out.clear();
+		return this.sampler.sample(this.set, COUNT, this.out);
+	}
+
+	@Benchmark
+	public List<Integer> reservoir() {
+		this.out.clear();
+		return this.sampler.reservoir(this.set.iterator(), COUNT, this.out);
+	}
+
+	@Benchmark
+	public List<Integer> indexed() {
+		this.out.clear();
+		return this.sampler.sample(this.list, COUNT, this.out);
+	}
+}
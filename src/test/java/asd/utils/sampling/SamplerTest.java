@@ -0,0 +1,75 @@
+package asd.utils.sampling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class SamplerTest {
+	private static List<Integer> range(int size) {
+		return IntStream.range(0, size).boxed().toList();
+	}
+
+	// Samples `count` out of `size` many times and checks the samples and how often each element was picked
+	private static void checkUniform(int size, int count,
+			BiFunction<List<Integer>, Integer, Collection<Integer>> sample) {
+		var rounds = 20000;
+		var items = range(size);
+		var hits = new int[size];
+		for (int round = 0; round < rounds; ++round) {
+			var picked = sample.apply(items, count);
+			assertEquals(Math.min(count, size), picked.size());
+			assertEquals(picked.size(), new HashSet<>(picked).size());
+			for (var item : picked)
+				hits[item] += 1;
+		}
+		var expected = (double) rounds * Math.min(count, size) / size;
+		for (var h : hits)
+			assertTrue("picked " + h + " times, expected about " + expected, Math.abs(h - expected) < expected * 0.1);
+	}
+
+	@Test
+	public void sampleTest() {
+		var sampler = new Sampler(1);
+		// Sets are copied to the buffer and sampled with a partial Fisher-Yates. Lists are sampled in place with
+		// Floyd's algorithm, scanning the picked indices for repeats up to 32 picks and with a hash set above that
+		checkUniform(20, 5, (items, count) -> sampler.sample(new LinkedHashSet<>(items), count));
+		checkUniform(20, 5, (items, count) -> sampler.sample(items, count));
+		checkUniform(100, 40, (items, count) -> sampler.sample(items, count));
+		checkUniform(10, 20, (items, count) -> sampler.sample(new HashSet<>(items), count));
+		assertEquals(List.of(), sampler.sample(range(10), 0));
+		assertEquals(List.of(), sampler.sample(new HashSet<Integer>(), 3));
+	}
+
+	@Test
+	public void reservoirTest() {
+		var sampler = new Sampler(2);
+		checkUniform(20, 5, (items, count) -> sampler.reservoir(items.iterator(), count, new ArrayList<>()));
+		checkUniform(3, 5, (items, count) -> sampler.reservoir(items.iterator(), count, new ArrayList<>()));
+		var odd = sampler.reservoir(range(100).stream().filter(i -> i % 2 == 1).iterator(), 10, new HashSet<>());
+		assertEquals(10, odd.size());
+		assertTrue(odd.stream().allMatch(i -> i % 2 == 1));
+	}
+
+	@Test
+	public void seedTest() {
+		var items = new LinkedHashSet<>(range(1000));
+		var a = new Sampler(42);
+		var b = new Sampler(42);
+		for (int i = 0; i < 10; ++i)
+			assertEquals(a.sample(items, 10), b.sample(items, 10));
+
+		var split_a = a.split();
+		var split_b = b.split();
+		assertEquals(split_a.sample(items, 10), split_b.sample(items, 10));
+		assertTrue(!a.sample(items, 10).equals(split_a.sample(items, 10)));
+	}
+}